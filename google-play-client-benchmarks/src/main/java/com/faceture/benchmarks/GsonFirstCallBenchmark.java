@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks;
+
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.gson.PlayTypeAdapterFactory;
+import com.faceture.google.play.stub.SyntheticLibrary;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first parse of a library through a new Gson, where the reflective adapters cost the most, with Gson's
+ * reflective adapters and with the ones PlayClientBuilder registers. Each measured call gets a Gson of its own, and
+ * there's no warmup so the first calls of every fork are cold. GsonWrapperBenchmark covers the steady state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+@Fork(5)
+public class GsonFirstCallBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int songCount;
+
+    @Param({"adapters", "reflective"})
+    String parser;
+
+    private String json;
+    private Gson gson;
+
+    @Setup(Level.Trial)
+    public void createJson() {
+        json = SyntheticLibrary.createLoadAllTracksJson(songCount);
+    }
+
+    @Setup(Level.Iteration)
+    public void createGson() {
+        gson = "reflective".equals(parser) ? new Gson() : new GsonBuilder()
+                .registerTypeAdapterFactory(new PlayTypeAdapterFactory(new StringInterner())).create();
+    }
+
+    @Benchmark
+    public LoadAllTracksResponse firstFromJson() {
+        return gson.fromJson(json, LoadAllTracksResponse.class);
+    }
+}
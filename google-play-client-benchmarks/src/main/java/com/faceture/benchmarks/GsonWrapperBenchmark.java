@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks;
+
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.LoadAllTracksReader;
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.faceture.google.play.gson.PlayTypeAdapterFactory;
+import com.faceture.google.play.library.SongTable;
+import com.faceture.google.play.stub.SyntheticLibrary;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a whole library, from a String as PlayClient.loadAllTracks used to, and from a stream as it does now,
+ * with Gson's reflective adapters and with the ones PlayClientBuilder registers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonWrapperBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int songCount;
+
+    @Param({"adapters", "reflective"})
+    String parser;
+
+    private String json;
+    private GsonWrapper gsonWrapper;
+
+    @Setup
+    public void setUp() {
+        json = SyntheticLibrary.createLoadAllTracksJson(songCount);
+
+        Gson gson = "reflective".equals(parser) ? new Gson() : new GsonBuilder()
+                .registerTypeAdapterFactory(new PlayTypeAdapterFactory(new StringInterner())).create();
+        gsonWrapper = new GsonWrapper(gson);
+    }
+
+    @Benchmark
+    public LoadAllTracksResponse fromJson() {
+        return gsonWrapper.fromJson(json, LoadAllTracksResponse.class);
+    }
+
+    @Benchmark
+    public int fromJsonStreaming(Blackhole blackhole) throws IOException {
+        LoadAllTracksReader reader = new LoadAllTracksReader(gsonWrapper,
+                gsonWrapper.createJsonReader(new StringReader(json)));
+
+        Song song;
+        while ((song = reader.nextSong()) != null) {
+            blackhole.consume(song);
+        }
+
+        return reader.getSongCount();
+    }
+
+    @Benchmark
+    public SongTable loadSongTable() throws IOException {
+        LoadAllTracksReader reader = new LoadAllTracksReader(gsonWrapper,
+                gsonWrapper.createJsonReader(new StringReader(json)));
+
+        SongTable.Builder songTableBuilder = new SongTable.Builder();
+        while (reader.nextSong(songTableBuilder)) {
+            // the songs go straight into the builder
+        }
+
+        return songTableBuilder.build();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks;
+
+import com.faceture.http.HttpClientFactory;
+import com.faceture.http.HttpUtil;
+import org.apache.http.client.methods.HttpPost;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HttpUtil calls made to build every request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpUtilBenchmark {
+
+    private HttpClientFactory httpClientFactory;
+    private HttpUtil httpUtil;
+
+    private Map<String, String> queryParams;
+    private Map<String, String> cookies;
+    private Map<String, String> formData;
+
+    @Setup
+    public void setUp() {
+        httpClientFactory = new HttpClientFactory();
+        httpUtil = new HttpUtil(httpClientFactory);
+
+        // what a loadalltracks request carries
+        queryParams = new HashMap<String, String>();
+        queryParams.put("u", "0");
+        queryParams.put("xt", "AM-WbXgqLmDe7rI2sZt1eS3jp8kNQ4bYjWv5nJ9cR0fO6uP:1349000000000");
+
+        cookies = new HashMap<String, String>();
+        cookies.put("xt", "AM-WbXgqLmDe7rI2sZt1eS3jp8kNQ4bYjWv5nJ9cR0fO6uP:1349000000000");
+        cookies.put("sjsaid", "iMyJ3Bv1pGJhYzLs5Q8d2aV0cT7wXr4nKe6uHo9fZyA");
+
+        formData = new HashMap<String, String>();
+        formData.put("json", "{\"continuationToken\":\"KmsKMAoufDhiY2Y0YmFmLTBlMDctM2U4MS1iZmVh\"}");
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpClientFactory.shutdown();
+    }
+
+    @Benchmark
+    public String getQueryString() {
+        return httpUtil.getQueryString(queryParams);
+    }
+
+    @Benchmark
+    public HttpPost setCookies() {
+        HttpPost httpPost = new HttpPost();
+        httpUtil.setCookies(httpPost, cookies);
+
+        return httpPost;
+    }
+
+    @Benchmark
+    public HttpPost setFormData() throws UnsupportedEncodingException {
+        HttpPost httpPost = new HttpPost();
+        httpUtil.setFormData(httpPost, formData);
+
+        return httpPost;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.*;
+import com.faceture.google.play.domain.PlayDomainFactory;
+import com.faceture.http.HttpClientFactory;
+import com.faceture.http.HttpUtil;
+import com.google.gson.Gson;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything PlayClient and the RestClient do to build a request before it's sent: the params, headers, cookies
+ * and form from PlayClientUtil, then the same HttpUtil calls RestClient and RestClientUtil make on the HttpPost
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayClientRequestBenchmark {
+
+    private HttpClientFactory httpClientFactory;
+    private HttpUtil httpUtil;
+    private PlayClientUtil playClientUtil;
+    private PlaySession playSession;
+
+    @Setup
+    public void setUp() {
+        httpClientFactory = new HttpClientFactory();
+        httpUtil = new HttpUtil(httpClientFactory);
+        playClientUtil = new PlayClientUtil(new PlaySessionFactory(), new GoogleUtil(),
+                new GsonWrapper(new Gson()), new PlayDomainFactory(), new LoginResponseFactory());
+
+        playSession = new PlaySession("AM-WbXgqLmDe7rI2sZt1eS3jp8kNQ4bYjWv5nJ9cR0fO6uP:1349000000000",
+                "iMyJ3Bv1pGJhYzLs5Q8d2aV0cT7wXr4nKe6uHo9fZyA",
+                "DQAAAMQAAAB3wlAp2Jsm1n9Zk2rT8cVxQ4oLhE7yPbGdR6uWfN0iSeM3aKjC5tHqYzX1vB8gO");
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpClientFactory.shutdown();
+    }
+
+    @Benchmark
+    public HttpPost search() throws IOException, URISyntaxException {
+        HttpPost httpPost = httpClientFactory.createHttpPost();
+        httpUtil.setFormData(httpPost, playClientUtil.createSearchForm("the beatles"));
+        prepare(httpPost, Path.MUSIC_SEARCH, playClientUtil.createSessionQueryParams(playSession),
+                playClientUtil.createAuthHeaders(playSession.getAuthToken()), null);
+
+        return httpPost;
+    }
+
+    @Benchmark
+    public HttpPost loadAllTracksPage() throws IOException, URISyntaxException {
+        HttpPost httpPost = httpClientFactory.createHttpPost();
+        httpUtil.setFormData(httpPost, playClientUtil.createLoadAllTracksForm("KmsKMAoufDhiY2Y0YmFmLTBlMDctM2U4MS1i"));
+        prepare(httpPost, Path.MUSIC_LOAD_ALL_TRACKS, playClientUtil.createSessionQueryParams(playSession),
+                playClientUtil.createAuthHeaders(playSession.getAuthToken()), null);
+
+        return httpPost;
+    }
+
+    @Benchmark
+    public HttpGet getPlayURI() throws IOException, URISyntaxException {
+        HttpGet httpGet = httpClientFactory.createHttpGet();
+        prepare(httpGet, Path.MUSIC_PLAY, playClientUtil.createPlayQueryParams("0f1e2d3c-4b5a-6978-8796-a5b4c3d2e1f0"),
+                playClientUtil.createAuthHeaders(playSession.getAuthToken()),
+                playClientUtil.createSessionCookies(playSession));
+
+        return httpGet;
+    }
+
+    /**
+     * What RestClientUtil does to the request before executing it
+     */
+    private void prepare(HttpRequestBase httpRequest, String path, Map<String, String> queryParams,
+                         Map<String, String> headers, Map<String, String> cookies)
+            throws IOException, URISyntaxException
+    {
+        httpUtil.setHeaders(httpRequest, headers);
+        httpRequest.setHeader("User-Agent", "");
+        httpUtil.setUri(httpRequest, Const.USE_HTTPS, HostName.PLAY, path, httpUtil.getQueryString(queryParams));
+        if (cookies != null) {
+            httpUtil.setCookies(httpRequest, cookies);
+        }
+    }
+}
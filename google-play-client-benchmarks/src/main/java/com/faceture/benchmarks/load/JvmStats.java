@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+/**
+ * The heap and the garbage collectors at a point in time. Two of these taken at the start and end of a step give
+ * the collections and pause time the step caused.
+ */
+public class JvmStats {
+
+    private final long heapUsedBytes;
+    private final long heapCommittedBytes;
+    private final long gcCount;
+    private final long gcTimeMillis;
+
+    public JvmStats(long heapUsedBytes, long heapCommittedBytes, long gcCount, long gcTimeMillis) {
+        this.heapUsedBytes = heapUsedBytes;
+        this.heapCommittedBytes = heapCommittedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+    }
+
+    public static JvmStats take() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long heapUsedBytes = memoryMXBean.getHeapMemoryUsage().getUsed();
+        long heapCommittedBytes = memoryMXBean.getHeapMemoryUsage().getCommitted();
+
+        long gcCount = 0;
+        long gcTimeMillis = 0;
+        List<GarbageCollectorMXBean> garbageCollectorMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeans) {
+            // -1 means the collector doesn't know
+            gcCount += Math.max(garbageCollectorMXBean.getCollectionCount(), 0);
+            gcTimeMillis += Math.max(garbageCollectorMXBean.getCollectionTime(), 0);
+        }
+
+        return new JvmStats(heapUsedBytes, heapCommittedBytes, gcCount, gcTimeMillis);
+    }
+
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    public long getHeapCommittedBytes() {
+        return heapCommittedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+}
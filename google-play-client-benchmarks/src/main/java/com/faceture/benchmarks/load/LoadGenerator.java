@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlayClientBuilder;
+import com.faceture.google.play.PlayEndpoints;
+import com.faceture.google.play.stub.StubPlayServer;
+import com.faceture.google.play.stub.StubPlayServerConfig;
+import com.faceture.http.ConnectionPoolConfig;
+import com.faceture.http.HttpClientFactory;
+import com.faceture.rest.BulkheadConfig;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a growing number of SimulatedSessions through one shared PlayClient, one step per session count, and
+ * reports for each step the throughput and latency percentiles of every call, how many pooled connections were
+ * open, and what the heap and the garbage collectors did. Runs against an embedded StubPlayServer unless an
+ * endpoint is given.
+ *
+ * The sessions are a closed loop: each waits for its call to return before making the next, so the latencies are
+ * what the sessions saw, not what an open stream of users arriving at a fixed rate would see.
+ */
+public class LoadGenerator {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 30000;
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    private final PlayClient playClient;
+    private final HttpClientFactory httpClientFactory;
+    private final LoadGeneratorOptions options;
+    private final PrintStream out;
+    private final List<String> summary = new ArrayList<String>();
+
+    public LoadGenerator(PlayClient playClient, HttpClientFactory httpClientFactory, LoadGeneratorOptions options,
+                         PrintStream out)
+    {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == httpClientFactory) {
+            throw new IllegalArgumentException("httpClientFactory is null");
+        }
+        if (null == options) {
+            throw new IllegalArgumentException("options is null");
+        }
+        if (null == out) {
+            throw new IllegalArgumentException("out is null");
+        }
+
+        this.playClient = playClient;
+        this.httpClientFactory = httpClientFactory;
+        this.options = options;
+        this.out = out;
+    }
+
+    /**
+     * Runs every step in turn, then prints how the steps compare
+     */
+    public void run() throws InterruptedException, IOException {
+        out.println(options);
+
+        for (int sessionCount : options.getSessionCounts()) {
+            runStep(sessionCount);
+        }
+
+        out.println();
+        out.println(String.format("%8s %10s %12s %12s %12s %10s %12s %8s", "sessions", "ops/s", "search p99",
+                "play p99", "library p99", "peak conns", "peak heap MB", "gc %"));
+        for (String line : summary) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * Starts sessionCount sessions, lets them warm up, measures them for the duration, then stops them
+     */
+    public void runStep(int sessionCount) throws InterruptedException, IOException {
+        LoadStats loadStats = new LoadStats();
+        Sampler sampler = new Sampler(httpClientFactory);
+        Thread samplerThread = startThread(sampler, "load-sampler");
+
+        List<SimulatedSession> sessions = new ArrayList<SimulatedSession>(sessionCount);
+        List<Thread> threads = new ArrayList<Thread>(sessionCount);
+        long stepStart = System.nanoTime();
+        for (int i = 0; i < sessionCount; i++) {
+            SimulatedSession session = new SimulatedSession(playClient, options, loadStats, sessionCount * 31L + i);
+            sessions.add(session);
+            threads.add(startThread(session, "load-session-" + i));
+        }
+
+        // the logins happen during the warm up, so they're the only calls measured over the whole step
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.getWarmupSeconds()));
+        loadStats.getSearch().reset();
+        loadStats.getPlayUri().reset();
+        loadStats.getLoadAllTracks().reset();
+        loadStats.takeSongsLoaded();
+        sampler.reset();
+        JvmStats jvmBefore = JvmStats.take();
+        long measureStart = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.getDurationSeconds()));
+
+        long measureEnd = System.nanoTime();
+        JvmStats jvmAfter = JvmStats.take();
+        int openConnections = httpClientFactory.getConnectionManager().getConnectionsInPool();
+        List<Histogram> histograms = new ArrayList<Histogram>();
+        List<Long> errors = new ArrayList<Long>();
+        for (OperationStats operationStats : loadStats.getAll()) {
+            histograms.add(operationStats.takeIntervalHistogram());
+            errors.add(operationStats.takeErrors());
+        }
+        long songsLoaded = loadStats.takeSongsLoaded();
+
+        for (SimulatedSession session : sessions) {
+            session.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(STOP_TIMEOUT_MILLIS);
+        }
+        sampler.stop();
+        samplerThread.join();
+
+        double measureSeconds = (measureEnd - measureStart) / 1e9;
+        double stepSeconds = (measureEnd - stepStart) / 1e9;
+
+        out.println();
+        out.println("sessions=" + sessionCount + " measured=" + String.format("%.1f", measureSeconds) + "s");
+        out.println(String.format("  %-14s %10s %8s %10s %9s %9s %9s %9s %9s", "operation", "count", "errors",
+                "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        double totalThroughput = 0;
+        List<OperationStats> operations = loadStats.getAll();
+        for (int i = 0; i < operations.size(); i++) {
+            OperationStats operationStats = operations.get(i);
+            Histogram histogram = histograms.get(i);
+            boolean isLogin = operationStats == loadStats.getLogin();
+            double throughput = histogram.getTotalCount() / (isLogin ? stepSeconds : measureSeconds);
+            if (!isLogin) {
+                totalThroughput += throughput;
+            }
+
+            out.println(String.format("  %-14s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    operationStats.getName(), histogram.getTotalCount(), errors.get(i), throughput,
+                    toMillis(histogram, 50), toMillis(histogram, 90), toMillis(histogram, 99),
+                    toMillis(histogram, 99.9), histogram.getMaxValue() / MICROS_PER_MILLI));
+
+            writeHgrm(sessionCount, operationStats.getName(), histogram);
+        }
+
+        long gcTimeMillis = jvmAfter.getGcTimeMillis() - jvmBefore.getGcTimeMillis();
+        double gcPercent = 100.0 * gcTimeMillis / (measureSeconds * 1000);
+        out.println(String.format("  throughput: %.1f calls/s, %.0f songs/s loaded", totalThroughput,
+                songsLoaded / measureSeconds));
+        out.println(String.format("  connections: %d open at the end, %d at peak, pool of %d", openConnections,
+                sampler.getPeakConnections(), options.getMaxConnections()));
+        out.println(String.format("  heap: %.1f MB used at the end, %.1f MB at peak, %.1f MB committed",
+                jvmAfter.getHeapUsedBytes() / BYTES_PER_MEGABYTE, sampler.getPeakHeapUsedBytes() / BYTES_PER_MEGABYTE,
+                jvmAfter.getHeapCommittedBytes() / BYTES_PER_MEGABYTE));
+        out.println(String.format("  gc: %d collections, %d ms (%.2f%% of the time)",
+                jvmAfter.getGcCount() - jvmBefore.getGcCount(), gcTimeMillis, gcPercent));
+
+        summary.add(String.format("%8d %10.1f %12.2f %12.2f %12.2f %10d %12.1f %8.2f", sessionCount, totalThroughput,
+                toMillis(histograms.get(1), 99), toMillis(histograms.get(2), 99), toMillis(histograms.get(3), 99),
+                sampler.getPeakConnections(), sampler.getPeakHeapUsedBytes() / BYTES_PER_MEGABYTE, gcPercent));
+    }
+
+    private static double toMillis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    private void writeHgrm(int sessionCount, String operationName, Histogram histogram)
+            throws FileNotFoundException
+    {
+        if (null == options.getHgrmDir() || histogram.getTotalCount() == 0) {
+            return;
+        }
+
+        File dir = new File(options.getHgrmDir());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new FileNotFoundException("can't create " + dir);
+        }
+
+        PrintStream printStream = new PrintStream(new File(dir, "sessions-" + sessionCount + "-" + operationName +
+                ".hgrm"));
+        try {
+            histogram.outputPercentileDistribution(printStream, MICROS_PER_MILLI);
+        }
+        finally {
+            printStream.close();
+        }
+    }
+
+    private static Thread startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Watches the peak heap and pooled connections, which come and go too quickly to catch at the end of a step
+     */
+    private static class Sampler implements Runnable {
+
+        private final HttpClientFactory httpClientFactory;
+        private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+        private volatile boolean running = true;
+        private volatile long peakHeapUsedBytes;
+        private volatile int peakConnections;
+
+        Sampler(HttpClientFactory httpClientFactory) {
+            this.httpClientFactory = httpClientFactory;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                // only this thread writes the peaks, reset() aside
+                peakHeapUsedBytes = Math.max(peakHeapUsedBytes, memoryMXBean.getHeapMemoryUsage().getUsed());
+                peakConnections = Math.max(peakConnections,
+                        httpClientFactory.getConnectionManager().getConnectionsInPool());
+
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void reset() {
+            peakHeapUsedBytes = 0;
+            peakConnections = 0;
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        long getPeakHeapUsedBytes() {
+            return peakHeapUsedBytes;
+        }
+
+        int getPeakConnections() {
+            return peakConnections;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        LoadGeneratorOptions options;
+        try {
+            options = LoadGeneratorOptions.parse(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadGeneratorOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        StubPlayServer server = null;
+        PlayEndpoints playEndpoints;
+        if (null == options.getEndpoint()) {
+            // give the stub a thread per session so it isn't the bottleneck
+            server = new StubPlayServer(new StubPlayServerConfig(0, options.getSongCount(),
+                    StubPlayServerConfig.DEFAULT_PAGE_SIZE, StubPlayServerConfig.DEFAULT_PLAYLIST_COUNT,
+                    Math.max(StubPlayServerConfig.DEFAULT_THREAD_COUNT, options.getMaxSessionCount()),
+                    StubPlayServerConfig.DEFAULT_PLAY_URL_TTL_SECONDS));
+            server.start();
+            playEndpoints = server.createPlayEndpoints();
+        }
+        else {
+            playEndpoints = new PlayEndpoints(options.isHttps(), options.getEndpoint(), options.getEndpoint());
+        }
+
+        int maxConnections = options.getMaxConnections();
+        HttpClientFactory httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig(maxConnections,
+                maxConnections, ConnectionPoolConfig.DEFAULT_KEEP_ALIVE_MILLIS,
+                ConnectionPoolConfig.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                ConnectionPoolConfig.DEFAULT_EVICTION_INTERVAL_MILLIS));
+        // the sessions should queue for the connections as they would with no guard, not be refused by a bulkhead
+        PlayClient playClient = new PlayClientBuilder().withHttpClientFactory(httpClientFactory)
+                .withEndpoints(playEndpoints).withBulkheadConfig(BulkheadConfig.UNBOUNDED).create();
+
+        try {
+            new LoadGenerator(playClient, httpClientFactory, options, System.out).run();
+        }
+        finally {
+            playClient.close();
+            if (null != server) {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import com.faceture.google.play.stub.StubPlayServerConfig;
+
+import java.util.Arrays;
+
+/**
+ * What the LoadGenerator runs, parsed from "--name value" pairs on the command line
+ */
+public class LoadGeneratorOptions {
+
+    public static final int[] DEFAULT_SESSION_COUNTS = {1, 10, 50, 100, 200};
+    public static final int DEFAULT_WARMUP_SECONDS = 5;
+    public static final int DEFAULT_DURATION_SECONDS = 20;
+    public static final long DEFAULT_THINK_TIME_MILLIS = 0;
+    public static final int DEFAULT_LOAD_ALL_TRACKS_EVERY = 50;
+    public static final String DEFAULT_EMAIL_ADDRESS = "load@example.com";
+    public static final String DEFAULT_PASSWORD = "password";
+
+    public static final String USAGE =
+            "usage: LoadGenerator [--endpoint host:port] [--https]\n" +
+            "                     [--sessions 1,10,50,100,200] [--warmup seconds] [--duration seconds]\n" +
+            "                     [--think-time millis] [--load-all-tracks-every iterations]\n" +
+            "                     [--songs count] [--max-connections count] [--hgrm-dir dir]\n" +
+            "                     [--email address] [--password password]\n" +
+            "Without --endpoint an embedded stub server with --songs songs is started.";
+
+    private String endpoint;
+    private boolean https;
+    private int[] sessionCounts = DEFAULT_SESSION_COUNTS.clone();
+    private int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+    private int durationSeconds = DEFAULT_DURATION_SECONDS;
+    private long thinkTimeMillis = DEFAULT_THINK_TIME_MILLIS;
+    private int loadAllTracksEvery = DEFAULT_LOAD_ALL_TRACKS_EVERY;
+    private int songCount = StubPlayServerConfig.DEFAULT_SONG_COUNT;
+    private int maxConnections;
+    private String hgrmDir;
+    private String emailAddress = DEFAULT_EMAIL_ADDRESS;
+    private String password = DEFAULT_PASSWORD;
+
+    public static LoadGeneratorOptions parse(String[] args) {
+        if (null == args) {
+            throw new IllegalArgumentException("args is null");
+        }
+
+        LoadGeneratorOptions options = new LoadGeneratorOptions();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if ("--https".equals(name)) {
+                options.https = true;
+                continue;
+            }
+
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("missing value for " + name);
+            }
+            String value = args[++i];
+
+            if ("--endpoint".equals(name)) {
+                options.endpoint = value;
+            }
+            else if ("--sessions".equals(name)) {
+                options.sessionCounts = parseCounts(value);
+            }
+            else if ("--warmup".equals(name)) {
+                options.warmupSeconds = parseInt(name, value, 0);
+            }
+            else if ("--duration".equals(name)) {
+                options.durationSeconds = parseInt(name, value, 1);
+            }
+            else if ("--think-time".equals(name)) {
+                options.thinkTimeMillis = parseInt(name, value, 0);
+            }
+            else if ("--load-all-tracks-every".equals(name)) {
+                options.loadAllTracksEvery = parseInt(name, value, 0);
+            }
+            else if ("--songs".equals(name)) {
+                options.songCount = parseInt(name, value, 1);
+            }
+            else if ("--max-connections".equals(name)) {
+                options.maxConnections = parseInt(name, value, 1);
+            }
+            else if ("--hgrm-dir".equals(name)) {
+                options.hgrmDir = value;
+            }
+            else if ("--email".equals(name)) {
+                options.emailAddress = value;
+            }
+            else if ("--password".equals(name)) {
+                options.password = value;
+            }
+            else {
+                throw new IllegalArgumentException("unknown option " + name);
+            }
+        }
+
+        return options;
+    }
+
+    private static int[] parseCounts(String value) {
+        String[] parts = value.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = parseInt("--sessions", parts[i].trim(), 1);
+        }
+
+        return counts;
+    }
+
+    private static int parseInt(String name, String value, int min) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+        if (parsed < min) {
+            throw new IllegalArgumentException(name + " is less than " + min + ": " + value);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * @return host[:port] of the server to load, or null to start an embedded stub
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isHttps() {
+        return https;
+    }
+
+    public int[] getSessionCounts() {
+        return sessionCounts.clone();
+    }
+
+    public int getMaxSessionCount() {
+        int max = 0;
+        for (int sessionCount : sessionCounts) {
+            max = Math.max(max, sessionCount);
+        }
+
+        return max;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getThinkTimeMillis() {
+        return thinkTimeMillis;
+    }
+
+    /**
+     * @return how many search and play iterations a session does between loading the whole library, 0 for never
+     */
+    public int getLoadAllTracksEvery() {
+        return loadAllTracksEvery;
+    }
+
+    public int getSongCount() {
+        return songCount;
+    }
+
+    /**
+     * @return the size of the connection pool, one connection per session at the largest step by default
+     */
+    public int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : getMaxSessionCount();
+    }
+
+    /**
+     * @return where to write a percentile distribution file per operation and step, or null for none
+     */
+    public String getHgrmDir() {
+        return hgrmDir;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String toString() {
+        return "endpoint=" + (null == endpoint ? "embedded stub with " + songCount + " songs" : endpoint) +
+                " sessions=" + Arrays.toString(sessionCounts) + " warmup=" + warmupSeconds + "s duration=" +
+                durationSeconds + "s thinkTime=" + thinkTimeMillis + "ms loadAllTracksEvery=" + loadAllTracksEvery +
+                " maxConnections=" + getMaxConnections();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything the sessions of a load test record
+ */
+public class LoadStats {
+
+    private final OperationStats login = new OperationStats("login");
+    private final OperationStats search = new OperationStats("search");
+    private final OperationStats playUri = new OperationStats("getPlayURI");
+    private final OperationStats loadAllTracks = new OperationStats("loadAllTracks");
+    private final LongAdder songsLoaded = new LongAdder();
+
+    public OperationStats getLogin() {
+        return login;
+    }
+
+    public OperationStats getSearch() {
+        return search;
+    }
+
+    public OperationStats getPlayUri() {
+        return playUri;
+    }
+
+    public OperationStats getLoadAllTracks() {
+        return loadAllTracks;
+    }
+
+    /**
+     * @return every operation, in the order they're reported
+     */
+    public List<OperationStats> getAll() {
+        return Arrays.asList(login, search, playUri, loadAllTracks);
+    }
+
+    public void addSongsLoaded(long count) {
+        songsLoaded.add(count);
+    }
+
+    /**
+     * @return the songs loaded since the last call
+     */
+    public long takeSongsLoaded() {
+        return songsLoaded.sumThenReset();
+    }
+}
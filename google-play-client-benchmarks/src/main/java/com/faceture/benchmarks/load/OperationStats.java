@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and errors of one kind of call, recorded by any number of sessions at once
+ */
+public class OperationStats {
+
+    // microseconds up to an hour at 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final LongAdder errors = new LongAdder();
+
+    public OperationStats(String name) {
+        if (null == name || name.isEmpty()) {
+            throw new IllegalArgumentException("name is null or empty");
+        }
+
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param startNanos System.nanoTime() from just before the call was made
+     */
+    public void recordSuccess(long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        recorder.recordValue(Math.min(Math.max(micros, 0), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * @return the latencies, in microseconds, recorded since the last call
+     */
+    public Histogram takeIntervalHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+
+    /**
+     * @return the errors recorded since the last call
+     */
+    public long takeErrors() {
+        return errors.sumThenReset();
+    }
+
+    /**
+     * Throws away everything recorded so far, e.g. at the end of a warm up
+     */
+    public void reset() {
+        recorder.reset();
+        errors.reset();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.benchmarks.load;
+
+import com.faceture.google.play.LoginResponse;
+import com.faceture.google.play.LoginResult;
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlaySession;
+import com.faceture.google.play.SessionExpiredException;
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * One user of the shared PlayClient: logs in, then searches and asks for the play URI of one of the songs it found
+ * until it's stopped, loading the whole library every so often. It backs off for a second after a failed call, as a
+ * real client would, and logs in again when its session has expired. Every call is timed into the LoadStats.
+ */
+public class SimulatedSession implements Runnable {
+
+    // how long to back off after a failed login before trying again
+    private static final long LOGIN_RETRY_MILLIS = 1000;
+    // how long to back off after a failed call, so a failing server isn't hammered in a tight loop
+    private static final long ERROR_RETRY_MILLIS = 1000;
+
+    private final PlayClient playClient;
+    private final LoadGeneratorOptions options;
+    private final LoadStats loadStats;
+    private final Random random;
+
+    private volatile boolean running = true;
+    // set by a call refused because the session expired, so the next iteration logs in again
+    private boolean sessionExpired;
+
+    public SimulatedSession(PlayClient playClient, LoadGeneratorOptions options, LoadStats loadStats, long seed) {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == options) {
+            throw new IllegalArgumentException("options is null");
+        }
+        if (null == loadStats) {
+            throw new IllegalArgumentException("loadStats is null");
+        }
+
+        this.playClient = playClient;
+        this.options = options;
+        this.loadStats = loadStats;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Asks the session to stop after its current call
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        PlaySession playSession = null;
+        long iteration = 0;
+
+        while (running) {
+            try {
+                if (null == playSession) {
+                    playSession = login();
+                    if (null == playSession) {
+                        Thread.sleep(LOGIN_RETRY_MILLIS);
+                    }
+                    continue;
+                }
+
+                iteration++;
+                boolean succeeded = searchAndPlay(playSession);
+
+                int loadAllTracksEvery = options.getLoadAllTracksEvery();
+                if (loadAllTracksEvery > 0 && iteration % loadAllTracksEvery == 0) {
+                    succeeded &= loadAllTracks(playSession);
+                }
+
+                if (sessionExpired) {
+                    // a real client logs in again rather than failing until it's stopped
+                    sessionExpired = false;
+                    playSession = null;
+                }
+                else if (!succeeded) {
+                    Thread.sleep(Math.max(ERROR_RETRY_MILLIS, options.getThinkTimeMillis()));
+                }
+                else if (options.getThinkTimeMillis() > 0) {
+                    Thread.sleep(options.getThinkTimeMillis());
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private PlaySession login() {
+        OperationStats stats = loadStats.getLogin();
+        long start = System.nanoTime();
+        try {
+            LoginResponse loginResponse = playClient.login(options.getEmailAddress(), options.getPassword());
+            if (LoginResult.SUCCESS != loginResponse.getLoginResult()) {
+                stats.recordError();
+                return null;
+            }
+
+            stats.recordSuccess(start);
+            return loginResponse.getPlaySession();
+        }
+        catch (Exception e) {
+            stats.recordError();
+            return null;
+        }
+    }
+
+    /**
+     * @return false if either call failed
+     */
+    private boolean searchAndPlay(PlaySession playSession) {
+        String songId = null;
+
+        OperationStats searchStats = loadStats.getSearch();
+        long start = System.nanoTime();
+        try {
+            SearchResults searchResults = playClient.search("Song " + random.nextInt(options.getSongCount()),
+                    playSession);
+            searchStats.recordSuccess(start);
+
+            songId = pickSongId(searchResults);
+        }
+        catch (Exception e) {
+            searchStats.recordError();
+            checkSessionExpired(e);
+            return false;
+        }
+
+        if (null == songId) {
+            return true;
+        }
+
+        OperationStats playStats = loadStats.getPlayUri();
+        start = System.nanoTime();
+        try {
+            playClient.getPlayURI(songId, playSession);
+            playStats.recordSuccess(start);
+            return true;
+        }
+        catch (Exception e) {
+            playStats.recordError();
+            checkSessionExpired(e);
+            return false;
+        }
+    }
+
+    private String pickSongId(SearchResults searchResults) {
+        Collection<Song> songs = null == searchResults ? null : searchResults.getSongs();
+        if (null == songs || songs.isEmpty()) {
+            return null;
+        }
+
+        Iterator<Song> songIterator = songs.iterator();
+        for (int skip = random.nextInt(songs.size()); skip > 0; skip--) {
+            songIterator.next();
+        }
+
+        return songIterator.next().getId();
+    }
+
+    private boolean loadAllTracks(PlaySession playSession) {
+        OperationStats stats = loadStats.getLoadAllTracks();
+        long start = System.nanoTime();
+        try {
+            // stream the pages rather than holding the whole library, the way a real application would
+            final long[] songCount = new long[1];
+            playClient.loadAllTracks(playSession, new Consumer<Song>() {
+                @Override
+                public void accept(Song song) {
+                    songCount[0]++;
+                }
+            });
+
+            stats.recordSuccess(start);
+            loadStats.addSongsLoaded(songCount[0]);
+            return true;
+        }
+        catch (Exception e) {
+            stats.recordError();
+            checkSessionExpired(e);
+            return false;
+        }
+    }
+
+    /**
+     * Notes whether the failure, or anything that caused it, was a refusal because the session had expired
+     */
+    private void checkSessionExpired(Exception e) {
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (cause instanceof SessionExpiredException) {
+                sessionExpired = true;
+                return;
+            }
+        }
+    }
+}
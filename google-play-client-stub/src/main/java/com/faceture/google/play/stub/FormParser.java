@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the fields out of the multipart/form-data the PlayClient POSTs, or out of a URL encoded form or query
+ * string. Only plain text fields are expected, so it's a simple reading of the format rather than a full one.
+ */
+final class FormParser {
+
+    private static final String BOUNDARY = "boundary=";
+    private static final String NAME = "name=\"";
+    private static final String HEADER_END = "\r\n\r\n";
+
+    private FormParser() {
+    }
+
+    static Map<String, String> parse(String contentType, byte[] body) {
+        String text = new String(body, StandardCharsets.UTF_8);
+
+        if (contentType != null && contentType.startsWith("multipart/form-data")) {
+            int boundaryIndex = contentType.indexOf(BOUNDARY);
+            if (boundaryIndex < 0) {
+                throw new IllegalArgumentException("no boundary in " + contentType);
+            }
+            String boundary = contentType.substring(boundaryIndex + BOUNDARY.length());
+            int end = boundary.indexOf(';');
+            if (end >= 0) {
+                boundary = boundary.substring(0, end);
+            }
+            if (boundary.startsWith("\"")) {
+                boundary = boundary.substring(1, boundary.length() - 1);
+            }
+
+            return parseMultipart(text, "--" + boundary);
+        }
+
+        return parseQuery(text);
+    }
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> fields = new HashMap<String, String>();
+        if (null == query || query.isEmpty()) {
+            return fields;
+        }
+
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                fields.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+
+        return fields;
+    }
+
+    private static Map<String, String> parseMultipart(String text, String delimiter) {
+        Map<String, String> fields = new HashMap<String, String>();
+
+        int partStart = text.indexOf(delimiter);
+        while (partStart >= 0) {
+            int headersStart = partStart + delimiter.length();
+            if (text.startsWith("--", headersStart)) {
+                // the closing delimiter
+                break;
+            }
+
+            int headersEnd = text.indexOf(HEADER_END, headersStart);
+            int nextPart = text.indexOf("\r\n" + delimiter, headersStart);
+            if (headersEnd < 0 || nextPart < 0 || headersEnd > nextPart) {
+                throw new IllegalArgumentException("malformed multipart body");
+            }
+
+            String headers = text.substring(headersStart, headersEnd);
+            int nameStart = headers.indexOf(NAME);
+            if (nameStart >= 0) {
+                nameStart += NAME.length();
+                String name = headers.substring(nameStart, headers.indexOf('"', nameStart));
+                fields.put(name, text.substring(headersEnd + HEADER_END.length(), nextPart));
+            }
+
+            partStart = nextPart + 2;
+        }
+
+        return fields;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The latency and errors the stub server adds to the responses of a path. Can be changed while the server is
+ * running, e.g. to slow it down part way through a load test.
+ */
+public class StubFaults {
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int errorStatusCode = 503;
+
+    /**
+     * Delays every response by a random time in the range
+     */
+    public StubFaults setLatency(long minLatencyMillis, long maxLatencyMillis) {
+        if (minLatencyMillis < 0) {
+            throw new IllegalArgumentException("minLatencyMillis must not be negative");
+        }
+        if (maxLatencyMillis < minLatencyMillis) {
+            throw new IllegalArgumentException("maxLatencyMillis must not be less than minLatencyMillis");
+        }
+
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+
+        return this;
+    }
+
+    /**
+     * Fails a share of the requests with the status code
+     * @param errorRate between 0 (never) and 1 (always)
+     */
+    public StubFaults setErrors(double errorRate, int errorStatusCode) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1");
+        }
+        if (errorStatusCode < 400 || errorStatusCode > 599) {
+            throw new IllegalArgumentException("errorStatusCode must be an error status");
+        }
+
+        this.errorStatusCode = errorStatusCode;
+        this.errorRate = errorRate;
+
+        return this;
+    }
+
+    /**
+     * Back to no latency and no errors
+     */
+    public StubFaults clear() {
+        setLatency(0, 0);
+        errorRate = 0;
+
+        return this;
+    }
+
+    public long getMinLatencyMillis() {
+        return minLatencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public int getErrorStatusCode() {
+        return errorStatusCode;
+    }
+
+    /**
+     * @return how long to delay the next response
+     */
+    long nextLatencyMillis() {
+        long min = minLatencyMillis;
+        long max = maxLatencyMillis;
+
+        return max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+    }
+
+    /**
+     * @return the status code to fail the next request with, or 0 to let it through
+     */
+    int nextErrorStatusCode() {
+        double rate = errorRate;
+
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate ? errorStatusCode : 0;
+    }
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import com.faceture.google.GoogleConst;
+import com.faceture.google.play.*;
+import com.faceture.google.play.domain.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the Google Play API, for exercising the PlayClient at scale without Google or real
+ * credentials. It answers the ClientLogin and /music/listen logins and the search, loadalltracks (in pages linked by
+ * continuation tokens), loadplaylist and /music/play calls, all over plain HTTP on the loopback interface.
+ *
+ * Any email address logs in, with any password but REJECTED_PASSWORD. Every account sees the same synthetic library.
+ * Latency and errors can be injected for all paths or per path through getFaults().
+ *
+ * Point a client at it with createPlayEndpoints():
+ *
+ *   StubPlayServer server = new StubPlayServer(new StubPlayServerConfig(0, 50000));
+ *   server.start();
+ *   PlayClient playClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints()).create();
+ */
+public class StubPlayServer implements Closeable {
+
+    /**
+     * The password that fails the login with 403, as bad credentials do
+     */
+    public static final String REJECTED_PASSWORD = "rejected-password";
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    private static final int SEARCH_LIMIT = 50;
+    private static final int PLAYLIST_SIZE = 25;
+
+    // the JDK server writes the headers and the body separately, which without TCP_NODELAY stalls every request on
+    // a kept alive connection for the client's delayed ACK. It's read once, when the first HttpServer is created.
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    static {
+        if (null == System.getProperty(NODELAY_PROPERTY)) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+    }
+
+    private final StubPlayServerConfig config;
+    private final Gson gson = new Gson();
+
+    // the library
+    private final List<Song> songs;
+    private final Map<String, Song> songsById = new HashMap<String, Song>();
+    private final Map<Integer, byte[]> pages = new ConcurrentHashMap<Integer, byte[]>();
+    private final byte[] playlists;
+
+    // the logged in sessions
+    private final Set<String> authTokens = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> xtCookies = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final StubFaults faults = new StubFaults();
+    private final Map<String, StubFaults> faultsByPath = new ConcurrentHashMap<String, StubFaults>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    public StubPlayServer(StubPlayServerConfig config) {
+        if (null == config) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.config = config;
+
+        songs = SyntheticLibrary.createSongs(config.getSongCount());
+        for (Song song : songs) {
+            songsById.put(song.getId(), song);
+        }
+        playlists = createPlaylists();
+    }
+
+    public synchronized void start() throws IOException {
+        if (httpServer != null) {
+            throw new IllegalStateException("already started");
+        }
+
+        executor = Executors.newFixedThreadPool(config.getThreadCount(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "stub-play-server-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort()),
+                1024);
+        httpServer.createContext("/", this::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+    }
+
+    /**
+     * Stops the server, dropping any requests in progress
+     */
+    public synchronized void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public synchronized int getPort() {
+        if (null == httpServer) {
+            throw new IllegalStateException("not started");
+        }
+
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return the host name and port to send requests to
+     */
+    public String getHostName() {
+        return "localhost:" + getPort();
+    }
+
+    /**
+     * @return the endpoints that send a PlayClient's requests here
+     */
+    public PlayEndpoints createPlayEndpoints() {
+        return new PlayEndpoints(false, getHostName(), getHostName());
+    }
+
+    /**
+     * @return the faults injected into every path that doesn't have its own
+     */
+    public StubFaults getFaults() {
+        return faults;
+    }
+
+    /**
+     * @param path e.g. Path.MUSIC_SEARCH
+     * @return the faults injected into the path, which replace the ones for all paths
+     */
+    public StubFaults getFaults(String path) {
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        return faultsByPath.computeIfAbsent(path, p -> new StubFaults());
+    }
+
+    /**
+     * @return the number of requests made to the path so far
+     */
+    public long getRequestCount(String path) {
+        AtomicLong requestCount = requestCounts.get(path);
+
+        return null == requestCount ? 0 : requestCount.get();
+    }
+
+    /**
+     * Logs everybody out, so their next requests are refused with 401
+     */
+    public void invalidateSessions() {
+        authTokens.clear();
+        xtCookies.clear();
+    }
+
+    /**
+     * @return the synthetic library every account gets
+     */
+    public List<Song> getSongs() {
+        return Collections.unmodifiableList(songs);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            requestCounts.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+
+            byte[] requestBody = readAll(exchange.getRequestBody());
+
+            StubFaults pathFaults = faultsByPath.get(path);
+            if (null == pathFaults) {
+                pathFaults = faults;
+            }
+
+            long latencyMillis = pathFaults.nextLatencyMillis();
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            int errorStatusCode = pathFaults.nextErrorStatusCode();
+            if (errorStatusCode != 0) {
+                send(exchange, errorStatusCode, TEXT_CONTENT_TYPE, "injected error");
+                return;
+            }
+
+            Map<String, String> form = FormParser.parse(exchange.getRequestHeaders().getFirst("Content-Type"),
+                    requestBody);
+            Map<String, String> queryParams = FormParser.parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if (Path.GOOGLE_LOGIN.equals(path)) {
+                handleGoogleLogin(exchange, form);
+            }
+            else if (Path.MUSIC_LOGIN.equals(path)) {
+                handlePlayLogin(exchange);
+            }
+            else if (!isAuthorized(exchange, queryParams)) {
+                send(exchange, 401, TEXT_CONTENT_TYPE, "not logged in");
+            }
+            else if (Path.MUSIC_SEARCH.equals(path)) {
+                handleSearch(exchange, form);
+            }
+            else if (Path.MUSIC_LOAD_ALL_TRACKS.equals(path)) {
+                handleLoadAllTracks(exchange, form);
+            }
+            else if (Path.MUSIC_LOAD_PLAYLIST.equals(path)) {
+                send(exchange, 200, JSON_CONTENT_TYPE, playlists);
+            }
+            else if (Path.MUSIC_PLAY.equals(path)) {
+                handlePlay(exchange, queryParams);
+            }
+            else {
+                send(exchange, 404, TEXT_CONTENT_TYPE, "no such path");
+            }
+        }
+        catch (InterruptedException e) {
+            // the server is stopping
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            send(exchange, 500, TEXT_CONTENT_TYPE, String.valueOf(e));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleGoogleLogin(HttpExchange exchange, Map<String, String> form) throws IOException {
+        String email = form.get(FormFieldConst.EMAIL_NAME);
+        String password = form.get(FormFieldConst.PASSWORD_NAME);
+
+        if (null == email || null == password || REJECTED_PASSWORD.equals(password)) {
+            send(exchange, 403, TEXT_CONTENT_TYPE, "Error=BadAuthentication\n");
+            return;
+        }
+
+        String authToken = "stub-auth-" + UUID.randomUUID();
+        authTokens.add(authToken);
+
+        send(exchange, 200, TEXT_CONTENT_TYPE, "SID=stub\nLSID=stub\n" + Const.GOOLE_LOGIN_AUTH + authToken + "\n");
+    }
+
+    private void handlePlayLogin(HttpExchange exchange) throws IOException {
+        if (null == getAuthToken(exchange)) {
+            send(exchange, 403, TEXT_CONTENT_TYPE, "not logged in to Google");
+            return;
+        }
+
+        String xtCookie = "stub-xt-" + UUID.randomUUID();
+        xtCookies.add(xtCookie);
+
+        exchange.getResponseHeaders().add("Set-Cookie", CookieName.XT + "=" + xtCookie + "; Path=/");
+        exchange.getResponseHeaders().add("Set-Cookie", CookieName.SJSAID + "=stub-sjsaid-" + UUID.randomUUID() +
+                "; Path=/");
+        send(exchange, 200, "text/html; charset=UTF-8", "<html></html>");
+    }
+
+    private void handleSearch(HttpExchange exchange, Map<String, String> form) throws IOException {
+        String query = getJsonString(form, "q");
+        String lowerQuery = null == query ? "" : query.toLowerCase(Locale.ROOT);
+
+        Collection<Song> matches = new ArrayList<Song>();
+        Map<String, Song> artists = new LinkedHashMap<String, Song>();
+        Map<String, Song> albums = new LinkedHashMap<String, Song>();
+        for (Song song : songs) {
+            if (matches.size() == SEARCH_LIMIT) {
+                break;
+            }
+
+            if (contains(song.getTitle(), lowerQuery) || contains(song.getArtist(), lowerQuery) ||
+                    contains(song.getAlbum(), lowerQuery))
+            {
+                matches.add(song);
+                if (!artists.containsKey(song.getArtist())) {
+                    artists.put(song.getArtist(), song);
+                }
+                if (!albums.containsKey(song.getAlbum())) {
+                    albums.put(song.getAlbum(), song);
+                }
+            }
+        }
+
+        SearchResults searchResults = new SearchResults();
+        searchResults.setSongs(matches);
+        searchResults.setArtists(new ArrayList<Song>(artists.values()));
+        searchResults.setAlbums(new ArrayList<Song>(albums.values()));
+        SearchResponse searchResponse = new SearchResponse();
+        searchResponse.setResults(searchResults);
+
+        send(exchange, 200, JSON_CONTENT_TYPE, gson.toJson(searchResponse));
+    }
+
+    private void handleLoadAllTracks(HttpExchange exchange, Map<String, String> form) throws IOException {
+        JsonObject request = getJson(form);
+
+        JsonElement lastRequestTime = null == request ? null : request.get("lastRequestTime");
+        if (lastRequestTime != null && !lastRequestTime.isJsonNull()) {
+            // the synthetic library never changes
+            LoadAllTracksResponse page = new LoadAllTracksResponse();
+            page.setPlaylist(new ArrayList<Song>());
+            page.setRequestTime(System.currentTimeMillis() * 1000.0);
+            page.setDifferentialUpdate(true);
+            send(exchange, 200, JSON_CONTENT_TYPE, gson.toJson(page));
+            return;
+        }
+
+        String continuationToken = getJsonString(form, "continuationToken");
+        int offset;
+        try {
+            offset = null == continuationToken || continuationToken.isEmpty() ? 0 :
+                    Integer.parseInt(continuationToken);
+        }
+        catch (NumberFormatException e) {
+            send(exchange, 400, TEXT_CONTENT_TYPE, "bad continuation token");
+            return;
+        }
+        if (offset < 0 || (offset >= songs.size() && offset > 0)) {
+            send(exchange, 400, TEXT_CONTENT_TYPE, "bad continuation token");
+            return;
+        }
+
+        send(exchange, 200, JSON_CONTENT_TYPE, pages.computeIfAbsent(offset, this::createPage));
+    }
+
+    private void handlePlay(HttpExchange exchange, Map<String, String> queryParams) throws IOException {
+        String songId = queryParams.get(QueryParamConst.SONG_ID_NAME);
+        if (null == songId || !songsById.containsKey(songId)) {
+            send(exchange, 404, TEXT_CONTENT_TYPE, "no such song");
+            return;
+        }
+
+        long expire = System.currentTimeMillis() / 1000 + config.getPlayUrlTtlSeconds();
+        StreamingUrl streamingUrl = new StreamingUrl();
+        streamingUrl.setUrl("http://" + getHostName() + "/stream/" + songId + "?expire=" + expire);
+
+        send(exchange, 200, JSON_CONTENT_TYPE, gson.toJson(streamingUrl));
+    }
+
+    private boolean isAuthorized(HttpExchange exchange, Map<String, String> queryParams) {
+        if (null == getAuthToken(exchange)) {
+            return false;
+        }
+
+        // the music services also want the xt cookie back as a query param
+        String xt = queryParams.get(QueryParamConst.XT_NAME);
+
+        return null == xt || xtCookies.contains(xt);
+    }
+
+    /**
+     * @return the auth token sent, if it's one that was handed out, else null
+     */
+    private String getAuthToken(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst(HeaderName.AUTHORIZATION);
+        if (null == authorization || !authorization.startsWith(GoogleConst.AUTH_HEADER_START)) {
+            return null;
+        }
+
+        String authToken = authorization.substring(GoogleConst.AUTH_HEADER_START.length());
+
+        return authTokens.contains(authToken) ? authToken : null;
+    }
+
+    private byte[] createPage(int offset) {
+        int end = Math.min(offset + config.getPageSize(), songs.size());
+
+        LoadAllTracksResponse page = new LoadAllTracksResponse();
+        page.setPlaylist(new ArrayList<Song>(songs.subList(offset, end)));
+        page.setRequestTime(System.currentTimeMillis() * 1000.0);
+        if (end < songs.size()) {
+            page.setContinuationToken(String.valueOf(end));
+            page.setContinuation(true);
+        }
+
+        return gson.toJson(page).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] createPlaylists() {
+        Collection<Playlist> playlistCollection = new ArrayList<Playlist>();
+        for (int i = 0; i < config.getPlaylistCount(); i++) {
+            Collection<Song> playlistSongs = new ArrayList<Song>();
+            for (int j = 0; j < PLAYLIST_SIZE && !songs.isEmpty(); j++) {
+                playlistSongs.add(songs.get((i * 7919 + j * 31) % songs.size()));
+            }
+
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Playlist " + i);
+            playlist.setPlaylistId("stub-playlist-" + i);
+            playlist.setPlaylist(playlistSongs);
+            playlistCollection.add(playlist);
+        }
+
+        LoadAllPlaylistsResponse response = new LoadAllPlaylistsResponse();
+        response.setPlaylists(playlistCollection);
+
+        return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private JsonObject getJson(Map<String, String> form) {
+        String json = form.get(FormFieldConst.JSON_NAME);
+        if (null == json || json.isEmpty()) {
+            return null;
+        }
+
+        JsonElement element = new JsonParser().parse(json);
+
+        return element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private String getJsonString(Map<String, String> form, String name) {
+        JsonObject json = getJson(form);
+        JsonElement element = null == json ? null : json.get(name);
+
+        return null == element || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static boolean contains(String value, String lowerQuery) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerQuery);
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String contentType, String body)
+            throws IOException
+    {
+        send(exchange, statusCode, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String contentType, byte[] body)
+            throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, body.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(body);
+        outputStream.close();
+    }
+
+    /**
+     * Runs a server until killed: [port [songCount]]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int songCount = args.length > 1 ? Integer.parseInt(args[1]) : StubPlayServerConfig.DEFAULT_SONG_COUNT;
+
+        StubPlayServer server = new StubPlayServer(new StubPlayServerConfig(port, songCount));
+        server.start();
+        System.out.println("Stub Google Play with " + songCount + " songs on http://" + server.getHostName());
+
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+/**
+ * Settings for the StubPlayServer
+ */
+public class StubPlayServerConfig {
+
+    public static final int DEFAULT_SONG_COUNT = 10000;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_PLAYLIST_COUNT = 20;
+    public static final int DEFAULT_THREAD_COUNT = 64;
+    public static final long DEFAULT_PLAY_URL_TTL_SECONDS = 3600;
+
+    private int port;
+    private int songCount;
+    private int pageSize;
+    private int playlistCount;
+    private int threadCount;
+    private long playUrlTtlSeconds;
+
+    /**
+     * A library of 10000 songs on any free port
+     */
+    public StubPlayServerConfig() {
+        this(0, DEFAULT_SONG_COUNT);
+    }
+
+    public StubPlayServerConfig(int port, int songCount) {
+        this(port, songCount, DEFAULT_PAGE_SIZE, DEFAULT_PLAYLIST_COUNT, DEFAULT_THREAD_COUNT,
+                DEFAULT_PLAY_URL_TTL_SECONDS);
+    }
+
+    /**
+     * @param port the port to listen on, 0 for any free port
+     * @param songCount the size of the synthetic library every account gets
+     * @param pageSize the number of songs in each loadalltracks page
+     * @param playlistCount the number of playlists every account gets
+     * @param threadCount the number of requests handled at once; injected latency holds a thread
+     * @param playUrlTtlSeconds how long the URLs handed out by /music/play are good for
+     */
+    public StubPlayServerConfig(int port, int songCount, int pageSize, int playlistCount, int threadCount,
+                                long playUrlTtlSeconds)
+    {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("port is out of range");
+        }
+        if (songCount < 0) {
+            throw new IllegalArgumentException("songCount must not be negative");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        if (playlistCount < 0) {
+            throw new IllegalArgumentException("playlistCount must not be negative");
+        }
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        if (playUrlTtlSeconds <= 0) {
+            throw new IllegalArgumentException("playUrlTtlSeconds must be positive");
+        }
+
+        this.port = port;
+        this.songCount = songCount;
+        this.pageSize = pageSize;
+        this.playlistCount = playlistCount;
+        this.threadCount = threadCount;
+        this.playUrlTtlSeconds = playUrlTtlSeconds;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getSongCount() {
+        return songCount;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPlaylistCount() {
+        return playlistCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public long getPlayUrlTtlSeconds() {
+        return playUrlTtlSeconds;
+    }
+}
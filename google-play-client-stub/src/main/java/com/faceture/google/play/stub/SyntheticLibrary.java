@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Creates made-up libraries shaped like real ones: albums of a dozen tracks, a few albums per artist, and the
+ * artist, album, genre and album art repeated across each album's songs. The same song count always gives the same
+ * library.
+ */
+public final class SyntheticLibrary {
+
+    private static final int TRACKS_PER_ALBUM = 12;
+    private static final int ALBUMS_PER_ARTIST = 3;
+    private static final String[] GENRES = {"Rock", "Pop", "Jazz", "Classical", "Electronic", "Hip-Hop", "Folk",
+            "Blues", "Metal", "Soundtrack", "Country", "Reggae"};
+
+    private SyntheticLibrary() {
+    }
+
+    public static List<Song> createSongs(int songCount) {
+        Random random = new Random(songCount);
+        List<Song> songs = new ArrayList<Song>(songCount);
+
+        for (int i = 0; i < songCount; i++) {
+            int album = i / TRACKS_PER_ALBUM;
+            int artist = album / ALBUMS_PER_ARTIST;
+
+            Song song = new Song();
+            song.setId(new UUID(random.nextLong(), random.nextLong()).toString());
+            song.setTitle("Song " + i + " " + Long.toString(random.nextLong() & 0xffffffL, 36));
+            song.setArtist("Artist " + artist);
+            song.setAlbumArtist("Artist " + artist);
+            song.setAlbum("Album " + album);
+            song.setGenre(GENRES[artist % GENRES.length]);
+            song.setComposer("");
+            song.setComment("");
+            song.setBeatsPerMinute("0");
+            song.setMatchedId("");
+            song.setUrl("");
+            song.setStoreId("");
+            song.setAlbumArtUrl("//lh3.googleusercontent.com/synthetic/" + album + "=s130");
+            song.setYear(1960 + artist % 60);
+            song.setTrack(i % TRACKS_PER_ALBUM + 1);
+            song.setDisc(1);
+            song.setType(2);
+            song.setDurationMillis(120000 + random.nextInt(300000));
+            song.setPlayCount(random.nextInt(100));
+            song.setRating(random.nextInt(6));
+            song.setCreationDate(1300000000000000L + random.nextInt(Integer.MAX_VALUE) * 1000L);
+            song.setLastPlayed(song.getCreationDate() + random.nextInt(Integer.MAX_VALUE) * 1000L);
+
+            songs.add(song);
+        }
+
+        return songs;
+    }
+
+    /**
+     * @return the library as a single loadalltracks page, with no continuation token
+     */
+    public static String createLoadAllTracksJson(int songCount) {
+        LoadAllTracksResponse response = new LoadAllTracksResponse();
+        response.setPlaylist(createSongs(songCount));
+        response.setRequestTime(1349000000000000.0);
+
+        return new Gson().toJson(response);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Tests the FormParser
+ */
+public class FormParserTest extends TestCase {
+
+    public void testMultipart() {
+        String body = "--abc\r\nContent-Disposition: form-data; name=\"json\"\r\nContent-Type: text/plain\r\n\r\n" +
+                "{\"q\":\"x\"}\r\n--abc\r\nContent-Disposition: form-data; name=\"Email\"\r\n\r\na@b.c\r\n--abc--\r\n";
+
+        Map<String, String> fields = FormParser.parse("multipart/form-data; boundary=abc",
+                body.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, fields.size());
+        assertEquals("{\"q\":\"x\"}", fields.get("json"));
+        assertEquals("a@b.c", fields.get("Email"));
+    }
+
+    public void testUrlEncoded() {
+        Map<String, String> fields = FormParser.parse("application/x-www-form-urlencoded",
+                "a=1&b=x%20y&c".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, fields.size());
+        assertEquals("1", fields.get("a"));
+        assertEquals("x y", fields.get("b"));
+    }
+
+    public void testQuery() {
+        assertTrue(FormParser.parseQuery(null).isEmpty());
+        assertEquals("123", FormParser.parseQuery("u=0&songid=123").get("songid"));
+    }
+
+    public void testMalformedMultipart() {
+        try {
+            FormParser.parse("multipart/form-data; boundary=abc",
+                    "--abc\r\nno end".getBytes(StandardCharsets.UTF_8));
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the StubFaults
+ */
+public class StubFaultsTest extends TestCase {
+
+    public void testNoFaultsByDefault() {
+        StubFaults stubFaults = new StubFaults();
+
+        assertEquals(0, stubFaults.nextLatencyMillis());
+        assertEquals(0, stubFaults.nextErrorStatusCode());
+    }
+
+    public void testLatency() {
+        StubFaults stubFaults = new StubFaults().setLatency(10, 20);
+
+        for (int i = 0; i < 100; i++) {
+            long latencyMillis = stubFaults.nextLatencyMillis();
+            assertTrue(latencyMillis >= 10 && latencyMillis <= 20);
+        }
+    }
+
+    public void testErrors() {
+        StubFaults stubFaults = new StubFaults().setErrors(1, 500);
+        assertEquals(500, stubFaults.nextErrorStatusCode());
+
+        stubFaults.setErrors(0, 500);
+        assertEquals(0, stubFaults.nextErrorStatusCode());
+    }
+
+    public void testClear() {
+        StubFaults stubFaults = new StubFaults().setLatency(10, 10).setErrors(1, 503).clear();
+
+        assertEquals(0, stubFaults.nextLatencyMillis());
+        assertEquals(0, stubFaults.nextErrorStatusCode());
+    }
+
+    public void testBadSettings() {
+        try {
+            new StubFaults().setLatency(10, 5);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new StubFaults().setErrors(1.5, 503);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new StubFaults().setErrors(0.5, 200);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
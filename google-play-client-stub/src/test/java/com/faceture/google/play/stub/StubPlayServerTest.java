@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import com.faceture.google.play.*;
+import com.faceture.google.play.domain.Playlist;
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+import com.faceture.google.play.session.NoOpPlaySessionStore;
+import com.faceture.google.play.session.PasswordLogin;
+import com.faceture.google.play.session.SessionManager;
+import com.faceture.google.play.session.SessionManagerConfig;
+import com.faceture.metrics.EndpointMetrics;
+import com.faceture.metrics.InMemoryClientMetrics;
+import com.faceture.rest.BulkheadConfig;
+import com.faceture.rest.CircuitBreakerConfig;
+import com.faceture.rest.CircuitOpenException;
+import com.faceture.rest.EndpointGuard;
+import com.faceture.rest.RetryPolicy;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a real PlayClient against the StubPlayServer
+ */
+public class StubPlayServerTest extends TestCase {
+
+    StubPlayServer server;
+    PlayClient playClient;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        server = new StubPlayServer(new StubPlayServerConfig(0, 250, 100, 3, 8, 600));
+        server.start();
+        playClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints()).create();
+    }
+
+    public void tearDown() throws Exception {
+        playClient.close();
+        server.close();
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullConfig() {
+        try {
+            new StubPlayServer(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testLogin() throws IOException, URISyntaxException {
+        LoginResponse loginResponse = playClient.login("user@example.com", "password");
+
+        assertEquals(LoginResult.SUCCESS, loginResponse.getLoginResult());
+        PlaySession playSession = loginResponse.getPlaySession();
+        assertNotNull(playSession.getAuthToken());
+        assertNotNull(playSession.getXtCookie());
+        assertNotNull(playSession.getSjsaidCookie());
+    }
+
+    public void testLoginWithBadCredentials() throws IOException, URISyntaxException {
+        LoginResponse loginResponse = playClient.login("user@example.com", StubPlayServer.REJECTED_PASSWORD);
+
+        assertEquals(LoginResult.BAD_CREDENTIALS, loginResponse.getLoginResult());
+    }
+
+    public void testLoadAllTracksFollowsContinuationTokens() throws IOException, URISyntaxException {
+        PlaySession playSession = login();
+
+        Collection<Song> songs = playClient.loadAllTracks(playSession);
+
+        assertEquals(250, songs.size());
+        Set<String> ids = new HashSet<String>();
+        for (Song song : songs) {
+            ids.add(song.getId());
+        }
+        assertEquals(250, ids.size());
+        assertEquals(3, server.getRequestCount(Path.MUSIC_LOAD_ALL_TRACKS));
+    }
+
+    public void testSearch() throws IOException, URISyntaxException {
+        PlaySession playSession = login();
+
+        SearchResults searchResults = playClient.search("Artist 2", playSession);
+
+        assertFalse(searchResults.getSongs().isEmpty());
+        for (Song song : searchResults.getSongs()) {
+            assertTrue(song.getArtist().startsWith("Artist 2"));
+        }
+        assertFalse(searchResults.getArtists().isEmpty());
+        assertFalse(searchResults.getAlbums().isEmpty());
+    }
+
+    public void testLoadAllPlaylists() throws IOException, URISyntaxException {
+        Collection<Playlist> playlists = playClient.loadAllPlaylists(login());
+
+        assertEquals(3, playlists.size());
+        assertFalse(playlists.iterator().next().getPlaylist().isEmpty());
+    }
+
+    public void testGetPlayURI() throws IOException, URISyntaxException {
+        String songId = server.getSongs().get(7).getId();
+
+        URI playURI = playClient.getPlayURI(songId, login());
+
+        assertTrue(playURI.getPath().endsWith(songId));
+        assertTrue(playURI.getQuery().startsWith("expire="));
+    }
+
+    public void testRequestsRefusedOnceSessionsInvalidated() throws IOException, URISyntaxException {
+        PlaySession playSession = login();
+        server.invalidateSessions();
+
+        try {
+            playClient.search("Artist", playSession);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+    }
+
+    public void testInjectedErrors() throws IOException, URISyntaxException {
+        PlaySession playSession = login();
+        server.getFaults(Path.MUSIC_SEARCH).setErrors(1, 503);
+
+        try {
+            playClient.search("Artist", playSession);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("503"));
+        }
+
+        // other paths aren't affected
+        assertEquals(3, playClient.loadAllPlaylists(playSession).size());
+    }
+
+    public void testInjectedLatency() throws IOException, URISyntaxException {
+        PlaySession playSession = login();
+        server.getFaults().setLatency(200, 200);
+
+        long start = System.nanoTime();
+        playClient.loadAllPlaylists(playSession);
+
+        assertTrue(System.nanoTime() - start >= 200 * 1000000L);
+    }
+
+    public void testClientMetrics() throws IOException, URISyntaxException {
+        InMemoryClientMetrics clientMetrics = new InMemoryClientMetrics();
+        PlayClient meteredPlayClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints())
+                .withMetrics(clientMetrics).create();
+        try {
+            PlaySession playSession = meteredPlayClient.login("user@example.com", "password").getPlaySession();
+            meteredPlayClient.search("Song 1", playSession);
+            meteredPlayClient.loadAllTracks(playSession);
+        }
+        finally {
+            meteredPlayClient.close();
+        }
+
+        EndpointMetrics search = clientMetrics.getEndpoint(Path.MUSIC_SEARCH);
+        assertEquals(1, search.getStatusCount(200));
+        assertEquals(1, search.getPoolWait().getCount());
+        assertEquals(1, search.getParse().getCount());
+        assertTrue(search.getRequestBytes() > 0);
+        assertTrue(search.getResponseBytes() > 0);
+
+        // 250 songs in pages of 100
+        assertEquals(3, clientMetrics.getEndpoint(Path.MUSIC_LOAD_ALL_TRACKS).getExchangeCount());
+        assertEquals(1, clientMetrics.getCall(Operation.LOAD_ALL_TRACKS).getCallCount());
+        assertEquals(1, clientMetrics.getCall(Operation.LOGIN).getCallCount());
+        assertTrue(clientMetrics.scrape().contains("play_call_seconds_count{operation=\"search\"} 1"));
+    }
+
+    public void testRetriesInjectedErrors() throws IOException, URISyntaxException {
+        InMemoryClientMetrics clientMetrics = new InMemoryClientMetrics();
+        PlayClient retryingPlayClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints())
+                .withMetrics(clientMetrics)
+                .withRetryPolicy(new RetryPolicy(20, 1, 5, 0, 1, 100, PlayClientBuilder.READ_ONLY_POST_PATHS)).create();
+        try {
+            PlaySession playSession = retryingPlayClient.login("user@example.com", "password").getPlaySession();
+            server.getFaults(Path.MUSIC_LOAD_ALL_TRACKS).setErrors(0.5, 503);
+
+            // every page gets through in the end
+            assertEquals(250, retryingPlayClient.loadAllTracks(playSession).size());
+        }
+        finally {
+            retryingPlayClient.close();
+        }
+
+        EndpointMetrics loadAllTracks = clientMetrics.getEndpoint(Path.MUSIC_LOAD_ALL_TRACKS);
+        assertEquals(loadAllTracks.getStatusCount(503), loadAllTracks.getRetryCount());
+        assertEquals(3, loadAllTracks.getStatusCount(200));
+    }
+
+    public void testCircuitOpensOnInjectedErrors() throws IOException, URISyntaxException {
+        InMemoryClientMetrics clientMetrics = new InMemoryClientMetrics();
+        // opens once 5 calls have all failed, and stays open for a minute
+        PlayClient guardedPlayClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints())
+                .withMetrics(clientMetrics).withRetryPolicy(RetryPolicy.NONE)
+                .withCircuitBreakerConfig(new CircuitBreakerConfig(0.5, 1, 10000, 10, 5, 60000, 1))
+                .withBulkheadConfig(new BulkheadConfig()).create();
+        try {
+            PlaySession playSession = guardedPlayClient.login("user@example.com", "password").getPlaySession();
+            server.getFaults(Path.MUSIC_SEARCH).setErrors(1, 503);
+
+            for (int i = 0; i < 5; i++) {
+                try {
+                    guardedPlayClient.search("Song 1", playSession);
+                }
+                catch (IOException e) {}
+                catch (RuntimeException e) {}
+            }
+
+            try {
+                guardedPlayClient.search("Song 1", playSession);
+
+                fail("should have thrown CircuitOpenException");
+            }
+            catch (CircuitOpenException e) {}
+
+            // the other endpoints carry on
+            assertNotNull(guardedPlayClient.loadAllPlaylists(playSession));
+        }
+        finally {
+            guardedPlayClient.close();
+        }
+
+        EndpointMetrics search = clientMetrics.getEndpoint(Path.MUSIC_SEARCH);
+        assertEquals(5, search.getStatusCount(503));
+        assertEquals("OPEN", search.getCircuitState());
+        assertEquals(Long.valueOf(1), search.getRejectionCounts().get(EndpointGuard.CIRCUIT_OPEN));
+    }
+
+    public void testNoCallsRefusedByDefault() throws Exception {
+        InMemoryClientMetrics clientMetrics = new InMemoryClientMetrics();
+        final PlayClient meteredPlayClient = new PlayClientBuilder().withEndpoints(server.createPlayEndpoints())
+                .withMetrics(clientMetrics).create();
+        ExecutorService executor = Executors.newFixedThreadPool(40);
+        try {
+            final PlaySession playSession = meteredPlayClient.login("user@example.com", "password").getPlaySession();
+            server.getFaults(Path.MUSIC_LOAD_PLAYLIST).setLatency(200, 200);
+
+            // more calls in flight at once than the bulkhead of a BulkheadConfig() lets through
+            List<Future<?>> calls = new ArrayList<Future<?>>();
+            for (int i = 0; i < 40; i++) {
+                calls.add(executor.submit(() -> meteredPlayClient.loadAllPlaylists(playSession)));
+            }
+            for (Future<?> call : calls) {
+                assertNotNull(call.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            meteredPlayClient.close();
+        }
+
+        assertTrue(clientMetrics.getEndpoint(Path.MUSIC_LOAD_PLAYLIST).getRejectionCounts().isEmpty());
+    }
+
+    public void testSessionPool() throws Exception {
+        SessionPool sessionPool = new SessionPool(playClient);
+        sessionPool.putAccount("alice", login());
+        sessionPool.putAccount("bob", login(), 2);
+
+        List<CompletableFuture<SearchResults>> futures = new ArrayList<CompletableFuture<SearchResults>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(sessionPool.submit("alice", (client, session) -> client.search("Artist 1", session)));
+            futures.add(sessionPool.submit("bob", (client, session) -> client.search("Artist 2", session)));
+        }
+        for (CompletableFuture<SearchResults> future : futures) {
+            assertFalse(future.get().getSongs().isEmpty());
+        }
+
+        AccountStats bob = sessionPool.getAccountStats("bob");
+        assertEquals(10, bob.getCompletedCount());
+        assertEquals(10, bob.getLatency().getCount());
+        assertEquals(0, bob.getQueueDepth());
+
+        sessionPool.close();
+    }
+
+    public void testSessionManagerLogsInOnceAfterSessionsInvalidated() throws Exception {
+        SessionManager sessionManager = new SessionManager(playClient,
+                new PasswordLogin(playClient, email -> "password"), new NoOpPlaySessionStore(),
+                new SessionManagerConfig(SessionManagerConfig.DEFAULT_REFRESH_AFTER_MILLIS, 0, null),
+                Clock.systemUTC());
+        String accountId = "user@example.com";
+
+        assertFalse(sessionManager.call(accountId, (client, session) -> client.search("Artist", session))
+                .getSongs().isEmpty());
+        assertEquals(1, sessionManager.getLoginCount());
+
+        server.invalidateSessions();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<SearchResults>> futures = new ArrayList<Future<SearchResults>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() ->
+                    sessionManager.call(accountId, (client, session) -> client.search("Artist", session))));
+        }
+        for (Future<SearchResults> future : futures) {
+            assertFalse(future.get().getSongs().isEmpty());
+        }
+        executor.shutdown();
+
+        assertEquals(2, sessionManager.getLoginCount());
+
+        sessionManager.close();
+    }
+
+    private PlaySession login() throws IOException, URISyntaxException {
+        return playClient.login("user@example.com", "password").getPlaySession();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.stub;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Tests the SyntheticLibrary
+ */
+public class SyntheticLibraryTest extends TestCase {
+
+    public void testCreateSongs() {
+        List<Song> songs = SyntheticLibrary.createSongs(100);
+
+        assertEquals(100, songs.size());
+        assertEquals("Artist 0", songs.get(0).getArtist());
+        assertEquals(songs.get(0).getAlbum(), songs.get(11).getAlbum());
+        assertFalse(songs.get(0).getAlbum().equals(songs.get(12).getAlbum()));
+    }
+
+    public void testSameCountSameLibrary() {
+        assertEquals(SyntheticLibrary.createSongs(50).get(49).getId(), SyntheticLibrary.createSongs(50).get(49).getId());
+    }
+
+    public void testCreateLoadAllTracksJson() {
+        String json = SyntheticLibrary.createLoadAllTracksJson(3);
+
+        assertTrue(json.contains("\"playlist\":["));
+        assertFalse(json.contains("continuationToken"));
+    }
+}
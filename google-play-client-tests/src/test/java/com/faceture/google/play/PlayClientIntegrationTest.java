@@ -53,6 +53,13 @@ public class PlayClientIntegrationTest extends TestCase {
         playClient = playClientBuilder.create();
     }
 
+    public void tearDown() throws Exception {
+        // release the pooled connections
+        playClient.close();
+
+        super.tearDown();
+    }
+
     /**
      * End-to-end test that shows how to use the PlayClient
      * @throws IOException
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.cache;
+
+/**
+ * Decides how long a freshly loaded value may be served from the cache
+ */
+public interface CacheExpiry<V> {
+
+    /**
+     * @param value the value just loaded
+     * @param nowMillis the current time, from the cache's clock
+     * @return how long to keep the value, 0 or less to not cache it at all
+     */
+    long getTimeToLiveMillis(V value, long nowMillis);
+}
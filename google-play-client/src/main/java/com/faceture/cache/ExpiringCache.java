@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A size bounded cache whose entries expire. When full, the least recently used entry is evicted.
+ *
+ * Loading is single-flight: when several threads miss on the same key at once, only the first calls the loader and
+ * the others wait for its result. A failed load isn't cached, and its failure is handed to every waiting thread.
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxSize;
+    private final CacheExpiry<V> cacheExpiry;
+    private final Clock clock;
+
+    // in least recently used order, guarded by this
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public ExpiringCache(int maxSize, CacheExpiry<V> cacheExpiry, Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (null == cacheExpiry) {
+            throw new IllegalArgumentException("cacheExpiry is null");
+        }
+        if (null == clock) {
+            throw new IllegalArgumentException("clock is null");
+        }
+
+        this.maxSize = maxSize;
+        this.cacheExpiry = cacheExpiry;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value for the key, calling the loader if there isn't one or it has expired
+     */
+    public V get(K key, CacheLoader<V> cacheLoader) throws IOException, URISyntaxException {
+        if (null == key) {
+            throw new IllegalArgumentException("key is null");
+        }
+        if (null == cacheLoader) {
+            throw new IllegalArgumentException("cacheLoader is null");
+        }
+
+        Entry<V> entry;
+        boolean load = false;
+
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(clock.millis())) {
+                entries.remove(key);
+                entry = null;
+            }
+
+            if (null == entry) {
+                entry = new Entry<V>();
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (load) {
+            return load(key, entry, cacheLoader);
+        }
+
+        return entry.await();
+    }
+
+    /**
+     * Drops the entry for the key, so the next get() loads it again
+     */
+    public synchronized void invalidate(K key) {
+        if (null == key) {
+            throw new IllegalArgumentException("key is null");
+        }
+
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries, including ones that are loading or have expired but haven't been dropped yet
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private V load(K key, Entry<V> entry, CacheLoader<V> cacheLoader) throws IOException, URISyntaxException {
+        V value;
+        try {
+            value = cacheLoader.load();
+
+            long timeToLiveMillis = cacheExpiry.getTimeToLiveMillis(value, clock.millis());
+            if (timeToLiveMillis > 0) {
+                entry.expiresAtMillis = clock.millis() + timeToLiveMillis;
+            }
+            else {
+                remove(key, entry);
+            }
+        }
+        catch (Throwable t) {
+            // Errors too, or the threads waiting on the entry would never wake up
+            remove(key, entry);
+            entry.future.completeExceptionally(t);
+            throw t;
+        }
+
+        entry.future.complete(value);
+
+        return value;
+    }
+
+    /**
+     * Removes the entry, unless it has already been replaced by a newer one
+     */
+    private synchronized void remove(K key, Entry<V> entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+        }
+    }
+
+    private static class Entry<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<V>();
+        private volatile long expiresAtMillis = Long.MAX_VALUE;
+
+        boolean isExpired(long nowMillis) {
+            return future.isDone() && nowMillis >= expiresAtMillis;
+        }
+
+        V await() throws IOException, URISyntaxException {
+            try {
+                return future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for the value to load");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof URISyntaxException) {
+                    throw (URISyntaxException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
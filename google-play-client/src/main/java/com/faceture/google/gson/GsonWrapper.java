@@ -17,7 +17,13 @@
 
 package com.faceture.google.gson;
 
+import com.faceture.jfr.JfrSupport;
+import com.faceture.jfr.JsonParseEvent;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.Reader;
+import java.util.function.ToIntFunction;
 
 /**
  * Wrapper for Gson. This class exists to make unit testing possible. Gson is a final class, so Mockito can't mock it.
@@ -25,12 +31,24 @@ import com.google.gson.Gson;
 public class GsonWrapper {
 
     private Gson gson;
+    private ToIntFunction<Object> songCounter;
 
     public GsonWrapper(Gson gson) {
+        this(gson, obj -> 0);
+    }
+
+    /**
+     * @param songCounter counts the songs in what fromJson parsed, for the JSON parse events
+     */
+    public GsonWrapper(Gson gson, ToIntFunction<Object> songCounter) {
         if (null == gson) {
             throw new IllegalArgumentException("gson is null");
         }
+        if (null == songCounter) {
+            throw new IllegalArgumentException("songCounter is null");
+        }
         this.gson = gson;
+        this.songCounter = songCounter;
     }
 
     public String toJson(Object obj) {
@@ -49,6 +67,58 @@ public class GsonWrapper {
             throw new IllegalArgumentException("classOfT is null");
         }
 
-        return gson.fromJson(json, classOfT);
+        if (!JfrSupport.isAvailable()) {
+            return gson.fromJson(json, classOfT);
+        }
+
+        // a JSON parse event, if Flight Recorder is recording them
+        JsonParseEvent jsonParseEvent = new JsonParseEvent();
+        if (!jsonParseEvent.isEnabled()) {
+            return gson.fromJson(json, classOfT);
+        }
+
+        jsonParseEvent.begin();
+        T result = null;
+        try {
+            result = gson.fromJson(json, classOfT);
+            return result;
+        }
+        catch (RuntimeException e) {
+            jsonParseEvent.setFailure(e.getClass().getName());
+            throw e;
+        }
+        finally {
+            jsonParseEvent.end();
+            if (jsonParseEvent.shouldCommit()) {
+                jsonParseEvent.setType(classOfT.getSimpleName());
+                jsonParseEvent.setCharacters(json.length());
+                jsonParseEvent.setSongCount(null == result ? 0 : songCounter.applyAsInt(result));
+                jsonParseEvent.commit();
+            }
+        }
+    }
+
+    public JsonReader createJsonReader(Reader reader) {
+        if (null == reader) {
+            throw new IllegalArgumentException("reader is null");
+        }
+
+        return new JsonReader(reader);
+    }
+
+    /**
+     * Reads the next value from the reader, leaving the reader positioned after it. This is used to pull objects out
+     * of a large document one at a time. No parse event is emitted for each object, the reader of the document emits
+     * one for the whole of it.
+     */
+    public <T> T fromJson(JsonReader jsonReader, Class<T> classOfT) {
+        if (null == jsonReader) {
+            throw new IllegalArgumentException("jsonReader is null");
+        }
+        if (null == classOfT) {
+            throw new IllegalArgumentException("classOfT is null");
+        }
+
+        return gson.fromJson(jsonReader, classOfT);
     }
 }
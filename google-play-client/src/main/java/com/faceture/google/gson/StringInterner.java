@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.gson;
+
+/**
+ * A bounded pool of Strings used to dedupe values that repeat many times while parsing, so that equal values share
+ * a single instance rather than each keeping its own copy.
+ *
+ * The pool is a fixed size, direct mapped table: a value goes in the slot picked by its hash, replacing whatever was
+ * there. It never grows past its capacity and needs no locking; racing threads at worst replace each other's entries,
+ * which only costs a missed dedupe.
+ */
+public class StringInterner {
+
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private final String[] slots;
+    private final int mask;
+
+    public StringInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of Strings the pool can hold, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity is too large");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return the pooled instance equal to the value if there is one, else the value, which is pooled
+     */
+    public String intern(String value) {
+        if (null == value) {
+            return null;
+        }
+
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String pooled = slots[slot];
+        if (pooled != null && pooled.equals(value)) {
+            return pooled;
+        }
+
+        slots[slot] = value;
+        return value;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Empties the pool
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+    }
+}
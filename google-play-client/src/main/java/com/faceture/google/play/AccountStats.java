@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one account of a SessionPool is doing, and has done. Updated without locking, so the values read together
+ * may be a moment apart.
+ */
+public class AccountStats {
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void recordQueued() {
+        queueDepth.incrementAndGet();
+    }
+
+    void recordDequeued() {
+        queueDepth.decrementAndGet();
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    void recordStarted(long queueWaitNanos) {
+        inFlight.incrementAndGet();
+        queueWait.record(queueWaitNanos);
+    }
+
+    void recordFinished(long latencyNanos, boolean success) {
+        inFlight.decrementAndGet();
+        latency.record(latencyNanos);
+        if (success) {
+            completed.increment();
+        }
+        else {
+            failed.increment();
+        }
+    }
+
+    /**
+     * @return the calls waiting for a thread
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return the calls refused because too many were already waiting
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return how long the calls waited for a thread, in nanoseconds
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return how long the calls took once they had a thread, in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.*;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimiter;
+import com.faceture.ratelimit.RateLimiterConfig;
+import com.faceture.rest.RestClient;
+import com.faceture.rest.RestResponse;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking client for using the Google Play REST API. It makes the same calls as the PlayClient, but over the
+ * NIO-based HTTP engine, so a handful of threads can have thousands of calls in flight.
+ *
+ * The returned futures fail with the same exceptions the PlayClient would have thrown. Responses are mapped to domain
+ * objects on the given executor rather than on the HTTP reactor threads, since parsing a page of tracks isn't cheap.
+ * Requests held back by the RateLimiter wait on its scheduler, not on a thread of their own.
+ */
+public class AsyncPlayClient implements Closeable {
+
+    // dependencies
+    private RestClient restClient;
+    private Executor executor;
+    private PlayEndpoints playEndpoints;
+    private RateLimiter rateLimiter;
+
+    // helpers
+    private PlayClientUtil playClientUtil;
+
+    public AsyncPlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
+                           GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
+                           LoginResponseFactory loginResponseFactory, Executor executor)
+    {
+        this(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory, loginResponseFactory,
+                executor, new PlayEndpoints());
+    }
+
+    public AsyncPlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
+                           GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
+                           LoginResponseFactory loginResponseFactory, Executor executor, PlayEndpoints playEndpoints)
+    {
+        this(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory, loginResponseFactory,
+                executor, playEndpoints, new RateLimiter(RateLimiterConfig.UNLIMITED, new NoOpClientMetrics()));
+    }
+
+    /**
+     * @param rateLimiter holds each request back until its session and its Path are within their rate limits
+     */
+    public AsyncPlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
+                           GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
+                           LoginResponseFactory loginResponseFactory, Executor executor, PlayEndpoints playEndpoints,
+                           RateLimiter rateLimiter)
+    {
+        if (null == restClient) {
+            throw new IllegalArgumentException("restClient is null");
+        }
+        if (null == playSessionFactory) {
+            throw new IllegalArgumentException("playSessionFactory is null");
+        }
+        if (null == googleUtil) {
+            throw new IllegalArgumentException("googleUtil is null");
+        }
+        if (null == gsonWrapper) {
+            throw new IllegalArgumentException("gsonWrapper is null");
+        }
+        if (null == playDomainFactory) {
+            throw new IllegalArgumentException("playDomainFactory is null");
+        }
+        if (null == loginResponseFactory) {
+            throw new IllegalArgumentException("loginResponseFactory is null");
+        }
+        if (null == executor) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        if (null == playEndpoints) {
+            throw new IllegalArgumentException("playEndpoints is null");
+        }
+        if (null == rateLimiter) {
+            throw new IllegalArgumentException("rateLimiter is null");
+        }
+        this.restClient = restClient;
+        this.executor = executor;
+        this.playEndpoints = playEndpoints;
+        this.rateLimiter = rateLimiter;
+
+        this.playClientUtil = new PlayClientUtil(playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory);
+    }
+
+    public CompletableFuture<LoginResponse> login(String emailAddress, String password) {
+        if (null == emailAddress || emailAddress.isEmpty()) {
+            throw new IllegalArgumentException("emailAddress is null or empty");
+        }
+        if (null == password || password.isEmpty()) {
+            throw new IllegalArgumentException("password is null or empty");
+        }
+
+        // do the login to Google
+        Map<String, String> loginForm = playClientUtil.createLoginForm(emailAddress, password);
+
+        return whenAcquired(null, Path.GOOGLE_LOGIN, () -> restClient.doPostAsync(playEndpoints.isHttps(),
+                playEndpoints.getGoogleHostName(), Path.GOOGLE_LOGIN, null, null, null, loginForm))
+                .thenComposeAsync(googleLoginResponse -> {
+                    // make sure the login succeeded
+                    LoginResponse googleLoginFailure = playClientUtil.getGoogleLoginFailure(googleLoginResponse);
+                    if (googleLoginFailure != null) {
+                        return CompletableFuture.completedFuture(googleLoginFailure);
+                    }
+
+                    String googleAuthToken = playClientUtil.getAuthToken(googleLoginResponse);
+
+                    // do the login to Play
+                    return whenAcquired(null, Path.MUSIC_LOGIN, () -> restClient.doPostAsync(playEndpoints.isHttps(),
+                            playEndpoints.getPlayHostName(), Path.MUSIC_LOGIN,
+                            playClientUtil.createPlayLoginQueryParams(),
+                            playClientUtil.createAuthHeaders(googleAuthToken), null, null))
+                            .thenApplyAsync(playLoginResponse ->
+                                    playClientUtil.createPlayLoginResponse(playLoginResponse, googleAuthToken),
+                                    executor);
+                }, executor);
+    }
+
+    public CompletableFuture<SearchResults> search(String query, PlaySession session) {
+        if (null == query || query.isEmpty()) {
+            throw new IllegalArgumentException("query is null or empty");
+        }
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        Map<String, String> queryParams = playClientUtil.createSessionQueryParams(session);
+        Map<String, String> headers = playClientUtil.createAuthHeaders(session.getAuthToken());
+        Map<String, String> form = playClientUtil.createSearchForm(query);
+
+        return whenAcquired(session.getAuthToken(), Path.MUSIC_SEARCH, () -> restClient.doPostAsync(
+                playEndpoints.isHttps(), playEndpoints.getPlayHostName(), Path.MUSIC_SEARCH, queryParams, headers, null,
+                form))
+                .thenApplyAsync(playClientUtil::getSearchResults, executor);
+    }
+
+    public CompletableFuture<URI> getPlayURI(String songId, PlaySession playSession) {
+        if (null == songId || songId.isEmpty()) {
+            throw new IllegalArgumentException("songId is null or empty");
+        }
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+
+        Map<String, String> queryParams = playClientUtil.createPlayQueryParams(songId);
+        Map<String, String> headers = playClientUtil.createAuthHeaders(playSession.getAuthToken());
+        Map<String, String> cookies = playClientUtil.createSessionCookies(playSession);
+
+        return whenAcquired(playSession.getAuthToken(), Path.MUSIC_PLAY, () -> restClient.doGetAsync(
+                playEndpoints.isHttps(), playEndpoints.getPlayHostName(), Path.MUSIC_PLAY, queryParams, headers,
+                cookies))
+                .thenApplyAsync(restResponse -> {
+                    try {
+                        return playClientUtil.getPlayURI(restResponse);
+                    }
+                    catch (URISyntaxException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+    }
+
+    public CompletableFuture<Collection<Song>> loadAllTracks(PlaySession session) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        Map<String, String> queryParams = playClientUtil.createSessionQueryParams(session);
+        Map<String, String> headers = playClientUtil.createAuthHeaders(session.getAuthToken());
+
+        return loadTracks(session.getAuthToken(), queryParams, headers, null, new ArrayList<Song>());
+    }
+
+    public CompletableFuture<Collection<Playlist>> loadAllPlaylists(PlaySession session) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        Map<String, String> queryParams = playClientUtil.createSessionQueryParams(session);
+        Map<String, String> headers = playClientUtil.createAuthHeaders(session.getAuthToken());
+        Map<String, String> form = playClientUtil.createJsonForm(Const.EMPTY_JSON);
+
+        return whenAcquired(session.getAuthToken(), Path.MUSIC_LOAD_PLAYLIST, () -> restClient.doPostAsync(
+                playEndpoints.isHttps(), playEndpoints.getPlayHostName(), Path.MUSIC_LOAD_PLAYLIST, queryParams,
+                headers, null, form))
+                .thenApplyAsync(playClientUtil::getPlaylists, executor);
+    }
+
+    /**
+     * Releases the pooled HTTP connections. The AsyncPlayClient can't be used after this has been called.
+     */
+    public void close() {
+        restClient.close();
+    }
+
+    /**
+     * Loads the page of tracks for the given continuation token, then chains the request for the next page until
+     * there are no more pages
+     */
+    private CompletableFuture<Collection<Song>> loadTracks(String sessionKey, Map<String, String> queryParams,
+                                                           Map<String, String> headers, String continuationToken,
+                                                           List<Song> songs)
+    {
+        Map<String, String> form = playClientUtil.createLoadAllTracksForm(continuationToken);
+
+        return whenAcquired(sessionKey, Path.MUSIC_LOAD_ALL_TRACKS, () -> restClient.doPostAsync(
+                playEndpoints.isHttps(), playEndpoints.getPlayHostName(), Path.MUSIC_LOAD_ALL_TRACKS, queryParams,
+                headers, null, form))
+                .thenComposeAsync(restResponse -> {
+                    LoadAllTracksResponse loadAllTracksResponse =
+                            playClientUtil.getLoadAllTracksResponse(restResponse);
+
+                    // get the songs from the response and add them to the list
+                    songs.addAll(loadAllTracksResponse.getPlaylist());
+
+                    String nextContinuationToken = playClientUtil.getContinuationToken(loadAllTracksResponse);
+                    if (null == nextContinuationToken) {
+                        // we're done
+                        return CompletableFuture.<Collection<Song>>completedFuture(songs);
+                    }
+
+                    return loadTracks(sessionKey, queryParams, headers, nextContinuationToken, songs);
+                }, executor);
+    }
+
+    /**
+     * Sends the request once the rate limiter lets it through, without parking a thread in the meantime
+     */
+    private <T> CompletableFuture<T> whenAcquired(String sessionKey, String path,
+                                                  Supplier<CompletableFuture<T>> request)
+    {
+        return rateLimiter.acquireAsync(sessionKey, path).thenCompose(acquired -> request.get());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A queue shared by many flows that hands out their items by start-time fair queuing: each item is tagged with the
+ * virtual time at which its flow's share of the queue would let it start, and the item with the earliest tag goes
+ * next. A flow with twice the weight gets twice the turns while both are waiting, and a flow that has been idle can't
+ * save up turns. Not thread safe, the caller locks around it.
+ */
+class FairQueue<T> {
+
+    /**
+     * The items of one flow, e.g. one account, in the order they were offered
+     */
+    static final class Flow<T> {
+
+        private final ArrayDeque<Entry<T>> entries = new ArrayDeque<Entry<T>>();
+        private volatile int weight;
+        private double finishTag;
+
+        Flow(int weight) {
+            setWeight(weight);
+        }
+
+        int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Applies to the items offered from now on
+         */
+        void setWeight(int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+
+            this.weight = weight;
+        }
+
+        int size() {
+            return entries.size();
+        }
+    }
+
+    private static final class Entry<T> {
+
+        private final T item;
+        private final double startTag;
+        private final long sequence;
+
+        private Entry(T item, double startTag, long sequence) {
+            this.item = item;
+            this.startTag = startTag;
+            this.sequence = sequence;
+        }
+    }
+
+    // only the flows with items waiting, ordered by the tag of their first item, then by arrival
+    private final PriorityQueue<Flow<T>> backlogged = new PriorityQueue<Flow<T>>(
+            Comparator.comparingDouble((Flow<T> flow) -> flow.entries.peek().startTag)
+                    .thenComparingLong(flow -> flow.entries.peek().sequence));
+
+    private double virtualTime;
+    private long nextSequence;
+    private int size;
+
+    void offer(Flow<T> flow, T item) {
+        if (null == flow) {
+            throw new IllegalArgumentException("flow is null");
+        }
+
+        double startTag = Math.max(virtualTime, flow.finishTag);
+        flow.finishTag = startTag + 1.0 / flow.weight;
+        flow.entries.add(new Entry<T>(item, startTag, nextSequence++));
+        size++;
+
+        if (1 == flow.entries.size()) {
+            backlogged.add(flow);
+        }
+    }
+
+    /**
+     * @return the next item, or null if there isn't one
+     */
+    T poll() {
+        Flow<T> flow = backlogged.poll();
+        if (null == flow) {
+            return null;
+        }
+
+        Entry<T> entry = flow.entries.poll();
+        size--;
+        virtualTime = entry.startTag;
+
+        // its next item has a later tag, so it goes back in its new place
+        if (!flow.entries.isEmpty()) {
+            backlogged.add(flow);
+        }
+
+        return entry.item;
+    }
+
+    /**
+     * @return the items of the flow that were waiting, which have been taken out of the queue
+     */
+    List<T> remove(Flow<T> flow) {
+        List<T> items = new ArrayList<T>(flow.entries.size());
+        if (flow.entries.isEmpty()) {
+            return items;
+        }
+
+        backlogged.remove(flow);
+        for (Entry<T> entry : flow.entries) {
+            items.add(entry.item);
+        }
+        size -= flow.entries.size();
+        flow.entries.clear();
+
+        return items;
+    }
+
+    /**
+     * @return all of the items that were waiting, which have been taken out of the queue
+     */
+    List<T> clear() {
+        List<T> items = new ArrayList<T>(size);
+        for (Flow<T> flow : backlogged) {
+            for (Entry<T> entry : flow.entries) {
+                items.add(entry.item);
+            }
+            flow.entries.clear();
+        }
+        backlogged.clear();
+        size = 0;
+
+        return items;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.Song;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local copy of the user's tracks, keyed by Song id, along with the server's requestTime of the load it's current
+ * as of. Kept up to date by a LibrarySync and safe to read while a sync is being applied.
+ */
+public class LibrarySnapshot {
+
+    private final Map<String, Song> songs = new ConcurrentHashMap<String, Song>();
+    private volatile double requestTime;
+    private volatile boolean loaded;
+
+    /**
+     * @return the song with the given id, or null if it isn't in the library
+     */
+    public Song getSong(String id) {
+        if (null == id) {
+            throw new IllegalArgumentException("id is null");
+        }
+
+        return songs.get(id);
+    }
+
+    /**
+     * @return a live, read-only view of the songs
+     */
+    public Collection<Song> getSongs() {
+        return Collections.unmodifiableCollection(songs.values());
+    }
+
+    public int size() {
+        return songs.size();
+    }
+
+    /**
+     * @return the requestTime of the last load applied, used to ask for the changes since
+     */
+    public double getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * @return true once the whole library has been loaded at least once
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true if the song was already in the library
+     */
+    boolean put(Song song) {
+        return songs.put(song.getId(), song) != null;
+    }
+
+    /**
+     * @return true if the song was in the library
+     */
+    boolean remove(String id) {
+        return songs.remove(id) != null;
+    }
+
+    /**
+     * Drops every song that isn't in the given ids
+     * @return the number of songs dropped
+     */
+    int retain(Collection<String> ids) {
+        int size = songs.size();
+        songs.keySet().retainAll(ids);
+
+        return size - songs.size();
+    }
+
+    void setRequestTime(double requestTime) {
+        this.requestTime = requestTime;
+    }
+
+    void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.Song;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a LibrarySnapshot up to date. The first sync loads the whole library; after that only the tracks added,
+ * changed or deleted since the last sync are downloaded and applied to the snapshot in place. The whole library is
+ * only downloaded again when the server refuses to send just the changes.
+ */
+public class LibrarySync {
+
+    // dependencies
+    private PlayClient playClient;
+    private LibrarySnapshot librarySnapshot;
+
+    public LibrarySync(PlayClient playClient, LibrarySnapshot librarySnapshot) {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == librarySnapshot) {
+            throw new IllegalArgumentException("librarySnapshot is null");
+        }
+
+        this.playClient = playClient;
+        this.librarySnapshot = librarySnapshot;
+    }
+
+    public LibrarySnapshot getLibrarySnapshot() {
+        return librarySnapshot;
+    }
+
+    /**
+     * Brings the snapshot up to date with the server. Syncs of the same snapshot are run one at a time.
+     * @param session the session of the user whose library this is
+     */
+    public synchronized LibrarySyncResult sync(PlaySession session) throws IOException, URISyntaxException {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        if (!librarySnapshot.isLoaded()) {
+            return resync(session);
+        }
+
+        try (LoadAllTracksIterator loadAllTracksIterator =
+                     playClient.iterateTrackChanges(session, librarySnapshot.getRequestTime()))
+        {
+            Map<String, Song> changes = readSongs(loadAllTracksIterator);
+
+            if (!loadAllTracksIterator.isDifferentialUpdate()) {
+                // the server sent everything instead
+                return replace(changes, loadAllTracksIterator.getRequestTime());
+            }
+
+            return apply(changes, loadAllTracksIterator.getRequestTime());
+        }
+    }
+
+    /**
+     * Downloads the whole library and replaces the snapshot's contents with it
+     * @param session the session of the user whose library this is
+     */
+    public synchronized LibrarySyncResult resync(PlaySession session) throws IOException, URISyntaxException {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        try (LoadAllTracksIterator loadAllTracksIterator = playClient.iterateAllTracks(session)) {
+            Map<String, Song> songs = readSongs(loadAllTracksIterator);
+
+            return replace(songs, loadAllTracksIterator.getRequestTime());
+        }
+    }
+
+    /**
+     * Reads every page before anything is applied, so a failed sync leaves the snapshot as it was
+     * @return the songs by id, the last one read winning when an id shows up more than once
+     */
+    private Map<String, Song> readSongs(LoadAllTracksIterator loadAllTracksIterator)
+            throws IOException, URISyntaxException
+    {
+        Map<String, Song> songs = new LinkedHashMap<String, Song>();
+
+        Song song;
+        while ((song = loadAllTracksIterator.nextSong()) != null) {
+            if (song.getId() != null) {
+                songs.put(song.getId(), song);
+            }
+        }
+
+        return songs;
+    }
+
+    /**
+     * Applies inserts, updates and deletions to the snapshot
+     */
+    private LibrarySyncResult apply(Map<String, Song> changes, double requestTime) {
+        int inserted = 0;
+        int updated = 0;
+        int deleted = 0;
+
+        for (Song song : changes.values()) {
+            if (song.isDeleted()) {
+                if (librarySnapshot.remove(song.getId())) {
+                    deleted++;
+                }
+            }
+            else if (librarySnapshot.put(song)) {
+                updated++;
+            }
+            else {
+                inserted++;
+            }
+        }
+
+        setRequestTime(requestTime);
+
+        return new LibrarySyncResult(false, inserted, updated, deleted);
+    }
+
+    /**
+     * Makes the snapshot hold exactly the given songs, leaving the songs that are in both in place
+     */
+    private LibrarySyncResult replace(Map<String, Song> songs, double requestTime) {
+        int inserted = 0;
+        int updated = 0;
+
+        // a full listing can still carry tombstones
+        songs.values().removeIf(Song::isDeleted);
+
+        int deleted = librarySnapshot.retain(songs.keySet());
+        for (Song song : songs.values()) {
+            if (librarySnapshot.put(song)) {
+                updated++;
+            }
+            else {
+                inserted++;
+            }
+        }
+
+        setRequestTime(requestTime);
+        librarySnapshot.setLoaded(true);
+
+        return new LibrarySyncResult(true, inserted, updated, deleted);
+    }
+
+    private void setRequestTime(double requestTime) {
+        // keep the old one if the server didn't send one, rather than asking for everything since 0
+        if (requestTime > 0) {
+            librarySnapshot.setRequestTime(requestTime);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+/**
+ * What a LibrarySync changed in the snapshot
+ */
+public class LibrarySyncResult {
+
+    private boolean fullResync;
+    private int inserted;
+    private int updated;
+    private int deleted;
+
+    public LibrarySyncResult(boolean fullResync, int inserted, int updated, int deleted) {
+        this.fullResync = fullResync;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+    }
+
+    /**
+     * @return true if the whole library was downloaded, rather than just the changes
+     */
+    public boolean isFullResync() {
+        return fullResync;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
+import com.faceture.rest.RestStreamResponse;
+import com.faceture.rest.RetryPolicy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the user's tracks, loading a page only when the iteration reaches it. Nothing is requested until the
+ * first call to hasNext(), and only one page is ever open at a time.
+ *
+ * Stopping early is fine as long as the iterator is closed: the open page is aborted rather than downloaded to the
+ * end. To checkpoint, record getPageContinuationToken() and getPageSongCount(); a new iterator started from that
+ * token will load the same page again. That's also how a page that breaks off part way through is picked up, if the
+ * RequestRetrier allows: the page is loaded again and the songs already read from it are skipped.
+ */
+public class LoadAllTracksIterator implements Iterator<Song>, Closeable {
+
+    // dependencies
+    private LoadAllTracksPageSource pageSource;
+    private PlayClientUtil playClientUtil;
+    private RequestRetrier requestRetrier;
+
+    // the open page
+    private RestStreamResponse restStreamResponse;
+    private LoadAllTracksReader loadAllTracksReader;
+
+    // where we are
+    private String pageContinuationToken;
+    private String nextContinuationToken;
+    private int pageNumber = -1;
+    private int pageSongCount;
+    private int pageAttempts;
+    private Song nextSong;
+    private boolean finished;
+
+    // from the first page
+    private double requestTime;
+    private boolean differentialUpdate;
+    private boolean closed;
+
+    /**
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     */
+    public LoadAllTracksIterator(LoadAllTracksPageSource pageSource, PlayClientUtil playClientUtil,
+                                 String continuationToken)
+    {
+        this(pageSource, playClientUtil, continuationToken, new RequestRetrier(RetryPolicy.NONE,
+                new NoOpClientMetrics()));
+    }
+
+    /**
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     * @param requestRetrier decides whether a page that broke off is loaded again
+     */
+    public LoadAllTracksIterator(LoadAllTracksPageSource pageSource, PlayClientUtil playClientUtil,
+                                 String continuationToken, RequestRetrier requestRetrier)
+    {
+        if (null == pageSource) {
+            throw new IllegalArgumentException("pageSource is null");
+        }
+        if (null == playClientUtil) {
+            throw new IllegalArgumentException("playClientUtil is null");
+        }
+        if (null == requestRetrier) {
+            throw new IllegalArgumentException("requestRetrier is null");
+        }
+
+        this.pageSource = pageSource;
+        this.playClientUtil = playClientUtil;
+        this.requestRetrier = requestRetrier;
+        this.nextContinuationToken = continuationToken;
+    }
+
+    /**
+     * @return the next song, loading the next page if needed, or null when there are no more songs
+     */
+    public Song nextSong() throws IOException, URISyntaxException {
+        if (nextSong != null) {
+            Song song = nextSong;
+            nextSong = null;
+            return song;
+        }
+
+        return readSong();
+    }
+
+    public boolean hasNext() {
+        if (nextSong == null) {
+            try {
+                nextSong = readSong();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return nextSong != null;
+    }
+
+    public Song next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Song song = nextSong;
+        nextSong = null;
+        return song;
+    }
+
+    /**
+     * @return the number of the page the last song came from, starting at 0, or -1 before any page has been loaded
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * @return the token that loads the page the last song came from, null for the first page
+     */
+    public String getPageContinuationToken() {
+        return pageContinuationToken;
+    }
+
+    /**
+     * @return the number of songs read from the current page so far
+     */
+    public int getPageSongCount() {
+        return pageSongCount;
+    }
+
+    /**
+     * @return the token of the page after the current one, once it has been read, else null
+     */
+    public String getNextContinuationToken() {
+        return null == loadAllTracksReader ? nextContinuationToken : loadAllTracksReader.getContinuationToken();
+    }
+
+    /**
+     * @return the server's requestTime from the first page, once that page has been read to the end, else 0
+     */
+    public double getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * @return true if the first page, once read to the end, said it only holds the changes since an earlier load
+     */
+    public boolean isDifferentialUpdate() {
+        return differentialUpdate;
+    }
+
+    /**
+     * @return true once every page has been read to the end
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Closes the open page, aborting it if it hasn't been read to the end. Safe to call more than once.
+     */
+    public void close() throws IOException {
+        closed = true;
+        nextSong = null;
+
+        closePage();
+    }
+
+    private Song readSong() throws IOException, URISyntaxException {
+        if (closed) {
+            throw new IllegalStateException("iterator is closed");
+        }
+
+        while (!finished) {
+            if (null == restStreamResponse) {
+                openPage();
+            }
+
+            Song song;
+            try {
+                song = loadAllTracksReader.nextSong();
+            }
+            catch (IOException e) {
+                boolean resumed = false;
+                try {
+                    resumed = resumePage(e);
+                }
+                finally {
+                    if (!resumed) {
+                        close();
+                    }
+                }
+                if (!resumed) {
+                    throw e;
+                }
+                continue;
+            }
+            catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+
+            if (song != null) {
+                pageSongCount++;
+                return song;
+            }
+
+            // the page is done, move on to the next one if there is one
+            closePage();
+
+            if (null == nextContinuationToken) {
+                finished = true;
+            }
+        }
+
+        return null;
+    }
+
+    private void openPage() throws IOException, URISyntaxException {
+        RestStreamResponse response = pageSource.openPage(nextContinuationToken);
+
+        try {
+            loadAllTracksReader = playClientUtil.createLoadAllTracksReader(response);
+        }
+        catch (IOException e) {
+            response.abort();
+            response.close();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            response.abort();
+            response.close();
+            throw e;
+        }
+
+        restStreamResponse = response;
+        pageContinuationToken = nextContinuationToken;
+        nextContinuationToken = null;
+        pageNumber++;
+        pageSongCount = 0;
+        pageAttempts = 1;
+    }
+
+    /**
+     * Loads the open page again after it broke off, skipping the songs already read from it
+     * @return false if the page shouldn't be loaded again
+     */
+    private boolean resumePage(IOException failure) throws IOException, URISyntaxException {
+        while (requestRetrier.backOff(Path.MUSIC_LOAD_ALL_TRACKS, pageAttempts, failure)) {
+            pageAttempts++;
+            closePage();
+
+            RestStreamResponse response = pageSource.openPage(pageContinuationToken);
+            try {
+                LoadAllTracksReader reader = playClientUtil.createLoadAllTracksReader(response);
+                reader.skipSongs(pageSongCount);
+
+                restStreamResponse = response;
+                loadAllTracksReader = reader;
+                return true;
+            }
+            catch (IOException e) {
+                response.abort();
+                response.close();
+                failure = e;
+            }
+            catch (RuntimeException e) {
+                response.abort();
+                response.close();
+                throw e;
+            }
+        }
+
+        return false;
+    }
+
+    private void closePage() throws IOException {
+        if (null == restStreamResponse) {
+            return;
+        }
+
+        RestStreamResponse response = restStreamResponse;
+        boolean pageFinished = loadAllTracksReader.isFinished();
+        if (pageFinished) {
+            nextContinuationToken = loadAllTracksReader.getContinuationToken();
+
+            if (0 == pageNumber) {
+                LoadAllTracksResponse page = loadAllTracksReader.getPage();
+                requestTime = page.getRequestTime();
+                differentialUpdate = page.isDifferentialUpdate();
+            }
+        }
+
+        restStreamResponse = null;
+        loadAllTracksReader = null;
+
+        // don't drain the rest of a page nobody is going to read
+        if (!pageFinished) {
+            response.abort();
+        }
+        response.close();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.rest.RestStreamResponse;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * Issues the request for one page of the user's tracks
+ */
+public interface LoadAllTracksPageSource {
+
+    /**
+     * @param continuationToken the token of the page to load, or null for the first page
+     * @return the page's response, not yet read
+     */
+    RestStreamResponse openPage(String continuationToken) throws IOException, URISyntaxException;
+}
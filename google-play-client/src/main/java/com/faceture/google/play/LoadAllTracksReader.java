@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.faceture.google.play.library.SongTable;
+import com.faceture.jfr.JfrSupport;
+import com.faceture.jfr.JsonParseEvent;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads a page of the loadalltracks response one Song at a time, straight off the response stream, so the page is
+ * never held in memory as a String or as a full LoadAllTracksResponse.
+ *
+ * The other fields of the page (most importantly the continuation token) are picked up from the same stream as they
+ * go by. Fields that come before the songs are available as soon as the first song has been read, the rest once
+ * nextSong() has returned null.
+ */
+public class LoadAllTracksReader implements Closeable {
+
+    private static final String PLAYLIST = "playlist";
+    private static final String CONTINUATION_TOKEN = "continuationToken";
+    private static final String REQUEST_TIME = "requestTime";
+    private static final String DIFFERENTIAL_UPDATE = "differentialUpdate";
+    private static final String CONTINUATION = "continuation";
+    private static final String TITLE = "title";
+    private static final String PLAYLIST_ID = "playlistId";
+
+    // dependencies
+    private GsonWrapper gsonWrapper;
+    private JsonReader jsonReader;
+
+    // the page, without its songs
+    private LoadAllTracksResponse page = new LoadAllTracksResponse();
+
+    private boolean started;
+    private boolean inPlaylist;
+    private boolean finished;
+    private int songCount;
+
+    // the parse event of the page, if Flight Recorder is recording them
+    private JsonParseEvent pageEvent;
+
+    public LoadAllTracksReader(GsonWrapper gsonWrapper, JsonReader jsonReader) {
+        if (null == gsonWrapper) {
+            throw new IllegalArgumentException("gsonWrapper is null");
+        }
+        if (null == jsonReader) {
+            throw new IllegalArgumentException("jsonReader is null");
+        }
+
+        this.gsonWrapper = gsonWrapper;
+        this.jsonReader = jsonReader;
+
+        // the page is parsed as it comes off the connection, so the event covers the reading too
+        if (JfrSupport.isAvailable()) {
+            JsonParseEvent jsonParseEvent = new JsonParseEvent();
+            if (jsonParseEvent.isEnabled()) {
+                jsonParseEvent.begin();
+                pageEvent = jsonParseEvent;
+            }
+        }
+    }
+
+    /**
+     * @return the next song in the page, or null when all of the songs have been read
+     */
+    public Song nextSong() throws IOException {
+        if (!toNextSong()) {
+            return null;
+        }
+
+        songCount++;
+        return gsonWrapper.fromJson(jsonReader, Song.class);
+    }
+
+    /**
+     * Reads the next song in the page straight into the builder, without creating a Song
+     * @return false when all of the songs have been read
+     */
+    public boolean nextSong(SongTable.Builder songTableBuilder) throws IOException {
+        if (null == songTableBuilder) {
+            throw new IllegalArgumentException("songTableBuilder is null");
+        }
+
+        if (!toNextSong()) {
+            return false;
+        }
+
+        songCount++;
+        songTableBuilder.readSong(jsonReader);
+        return true;
+    }
+
+    /**
+     * Reads the fields that come before the songs, without reading a song
+     * @return the continuation token for the next page if it came before the songs and there is a next page, else null
+     */
+    public String readToSongs() throws IOException {
+        if (!finished && !inPlaylist) {
+            readFields();
+        }
+
+        return getContinuationToken();
+    }
+
+    /**
+     * Skips over songs without parsing them, e.g. the ones already read before a reloaded page broke off
+     * @throws IOException if the page doesn't have that many songs left
+     */
+    public void skipSongs(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (!toNextSong()) {
+                throw new IOException("the page ran out of songs after skipping " + i + " of " + count);
+            }
+            jsonReader.skipValue();
+        }
+    }
+
+    /**
+     * Reads the rest of the page, skipping over any songs that haven't been read
+     * @return the page's fields, without the songs
+     */
+    public LoadAllTracksResponse readToEnd() throws IOException {
+        while (!finished) {
+            if (inPlaylist) {
+                if (jsonReader.hasNext()) {
+                    jsonReader.skipValue();
+                }
+                else {
+                    jsonReader.endArray();
+                    inPlaylist = false;
+                }
+            }
+            else {
+                readFields();
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * @return the continuation token for the next page if it has been read yet and there is a next page, else null
+     */
+    public String getContinuationToken() {
+        String continuationToken = page.getContinuationToken();
+
+        return continuationToken != null && !continuationToken.isEmpty() ? continuationToken : null;
+    }
+
+    /**
+     * @return the fields of the page read so far, without the songs
+     */
+    public LoadAllTracksResponse getPage() {
+        return page;
+    }
+
+    /**
+     * @return the number of songs read so far
+     */
+    public int getSongCount() {
+        return songCount;
+    }
+
+    /**
+     * @return true once the whole page has been read
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void close() throws IOException {
+        if (!finished) {
+            commitPageEvent("closed before the end of the page");
+        }
+
+        jsonReader.close();
+    }
+
+    /**
+     * Moves the reader to the start of the next song
+     * @return false, with the rest of the page's fields read, if there are no more songs
+     */
+    private boolean toNextSong() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        if (!inPlaylist) {
+            // read the fields up to the songs, or to the end of the page if there aren't any
+            readFields();
+            if (!inPlaylist) {
+                return false;
+            }
+        }
+
+        if (jsonReader.hasNext()) {
+            return true;
+        }
+
+        // that was the last song, pick up whatever fields come after the songs
+        jsonReader.endArray();
+        inPlaylist = false;
+        readFields();
+
+        return false;
+    }
+
+    /**
+     * Reads fields until the start of the songs or the end of the page
+     */
+    private void readFields() throws IOException {
+        if (!started) {
+            jsonReader.beginObject();
+            started = true;
+        }
+
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+
+            if (PLAYLIST.equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                jsonReader.beginArray();
+                inPlaylist = true;
+                return;
+            }
+            else if (CONTINUATION_TOKEN.equals(name)) {
+                page.setContinuationToken(nextString());
+            }
+            else if (REQUEST_TIME.equals(name) && jsonReader.peek() != JsonToken.NULL) {
+                page.setRequestTime(jsonReader.nextDouble());
+            }
+            else if (DIFFERENTIAL_UPDATE.equals(name) && jsonReader.peek() != JsonToken.NULL) {
+                page.setDifferentialUpdate(jsonReader.nextBoolean());
+            }
+            else if (CONTINUATION.equals(name) && jsonReader.peek() != JsonToken.NULL) {
+                page.setContinuation(jsonReader.nextBoolean());
+            }
+            else if (TITLE.equals(name)) {
+                page.setTitle(nextString());
+            }
+            else if (PLAYLIST_ID.equals(name)) {
+                page.setPlaylistId(nextString());
+            }
+            else {
+                // a null primitive is skipped, leaving the page's default
+                jsonReader.skipValue();
+            }
+        }
+
+        jsonReader.endObject();
+        finished = true;
+
+        commitPageEvent(null);
+    }
+
+    private void commitPageEvent(String failure) {
+        if (null == pageEvent) {
+            return;
+        }
+
+        JsonParseEvent jsonParseEvent = pageEvent;
+        pageEvent = null;
+
+        jsonParseEvent.end();
+        if (jsonParseEvent.shouldCommit()) {
+            jsonParseEvent.setType(LoadAllTracksResponse.class.getSimpleName());
+            jsonParseEvent.setCharacters(-1);
+            jsonParseEvent.setSongCount(songCount);
+            jsonParseEvent.setStreamed(true);
+            jsonParseEvent.setFailure(failure);
+            jsonParseEvent.commit();
+        }
+    }
+
+    private String nextString() throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+
+        return jsonReader.nextString();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+/**
+ * Names of the PlayClient calls, as they're reported to the ClientMetrics
+ */
+public interface Operation {
+
+    public static final String LOGIN = "login";
+    public static final String SEARCH = "search";
+    public static final String GET_PLAY_URI = "getPlayURI";
+    public static final String LOAD_ALL_TRACKS = "loadAllTracks";
+    public static final String LOAD_SONG_TABLE = "loadSongTable";
+    public static final String LOAD_ALL_PLAYLISTS = "loadAllPlaylists";
+}
@@ -20,18 +20,29 @@ package com.faceture.google.play;
 import com.faceture.google.GoogleUtil;
 import com.faceture.google.gson.GsonWrapper;
 import com.faceture.google.play.domain.*;
+import com.faceture.google.play.library.SongTable;
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
 import com.faceture.rest.RestClient;
 import com.faceture.rest.RestResponse;
-import org.apache.http.HttpStatus;
+import com.faceture.rest.RestStreamResponse;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Client for using the Google Play REST API
+ * Client for using the Google Play REST API. A single PlayClient can be shared by many threads and PlaySessions; call
+ * close() when the application is done with it to release its pooled connections.
  */
-public class PlayClient {
+public class PlayClient implements Closeable {
 
     // dependencies
     private RestClient restClient;
@@ -40,10 +51,35 @@ public class PlayClient {
     private GsonWrapper gsonWrapper;
     private PlayDomainFactory playDomainFactory;
     private LoginResponseFactory loginResponseFactory;
+    private PlayEndpoints playEndpoints;
+    private ClientMetrics clientMetrics;
+
+    // helpers
+    private PlayClientUtil playClientUtil;
 
     public PlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
                       GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
                       LoginResponseFactory loginResponseFactory)
+    {
+        this(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory, loginResponseFactory,
+                new PlayEndpoints());
+    }
+
+    public PlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
+                      GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
+                      LoginResponseFactory loginResponseFactory, PlayEndpoints playEndpoints)
+    {
+        this(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory, loginResponseFactory,
+                playEndpoints, new NoOpClientMetrics());
+    }
+
+    /**
+     * @param clientMetrics told how long each call and its parsing took, unless it's disabled
+     */
+    public PlayClient(RestClient restClient, PlaySessionFactory playSessionFactory, GoogleUtil googleUtil,
+                      GsonWrapper gsonWrapper, PlayDomainFactory playDomainFactory,
+                      LoginResponseFactory loginResponseFactory, PlayEndpoints playEndpoints,
+                      ClientMetrics clientMetrics)
     {
         if (null == restClient) {
             throw new IllegalArgumentException("restClient is null");
@@ -63,12 +99,23 @@ public class PlayClient {
         if (null == loginResponseFactory) {
             throw new IllegalArgumentException("loginResponseFactory is null");
         }
+        if (null == playEndpoints) {
+            throw new IllegalArgumentException("playEndpoints is null");
+        }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
         this.restClient = restClient;
         this.playSessionFactory = playSessionFactory;
         this.googleUtil = googleUtil;
         this.gsonWrapper = gsonWrapper;
         this.playDomainFactory = playDomainFactory;
         this.loginResponseFactory = loginResponseFactory;
+        this.playEndpoints = playEndpoints;
+        this.clientMetrics = clientMetrics;
+
+        this.playClientUtil = new PlayClientUtil(playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory);
     }
 
     public LoginResponse login(String emailAddress, String password) throws IOException, URISyntaxException {
@@ -79,75 +126,45 @@ public class PlayClient {
             throw new IllegalArgumentException("password is null or empty");
         }
 
+        long start = startTiming();
+        boolean success = false;
+        try {
+            LoginResponse loginResponse = doLogin(emailAddress, password);
+            success = true;
+            return loginResponse;
+        }
+        finally {
+            recordCall(Operation.LOGIN, start, success);
+        }
+    }
+
+    private LoginResponse doLogin(String emailAddress, String password) throws IOException, URISyntaxException {
         // create the login form
-        Map<String, String> loginForm = new HashMap<String, String>();
-        loginForm.put(FormFieldConst.SERVICE_NAME, FormFieldConst.SERVICE_VALUE);
-        loginForm.put(FormFieldConst.EMAIL_NAME, emailAddress);
-        loginForm.put(FormFieldConst.PASSWORD_NAME, password);
+        Map<String, String> loginForm = playClientUtil.createLoginForm(emailAddress, password);
 
         // do the login to Google
-        RestResponse googleLoginResponse = restClient.doPost(Const.USE_HTTPS, HostName.GOOGLE, Path.GOOGLE_LOGIN,
-                null, null, null, loginForm);
+        RestResponse googleLoginResponse = restClient.doPost(playEndpoints.isHttps(),
+                playEndpoints.getGoogleHostName(), Path.GOOGLE_LOGIN, null, null, null, loginForm);
 
         // make sure the login succeeded
-        int googleLoginSC = googleLoginResponse.getStatusCode();
-        if (googleLoginSC != HttpStatus.SC_OK) {
-            if (HttpStatus.SC_FORBIDDEN == googleLoginSC) {
-                return loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null);
-            }
-            else {
-                return loginResponseFactory.create(LoginResult.FAILURE, null);
-            }
+        LoginResponse googleLoginFailure = playClientUtil.getGoogleLoginFailure(googleLoginResponse);
+        if (googleLoginFailure != null) {
+            return googleLoginFailure;
         }
 
         // the login will pass out auth info we need in the response body
-        String googleLoginResponseBody = googleLoginResponse.getBody();
-        String googleAuthToken = googleUtil.getAuthTokenFromLoginResponse(googleLoginResponseBody);
+        String googleAuthToken = playClientUtil.getAuthToken(googleLoginResponse);
 
-        // setup the play login query params
-        Map<String, String> playLoginQueryParams = new HashMap<String, String>();
-        playLoginQueryParams.put(QueryParamConst.HL_NAME, QueryParamConst.HL_VALUE);
-        playLoginQueryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
-
-        // setup the play login headers
-        String playAuthHeaderValue = googleUtil.createAuthHeaderValue(googleAuthToken);
-        Map<String, String> playLoginRequestHeaders = new HashMap<String, String>();
-        playLoginRequestHeaders.put(HeaderName.AUTHORIZATION, playAuthHeaderValue);
+        // setup the play login query params and headers
+        Map<String, String> playLoginQueryParams = playClientUtil.createPlayLoginQueryParams();
+        Map<String, String> playLoginRequestHeaders = playClientUtil.createAuthHeaders(googleAuthToken);
 
         // do the login to Play
-        RestResponse playLoginResponse = restClient.doPost(Const.USE_HTTPS, HostName.PLAY, Path.MUSIC_LOGIN,
-                playLoginQueryParams, playLoginRequestHeaders, null, null);
-
-        LoginResponse loginResponse;
-
-        switch (playLoginResponse.getStatusCode()) {
-            case HttpStatus.SC_OK:
-                // logging in succeeded
-
-                // get the xt and sjsaid cookies
-                Map<String, String> playLoginResponseCookies = playLoginResponse.getCookies();
-                String xtCookie = playLoginResponseCookies.get(CookieName.XT);
-                String sjsaidCookie = playLoginResponseCookies.get(CookieName.SJSAID);
-
-                PlaySession playSession = playSessionFactory.create(xtCookie, sjsaidCookie, googleAuthToken);
-
-                loginResponse = loginResponseFactory.create(LoginResult.SUCCESS, playSession);
+        RestResponse playLoginResponse = restClient.doPost(playEndpoints.isHttps(),
+                playEndpoints.getPlayHostName(), Path.MUSIC_LOGIN, playLoginQueryParams, playLoginRequestHeaders, null,
+                null);
 
-                break;
-
-            case HttpStatus.SC_FORBIDDEN:
-                // bad credentials
-                loginResponse = loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null);
-
-                break;
-
-            default:
-                // some other status code
-                loginResponse = loginResponseFactory.create(LoginResult.FAILURE, null);
-        }
-
-
-        return loginResponse;
+        return playClientUtil.createPlayLoginResponse(playLoginResponse, googleAuthToken);
     }
 
     public SearchResults search(String query, PlaySession session) throws IOException, URISyntaxException {
@@ -158,38 +175,29 @@ public class PlayClient {
             throw new IllegalArgumentException("session is null");
         }
 
-        // create the URL query params
-        Map<String, String> searchQueryParams = new HashMap<String, String>();
-        searchQueryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
-        searchQueryParams.put(QueryParamConst.XT_NAME, session.getXtCookie());
-
-        // create the HTTP headers
-        Map<String, String> searchRequestHeaders = new HashMap<String, String>();
-        String authHeader = googleUtil.createAuthHeaderValue(session.getAuthToken());
-        searchRequestHeaders.put(HeaderName.AUTHORIZATION, authHeader);
+        long start = startTiming();
+        boolean success = false;
+        try {
+            // create the URL query params, the HTTP headers and the form with the JSON search request
+            Map<String, String> searchQueryParams = playClientUtil.createSessionQueryParams(session);
+            Map<String, String> searchRequestHeaders = playClientUtil.createAuthHeaders(session.getAuthToken());
+            Map<String, String> searchForm = playClientUtil.createSearchForm(query);
 
-        // create the JSON search request
-        SearchRequest searchRequest = playDomainFactory.createSearchRequest(query);
-        String searchJson = gsonWrapper.toJson(searchRequest);
-
-        // create the form
-        Map<String, String> searchForm = new HashMap<String, String>();
-        searchForm.put(FormFieldConst.JSON_NAME, searchJson);
+            // do the POST
+            RestResponse restResponse = restClient.doPost(playEndpoints.isHttps(), playEndpoints.getPlayHostName(),
+                    Path.MUSIC_SEARCH, searchQueryParams, searchRequestHeaders, null, searchForm,
+                    session.getAuthToken());
 
-        // do the POST
-        RestResponse restResponse = restClient.doPost(Const.USE_HTTPS, HostName.PLAY, Path.MUSIC_SEARCH,
-                searchQueryParams, searchRequestHeaders, null, searchForm);
+            long parseStart = startTiming();
+            SearchResults searchResults = playClientUtil.getSearchResults(restResponse);
+            recordParse(Path.MUSIC_SEARCH, parseStart);
 
-        if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
-            throw new IllegalStateException("Bad status: " + restResponse.getStatusCode() + " response body: " +
-                    restResponse.getBody());
+            success = true;
+            return searchResults;
+        }
+        finally {
+            recordCall(Operation.SEARCH, start, success);
         }
-
-        // the results will come back in the body
-        String jsonResponse = restResponse.getBody();
-        SearchResponse searchResponse = gsonWrapper.fromJson(jsonResponse, SearchResponse.class);
-
-        return searchResponse.getResults();
     }
 
     public URI getPlayURI(String songId, PlaySession playSession) throws IOException, URISyntaxException {
@@ -200,103 +208,257 @@ public class PlayClient {
             throw new IllegalArgumentException("playSession is null");
         }
 
-        // setup the HTTP query params
-        Map<String, String> queryParams = new HashMap<String, String>();
-        queryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
-        queryParams.put(QueryParamConst.PT_NAME, QueryParamConst.PT_VALUE);
-        queryParams.put(QueryParamConst.SONG_ID_NAME, songId);
-
-        // setup the request headers
-        String authHeader = googleUtil.createAuthHeaderValue(playSession.getAuthToken());
+        long start = startTiming();
+        boolean success = false;
+        try {
+            // setup the HTTP query params, the request headers and the cookies
+            Map<String, String> queryParams = playClientUtil.createPlayQueryParams(songId);
+            Map<String, String> requestHeaders = playClientUtil.createAuthHeaders(playSession.getAuthToken());
+            Map<String, String> cookies = playClientUtil.createSessionCookies(playSession);
 
-        Map<String, String> requestHeaders = new HashMap<String, String>();
-        requestHeaders.put(HeaderName.AUTHORIZATION, authHeader);
+            // do the call
+            RestResponse restResponse = restClient.doGet(playEndpoints.isHttps(), playEndpoints.getPlayHostName(),
+                    Path.MUSIC_PLAY, queryParams, requestHeaders, cookies, playSession.getAuthToken());
 
-        // setup the cookies
-        Map<String, String> cookies = new HashMap<String, String>();
-        cookies.put(CookieName.SJSAID, playSession.getSjsaidCookie());
-        cookies.put(CookieName.XT, playSession.getXtCookie());
+            long parseStart = startTiming();
+            URI playURI = playClientUtil.getPlayURI(restResponse);
+            recordParse(Path.MUSIC_PLAY, parseStart);
 
-        // do the call
-        RestResponse restResponse = restClient.doGet(Const.USE_HTTPS, HostName.PLAY, Path.MUSIC_PLAY,
-                queryParams, requestHeaders, cookies);
+            success = true;
+            return playURI;
+        }
+        finally {
+            recordCall(Operation.GET_PLAY_URI, start, success);
+        }
+    }
 
-        if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
-            throw new IllegalStateException("Bad status: " + restResponse.getStatusCode() + " response body: " +
-                    restResponse.getBody());
+    public Collection<Song> loadAllTracks(PlaySession session) throws IOException, URISyntaxException {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
         }
 
-        // the response will be JSON in the body
-        String jsonResponse = restResponse.getBody();
-        StreamingUrl streamingUrl = gsonWrapper.fromJson(jsonResponse, StreamingUrl.class);
+        final List<Song> songs = new ArrayList<Song>();
+
+        loadAllTracks(session, songs::add);
 
-        return new URI(streamingUrl.getUrl());
+        return songs;
     }
 
-    public Collection<Song> loadAllTracks(PlaySession session) throws IOException, URISyntaxException {
+    /**
+     * Streams all of the tracks in the user's collection to the given consumer as they are parsed. No page of tracks
+     * is ever held in memory, which keeps the heap flat for very large collections.
+     * @param session the session of the user whose tracks to load
+     * @param songConsumer called with each song, in order, on the calling thread
+     */
+    public void loadAllTracks(PlaySession session, Consumer<Song> songConsumer)
+            throws IOException, URISyntaxException
+    {
         if (null == session) {
             throw new IllegalArgumentException("session is null");
         }
+        if (null == songConsumer) {
+            throw new IllegalArgumentException("songConsumer is null");
+        }
 
-        // create the URL query params
-        Map<String, String> loadAllTracksQueryParams = new HashMap<String, String>();
-        loadAllTracksQueryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
-        loadAllTracksQueryParams.put(QueryParamConst.XT_NAME, session.getXtCookie());
-
-        // create the HTTP headers
-        Map<String, String> loadAllTracksHeaders = new HashMap<String, String>();
-        String authHeader = googleUtil.createAuthHeaderValue(session.getAuthToken());
-        loadAllTracksHeaders.put(HeaderName.AUTHORIZATION, authHeader);
+        long start = startTiming();
+        boolean success = false;
+        try (LoadAllTracksIterator loadAllTracksIterator = iterateAllTracks(session)) {
+            // hand each song over as soon as it's parsed
+            Song song;
+            while ((song = loadAllTracksIterator.nextSong()) != null) {
+                songConsumer.accept(song);
+            }
+            success = true;
+        }
+        finally {
+            recordCall(Operation.LOAD_ALL_TRACKS, start, success);
+        }
+    }
 
-        // create the JSON request
-        LoadAllTracksRequest loadAllTracksRequest = playDomainFactory.createLoadAllTracksRequest();
-        String loadAllTracksJson = gsonWrapper.toJson(loadAllTracksRequest);
+    /**
+     * Loads all of the tracks in the user's collection into a SongTable. The songs are read from the response stream
+     * straight into the table's columns, so no Song objects are created along the way.
+     * @param session the session of the user whose tracks to load
+     */
+    public SongTable loadSongTable(PlaySession session) throws IOException, URISyntaxException {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
 
-        // create the form
-        Map<String, String> form = new HashMap<String, String>();
-        form.put(FormFieldConst.JSON_NAME, loadAllTracksJson);
+        long start = startTiming();
+        boolean success = false;
+        try {
+            LoadAllTracksPageSource pageSource = createLoadAllTracksPageSource(session);
+            SongTable.Builder songTableBuilder = new SongTable.Builder();
 
-        boolean continueLoading = true;
-        List<Song> songs = new ArrayList<Song>();
+            String continuationToken = null;
+            do {
+                continuationToken = loadSongTablePage(pageSource, continuationToken, songTableBuilder);
+            } while (continuationToken != null);
 
-        do {
-            // do the POST
-            RestResponse restResponse = restClient.doPost(Const.USE_HTTPS, HostName.PLAY, Path.MUSIC_LOAD_ALL_TRACKS,
-                    loadAllTracksQueryParams, loadAllTracksHeaders, null, form);
+            SongTable songTable = songTableBuilder.build();
+            success = true;
+            return songTable;
+        }
+        finally {
+            recordCall(Operation.LOAD_SONG_TABLE, start, success);
+        }
+    }
 
-            if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
-                throw new IllegalStateException("Bad status: " + restResponse.getStatusCode() + " response body: " +
-                        restResponse.getBody());
+    /**
+     * Reads one page of tracks into the builder. A page that breaks off part way through is loaded again, if the
+     * RequestRetrier allows, and the songs already in the builder are skipped.
+     * @return the token of the next page, or null if that was the last one
+     */
+    private String loadSongTablePage(LoadAllTracksPageSource pageSource, String continuationToken,
+                                     SongTable.Builder songTableBuilder) throws IOException, URISyntaxException
+    {
+        RequestRetrier requestRetrier = restClient.getRequestRetrier();
+        int pageSongCount = 0;
+        int attempts = 1;
+        while (true) {
+            RestStreamResponse response = pageSource.openPage(continuationToken);
+            boolean pageFinished = false;
+            try {
+                LoadAllTracksReader loadAllTracksReader = playClientUtil.createLoadAllTracksReader(response);
+                loadAllTracksReader.skipSongs(pageSongCount);
+                while (loadAllTracksReader.nextSong(songTableBuilder)) {
+                    // the songs go straight into the builder
+                    pageSongCount++;
+                }
+                pageFinished = true;
+                return loadAllTracksReader.getContinuationToken();
+            }
+            catch (IOException e) {
+                if (!requestRetrier.backOff(Path.MUSIC_LOAD_ALL_TRACKS, attempts++, e)) {
+                    throw e;
+                }
+            }
+            finally {
+                // don't drain the rest of a page that failed
+                if (!pageFinished) {
+                    response.abort();
+                }
+                response.close();
             }
+        }
+    }
 
-            // the results will come back in the body
-            String jsonResponse = restResponse.getBody();
-            LoadAllTracksResponse loadAllTracksResponse = gsonWrapper.fromJson(jsonResponse, LoadAllTracksResponse.class);
+    /**
+     * Iterates over all of the tracks in the user's collection, loading each page only when the iteration reaches it.
+     * The iterator must be closed, which aborts the open page if the iteration stopped early.
+     * @param session the session of the user whose tracks to load
+     */
+    public LoadAllTracksIterator iterateAllTracks(PlaySession session) {
+        return iterateAllTracks(session, null);
+    }
 
-            // get the songs from the response and add them to the list
-            songs.addAll(loadAllTracksResponse.getPlaylist());
+    /**
+     * Iterates over the user's tracks starting at the page of the given continuation token, for picking up from a
+     * checkpoint. See LoadAllTracksIterator.getPageContinuationToken().
+     * @param session the session of the user whose tracks to load
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     */
+    public LoadAllTracksIterator iterateAllTracks(PlaySession session, String continuationToken) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
 
-            String continuationToken = loadAllTracksResponse.getContinuationToken();
+        return new LoadAllTracksIterator(createLoadAllTracksPageSource(session), playClientUtil, continuationToken,
+                restClient.getRequestRetrier());
+    }
 
-            if (continuationToken != null && !continuationToken.isEmpty()) {
-                // we need to continue loading
+    /**
+     * Iterates over the tracks added, changed or deleted since an earlier load. Deleted tracks come back with deleted
+     * set. The server may refuse and send the whole collection instead, which the iterator's isDifferentialUpdate()
+     * tells once the first page has been read. See LibrarySync for keeping a local copy of the collection up to date.
+     * @param session the session of the user whose tracks to load
+     * @param lastRequestTime the requestTime of the earlier load
+     */
+    public LoadAllTracksIterator iterateTrackChanges(PlaySession session, double lastRequestTime) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
 
-                // create the new request form
-                loadAllTracksRequest = playDomainFactory.createLoadAllTracksRequest(continuationToken);
-                loadAllTracksJson = gsonWrapper.toJson(loadAllTracksRequest);
+        LoadAllTracksPageSource pageSource = createLoadAllTracksPageSource(session,
+                continuationToken -> playClientUtil.createLoadAllTracksForm(continuationToken, lastRequestTime));
 
-                form = new HashMap<String, String>();
-                form.put(FormFieldConst.JSON_NAME, loadAllTracksJson);
-            }
-            else {
-                // we're done
-                continueLoading = false;
-            }
+        return new LoadAllTracksIterator(pageSource, playClientUtil, null, restClient.getRequestRetrier());
+    }
 
-        } while(continueLoading);
+    /**
+     * Iterates over the user's tracks with the pages loaded in the background, so the next page is downloading while
+     * the current one is being read. The iterator must be closed, which aborts whatever is still being loaded.
+     * @param session the session of the user whose tracks to load
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     * @param prefetchConfig how far ahead to load and how many songs to buffer
+     */
+    public PrefetchingLoadAllTracksIterator iterateAllTracks(PlaySession session, String continuationToken,
+                                                             PrefetchConfig prefetchConfig)
+    {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
 
+        return new PrefetchingLoadAllTracksIterator(createLoadAllTracksPageSource(session), playClientUtil,
+                continuationToken, prefetchConfig, restClient.getRequestRetrier());
+    }
 
-        return songs;
+    /**
+     * Lazily streams all of the tracks in the user's collection, loading each page only when the stream reaches it.
+     * Close the stream (try-with-resources) to abort the open page when stopping early, e.g. after limit().
+     * I/O failures while reading are thrown as UncheckedIOException.
+     * @param session the session of the user whose tracks to load
+     */
+    public Stream<Song> streamAllTracks(PlaySession session) {
+        LoadAllTracksIterator loadAllTracksIterator = iterateAllTracks(session);
+
+        return createStream(loadAllTracksIterator, loadAllTracksIterator);
+    }
+
+    /**
+     * Streams all of the tracks in the user's collection with the pages loaded in the background. Close the stream
+     * when done with it.
+     * @param session the session of the user whose tracks to load
+     * @param prefetchConfig how far ahead to load and how many songs to buffer
+     */
+    public Stream<Song> streamAllTracks(PlaySession session, PrefetchConfig prefetchConfig) {
+        PrefetchingLoadAllTracksIterator loadAllTracksIterator = iterateAllTracks(session, null, prefetchConfig);
+
+        return createStream(loadAllTracksIterator, loadAllTracksIterator);
+    }
+
+    private static Stream<Song> createStream(Iterator<Song> songIterator, final Closeable closeable) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(songIterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        closeable.close();
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private LoadAllTracksPageSource createLoadAllTracksPageSource(PlaySession session) {
+        return createLoadAllTracksPageSource(session, playClientUtil::createLoadAllTracksForm);
+    }
+
+    /**
+     * @param createForm creates the form of the page of the given continuation token
+     */
+    private LoadAllTracksPageSource createLoadAllTracksPageSource(PlaySession session,
+                                                                  Function<String, Map<String, String>> createForm)
+    {
+        // create the URL query params and the HTTP headers, these are the same for every page
+        final Map<String, String> loadAllTracksQueryParams = playClientUtil.createSessionQueryParams(session);
+        final Map<String, String> loadAllTracksHeaders = playClientUtil.createAuthHeaders(session.getAuthToken());
+
+        // every page, and every attempt at one, waits for the session's rate limit
+        return continuationToken -> restClient.doStreamingPost(playEndpoints.isHttps(), playEndpoints.getPlayHostName(),
+                Path.MUSIC_LOAD_ALL_TRACKS, loadAllTracksQueryParams, loadAllTracksHeaders, null,
+                createForm.apply(continuationToken), session.getAuthToken());
     }
 
     public Collection<Playlist> loadAllPlaylists(PlaySession session) throws IOException, URISyntaxException {
@@ -304,36 +466,55 @@ public class PlayClient {
             throw new IllegalArgumentException("session is null");
         }
 
-        // create the URL query params
-        Map<String, String> loadAllPlaylistsQueryParams = new HashMap<String, String>();
-        loadAllPlaylistsQueryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
-        loadAllPlaylistsQueryParams.put(QueryParamConst.XT_NAME, session.getXtCookie());
+        long start = startTiming();
+        boolean success = false;
+        try {
+            // create the URL query params and the HTTP headers
+            Map<String, String> loadAllPlaylistsQueryParams = playClientUtil.createSessionQueryParams(session);
+            Map<String, String> loadAllPlaylistsHeaders = playClientUtil.createAuthHeaders(session.getAuthToken());
 
-        // create the HTTP headers
-        Map<String, String> loadAllPlaylistsHeaders = new HashMap<String, String>();
-        String authHeader = googleUtil.createAuthHeaderValue(session.getAuthToken());
-        loadAllPlaylistsHeaders.put(HeaderName.AUTHORIZATION, authHeader);
+            // create the form
+            Map<String, String> form = playClientUtil.createJsonForm(Const.EMPTY_JSON);
 
-        // create the form
-        Map<String, String> form = new HashMap<String, String>();
-        form.put(FormFieldConst.JSON_NAME, Const.EMPTY_JSON);
+            // do the POST
+            RestResponse restResponse = restClient.doPost(playEndpoints.isHttps(), playEndpoints.getPlayHostName(),
+                    Path.MUSIC_LOAD_PLAYLIST, loadAllPlaylistsQueryParams, loadAllPlaylistsHeaders, null, form,
+                    session.getAuthToken());
 
-        // do the POST
-        RestResponse restResponse = restClient.doPost(Const.USE_HTTPS, HostName.PLAY, Path.MUSIC_LOAD_PLAYLIST,
-                    loadAllPlaylistsQueryParams, loadAllPlaylistsHeaders, null, form);
+            long parseStart = startTiming();
+            Collection<Playlist> playlists = playClientUtil.getPlaylists(restResponse);
+            recordParse(Path.MUSIC_LOAD_PLAYLIST, parseStart);
 
-        if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
-            throw new IllegalStateException("Bad status: " + restResponse.getStatusCode() + " response body: " +
-                    restResponse.getBody());
+            success = true;
+            return playlists;
+        }
+        finally {
+            recordCall(Operation.LOAD_ALL_PLAYLISTS, start, success);
         }
+    }
 
-        // parse the response
-        String responseBody = restResponse.getBody();
+    // the clock is only read when the metrics are on
+    private long startTiming() {
+        return clientMetrics.isEnabled() ? System.nanoTime() : 0;
+    }
 
-        LoadAllPlaylistsResponse loadAllPlaylistsResponse = gsonWrapper.fromJson(responseBody, LoadAllPlaylistsResponse.class);
+    private void recordCall(String operation, long start, boolean success) {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordCall(operation, System.nanoTime() - start, success);
+        }
+    }
 
-        return loadAllPlaylistsResponse.getPlaylists();
+    private void recordParse(String path, long start) {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordParse(path, System.nanoTime() - start);
+        }
     }
 
+    /**
+     * Releases the pooled HTTP connections. The PlayClient can't be used after this has been called.
+     */
+    public void close() {
+        restClient.close();
+    }
 
 }
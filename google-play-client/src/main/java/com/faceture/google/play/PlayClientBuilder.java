@@ -19,38 +19,243 @@ package com.faceture.google.play;
 
 import com.faceture.google.GoogleUtil;
 import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.gson.StringInterner;
 import com.faceture.google.play.domain.PlayDomainFactory;
+import com.faceture.google.play.domain.SongCounter;
+import com.faceture.google.play.gson.PlayTypeAdapterFactory;
+import com.faceture.http.ConnectionPoolConfig;
 import com.faceture.http.HttpClientFactory;
 import com.faceture.http.HttpUtil;
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimiter;
+import com.faceture.ratelimit.RateLimiterConfig;
+import com.faceture.rest.BulkheadConfig;
+import com.faceture.rest.CircuitBreakerConfig;
+import com.faceture.rest.EndpointGuard;
+import com.faceture.rest.HedgePolicy;
+import com.faceture.rest.RequestHedger;
+import com.faceture.rest.RequestRetrier;
 import com.faceture.rest.RestClient;
 import com.faceture.rest.RestClientUtil;
 import com.faceture.rest.RestResponseFactory;
+import com.faceture.rest.RetryPolicy;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Builds PlayClients
+ * Builds PlayClients and AsyncPlayClients. Everything has a default, so new PlayClientBuilder().create() gives a
+ * client of Google Play with retries and nothing else; the with methods change one setting each and can be chained,
+ * e.g. new PlayClientBuilder().withMetrics(clientMetrics).withHedgePolicy(hedgePolicy).create().
  */
 public class PlayClientBuilder {
 
+    /**
+     * The Play POSTs that only read, so they can be sent again. The logins aren't among them.
+     */
+    public static final Set<String> READ_ONLY_POST_PATHS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList(Path.MUSIC_SEARCH, Path.MUSIC_LOAD_ALL_TRACKS, Path.MUSIC_LOAD_PLAYLIST)));
+
+    /**
+     * The Play GETs that are worth hedging, because a user is waiting on them to start playing a song
+     */
+    public static final Set<String> HEDGED_GET_PATHS = Collections.singleton(Path.MUSIC_PLAY);
+
+    private ConnectionPoolConfig connectionPoolConfig = new ConnectionPoolConfig();
+    private HttpClientFactory httpClientFactory;
+    private PlayEndpoints playEndpoints = new PlayEndpoints();
+    private ClientMetrics clientMetrics = new NoOpClientMetrics();
+    private RetryPolicy retryPolicy = new RetryPolicy(READ_ONLY_POST_PATHS);
+    private CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.DISABLED;
+    private BulkheadConfig bulkheadConfig = BulkheadConfig.UNBOUNDED;
+    private RateLimiterConfig rateLimiterConfig = RateLimiterConfig.UNLIMITED;
+    private HedgePolicy hedgePolicy = HedgePolicy.NONE;
+
+    /**
+     * @param connectionPoolConfig the settings of the connection pool each client gets
+     */
+    public PlayClientBuilder withConnectionPoolConfig(ConnectionPoolConfig connectionPoolConfig) {
+        if (null == connectionPoolConfig) {
+            throw new IllegalArgumentException("connectionPoolConfig is null");
+        }
+
+        this.connectionPoolConfig = connectionPoolConfig;
+        this.httpClientFactory = null;
+        return this;
+    }
+
+    /**
+     * @param httpClientFactory owns the connection pool, so the caller can watch it, e.g. when load testing. It takes
+     *                          the place of the ConnectionPoolConfig, and the client shuts it down when it's closed,
+     *                          so it's only good for one client.
+     */
+    public PlayClientBuilder withHttpClientFactory(HttpClientFactory httpClientFactory) {
+        if (null == httpClientFactory) {
+            throw new IllegalArgumentException("httpClientFactory is null");
+        }
+
+        this.httpClientFactory = httpClientFactory;
+        return this;
+    }
+
+    /**
+     * @param playEndpoints where to send the requests, e.g. a local stub server
+     */
+    public PlayClientBuilder withEndpoints(PlayEndpoints playEndpoints) {
+        if (null == playEndpoints) {
+            throw new IllegalArgumentException("playEndpoints is null");
+        }
+
+        this.playEndpoints = playEndpoints;
+        return this;
+    }
+
+    /**
+     * @param clientMetrics where the timings of the requests and calls go, e.g. an InMemoryClientMetrics. Nothing is
+     *                      timed by default.
+     */
+    public PlayClientBuilder withMetrics(ClientMetrics clientMetrics) {
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
+
+        this.clientMetrics = clientMetrics;
+        return this;
+    }
+
+    /**
+     * @param retryPolicy when the PlayClient sends a failed request again, e.g. RetryPolicy.NONE to never do so. By
+     *                    default the GETs and READ_ONLY_POST_PATHS are retried.
+     */
+    public PlayClientBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+        if (null == retryPolicy) {
+            throw new IllegalArgumentException("retryPolicy is null");
+        }
+
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * @param circuitBreakerConfig the settings of the PlayClient's circuit breaker for each Path, e.g.
+     *                             new CircuitBreakerConfig(). CircuitBreakerConfig.DISABLED by default.
+     */
+    public PlayClientBuilder withCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        if (null == circuitBreakerConfig) {
+            throw new IllegalArgumentException("circuitBreakerConfig is null");
+        }
+
+        this.circuitBreakerConfig = circuitBreakerConfig;
+        return this;
+    }
+
+    /**
+     * @param bulkheadConfig the settings of the PlayClient's bulkhead for each Path, e.g. new BulkheadConfig().
+     *                       BulkheadConfig.UNBOUNDED by default.
+     */
+    public PlayClientBuilder withBulkheadConfig(BulkheadConfig bulkheadConfig) {
+        if (null == bulkheadConfig) {
+            throw new IllegalArgumentException("bulkheadConfig is null");
+        }
+
+        this.bulkheadConfig = bulkheadConfig;
+        return this;
+    }
+
+    /**
+     * @param rateLimiterConfig how fast each session and each Path may send requests. RateLimiterConfig.UNLIMITED by
+     *                          default.
+     */
+    public PlayClientBuilder withRateLimiterConfig(RateLimiterConfig rateLimiterConfig) {
+        if (null == rateLimiterConfig) {
+            throw new IllegalArgumentException("rateLimiterConfig is null");
+        }
+
+        this.rateLimiterConfig = rateLimiterConfig;
+        return this;
+    }
+
+    /**
+     * @param hedgePolicy which GETs the PlayClient sends a second copy of when the first is slow, e.g.
+     *                    new HedgePolicy(HEDGED_GET_PATHS). HedgePolicy.NONE by default.
+     */
+    public PlayClientBuilder withHedgePolicy(HedgePolicy hedgePolicy) {
+        if (null == hedgePolicy) {
+            throw new IllegalArgumentException("hedgePolicy is null");
+        }
+
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
     public PlayClient create() {
         // create all of the dependencies
-        HttpClientFactory httpClientFactory = new HttpClientFactory();
+        HttpClientFactory httpClientFactory = getHttpClientFactory();
         HttpUtil httpUtil = new HttpUtil(httpClientFactory);
         RestResponseFactory restResponseFactory = new RestResponseFactory();
-        RestClientUtil restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory);
+        RestClientUtil restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory,
+                clientMetrics);
 
-        RestClient restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil);
+        // each attempt, including the retries, takes a token from the rate limiter
+        RestClient restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil,
+                new RequestRetrier(retryPolicy, clientMetrics),
+                new EndpointGuard(circuitBreakerConfig, bulkheadConfig, clientMetrics),
+                new RequestHedger(hedgePolicy, clientMetrics), new RateLimiter(rateLimiterConfig, clientMetrics));
         PlaySessionFactory playSessionFactory = new PlaySessionFactory();
         GoogleUtil googleUtil = new GoogleUtil();
-        Gson gson = new Gson();
-        GsonWrapper gsonWrapper = new GsonWrapper(gson);
+        GsonWrapper gsonWrapper = new GsonWrapper(createGson(), new SongCounter());
         PlayDomainFactory playDomainFactory = new PlayDomainFactory();
         LoginResponseFactory loginResponseFactory = new LoginResponseFactory();
 
         // create the PlayClient
         PlayClient playClient = new PlayClient(restClient, playSessionFactory, googleUtil,
-                      gsonWrapper, playDomainFactory, loginResponseFactory);
+                      gsonWrapper, playDomainFactory, loginResponseFactory, playEndpoints, clientMetrics);
 
         return playClient;
     }
+
+    /**
+     * The AsyncPlayClient is meant to have many calls in flight, so it's built without the RetryPolicy, the circuit
+     * breakers, the bulkheads and the HedgePolicy. The requests held back by the RateLimiterConfig wait on its
+     * scheduler.
+     */
+    public AsyncPlayClient createAsync() {
+        // create all of the dependencies
+        HttpClientFactory httpClientFactory = getHttpClientFactory();
+        HttpUtil httpUtil = new HttpUtil(httpClientFactory);
+        RestResponseFactory restResponseFactory = new RestResponseFactory();
+        RestClientUtil restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory,
+                clientMetrics);
+
+        RestClient restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil);
+        PlaySessionFactory playSessionFactory = new PlaySessionFactory();
+        GoogleUtil googleUtil = new GoogleUtil();
+        GsonWrapper gsonWrapper = new GsonWrapper(createGson(), new SongCounter());
+        PlayDomainFactory playDomainFactory = new PlayDomainFactory();
+        LoginResponseFactory loginResponseFactory = new LoginResponseFactory();
+
+        // responses are parsed on the common pool, not on the HTTP reactor threads
+        AsyncPlayClient asyncPlayClient = new AsyncPlayClient(restClient, playSessionFactory, googleUtil,
+                gsonWrapper, playDomainFactory, loginResponseFactory, ForkJoinPool.commonPool(), playEndpoints,
+                new RateLimiter(rateLimiterConfig, clientMetrics));
+
+        return asyncPlayClient;
+    }
+
+    private HttpClientFactory getHttpClientFactory() {
+        return null == httpClientFactory ? new HttpClientFactory(connectionPoolConfig) : httpClientFactory;
+    }
+
+    private Gson createGson() {
+        // the responses are parsed by hand-written adapters, which also share the repeated fields of the songs
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new PlayTypeAdapterFactory(new StringInterner()))
+                .create();
+    }
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.*;
+import com.faceture.rest.RestResponse;
+import com.faceture.rest.RestStreamResponse;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helper for the PlayClient and the AsyncPlayClient. Builds the query params, headers, cookies and forms for the
+ * Play REST calls and maps the RestResponses back to Play domain objects, so both clients talk to Google the same way.
+ */
+public class PlayClientUtil {
+
+    // dependencies
+    private PlaySessionFactory playSessionFactory;
+    private GoogleUtil googleUtil;
+    private GsonWrapper gsonWrapper;
+    private PlayDomainFactory playDomainFactory;
+    private LoginResponseFactory loginResponseFactory;
+
+    public PlayClientUtil(PlaySessionFactory playSessionFactory, GoogleUtil googleUtil, GsonWrapper gsonWrapper,
+                          PlayDomainFactory playDomainFactory, LoginResponseFactory loginResponseFactory)
+    {
+        if (null == playSessionFactory) {
+            throw new IllegalArgumentException("playSessionFactory is null");
+        }
+        if (null == googleUtil) {
+            throw new IllegalArgumentException("googleUtil is null");
+        }
+        if (null == gsonWrapper) {
+            throw new IllegalArgumentException("gsonWrapper is null");
+        }
+        if (null == playDomainFactory) {
+            throw new IllegalArgumentException("playDomainFactory is null");
+        }
+        if (null == loginResponseFactory) {
+            throw new IllegalArgumentException("loginResponseFactory is null");
+        }
+        this.playSessionFactory = playSessionFactory;
+        this.googleUtil = googleUtil;
+        this.gsonWrapper = gsonWrapper;
+        this.playDomainFactory = playDomainFactory;
+        this.loginResponseFactory = loginResponseFactory;
+    }
+
+    public Map<String, String> createLoginForm(String emailAddress, String password) {
+        if (null == emailAddress || emailAddress.isEmpty()) {
+            throw new IllegalArgumentException("emailAddress is null or empty");
+        }
+        if (null == password || password.isEmpty()) {
+            throw new IllegalArgumentException("password is null or empty");
+        }
+
+        Map<String, String> loginForm = new HashMap<String, String>();
+        loginForm.put(FormFieldConst.SERVICE_NAME, FormFieldConst.SERVICE_VALUE);
+        loginForm.put(FormFieldConst.EMAIL_NAME, emailAddress);
+        loginForm.put(FormFieldConst.PASSWORD_NAME, password);
+
+        return loginForm;
+    }
+
+    /**
+     * @param googleLoginResponse the response from the login to Google
+     * @return the failed LoginResponse to return to the caller, or null if the login to Google succeeded
+     */
+    public LoginResponse getGoogleLoginFailure(RestResponse googleLoginResponse) {
+        if (null == googleLoginResponse) {
+            throw new IllegalArgumentException("googleLoginResponse is null");
+        }
+
+        int googleLoginSC = googleLoginResponse.getStatusCode();
+        if (googleLoginSC != HttpStatus.SC_OK) {
+            if (HttpStatus.SC_FORBIDDEN == googleLoginSC) {
+                return loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null);
+            }
+            else {
+                return loginResponseFactory.create(LoginResult.FAILURE, null);
+            }
+        }
+
+        return null;
+    }
+
+    public String getAuthToken(RestResponse googleLoginResponse) {
+        if (null == googleLoginResponse) {
+            throw new IllegalArgumentException("googleLoginResponse is null");
+        }
+
+        // the login will pass out auth info we need in the response body
+        return googleUtil.getAuthTokenFromLoginResponse(googleLoginResponse.getBody());
+    }
+
+    public Map<String, String> createPlayLoginQueryParams() {
+        Map<String, String> playLoginQueryParams = new HashMap<String, String>();
+        playLoginQueryParams.put(QueryParamConst.HL_NAME, QueryParamConst.HL_VALUE);
+        playLoginQueryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
+
+        return playLoginQueryParams;
+    }
+
+    public LoginResponse createPlayLoginResponse(RestResponse playLoginResponse, String authToken) {
+        if (null == playLoginResponse) {
+            throw new IllegalArgumentException("playLoginResponse is null");
+        }
+
+        LoginResponse loginResponse;
+
+        switch (playLoginResponse.getStatusCode()) {
+            case HttpStatus.SC_OK:
+                // logging in succeeded
+
+                // get the xt and sjsaid cookies
+                Map<String, String> playLoginResponseCookies = playLoginResponse.getCookies();
+                String xtCookie = playLoginResponseCookies.get(CookieName.XT);
+                String sjsaidCookie = playLoginResponseCookies.get(CookieName.SJSAID);
+
+                PlaySession playSession = playSessionFactory.create(xtCookie, sjsaidCookie, authToken);
+
+                loginResponse = loginResponseFactory.create(LoginResult.SUCCESS, playSession);
+
+                break;
+
+            case HttpStatus.SC_FORBIDDEN:
+                // bad credentials
+                loginResponse = loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null);
+
+                break;
+
+            default:
+                // some other status code
+                loginResponse = loginResponseFactory.create(LoginResult.FAILURE, null);
+        }
+
+        return loginResponse;
+    }
+
+    public Map<String, String> createAuthHeaders(String authToken) {
+        // the auth token is checked by GoogleUtil
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HeaderName.AUTHORIZATION, googleUtil.createAuthHeaderValue(authToken));
+
+        return headers;
+    }
+
+    public Map<String, String> createSessionQueryParams(PlaySession session) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        Map<String, String> queryParams = new HashMap<String, String>();
+        queryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
+        queryParams.put(QueryParamConst.XT_NAME, session.getXtCookie());
+
+        return queryParams;
+    }
+
+    public Map<String, String> createPlayQueryParams(String songId) {
+        if (null == songId || songId.isEmpty()) {
+            throw new IllegalArgumentException("songId is null or empty");
+        }
+
+        Map<String, String> queryParams = new HashMap<String, String>();
+        queryParams.put(QueryParamConst.U_NAME, QueryParamConst.U_VALUE);
+        queryParams.put(QueryParamConst.PT_NAME, QueryParamConst.PT_VALUE);
+        queryParams.put(QueryParamConst.SONG_ID_NAME, songId);
+
+        return queryParams;
+    }
+
+    public Map<String, String> createSessionCookies(PlaySession session) {
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        Map<String, String> cookies = new HashMap<String, String>();
+        cookies.put(CookieName.SJSAID, session.getSjsaidCookie());
+        cookies.put(CookieName.XT, session.getXtCookie());
+
+        return cookies;
+    }
+
+    public Map<String, String> createJsonForm(String json) {
+        Map<String, String> form = new HashMap<String, String>();
+        form.put(FormFieldConst.JSON_NAME, json);
+
+        return form;
+    }
+
+    public Map<String, String> createSearchForm(String query) {
+        if (null == query || query.isEmpty()) {
+            throw new IllegalArgumentException("query is null or empty");
+        }
+
+        SearchRequest searchRequest = playDomainFactory.createSearchRequest(query);
+
+        return createJsonForm(gsonWrapper.toJson(searchRequest));
+    }
+
+    /**
+     * @param continuationToken the token of the page to load, null or empty for the first page
+     * @return the form to POST to load the page of tracks
+     */
+    public Map<String, String> createLoadAllTracksForm(String continuationToken) {
+        LoadAllTracksRequest loadAllTracksRequest;
+        if (continuationToken != null && !continuationToken.isEmpty()) {
+            loadAllTracksRequest = playDomainFactory.createLoadAllTracksRequest(continuationToken);
+        }
+        else {
+            loadAllTracksRequest = playDomainFactory.createLoadAllTracksRequest();
+        }
+
+        return createJsonForm(gsonWrapper.toJson(loadAllTracksRequest));
+    }
+
+    /**
+     * @param continuationToken the token of the page to load, null or empty for the first page
+     * @param lastRequestTime the requestTime of the earlier load to get the changes since
+     * @return the form to POST to load the page of changed tracks
+     */
+    public Map<String, String> createLoadAllTracksForm(String continuationToken, double lastRequestTime) {
+        String token = continuationToken != null && !continuationToken.isEmpty() ? continuationToken : null;
+
+        return createJsonForm(gsonWrapper.toJson(playDomainFactory.createLoadAllTracksRequest(token,
+                lastRequestTime)));
+    }
+
+    public void checkStatus(RestResponse restResponse) {
+        if (null == restResponse) {
+            throw new IllegalArgumentException("restResponse is null");
+        }
+
+        if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
+            throw createBadStatusException(restResponse.getStatusCode(), restResponse.getBody());
+        }
+    }
+
+    /**
+     * Checks the status of a streamed response. When it's bad the body is read for the error message and the response
+     * is closed.
+     */
+    public void checkStatus(RestStreamResponse restStreamResponse) throws IOException {
+        if (null == restStreamResponse) {
+            throw new IllegalArgumentException("restStreamResponse is null");
+        }
+
+        if (restStreamResponse.getStatusCode() != HttpStatus.SC_OK) {
+            String body;
+            try {
+                body = restStreamResponse.readBody();
+            }
+            finally {
+                restStreamResponse.close();
+            }
+
+            throw createBadStatusException(restStreamResponse.getStatusCode(), body);
+        }
+    }
+
+    /**
+     * @return a SessionExpiredException for 401 and 403, so that callers can log in again, otherwise an
+     * IllegalStateException
+     */
+    private IllegalStateException createBadStatusException(int statusCode, String body) {
+        String message = "Bad status: " + statusCode + " response body: " + body;
+
+        if (HttpStatus.SC_UNAUTHORIZED == statusCode || HttpStatus.SC_FORBIDDEN == statusCode) {
+            return new SessionExpiredException(statusCode, message);
+        }
+
+        return new IllegalStateException(message);
+    }
+
+    /**
+     * @return a reader that pulls the songs of a page of tracks straight off the streamed response
+     */
+    public LoadAllTracksReader createLoadAllTracksReader(RestStreamResponse restStreamResponse) throws IOException {
+        checkStatus(restStreamResponse);
+
+        return new LoadAllTracksReader(gsonWrapper, gsonWrapper.createJsonReader(restStreamResponse.getBodyReader()));
+    }
+
+    public SearchResults getSearchResults(RestResponse restResponse) {
+        checkStatus(restResponse);
+
+        // the results will come back in the body
+        SearchResponse searchResponse = gsonWrapper.fromJson(restResponse.getBody(), SearchResponse.class);
+
+        return searchResponse.getResults();
+    }
+
+    public URI getPlayURI(RestResponse restResponse) throws URISyntaxException {
+        checkStatus(restResponse);
+
+        // the response will be JSON in the body
+        StreamingUrl streamingUrl = gsonWrapper.fromJson(restResponse.getBody(), StreamingUrl.class);
+
+        return new URI(streamingUrl.getUrl());
+    }
+
+    public LoadAllTracksResponse getLoadAllTracksResponse(RestResponse restResponse) {
+        checkStatus(restResponse);
+
+        // the results will come back in the body
+        return gsonWrapper.fromJson(restResponse.getBody(), LoadAllTracksResponse.class);
+    }
+
+    /**
+     * @return the token for the next page of tracks, or null if this was the last page
+     */
+    public String getContinuationToken(LoadAllTracksResponse loadAllTracksResponse) {
+        if (null == loadAllTracksResponse) {
+            throw new IllegalArgumentException("loadAllTracksResponse is null");
+        }
+
+        String continuationToken = loadAllTracksResponse.getContinuationToken();
+
+        return continuationToken != null && !continuationToken.isEmpty() ? continuationToken : null;
+    }
+
+    public Collection<Playlist> getPlaylists(RestResponse restResponse) {
+        checkStatus(restResponse);
+
+        // parse the response
+        LoadAllPlaylistsResponse loadAllPlaylistsResponse =
+                gsonWrapper.fromJson(restResponse.getBody(), LoadAllPlaylistsResponse.class);
+
+        return loadAllPlaylistsResponse.getPlaylists();
+    }
+}
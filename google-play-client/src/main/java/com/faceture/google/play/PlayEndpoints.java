@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+/**
+ * Where the PlayClient sends its requests. The default is Google itself; point it elsewhere to run against a stub
+ * or a proxy. Host names may carry a port, e.g. "localhost:8080".
+ */
+public class PlayEndpoints {
+
+    private boolean https;
+    private String googleHostName;
+    private String playHostName;
+
+    /**
+     * Google Play over HTTPS
+     */
+    public PlayEndpoints() {
+        this(Const.USE_HTTPS, HostName.GOOGLE, HostName.PLAY);
+    }
+
+    /**
+     * @param https whether to use HTTPS
+     * @param googleHostName the host logged in to, in place of www.google.com
+     * @param playHostName the host of the music services, in place of play.google.com
+     */
+    public PlayEndpoints(boolean https, String googleHostName, String playHostName) {
+        if (null == googleHostName || googleHostName.isEmpty()) {
+            throw new IllegalArgumentException("googleHostName is null or empty");
+        }
+        if (null == playHostName || playHostName.isEmpty()) {
+            throw new IllegalArgumentException("playHostName is null or empty");
+        }
+
+        this.https = https;
+        this.googleHostName = googleHostName;
+        this.playHostName = playHostName;
+    }
+
+    public boolean isHttps() {
+        return https;
+    }
+
+    public String getGoogleHostName() {
+        return googleHostName;
+    }
+
+    public String getPlayHostName() {
+        return playHostName;
+    }
+}
@@ -25,8 +25,17 @@ public class PlaySession {
     private String xtCookie;
     private String sjsaidCookie;
     private String authToken;
+    private long issuedAtMillis;
 
     public PlaySession(String xtCookie, String sjsaidCookie, String authToken) {
+        this(xtCookie, sjsaidCookie, authToken, System.currentTimeMillis());
+    }
+
+    /**
+     * @param issuedAtMillis when the login that created the session happened, in milliseconds since the epoch, e.g.
+     *                       for a session read back from a PlaySessionStore
+     */
+    public PlaySession(String xtCookie, String sjsaidCookie, String authToken, long issuedAtMillis) {
         if (null == xtCookie || xtCookie.isEmpty()) {
             throw new IllegalArgumentException("xtCookie is null or empty");
         }
@@ -36,10 +45,14 @@ public class PlaySession {
         if (null == authToken || authToken.isEmpty()) {
             throw new IllegalArgumentException("authToken is null or empty");
         }
+        if (issuedAtMillis < 0) {
+            throw new IllegalArgumentException("issuedAtMillis is negative");
+        }
 
         this.xtCookie = xtCookie;
         this.sjsaidCookie = sjsaidCookie;
         this.authToken = authToken;
+        this.issuedAtMillis = issuedAtMillis;
     }
 
     public String getXtCookie() {
@@ -54,4 +67,8 @@ public class PlaySession {
         return authToken;
     }
 
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.cache.CacheExpiry;
+import com.faceture.cache.ExpiringCache;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+
+/**
+ * Caches the streaming URLs returned by PlayClient.getPlayURI, per session and song, so repeat plays don't go back to
+ * Google Play. A URL is kept until shortly before the expiration signed into it, and concurrent requests for the same
+ * song share a single call.
+ */
+public class PlayUriCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_EXPIRY_MARGIN_MILLIS = 60000;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60000;
+
+    // the query param of a streaming URL holding its expiration, in seconds since the epoch
+    static final String EXPIRE_PARAM = "expire";
+
+    // dependencies
+    private PlayClient playClient;
+
+    private ExpiringCache<PlayUriKey, URI> cache;
+
+    public PlayUriCache(PlayClient playClient) {
+        this(playClient, DEFAULT_MAX_SIZE, DEFAULT_EXPIRY_MARGIN_MILLIS, DEFAULT_TIME_TO_LIVE_MILLIS,
+                Clock.systemUTC());
+    }
+
+    /**
+     * @param maxSize the most URLs to keep; the least recently used is evicted beyond that
+     * @param expiryMarginMillis how long before its signed expiration a URL is dropped, so it isn't handed out just as
+     *                           it stops working
+     * @param defaultTimeToLiveMillis how long to keep a URL that doesn't carry an expiration
+     */
+    public PlayUriCache(PlayClient playClient, int maxSize, final long expiryMarginMillis,
+                        final long defaultTimeToLiveMillis, Clock clock)
+    {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (expiryMarginMillis < 0) {
+            throw new IllegalArgumentException("expiryMarginMillis is negative");
+        }
+        if (defaultTimeToLiveMillis < 0) {
+            throw new IllegalArgumentException("defaultTimeToLiveMillis is negative");
+        }
+
+        this.playClient = playClient;
+
+        CacheExpiry<URI> cacheExpiry = (uri, nowMillis) -> {
+            long expireMillis = getExpireMillis(uri);
+
+            return expireMillis > 0 ? expireMillis - expiryMarginMillis - nowMillis : defaultTimeToLiveMillis;
+        };
+        this.cache = new ExpiringCache<PlayUriKey, URI>(maxSize, cacheExpiry, clock);
+    }
+
+    /**
+     * Same as PlayClient.getPlayURI, served from the cache when possible
+     */
+    public URI getPlayURI(final String songId, final PlaySession playSession) throws IOException, URISyntaxException {
+        if (null == songId || songId.isEmpty()) {
+            throw new IllegalArgumentException("songId is null or empty");
+        }
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+
+        return cache.get(new PlayUriKey(playSession.getAuthToken(), songId),
+                () -> playClient.getPlayURI(songId, playSession));
+    }
+
+    /**
+     * Drops the cached URL of the song, e.g. when the server turned it down
+     */
+    public void invalidate(String songId, PlaySession playSession) {
+        if (null == songId || songId.isEmpty()) {
+            throw new IllegalArgumentException("songId is null or empty");
+        }
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+
+        cache.invalidate(new PlayUriKey(playSession.getAuthToken(), songId));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the expiration signed into the URL in millis since the epoch, or 0 if it doesn't have one
+     */
+    static long getExpireMillis(URI uri) {
+        String query = uri.getRawQuery();
+        if (null == query) {
+            return 0;
+        }
+
+        for (String param : query.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0 && EXPIRE_PARAM.equals(param.substring(0, equals))) {
+                try {
+                    return Long.parseLong(param.substring(equals + 1)) * 1000;
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Streaming URLs are signed for the user, so they're cached per session
+     */
+    private static class PlayUriKey {
+        private final String authToken;
+        private final String songId;
+
+        PlayUriKey(String authToken, String songId) {
+            this.authToken = authToken;
+            this.songId = songId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PlayUriKey that = (PlayUriKey) o;
+
+            return authToken.equals(that.authToken) && songId.equals(that.songId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * authToken.hashCode() + songId.hashCode();
+        }
+    }
+}
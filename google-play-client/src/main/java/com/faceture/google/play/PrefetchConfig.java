@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settings for loading the user's tracks with the next page prefetched in the background
+ */
+public class PrefetchConfig {
+
+    public static final int DEFAULT_PREFETCH_PAGES = 1;
+    public static final int DEFAULT_BUFFER_SIZE = 2000;
+
+    private static ExecutorService defaultExecutor;
+
+    private int prefetchPages;
+    private int bufferSize;
+    private Executor executor;
+
+    public PrefetchConfig() {
+        this(DEFAULT_PREFETCH_PAGES, DEFAULT_BUFFER_SIZE, getDefaultExecutor());
+    }
+
+    /**
+     * @param prefetchPages how many pages may be requested and loaded ahead of the page being read. More than one
+     *                      request is only out at once when the server sends each page's continuation token ahead
+     *                      of its songs.
+     * @param bufferSize the most songs held in memory waiting to be read
+     * @param executor runs the page loads. Each iteration uses up to prefetchPages + 1 of its threads at once, one
+     *                 parsing a page and the others opening the next ones, so it must not be limited to a single
+     *                 thread.
+     */
+    public PrefetchConfig(int prefetchPages, int bufferSize, Executor executor) {
+        if (prefetchPages <= 0) {
+            throw new IllegalArgumentException("prefetchPages must be positive");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        if (null == executor) {
+            throw new IllegalArgumentException("executor is null");
+        }
+
+        this.prefetchPages = prefetchPages;
+        this.bufferSize = bufferSize;
+        this.executor = executor;
+    }
+
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return a shared pool of daemon threads, created on first use
+     */
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (null == defaultExecutor) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "google-play-client-prefetch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return defaultExecutor;
+    }
+}
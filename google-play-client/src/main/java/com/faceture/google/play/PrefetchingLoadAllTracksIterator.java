@@ -0,0 +1,609 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.Song;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
+import com.faceture.rest.RestStreamResponse;
+import com.faceture.rest.RetryPolicy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates over the user's tracks while pages are loaded in the background, so the next page is downloading and being
+ * parsed while the current one is being read. The request for the next page goes out as soon as its continuation
+ * token has been parsed. When the server sends each token ahead of the songs, a prefetched page's token is read as
+ * soon as the page opens, so up to the PrefetchConfig's prefetch pages requests are out at once. When the token comes
+ * after the songs it can't be known any earlier, and the next page is only requested once the current one has been
+ * read.
+ *
+ * Memory is capped by the buffer size of the PrefetchConfig, and the loader never gets more than its prefetch pages
+ * ahead of the reader. Like the LoadAllTracksIterator it must be closed, which aborts any page still being loaded,
+ * and a page that breaks off part way through is loaded again from its token if the RequestRetrier allows, skipping
+ * the songs already read from it.
+ */
+public class PrefetchingLoadAllTracksIterator implements Iterator<Song>, Closeable {
+
+    // how often a blocked loader checks whether the iterator has been closed
+    private static final long POLL_MILLIS = 100;
+
+    // marks the end of the last page
+    private static final Object END = new Object();
+
+    // dependencies
+    private LoadAllTracksPageSource pageSource;
+    private PlayClientUtil playClientUtil;
+    private RequestRetrier requestRetrier;
+    private Executor executor;
+    private int prefetchPages;
+
+    // hands songs and page boundaries from the loader to the reader
+    private BlockingQueue<Object> buffer;
+    // one permit per page that may be loaded at once: the one being read plus the prefetched ones
+    private Semaphore pagePermits;
+
+    private String startContinuationToken;
+    private volatile boolean closed;
+
+    // loader state
+    private volatile RestStreamResponse loadingPage;
+
+    // the pages requested ahead of the one being loaded, in order. Guards the chain fields below too.
+    private final ArrayDeque<FutureTask<OpenPage>> prefetched = new ArrayDeque<FutureTask<OpenPage>>();
+    // the token of the page after the last one requested, once it's known and until it's requested
+    private String chainToken;
+    private boolean chainStopped;
+    // the number of the last page requested, and of the page being read, for keeping the requests prefetchPages ahead
+    private int requestedPageNumber = -1;
+    private int readPageNumber;
+
+    // reader state
+    private boolean started;
+    private boolean finished;
+    private int pageNumber = -1;
+    private String pageContinuationToken;
+    private int pageSongCount;
+    private Song nextSong;
+
+    /**
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     */
+    public PrefetchingLoadAllTracksIterator(LoadAllTracksPageSource pageSource, PlayClientUtil playClientUtil,
+                                            String continuationToken, PrefetchConfig prefetchConfig)
+    {
+        this(pageSource, playClientUtil, continuationToken, prefetchConfig, new RequestRetrier(RetryPolicy.NONE,
+                new NoOpClientMetrics()));
+    }
+
+    /**
+     * @param continuationToken the token of the page to start at, or null to start at the first page
+     * @param requestRetrier decides whether a page that broke off is loaded again
+     */
+    public PrefetchingLoadAllTracksIterator(LoadAllTracksPageSource pageSource, PlayClientUtil playClientUtil,
+                                            String continuationToken, PrefetchConfig prefetchConfig,
+                                            RequestRetrier requestRetrier)
+    {
+        if (null == pageSource) {
+            throw new IllegalArgumentException("pageSource is null");
+        }
+        if (null == playClientUtil) {
+            throw new IllegalArgumentException("playClientUtil is null");
+        }
+        if (null == prefetchConfig) {
+            throw new IllegalArgumentException("prefetchConfig is null");
+        }
+        if (null == requestRetrier) {
+            throw new IllegalArgumentException("requestRetrier is null");
+        }
+
+        this.pageSource = pageSource;
+        this.playClientUtil = playClientUtil;
+        this.requestRetrier = requestRetrier;
+        this.executor = prefetchConfig.getExecutor();
+        this.prefetchPages = prefetchConfig.getPrefetchPages();
+        this.buffer = new ArrayBlockingQueue<Object>(prefetchConfig.getBufferSize());
+        this.pagePermits = new Semaphore(prefetchConfig.getPrefetchPages() + 1);
+        this.startContinuationToken = continuationToken;
+    }
+
+    /**
+     * @return the next song, waiting for it to be loaded if needed, or null when there are no more songs
+     */
+    public Song nextSong() throws IOException, URISyntaxException {
+        if (nextSong != null) {
+            Song song = nextSong;
+            nextSong = null;
+            return song;
+        }
+
+        return readSong();
+    }
+
+    public boolean hasNext() {
+        if (nextSong == null) {
+            try {
+                nextSong = readSong();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return nextSong != null;
+    }
+
+    public Song next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Song song = nextSong;
+        nextSong = null;
+        return song;
+    }
+
+    /**
+     * @return the number of the page the last song came from, starting at 0, or -1 before any song has been read
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * @return the token that loads the page the last song came from, null for the first page
+     */
+    public String getPageContinuationToken() {
+        return pageContinuationToken;
+    }
+
+    /**
+     * @return the number of songs read from the current page so far
+     */
+    public int getPageSongCount() {
+        return pageSongCount;
+    }
+
+    /**
+     * @return true once every song of every page has been read
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stops the loader and aborts the page it's loading. Safe to call more than once.
+     */
+    public void close() {
+        closed = true;
+        nextSong = null;
+        buffer.clear();
+
+        // wakes the loader if it's blocked reading the page
+        RestStreamResponse page = loadingPage;
+        if (page != null) {
+            page.abort();
+        }
+    }
+
+    private Song readSong() throws IOException, URISyntaxException {
+        if (closed) {
+            throw new IllegalStateException("iterator is closed");
+        }
+
+        if (!started) {
+            started = true;
+            executor.execute(this::load);
+        }
+
+        while (!finished) {
+            Object item;
+            try {
+                item = buffer.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for songs");
+            }
+
+            if (item instanceof Song) {
+                pageSongCount++;
+                return (Song) item;
+            }
+            else if (item instanceof PageStart) {
+                // done with the last page, so the loader may start another one
+                if (pageNumber >= 0) {
+                    pagePermits.release();
+                }
+
+                pageNumber++;
+                pageContinuationToken = ((PageStart) item).continuationToken;
+                pageSongCount = 0;
+
+                // another page may be requested ahead
+                synchronized (prefetched) {
+                    readPageNumber = pageNumber;
+                    extendChain();
+                }
+            }
+            else if (item == END) {
+                finished = true;
+            }
+            else {
+                close();
+                rethrow(((Failure) item).exception);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Loads the pages one after the other on the executor, until the last page or until closed
+     */
+    private void load() {
+        String continuationToken = startContinuationToken;
+
+        try {
+            while (acquirePage()) {
+                OpenPage page = openPage(continuationToken);
+
+                continuationToken = loadPage(page, continuationToken);
+                if (null == continuationToken) {
+                    put(END);
+                    break;
+                }
+            }
+        }
+        catch (Throwable t) {
+            // Errors too, or the reader waiting on the buffer would never wake up
+            put(new Failure(t));
+        }
+        finally {
+            loadingPage = null;
+            discardPrefetched();
+        }
+    }
+
+    /**
+     * @return the page of the given token, which is the next one requested ahead if there is one
+     */
+    private OpenPage openPage(String continuationToken) throws IOException, URISyntaxException, InterruptedException {
+        FutureTask<OpenPage> page;
+        synchronized (prefetched) {
+            page = prefetched.poll();
+
+            if (null == page) {
+                // the page wasn't requested ahead, so its token may be waiting in the chain
+                chainToken = null;
+                requestedPageNumber++;
+            }
+        }
+
+        if (null == page) {
+            return requestPage(continuationToken);
+        }
+
+        try {
+            return page.get();
+        }
+        catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @return the continuation token of the next page, or null if there isn't one or the iterator was closed
+     */
+    private String loadPage(OpenPage openPage, String continuationToken) throws IOException, URISyntaxException {
+        put(new PageStart(continuationToken));
+
+        // the songs of this page handed to the reader, to skip if the page has to be loaded again
+        int songCount = 0;
+        while (true) {
+            RestStreamResponse page = openPage.response;
+            loadingPage = page;
+
+            try {
+                LoadAllTracksReader loadAllTracksReader = openPage.reader;
+
+                Song song;
+                while (!closed && (song = loadAllTracksReader.nextSong()) != null) {
+                    if (!openPage.nextChained && loadAllTracksReader.getContinuationToken() != null) {
+                        openPage.nextChained = true;
+                        chain(loadAllTracksReader.getContinuationToken());
+                    }
+
+                    put(song);
+                    songCount++;
+                }
+
+                if (closed) {
+                    page.abort();
+                    page.close();
+                    return null;
+                }
+
+                page.close();
+                return loadAllTracksReader.getContinuationToken();
+            }
+            catch (IOException e) {
+                page.abort();
+                page.close();
+
+                OpenPage resumed = resumePage(continuationToken, openPage.attempts, songCount, e);
+                if (null == resumed) {
+                    throw e;
+                }
+                resumed.nextChained = openPage.nextChained;
+                openPage = resumed;
+            }
+            catch (RuntimeException | Error e) {
+                page.abort();
+                page.close();
+                throw e;
+            }
+            finally {
+                loadingPage = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the page, and opens it again if it breaks off before the reader is created
+     */
+    private OpenPage requestPage(String continuationToken) throws IOException, URISyntaxException {
+        RestStreamResponse response = pageSource.openPage(continuationToken);
+        try {
+            return new OpenPage(response, playClientUtil.createLoadAllTracksReader(response));
+        }
+        catch (IOException e) {
+            response.abort();
+            response.close();
+
+            OpenPage page = resumePage(continuationToken, 1, 0, e);
+            if (null == page) {
+                throw e;
+            }
+            return page;
+        }
+        catch (RuntimeException | Error e) {
+            response.abort();
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the page again after it broke off, skipping the songs already read from it
+     * @param attempts how many times the page has been opened so far
+     * @return the page, or null if it shouldn't be loaded again
+     */
+    private OpenPage resumePage(String continuationToken, int attempts, int skipSongs, IOException failure)
+            throws IOException, URISyntaxException
+    {
+        while (!closed && requestRetrier.backOff(Path.MUSIC_LOAD_ALL_TRACKS, attempts, failure)) {
+            attempts++;
+
+            RestStreamResponse response = pageSource.openPage(continuationToken);
+            try {
+                LoadAllTracksReader reader = playClientUtil.createLoadAllTracksReader(response);
+                reader.skipSongs(skipSongs);
+
+                OpenPage page = new OpenPage(response, reader);
+                page.attempts = attempts;
+                return page;
+            }
+            catch (IOException e) {
+                response.abort();
+                response.close();
+                failure = e;
+            }
+            catch (RuntimeException | Error e) {
+                response.abort();
+                response.close();
+                throw e;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Requests the page of the token, which follows the last page requested, as soon as there's room
+     */
+    private void chain(String continuationToken) {
+        synchronized (prefetched) {
+            chainToken = continuationToken;
+            extendChain();
+        }
+    }
+
+    /**
+     * Starts opening the next page in the chain on another thread, if its token is known and it's no more than
+     * prefetchPages ahead of the page being read
+     */
+    private void extendChain() {
+        if (!chainStopped && chainToken != null && requestedPageNumber < readPageNumber + prefetchPages) {
+            final String continuationToken = chainToken;
+            chainToken = null;
+            requestedPageNumber++;
+
+            FutureTask<OpenPage> page = new FutureTask<OpenPage>(() -> prefetchPage(continuationToken));
+            prefetched.add(page);
+            executor.execute(page);
+        }
+    }
+
+    /**
+     * Opens a page ahead of the loader and reads up to its songs, requesting the page after it straight away if its
+     * token comes first. A page that breaks off before its songs is opened again.
+     */
+    private OpenPage prefetchPage(String continuationToken) throws IOException, URISyntaxException {
+        OpenPage page = requestPage(continuationToken);
+
+        String nextContinuationToken;
+        while (true) {
+            try {
+                nextContinuationToken = page.reader.readToSongs();
+                break;
+            }
+            catch (IOException e) {
+                page.response.abort();
+                page.response.close();
+
+                page = resumePage(continuationToken, page.attempts, 0, e);
+                if (null == page) {
+                    throw e;
+                }
+            }
+            catch (RuntimeException | Error e) {
+                page.response.abort();
+                page.response.close();
+                throw e;
+            }
+        }
+
+        if (nextContinuationToken != null) {
+            page.nextChained = true;
+            chain(nextContinuationToken);
+        }
+
+        return page;
+    }
+
+    /**
+     * Stops requesting pages ahead, and aborts the ones that were opened but won't be read
+     */
+    private void discardPrefetched() {
+        List<FutureTask<OpenPage>> pages;
+        synchronized (prefetched) {
+            chainStopped = true;
+            pages = new ArrayList<FutureTask<OpenPage>>(prefetched);
+            prefetched.clear();
+        }
+
+        for (FutureTask<OpenPage> page : pages) {
+            try {
+                RestStreamResponse response = page.get().response;
+                response.abort();
+                response.close();
+            }
+            catch (Exception e) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    /**
+     * @return false if the iterator was closed while waiting
+     */
+    private boolean acquirePage() throws InterruptedException {
+        while (!closed) {
+            if (pagePermits.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void put(Object item) {
+        try {
+            while (!closed) {
+                if (buffer.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    private static void rethrow(Throwable throwable) throws IOException, URISyntaxException {
+        if (throwable instanceof IOException) {
+            throw (IOException) throwable;
+        }
+        if (throwable instanceof URISyntaxException) {
+            throw (URISyntaxException) throwable;
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+
+        throw new IOException(throwable);
+    }
+
+    private static class PageStart {
+        private final String continuationToken;
+
+        PageStart(String continuationToken) {
+            this.continuationToken = continuationToken;
+        }
+    }
+
+    /**
+     * A page whose response has arrived, with the reader that parses it
+     */
+    private static class OpenPage {
+        private final RestStreamResponse response;
+        private final LoadAllTracksReader reader;
+        // whether the page after this one has been requested or queued to be
+        private boolean nextChained;
+        // how many times the page has been opened
+        private int attempts = 1;
+
+        OpenPage(RestStreamResponse response, LoadAllTracksReader reader) {
+            this.response = response;
+            this.reader = reader;
+        }
+    }
+
+    private static class Failure {
+        private final Throwable exception;
+
+        Failure(Throwable exception) {
+            this.exception = exception;
+        }
+    }
+}
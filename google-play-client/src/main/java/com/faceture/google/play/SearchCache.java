@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.cache.ExpiringCache;
+import com.faceture.google.play.domain.SearchRequest;
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Caches the results of PlayClient.search per session and SearchRequest for a short time, so repeated queries don't
+ * go back to Google Play. Concurrent identical queries share a single request. Every caller gets its own
+ * SearchResults and collections, but the Songs in them are shared and must not be modified.
+ */
+public class SearchCache {
+
+    public static final int DEFAULT_MAX_SIZE = 500;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60000;
+
+    // dependencies
+    private PlayClient playClient;
+
+    private ExpiringCache<SearchKey, SearchResults> cache;
+
+    public SearchCache(PlayClient playClient) {
+        this(playClient, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxSize the most results to keep; the least recently used are evicted beyond that
+     * @param timeToLiveMillis how long results are served from the cache
+     */
+    public SearchCache(PlayClient playClient, int maxSize, final long timeToLiveMillis, Clock clock) {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("timeToLiveMillis must be positive");
+        }
+
+        this.playClient = playClient;
+        this.cache = new ExpiringCache<SearchKey, SearchResults>(maxSize,
+                (searchResults, nowMillis) -> timeToLiveMillis, clock);
+    }
+
+    /**
+     * Same as PlayClient.search, served from the cache when possible. The results are a copy the caller may change.
+     */
+    public SearchResults search(final String query, final PlaySession session)
+            throws IOException, URISyntaxException
+    {
+        if (null == query || query.isEmpty()) {
+            throw new IllegalArgumentException("query is null or empty");
+        }
+        if (null == session) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        SearchResults searchResults = cache.get(new SearchKey(session.getAuthToken(), new SearchRequest(query)),
+                () -> playClient.search(query, session));
+
+        return copy(searchResults);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static SearchResults copy(SearchResults searchResults) {
+        if (null == searchResults) {
+            return null;
+        }
+
+        SearchResults copy = new SearchResults();
+        copy.setArtists(copy(searchResults.getArtists()));
+        copy.setAlbums(copy(searchResults.getAlbums()));
+        copy.setSongs(copy(searchResults.getSongs()));
+
+        return copy;
+    }
+
+    private static Collection<Song> copy(Collection<Song> songs) {
+        return null == songs ? null : new ArrayList<Song>(songs);
+    }
+
+    /**
+     * Results can differ between users, so they're cached per session
+     */
+    private static class SearchKey {
+        private final String authToken;
+        private final SearchRequest searchRequest;
+
+        SearchKey(String authToken, SearchRequest searchRequest) {
+            this.authToken = authToken;
+            this.searchRequest = searchRequest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SearchKey that = (SearchKey) o;
+
+            return authToken.equals(that.authToken) && searchRequest.equals(that.searchRequest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * authToken.hashCode() + searchRequest.hashCode();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * A call made through a SessionPool on behalf of one account
+ */
+public interface SessionCall<T> {
+
+    /**
+     * @param playClient the PlayClient shared by all of the accounts
+     * @param playSession the account's current session
+     */
+    T call(PlayClient playClient, PlaySession playSession) throws IOException, URISyntaxException;
+}
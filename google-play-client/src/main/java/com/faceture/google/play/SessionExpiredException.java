@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+/**
+ * Thrown when a Play call is refused with 401 or 403 because the session it was made with has expired or been
+ * revoked. Logging the account in again and repeating the call is expected to work.
+ */
+public class SessionExpiredException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public SessionExpiredException(int statusCode, String message) {
+        super(message);
+
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
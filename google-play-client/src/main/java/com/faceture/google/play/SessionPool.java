@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.session.NoOpPlaySessionStore;
+import com.faceture.google.play.session.PlaySessionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Holds the PlaySessions of many accounts and makes their calls through one shared PlayClient, so that they share its
+ * connection pool. At most maxConcurrentCalls are in flight at once; the rest wait in a queue that takes turns between
+ * the accounts in proportion to their weights, so a busy account can't starve the others. Each account's queue is
+ * bounded, and its queue depth and latencies are kept in its AccountStats. The sessions are saved to a
+ * PlaySessionStore as they're put, and read back from it the first time an account that isn't in the pool is used,
+ * so a restarted service picks its accounts up as they come back rather than logging them all in at once.
+ */
+public class SessionPool implements Closeable {
+
+    public static final int DEFAULT_WEIGHT = 1;
+
+    // dependencies
+    private PlayClient playClient;
+    private SessionPoolConfig sessionPoolConfig;
+    private PlaySessionStore playSessionStore;
+
+    private final ConcurrentMap<String, Account> accountsById = new ConcurrentHashMap<String, Account>();
+
+    // the calls waiting for a thread, and everything below, are guarded by the queue's lock
+    private final FairQueue<Task<?>> fairQueue = new FairQueue<Task<?>>();
+    private int activeWorkers;
+    private boolean closed;
+
+    public SessionPool(PlayClient playClient) {
+        this(playClient, new SessionPoolConfig());
+    }
+
+    public SessionPool(PlayClient playClient, SessionPoolConfig sessionPoolConfig) {
+        this(playClient, sessionPoolConfig, new NoOpPlaySessionStore());
+    }
+
+    /**
+     * @param playSessionStore where the sessions are saved, e.g. a FilePlaySessionStore
+     */
+    public SessionPool(PlayClient playClient, SessionPoolConfig sessionPoolConfig,
+                       PlaySessionStore playSessionStore)
+    {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == sessionPoolConfig) {
+            throw new IllegalArgumentException("sessionPoolConfig is null");
+        }
+        if (null == playSessionStore) {
+            throw new IllegalArgumentException("playSessionStore is null");
+        }
+
+        this.playClient = playClient;
+        this.sessionPoolConfig = sessionPoolConfig;
+        this.playSessionStore = playSessionStore;
+    }
+
+    public PlaySessionStore getPlaySessionStore() {
+        return playSessionStore;
+    }
+
+    public void putAccount(String accountId, PlaySession playSession) throws IOException {
+        putAccount(accountId, playSession, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * Adds the account, or gives an account that's already in the pool a new session and weight, then saves the
+     * session. The account can be used even if saving it fails.
+     * @param weight the account's share of the calls while others are waiting too, relative to theirs. It isn't
+     *               saved, an account read back from the store gets the DEFAULT_WEIGHT.
+     * @throws IOException if the session couldn't be saved
+     */
+    public void putAccount(String accountId, PlaySession playSession, int weight) throws IOException {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+
+        Account account = accountsById.computeIfAbsent(accountId, key -> new Account(key, playSession, weight));
+        account.playSession = playSession;
+        synchronized (fairQueue) {
+            account.flow.setWeight(weight);
+        }
+
+        playSessionStore.save(accountId, playSession);
+    }
+
+    /**
+     * Takes the account out of the pool. Its calls that were waiting are cancelled, the ones in flight finish. Its
+     * saved session is kept, so it comes back the next time it's used; remove it from the PlaySessionStore to stop
+     * that.
+     * @return false if the account wasn't in the pool
+     */
+    public boolean removeAccount(String accountId) {
+        Account account = accountsById.remove(accountId);
+        if (null == account) {
+            return false;
+        }
+
+        List<Task<?>> waiting;
+        synchronized (fairQueue) {
+            account.removed = true;
+            waiting = fairQueue.remove(account.flow);
+        }
+        cancel(waiting);
+
+        return true;
+    }
+
+    /**
+     * @return the account's current session, or null if it isn't in the pool
+     */
+    public PlaySession getSession(String accountId) {
+        Account account = accountsById.get(accountId);
+        return null == account ? null : account.playSession;
+    }
+
+    /**
+     * @return the account's stats, or null if it isn't in the pool
+     */
+    public AccountStats getAccountStats(String accountId) {
+        Account account = accountsById.get(accountId);
+        return null == account ? null : account.accountStats;
+    }
+
+    public Set<String> getAccountIds() {
+        return Collections.unmodifiableSet(accountsById.keySet());
+    }
+
+    /**
+     * @return the calls of all of the accounts that are waiting for a thread
+     */
+    public int getQueueDepth() {
+        synchronized (fairQueue) {
+            return fairQueue.size();
+        }
+    }
+
+    /**
+     * Queues the call to be made with the account's session when it's the account's turn. An account that isn't in the
+     * pool is read back from the PlaySessionStore, on the calling thread.
+     * @return the future result of the call. It fails with a SessionPoolFullException if too many of the account's
+     * calls are already waiting or with the IOException of the store, and is cancelled if the account is removed or
+     * the pool closed before the call is made.
+     * A call that's cancelled while it waits is skipped when its turn comes; one that has started isn't interrupted.
+     */
+    public <T> CompletableFuture<T> submit(String accountId, SessionCall<T> sessionCall) {
+        if (null == sessionCall) {
+            throw new IllegalArgumentException("sessionCall is null");
+        }
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        Account account = accountsById.get(accountId);
+        if (null == account) {
+            PlaySession storedSession;
+            try {
+                storedSession = playSessionStore.load(accountId);
+            }
+            catch (IOException e) {
+                CompletableFuture<T> failed = new CompletableFuture<T>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            if (null == storedSession) {
+                throw new IllegalArgumentException("account " + accountId + " isn't in the pool or the store");
+            }
+
+            // another thread may have got there first
+            account = accountsById.computeIfAbsent(accountId,
+                    key -> new Account(key, storedSession, DEFAULT_WEIGHT));
+        }
+
+        Task<T> task = new Task<T>(account, sessionCall);
+
+        boolean startWorker = false;
+        synchronized (fairQueue) {
+            if (closed) {
+                throw new IllegalStateException("SessionPool has been closed");
+            }
+            if (account.removed) {
+                task.future.cancel(false);
+                return task.future;
+            }
+            if (account.flow.size() >= sessionPoolConfig.getMaxQueuedCalls()) {
+                account.accountStats.recordRejected();
+                task.future.completeExceptionally(new SessionPoolFullException(account.accountId));
+                return task.future;
+            }
+
+            fairQueue.offer(account.flow, task);
+            account.accountStats.recordQueued();
+
+            if (activeWorkers < sessionPoolConfig.getMaxConcurrentCalls()) {
+                activeWorkers++;
+                startWorker = true;
+            }
+        }
+
+        if (startWorker) {
+            startWorker();
+        }
+
+        return task.future;
+    }
+
+    /**
+     * Cancels the calls that are waiting and refuses any more. The calls in flight finish, and the PlayClient is left
+     * open.
+     */
+    public void close() {
+        List<Task<?>> waiting;
+        synchronized (fairQueue) {
+            closed = true;
+            waiting = fairQueue.clear();
+        }
+        cancel(waiting);
+    }
+
+    private void startWorker() {
+        try {
+            sessionPoolConfig.getExecutor().execute(this::work);
+        }
+        catch (RejectedExecutionException e) {
+            // without a worker left nothing would ever take the calls out of the queue
+            List<Task<?>> stranded = Collections.emptyList();
+            synchronized (fairQueue) {
+                activeWorkers--;
+                if (0 == activeWorkers) {
+                    stranded = fairQueue.clear();
+                }
+            }
+            for (Task<?> task : stranded) {
+                task.account.accountStats.recordDequeued();
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Makes the calls in the queue's order until it's empty
+     */
+    private void work() {
+        while (true) {
+            Task<?> task;
+            synchronized (fairQueue) {
+                task = fairQueue.poll();
+                if (null == task) {
+                    activeWorkers--;
+                    return;
+                }
+            }
+
+            task.account.accountStats.recordDequeued();
+            task.run();
+        }
+    }
+
+    private static void cancel(List<Task<?>> tasks) {
+        for (Task<?> task : tasks) {
+            task.account.accountStats.recordDequeued();
+            task.future.cancel(false);
+        }
+    }
+
+    private static final class Account {
+
+        private final String accountId;
+        private final FairQueue.Flow<Task<?>> flow;
+        private final AccountStats accountStats = new AccountStats();
+        private volatile PlaySession playSession;
+
+        // guarded by the queue's lock
+        private boolean removed;
+
+        private Account(String accountId, PlaySession playSession, int weight) {
+            this.accountId = accountId;
+            this.playSession = playSession;
+            this.flow = new FairQueue.Flow<Task<?>>(weight);
+        }
+    }
+
+    private final class Task<T> {
+
+        private final Account account;
+        private final SessionCall<T> sessionCall;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+        private final long queuedNanos = System.nanoTime();
+
+        private Task(Account account, SessionCall<T> sessionCall) {
+            this.account = account;
+            this.sessionCall = sessionCall;
+        }
+
+        private void run() {
+            // cancelled while it was waiting
+            if (future.isDone()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            account.accountStats.recordStarted(start - queuedNanos);
+
+            // the stats are updated before the future completes, so the caller sees them
+            T result;
+            try {
+                result = sessionCall.call(playClient, account.playSession);
+            }
+            catch (Throwable t) {
+                account.accountStats.recordFinished(System.nanoTime() - start, false);
+
+                // anything else would leave the caller waiting forever
+                future.completeExceptionally(t);
+                return;
+            }
+
+            account.accountStats.recordFinished(System.nanoTime() - start, true);
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settings for making the calls of many accounts through one SessionPool
+ */
+public class SessionPoolConfig {
+
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 25;
+    public static final int DEFAULT_MAX_QUEUED_CALLS = 100;
+
+    private static ExecutorService defaultExecutor;
+
+    private int maxConcurrentCalls;
+    private int maxQueuedCalls;
+    private Executor executor;
+
+    public SessionPoolConfig() {
+        this(DEFAULT_MAX_CONCURRENT_CALLS, DEFAULT_MAX_QUEUED_CALLS, getDefaultExecutor());
+    }
+
+    /**
+     * @param maxConcurrentCalls the most calls in flight at once, across all of the accounts. Keep it within the
+     *                           connection pool's max per route, so the calls don't queue again for a connection.
+     * @param maxQueuedCalls the most calls each account may have waiting; more are refused
+     * @param executor runs the calls, using up to maxConcurrentCalls of its threads at once
+     */
+    public SessionPoolConfig(int maxConcurrentCalls, int maxQueuedCalls, Executor executor) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        if (maxQueuedCalls <= 0) {
+            throw new IllegalArgumentException("maxQueuedCalls must be positive");
+        }
+        if (null == executor) {
+            throw new IllegalArgumentException("executor is null");
+        }
+
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxQueuedCalls = maxQueuedCalls;
+        this.executor = executor;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return a shared pool of daemon threads, created on first use
+     */
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (null == defaultExecutor) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable,
+                        "google-play-client-session-pool-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return defaultExecutor;
+    }
+}
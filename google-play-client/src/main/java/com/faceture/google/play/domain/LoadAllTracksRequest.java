@@ -23,6 +23,8 @@ package com.faceture.google.play.domain;
 public class LoadAllTracksRequest {
 
     private String continuationToken = "";
+    // only sent when asking for the changes since an earlier load
+    private Double lastRequestTime;
 
     public LoadAllTracksRequest() {}
 
@@ -40,4 +42,15 @@ public class LoadAllTracksRequest {
     public void setContinuationToken(String continuationToken) {
         this.continuationToken = continuationToken;
     }
+
+    /**
+     * @return the requestTime of the earlier load to get the changes since, or null for all of the tracks
+     */
+    public Double getLastRequestTime() {
+        return lastRequestTime;
+    }
+
+    public void setLastRequestTime(Double lastRequestTime) {
+        this.lastRequestTime = lastRequestTime;
+    }
 }
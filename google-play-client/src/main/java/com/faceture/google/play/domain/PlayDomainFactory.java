@@ -37,4 +37,16 @@ public class PlayDomainFactory {
     public LoadAllTracksRequest createLoadAllTracksRequest(String continuationToken) {
         return new LoadAllTracksRequest(continuationToken);
     }
+
+    /**
+     * @param continuationToken the token of the page to load, or null for the first page
+     * @param lastRequestTime the requestTime of the earlier load to get the changes since
+     */
+    public LoadAllTracksRequest createLoadAllTracksRequest(String continuationToken, double lastRequestTime) {
+        LoadAllTracksRequest loadAllTracksRequest = null == continuationToken ? new LoadAllTracksRequest() :
+                new LoadAllTracksRequest(continuationToken);
+        loadAllTracksRequest.setLastRequestTime(lastRequestTime);
+
+        return loadAllTracksRequest;
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.domain;
+
+import java.util.Collection;
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts the songs in a parsed Play response, for the JSON parse events
+ */
+public class SongCounter implements ToIntFunction<Object> {
+
+    public int applyAsInt(Object response) {
+        if (response instanceof LoadAllTracksResponse) {
+            return size(((LoadAllTracksResponse) response).getPlaylist());
+        }
+        if (response instanceof SearchResponse) {
+            SearchResults searchResults = ((SearchResponse) response).getResults();
+            return null == searchResults ? 0 : size(searchResults.getSongs());
+        }
+        if (response instanceof LoadAllPlaylistsResponse) {
+            Collection<Playlist> playlists = ((LoadAllPlaylistsResponse) response).getPlaylists();
+            if (null == playlists) {
+                return 0;
+            }
+
+            int songCount = 0;
+            for (Playlist playlist : playlists) {
+                songCount += size(playlist.getPlaylist());
+            }
+            return songCount;
+        }
+
+        return 0;
+    }
+
+    private static int size(Collection<Song> songs) {
+        return null == songs ? 0 : songs.size();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.play.domain.LoadAllPlaylistsResponse;
+import com.faceture.google.play.domain.Playlist;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the loadplaylist response without reflection
+ */
+public class LoadAllPlaylistsResponseTypeAdapter extends TypeAdapter<LoadAllPlaylistsResponse> {
+
+    // dependencies
+    private final TypeAdapter<Playlist> playlistAdapter;
+
+    public LoadAllPlaylistsResponseTypeAdapter(TypeAdapter<Playlist> playlistAdapter) {
+        if (null == playlistAdapter) {
+            throw new IllegalArgumentException("playlistAdapter is null");
+        }
+
+        this.playlistAdapter = playlistAdapter;
+    }
+
+    @Override
+    public LoadAllPlaylistsResponse read(JsonReader in) throws IOException {
+        if (JsonStreams.skipNull(in)) {
+            return null;
+        }
+
+        LoadAllPlaylistsResponse result = new LoadAllPlaylistsResponse();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (!JsonStreams.skipNull(in)) {
+                if ("playlists".equals(name)) {
+                    result.setPlaylists(JsonStreams.readList(in, playlistAdapter));
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+        }
+        in.endObject();
+
+        return result;
+    }
+
+    @Override
+    public void write(JsonWriter out, LoadAllPlaylistsResponse value) throws IOException {
+        if (null == value) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        JsonStreams.writeList(out, "playlists", value.getPlaylists(), playlistAdapter);
+        out.endObject();
+    }
+}
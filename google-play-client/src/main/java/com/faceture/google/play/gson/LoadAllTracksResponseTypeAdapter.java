@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the pages of the loadalltracks response without reflection, with the songs handled by the song adapter
+ */
+public class LoadAllTracksResponseTypeAdapter extends TypeAdapter<LoadAllTracksResponse> {
+
+    // dependencies
+    private final TypeAdapter<Song> songAdapter;
+
+    public LoadAllTracksResponseTypeAdapter(TypeAdapter<Song> songAdapter) {
+        if (null == songAdapter) {
+            throw new IllegalArgumentException("songAdapter is null");
+        }
+
+        this.songAdapter = songAdapter;
+    }
+
+    @Override
+    public LoadAllTracksResponse read(JsonReader in) throws IOException {
+        if (JsonStreams.skipNull(in)) {
+            return null;
+        }
+
+        LoadAllTracksResponse result = new LoadAllTracksResponse();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (JsonStreams.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "title":
+                    result.setTitle(in.nextString());
+                    break;
+                case "playlistId":
+                    result.setPlaylistId(in.nextString());
+                    break;
+                case "requestTime":
+                    result.setRequestTime(in.nextDouble());
+                    break;
+                case "continuationToken":
+                    result.setContinuationToken(in.nextString());
+                    break;
+                case "differentialUpdate":
+                    result.setDifferentialUpdate(in.nextBoolean());
+                    break;
+                case "playlist":
+                    result.setPlaylist(JsonStreams.readList(in, songAdapter));
+                    break;
+                case "continuation":
+                    result.setContinuation(in.nextBoolean());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return result;
+    }
+
+    @Override
+    public void write(JsonWriter out, LoadAllTracksResponse value) throws IOException {
+        if (null == value) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        JsonStreams.writeString(out, "title", value.getTitle());
+        JsonStreams.writeString(out, "playlistId", value.getPlaylistId());
+        out.name("requestTime").value(value.getRequestTime());
+        JsonStreams.writeString(out, "continuationToken", value.getContinuationToken());
+        out.name("differentialUpdate").value(value.isDifferentialUpdate());
+        JsonStreams.writeList(out, "playlist", value.getPlaylist(), songAdapter);
+        out.name("continuation").value(value.isContinuation());
+        out.endObject();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.domain.*;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Hands Gson the hand-written adapters for the Play responses, so they're parsed without reflection. The adapters
+ * are created once and shared by every Gson the factory is registered with. Other types are left to Gson.
+ */
+public class PlayTypeAdapterFactory implements TypeAdapterFactory {
+
+    private final SongTypeAdapter songAdapter;
+    private final PlaylistTypeAdapter playlistAdapter;
+    private final LoadAllTracksResponseTypeAdapter loadAllTracksResponseAdapter;
+    private final LoadAllPlaylistsResponseTypeAdapter loadAllPlaylistsResponseAdapter;
+    private final SearchResultsTypeAdapter searchResultsAdapter;
+    private final SearchResponseTypeAdapter searchResponseAdapter;
+    private final StreamingUrlTypeAdapter streamingUrlAdapter;
+
+    /**
+     * @param stringInterner dedupes the repeated fields of the songs
+     */
+    public PlayTypeAdapterFactory(StringInterner stringInterner) {
+        if (null == stringInterner) {
+            throw new IllegalArgumentException("stringInterner is null");
+        }
+
+        songAdapter = new SongTypeAdapter(stringInterner);
+        playlistAdapter = new PlaylistTypeAdapter(songAdapter);
+        loadAllTracksResponseAdapter = new LoadAllTracksResponseTypeAdapter(songAdapter);
+        loadAllPlaylistsResponseAdapter = new LoadAllPlaylistsResponseTypeAdapter(playlistAdapter);
+        searchResultsAdapter = new SearchResultsTypeAdapter(songAdapter);
+        searchResponseAdapter = new SearchResponseTypeAdapter(searchResultsAdapter);
+        streamingUrlAdapter = new StreamingUrlTypeAdapter();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+
+        // exact matches only, a subclass may have fields these adapters don't know about
+        if (Song.class == rawType) {
+            return (TypeAdapter<T>) songAdapter;
+        }
+        else if (Playlist.class == rawType) {
+            return (TypeAdapter<T>) playlistAdapter;
+        }
+        else if (LoadAllTracksResponse.class == rawType) {
+            return (TypeAdapter<T>) loadAllTracksResponseAdapter;
+        }
+        else if (LoadAllPlaylistsResponse.class == rawType) {
+            return (TypeAdapter<T>) loadAllPlaylistsResponseAdapter;
+        }
+        else if (SearchResults.class == rawType) {
+            return (TypeAdapter<T>) searchResultsAdapter;
+        }
+        else if (SearchResponse.class == rawType) {
+            return (TypeAdapter<T>) searchResponseAdapter;
+        }
+        else if (StreamingUrl.class == rawType) {
+            return (TypeAdapter<T>) streamingUrlAdapter;
+        }
+
+        return null;
+    }
+}
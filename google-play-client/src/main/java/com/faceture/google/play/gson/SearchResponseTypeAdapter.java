@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.play.domain.SearchResponse;
+import com.faceture.google.play.domain.SearchResults;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the search response without reflection
+ */
+public class SearchResponseTypeAdapter extends TypeAdapter<SearchResponse> {
+
+    // dependencies
+    private final TypeAdapter<SearchResults> searchResultsAdapter;
+
+    public SearchResponseTypeAdapter(TypeAdapter<SearchResults> searchResultsAdapter) {
+        if (null == searchResultsAdapter) {
+            throw new IllegalArgumentException("searchResultsAdapter is null");
+        }
+
+        this.searchResultsAdapter = searchResultsAdapter;
+    }
+
+    @Override
+    public SearchResponse read(JsonReader in) throws IOException {
+        if (JsonStreams.skipNull(in)) {
+            return null;
+        }
+
+        SearchResponse result = new SearchResponse();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (!JsonStreams.skipNull(in)) {
+                if ("results".equals(name)) {
+                    result.setResults(searchResultsAdapter.read(in));
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+        }
+        in.endObject();
+
+        return result;
+    }
+
+    @Override
+    public void write(JsonWriter out, SearchResponse value) throws IOException {
+        if (null == value) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        if (value.getResults() != null) {
+            out.name("results");
+            searchResultsAdapter.write(out, value.getResults());
+        }
+        out.endObject();
+    }
+}
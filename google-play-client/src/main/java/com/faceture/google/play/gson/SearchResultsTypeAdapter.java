@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes search results without reflection
+ */
+public class SearchResultsTypeAdapter extends TypeAdapter<SearchResults> {
+
+    // dependencies
+    private final TypeAdapter<Song> songAdapter;
+
+    public SearchResultsTypeAdapter(TypeAdapter<Song> songAdapter) {
+        if (null == songAdapter) {
+            throw new IllegalArgumentException("songAdapter is null");
+        }
+
+        this.songAdapter = songAdapter;
+    }
+
+    @Override
+    public SearchResults read(JsonReader in) throws IOException {
+        if (JsonStreams.skipNull(in)) {
+            return null;
+        }
+
+        SearchResults result = new SearchResults();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (JsonStreams.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "artists":
+                    result.setArtists(JsonStreams.readList(in, songAdapter));
+                    break;
+                case "albums":
+                    result.setAlbums(JsonStreams.readList(in, songAdapter));
+                    break;
+                case "songs":
+                    result.setSongs(JsonStreams.readList(in, songAdapter));
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return result;
+    }
+
+    @Override
+    public void write(JsonWriter out, SearchResults value) throws IOException {
+        if (null == value) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        JsonStreams.writeList(out, "artists", value.getArtists(), songAdapter);
+        JsonStreams.writeList(out, "albums", value.getAlbums(), songAdapter);
+        JsonStreams.writeList(out, "songs", value.getSongs(), songAdapter);
+        out.endObject();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.domain.Song;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes Songs without reflection. The fields that repeat across a library (artist, album, albumArtist,
+ * genre and albumArtUrl) are deduped through a StringInterner as they're read, so a large library keeps one copy of
+ * each value instead of one per song. Unknown fields are skipped. The JSON written is the same as Gson's own.
+ */
+public class SongTypeAdapter extends TypeAdapter<Song> {
+
+    // dependencies
+    private final StringInterner stringInterner;
+
+    public SongTypeAdapter(StringInterner stringInterner) {
+        if (null == stringInterner) {
+            throw new IllegalArgumentException("stringInterner is null");
+        }
+
+        this.stringInterner = stringInterner;
+    }
+
+    @Override
+    public Song read(JsonReader in) throws IOException {
+        if (JsonStreams.skipNull(in)) {
+            return null;
+        }
+
+        Song song = new Song();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (JsonStreams.skipNull(in)) {
+                // leave the field at its default, as Gson does
+                continue;
+            }
+
+            switch (name) {
+                case "genre":
+                    song.setGenre(stringInterner.intern(in.nextString()));
+                    break;
+                case "beatsPerMinute":
+                    song.setBeatsPerMinute(in.nextString());
+                    break;
+                case "album":
+                    song.setAlbum(stringInterner.intern(in.nextString()));
+                    break;
+                case "lastPlayed":
+                    song.setLastPlayed(in.nextLong());
+                    break;
+                case "type":
+                    song.setType(in.nextInt());
+                    break;
+                case "disc":
+                    song.setDisc(in.nextInt());
+                    break;
+                case "id":
+                    song.setId(in.nextString());
+                    break;
+                case "composer":
+                    song.setComposer(in.nextString());
+                    break;
+                case "title":
+                    song.setTitle(in.nextString());
+                    break;
+                case "albumArtist":
+                    song.setAlbumArtist(stringInterner.intern(in.nextString()));
+                    break;
+                case "year":
+                    song.setYear(in.nextInt());
+                    break;
+                case "artist":
+                    song.setArtist(stringInterner.intern(in.nextString()));
+                    break;
+                case "track":
+                    song.setTrack(in.nextInt());
+                    break;
+                case "durationMillis":
+                    song.setDurationMillis(in.nextLong());
+                    break;
+                case "matchedId":
+                    song.setMatchedId(in.nextString());
+                    break;
+                case "albumArtUrl":
+                    song.setAlbumArtUrl(stringInterner.intern(in.nextString()));
+                    break;
+                case "deleted":
+                    song.setDeleted(in.nextBoolean());
+                    break;
+                case "url":
+                    song.setUrl(in.nextString());
+                    break;
+                case "creationDate":
+                    song.setCreationDate(in.nextLong());
+                    break;
+                case "playCount":
+                    song.setPlayCount(in.nextInt());
+                    break;
+                case "rating":
+                    song.setRating(in.nextInt());
+                    break;
+                case "comment":
+                    song.setComment(in.nextString());
+                    break;
+                case "storeId":
+                    song.setStoreId(in.nextString());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return song;
+    }
+
+    @Override
+    public void write(JsonWriter out, Song song) throws IOException {
+        if (null == song) {
+            out.nullValue();
+            return;
+        }
+
+        // the same fields in the same order as Gson's reflective adapter, nulls left out
+        out.beginObject();
+        JsonStreams.writeString(out, "genre", song.getGenre());
+        JsonStreams.writeString(out, "beatsPerMinute", song.getBeatsPerMinute());
+        JsonStreams.writeString(out, "album", song.getAlbum());
+        out.name("lastPlayed").value(song.getLastPlayed());
+        out.name("type").value(song.getType());
+        out.name("disc").value(song.getDisc());
+        JsonStreams.writeString(out, "id", song.getId());
+        JsonStreams.writeString(out, "composer", song.getComposer());
+        JsonStreams.writeString(out, "title", song.getTitle());
+        JsonStreams.writeString(out, "albumArtist", song.getAlbumArtist());
+        out.name("year").value(song.getYear());
+        JsonStreams.writeString(out, "artist", song.getArtist());
+        out.name("track").value(song.getTrack());
+        out.name("durationMillis").value(song.getDurationMillis());
+        JsonStreams.writeString(out, "matchedId", song.getMatchedId());
+        JsonStreams.writeString(out, "albumArtUrl", song.getAlbumArtUrl());
+        out.name("deleted").value(song.isDeleted());
+        JsonStreams.writeString(out, "url", song.getUrl());
+        out.name("creationDate").value(song.getCreationDate());
+        out.name("playCount").value(song.getPlayCount());
+        out.name("rating").value(song.getRating());
+        JsonStreams.writeString(out, "comment", song.getComment());
+        JsonStreams.writeString(out, "storeId", song.getStoreId());
+        out.endObject();
+    }
+}
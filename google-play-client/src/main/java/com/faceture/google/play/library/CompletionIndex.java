@@ -0,0 +1,735 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Autocompletes song titles, artists and albums from the user's library, so a search box doesn't have to call
+ * Google Play on every keystroke. A prefix matches the start of any word of a title, artist or album, ignoring case
+ * and accents, and the best completions are the ones with the most plays and then the highest ratings.
+ *
+ * The completions are kept as a sorted array of word starts, which works like a compact trie: every prefix is a
+ * contiguous range of it. The best completions of the one and two letter prefixes, whose ranges are large, are
+ * worked out ahead of time. Lookups read an immutable snapshot without locking, and for prefixes typed in plain
+ * ASCII they allocate nothing.
+ *
+ * Changes are applied incrementally: only the new phrases are sorted and merged into the existing order, and only the
+ * best completions of the prefixes the changed phrases start words with are worked out again, mostly by re-ranking
+ * the old ones. Each call to update(), updateAll() or remove() publishes a new snapshot, so batch changes with
+ * updateAll().
+ */
+public class CompletionIndex {
+
+    /**
+     * The most completions a lookup returns
+     */
+    public static final int MAX_COMPLETIONS = 32;
+
+    // ranges at least this long use the best completions worked out ahead of time, when there are some
+    private static final int SCAN_LIMIT = 256;
+
+    // the phrases of a song that can be completed
+    private static final IndexedField[] FIELDS = {IndexedField.TITLE, IndexedField.ARTIST, IndexedField.ALBUM};
+
+    private final TextFolder textFolder = new TextFolder();
+
+    // scratch space for ranking, one per thread so lookups don't allocate
+    private final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[MAX_COMPLETIONS]);
+
+    // guarded by this
+    private final Map<String, Phrase> phrases = new HashMap<String, Phrase>();
+    private final List<Phrase> phrasesById = new ArrayList<Phrase>();
+    private final Map<String, Song> songs = new HashMap<String, Song>();
+    private final List<Phrase> addedPhrases = new ArrayList<Phrase>();
+    // added, removed or rescored since the last snapshot
+    private final Set<Phrase> changedPhrases = new HashSet<Phrase>();
+    private int removedPhrases;
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    public CompletionIndex() {}
+
+    public CompletionIndex(Collection<Song> songs) {
+        updateAll(songs);
+    }
+
+    /**
+     * Adds the song, or replaces the song with the same id. A deleted song is removed.
+     */
+    public synchronized void update(Song song) {
+        updateLocked(song);
+        publish();
+    }
+
+    public synchronized void updateAll(Collection<Song> songs) {
+        if (null == songs) {
+            throw new IllegalArgumentException("songs is null");
+        }
+
+        for (Song song : songs) {
+            updateLocked(song);
+        }
+        publish();
+    }
+
+    /**
+     * @return true if the song was in the index
+     */
+    public synchronized boolean remove(String songId) {
+        if (null == songId) {
+            throw new IllegalArgumentException("songId is null");
+        }
+
+        boolean removed = removeLocked(songId);
+        publish();
+
+        return removed;
+    }
+
+    /**
+     * @return the number of distinct titles, artists and albums that can be completed
+     */
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * Finds the best completions of the prefix
+     * @param prefix what has been typed so far
+     * @param completions filled with the completions, best first, as they are written in the library
+     * @return the number of completions, at most the length of the array and at most MAX_COMPLETIONS
+     */
+    public int complete(CharSequence prefix, String[] completions) {
+        if (null == prefix) {
+            throw new IllegalArgumentException("prefix is null");
+        }
+        if (null == completions) {
+            throw new IllegalArgumentException("completions is null");
+        }
+
+        // plain ASCII is folded as it's compared, anything else has to be folded up front
+        for (int i = 0; i < prefix.length(); i++) {
+            if (prefix.charAt(i) >= 128) {
+                prefix = textFolder.fold(prefix.toString());
+                break;
+            }
+        }
+
+        Snapshot current = snapshot;
+        int limit = Math.min(completions.length, MAX_COMPLETIONS);
+        if (0 == prefix.length() || 0 == limit) {
+            return 0;
+        }
+
+        int start = current.lowerBound(prefix);
+        int end = current.upperBound(prefix, start);
+
+        int[] best;
+        int count;
+        if (end - start >= SCAN_LIMIT && (best = current.getBest(prefix)) != null) {
+            count = Math.min(limit, best.length);
+        }
+        else {
+            best = scratch.get();
+            count = current.rank(start, end, best, limit);
+        }
+
+        for (int i = 0; i < count; i++) {
+            completions[i] = current.displays[best[i]];
+        }
+
+        return count;
+    }
+
+    private void updateLocked(Song song) {
+        if (null == song || null == song.getId()) {
+            throw new IllegalArgumentException("song or its id is null");
+        }
+
+        removeLocked(song.getId());
+        if (song.isDeleted()) {
+            return;
+        }
+
+        songs.put(song.getId(), song);
+        for (IndexedField field : FIELDS) {
+            String text = field.getValue(song);
+            String folded = textFolder.fold(text).trim();
+            if (folded.isEmpty()) {
+                continue;
+            }
+
+            Phrase phrase = phrases.get(folded);
+            if (null == phrase) {
+                phrase = new Phrase(phrasesById.size(), folded, text.trim());
+                phrases.put(folded, phrase);
+                phrasesById.add(phrase);
+                addedPhrases.add(phrase);
+            }
+            changedPhrases.add(phrase);
+
+            phrase.songs++;
+            phrase.playCount += song.getPlayCount();
+            phrase.rating += song.getRating();
+        }
+    }
+
+    private boolean removeLocked(String songId) {
+        Song song = songs.remove(songId);
+        if (null == song) {
+            return false;
+        }
+
+        for (IndexedField field : FIELDS) {
+            Phrase phrase = phrases.get(textFolder.fold(field.getValue(song)).trim());
+            if (null == phrase) {
+                continue;
+            }
+
+            changedPhrases.add(phrase);
+            phrase.playCount -= song.getPlayCount();
+            phrase.rating -= song.getRating();
+            if (--phrase.songs == 0) {
+                phrases.remove(phrase.folded);
+                phrasesById.set(phrase.id, null);
+                removedPhrases++;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds a new snapshot from the old one and the changes since
+     */
+    private void publish() {
+        Snapshot old = snapshot;
+        Snapshot next = new Snapshot();
+        next.size = phrases.size();
+
+        // once half of the ids are gone, renumber them and build everything again
+        if (removedPhrases > phrases.size()) {
+            compact();
+
+            next.folded = new String[phrasesById.size()];
+            next.displays = new String[phrasesById.size()];
+            next.scores = new long[phrasesById.size()];
+            for (Phrase phrase : phrasesById) {
+                next.set(phrase);
+            }
+
+            int[][] entries = createEntries(addedPhrases);
+            next.entryIds = entries[0];
+            next.entryOffsets = entries[1];
+            next.computeBest();
+        }
+        else {
+            next.folded = Arrays.copyOf(old.folded, phrasesById.size());
+            next.displays = Arrays.copyOf(old.displays, phrasesById.size());
+            next.scores = Arrays.copyOf(old.scores, phrasesById.size());
+
+            boolean pruned = false;
+            for (Phrase phrase : changedPhrases) {
+                if (phrasesById.get(phrase.id) == phrase) {
+                    next.set(phrase);
+                }
+                else {
+                    next.folded[phrase.id] = null;
+                    next.displays[phrase.id] = null;
+                    next.scores[phrase.id] = 0;
+                    pruned = true;
+                }
+            }
+
+            int[][] added = createEntries(addedPhrases);
+            next.merge(old, added[0], added[1], pruned);
+            next.updateBest(old, getChangedBuckets());
+        }
+
+        addedPhrases.clear();
+        changedPhrases.clear();
+
+        snapshot = next;
+    }
+
+    /**
+     * @return the ids of the changed phrases, by the precomputed completion buckets they have a word start in
+     */
+    private Map<Integer, List<Integer>> getChangedBuckets() {
+        Map<Integer, List<Integer>> buckets = new HashMap<Integer, List<Integer>>();
+        for (Phrase phrase : changedPhrases) {
+            String folded = phrase.folded;
+            for (int i = 0; i < folded.length(); i++) {
+                char first = folded.charAt(i);
+                if (!isWordStart(folded, i) || first >= 128) {
+                    continue;
+                }
+
+                addToBucket(buckets, first, phrase.id);
+                if (i + 1 < folded.length() && folded.charAt(i + 1) < 128) {
+                    addToBucket(buckets, 128 + first * 128 + folded.charAt(i + 1), phrase.id);
+                }
+            }
+        }
+
+        return buckets;
+    }
+
+    private static void addToBucket(Map<Integer, List<Integer>> buckets, int bucket, int id) {
+        List<Integer> ids = buckets.get(bucket);
+        if (null == ids) {
+            ids = new ArrayList<Integer>(4);
+            buckets.put(bucket, ids);
+        }
+        if (!ids.contains(id)) {
+            ids.add(id);
+        }
+    }
+
+    private void compact() {
+        List<Phrase> live = new ArrayList<Phrase>(phrases.values());
+        phrasesById.clear();
+        for (Phrase phrase : live) {
+            phrase.id = phrasesById.size();
+            phrasesById.add(phrase);
+        }
+
+        addedPhrases.clear();
+        addedPhrases.addAll(live);
+        removedPhrases = 0;
+    }
+
+    /**
+     * @return the phrase ids and word offsets of the start of every word of the phrases, sorted
+     */
+    private int[][] createEntries(List<Phrase> newPhrases) {
+        List<long[]> entries = new ArrayList<long[]>();
+        for (Phrase phrase : newPhrases) {
+            // skip the ones that were removed again before being published
+            if (phrasesById.get(phrase.id) != phrase) {
+                continue;
+            }
+
+            String folded = phrase.folded;
+            for (int i = 0; i < folded.length(); i++) {
+                if (isWordStart(folded, i)) {
+                    entries.add(new long[] {phrase.id, i});
+                }
+            }
+        }
+
+        entries.sort((a, b) -> compareSuffixes(phrasesById.get((int) a[0]).folded, (int) a[1],
+                phrasesById.get((int) b[0]).folded, (int) b[1]));
+
+        int[] ids = new int[entries.size()];
+        int[] offsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            ids[i] = (int) entries.get(i)[0];
+            offsets[i] = (int) entries.get(i)[1];
+        }
+
+        return new int[][] {ids, offsets};
+    }
+
+    private static boolean isWordStart(String folded, int i) {
+        return Character.isLetterOrDigit(folded.charAt(i)) &&
+                (0 == i || !Character.isLetterOrDigit(folded.charAt(i - 1)));
+    }
+
+    private static int compareSuffixes(String a, int aOffset, String b, int bOffset) {
+        int length = Math.min(a.length() - aOffset, b.length() - bOffset);
+        for (int i = 0; i < length; i++) {
+            int diff = a.charAt(aOffset + i) - b.charAt(bOffset + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return (a.length() - aOffset) - (b.length() - bOffset);
+    }
+
+    /**
+     * @return true if a ranks above b
+     */
+    private static boolean ranksAbove(long[] scores, String[] folded, int a, int b) {
+        if (scores[a] != scores[b]) {
+            return scores[a] > scores[b];
+        }
+
+        return folded[a].compareTo(folded[b]) < 0;
+    }
+
+    /**
+     * Adds the id to the ranked list if it's good enough, keeping it sorted and without repeats
+     * @return the new length of the list
+     */
+    private static int offer(long[] scores, String[] folded, int[] best, int count, int limit, int id) {
+        for (int i = 0; i < count; i++) {
+            if (best[i] == id) {
+                return count;
+            }
+        }
+
+        if (count == limit && !ranksAbove(scores, folded, id, best[count - 1])) {
+            return count;
+        }
+
+        int i = count < limit ? count++ : count - 1;
+        while (i > 0 && ranksAbove(scores, folded, id, best[i - 1])) {
+            best[i] = best[i - 1];
+            i--;
+        }
+        best[i] = id;
+
+        return count;
+    }
+
+    /**
+     * A title, artist or album, shared by all of the songs that have it
+     */
+    private static class Phrase {
+        private int id;
+        private final String folded;
+        private final String display;
+        private int songs;
+        private long playCount;
+        private long rating;
+
+        Phrase(int id, String folded, String display) {
+            this.id = id;
+            this.folded = folded;
+            this.display = display;
+        }
+
+        /**
+         * @return plays first, then ratings
+         */
+        long getScore() {
+            return (Math.max(playCount, 0) << 20) + Math.min(Math.max(rating, 0), (1 << 20) - 1);
+        }
+    }
+
+    /**
+     * Everything a lookup needs, never changed once published
+     */
+    private static class Snapshot {
+        private int size;
+
+        // by phrase id
+        private String[] folded = new String[0];
+        private String[] displays = new String[0];
+        private long[] scores = new long[0];
+
+        // the start of every word of every phrase, in order
+        private int[] entryIds = new int[0];
+        private int[] entryOffsets = new int[0];
+
+        // the best completions of one and two character ASCII prefixes with long ranges
+        private int[][] best = new int[128 + 128 * 128][];
+
+        void set(Phrase phrase) {
+            folded[phrase.id] = phrase.folded;
+            displays[phrase.id] = phrase.display;
+            scores[phrase.id] = phrase.getScore();
+        }
+
+        /**
+         * Merges the old snapshot's entries, less the removed phrases, with the new entries
+         * @param pruned whether any phrases were removed
+         */
+        void merge(Snapshot old, int[] addedIds, int[] addedOffsets, boolean pruned) {
+            if (!pruned) {
+                insert(old, addedIds, addedOffsets);
+                return;
+            }
+
+            int length = 0;
+            for (int id : old.entryIds) {
+                if (folded[id] != null) {
+                    length++;
+                }
+            }
+            length += addedIds.length;
+
+            entryIds = new int[length];
+            entryOffsets = new int[length];
+
+            int o = 0;
+            int a = 0;
+            for (int i = 0; i < length; i++) {
+                // skip the old entries of removed phrases
+                while (o < old.entryIds.length && null == folded[old.entryIds[o]]) {
+                    o++;
+                }
+
+                boolean takeOld = a == addedIds.length || (o < old.entryIds.length &&
+                        compareSuffixes(folded[old.entryIds[o]], old.entryOffsets[o], folded[addedIds[a]],
+                                addedOffsets[a]) <= 0);
+                if (takeOld) {
+                    entryIds[i] = old.entryIds[o];
+                    entryOffsets[i] = old.entryOffsets[o++];
+                }
+                else {
+                    entryIds[i] = addedIds[a];
+                    entryOffsets[i] = addedOffsets[a++];
+                }
+            }
+        }
+
+        /**
+         * Inserts the new entries among the old ones, copying the old ones in blocks
+         */
+        private void insert(Snapshot old, int[] addedIds, int[] addedOffsets) {
+            if (0 == addedIds.length) {
+                entryIds = old.entryIds;
+                entryOffsets = old.entryOffsets;
+                return;
+            }
+
+            entryIds = new int[old.entryIds.length + addedIds.length];
+            entryOffsets = new int[entryIds.length];
+
+            int o = 0;
+            int i = 0;
+            for (int a = 0; a < addedIds.length; a++) {
+                // the old entries that sort the same come first, as in merge()
+                int low = o;
+                int high = old.entryIds.length;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (compareSuffixes(folded[old.entryIds[middle]], old.entryOffsets[middle],
+                            folded[addedIds[a]], addedOffsets[a]) <= 0)
+                    {
+                        low = middle + 1;
+                    }
+                    else {
+                        high = middle;
+                    }
+                }
+
+                System.arraycopy(old.entryIds, o, entryIds, i, low - o);
+                System.arraycopy(old.entryOffsets, o, entryOffsets, i, low - o);
+                i += low - o;
+                o = low;
+
+                entryIds[i] = addedIds[a];
+                entryOffsets[i++] = addedOffsets[a];
+            }
+
+            System.arraycopy(old.entryIds, o, entryIds, i, old.entryIds.length - o);
+            System.arraycopy(old.entryOffsets, o, entryOffsets, i, old.entryOffsets.length - o);
+        }
+
+        void computeBest() {
+            int[][] candidates = new int[best.length][];
+            int[] counts = new int[best.length];
+            int[] rangeLengths = new int[best.length];
+
+            for (int i = 0; i < entryIds.length; i++) {
+                String phrase = folded[entryIds[i]];
+                int offset = entryOffsets[i];
+
+                char first = phrase.charAt(offset);
+                if (first >= 128) {
+                    continue;
+                }
+                add(candidates, counts, rangeLengths, first, entryIds[i]);
+
+                if (offset + 1 < phrase.length() && phrase.charAt(offset + 1) < 128) {
+                    add(candidates, counts, rangeLengths, 128 + first * 128 + phrase.charAt(offset + 1),
+                            entryIds[i]);
+                }
+            }
+
+            for (int bucket = 0; bucket < best.length; bucket++) {
+                if (rangeLengths[bucket] >= SCAN_LIMIT) {
+                    best[bucket] = Arrays.copyOf(candidates[bucket], counts[bucket]);
+                }
+            }
+        }
+
+        /**
+         * Works out the best completions of the changed buckets from the old snapshot's. A bucket is only ranked
+         * again from scratch when one of its full list of best completions was removed or fell in score, since the
+         * next best could then be any phrase in its range.
+         * @param changedBuckets the ids of the changed phrases in each bucket they have a word start in
+         */
+        void updateBest(Snapshot old, Map<Integer, List<Integer>> changedBuckets) {
+            best = Arrays.copyOf(old.best, old.best.length);
+
+            for (Map.Entry<Integer, List<Integer>> changedBucket : changedBuckets.entrySet()) {
+                int bucket = changedBucket.getKey();
+                List<Integer> changedIds = changedBucket.getValue();
+
+                String prefix = bucket < 128 ? String.valueOf((char) bucket) :
+                        new String(new char[] {(char) ((bucket - 128) / 128), (char) ((bucket - 128) % 128)});
+                int start = lowerBound(prefix);
+                int end = upperBound(prefix, start);
+                if (end - start < SCAN_LIMIT) {
+                    best[bucket] = null;
+                    continue;
+                }
+
+                best[bucket] = rerank(old, old.best[bucket], changedIds);
+                if (null == best[bucket]) {
+                    int[] ranked = new int[MAX_COMPLETIONS];
+                    best[bucket] = Arrays.copyOf(ranked, rank(start, end, ranked, MAX_COMPLETIONS));
+                }
+            }
+        }
+
+        /**
+         * @return the old best completions with the changed phrases ranked again, or null if the bucket has to be
+         * ranked from scratch
+         */
+        private int[] rerank(Snapshot old, int[] oldBest, List<Integer> changedIds) {
+            if (null == oldBest) {
+                return null;
+            }
+
+            int[] ranked = new int[MAX_COMPLETIONS];
+            int count = 0;
+            for (int id : oldBest) {
+                if (changedIds.contains(id)) {
+                    if (oldBest.length == MAX_COMPLETIONS && (null == folded[id] || scores[id] < old.scores[id])) {
+                        return null;
+                    }
+                }
+                else {
+                    ranked[count++] = id;
+                }
+            }
+
+            for (int id : changedIds) {
+                if (folded[id] != null) {
+                    count = offer(scores, folded, ranked, count, MAX_COMPLETIONS, id);
+                }
+            }
+
+            return Arrays.copyOf(ranked, count);
+        }
+
+        private void add(int[][] candidates, int[] counts, int[] rangeLengths, int bucket, int id) {
+            if (null == candidates[bucket]) {
+                candidates[bucket] = new int[MAX_COMPLETIONS];
+            }
+
+            rangeLengths[bucket]++;
+            counts[bucket] = offer(scores, folded, candidates[bucket], counts[bucket], MAX_COMPLETIONS, id);
+        }
+
+        /**
+         * @return the best completions worked out ahead of time for the prefix, or null if there aren't any
+         */
+        int[] getBest(CharSequence prefix) {
+            char first = Character.toLowerCase(prefix.charAt(0));
+            if (first >= 128 || prefix.length() > 2) {
+                return null;
+            }
+            if (1 == prefix.length()) {
+                return best[first];
+            }
+
+            char second = Character.toLowerCase(prefix.charAt(1));
+
+            return second < 128 ? best[128 + first * 128 + second] : null;
+        }
+
+        /**
+         * Ranks the phrases of the entries in the range into best
+         * @return the number ranked
+         */
+        int rank(int start, int end, int[] best, int limit) {
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                count = offer(scores, folded, best, count, limit, entryIds[i]);
+            }
+
+            return count;
+        }
+
+        /**
+         * @return the first entry that starts with the prefix or comes after it
+         */
+        int lowerBound(CharSequence prefix) {
+            int low = 0;
+            int high = entryIds.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareToPrefix(middle, prefix) < 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return the first entry after the ones that start with the prefix
+         */
+        int upperBound(CharSequence prefix, int from) {
+            int low = from;
+            int high = entryIds.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareToPrefix(middle, prefix) <= 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return 0 if the entry starts with the prefix, else how it sorts against the prefix
+         */
+        private int compareToPrefix(int entry, CharSequence prefix) {
+            String phrase = folded[entryIds[entry]];
+            int offset = entryOffsets[entry];
+
+            for (int i = 0; i < prefix.length(); i++) {
+                if (offset + i == phrase.length()) {
+                    return -1;
+                }
+
+                int diff = phrase.charAt(offset + i) - Character.toLowerCase(prefix.charAt(i));
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+
+/**
+ * The Song fields searched by the LibraryIndex, with how much a match in each counts toward a song's rank
+ */
+public enum IndexedField {
+
+    TITLE(4) {
+        public String getValue(Song song) {
+            return song.getTitle();
+        }
+    },
+    ARTIST(3) {
+        public String getValue(Song song) {
+            return song.getArtist();
+        }
+    },
+    ALBUM(2) {
+        public String getValue(Song song) {
+            return song.getAlbum();
+        }
+    },
+    ALBUM_ARTIST(2) {
+        public String getValue(Song song) {
+            return song.getAlbumArtist();
+        }
+    },
+    COMPOSER(1) {
+        public String getValue(Song song) {
+            return song.getComposer();
+        }
+    },
+    GENRE(1) {
+        public String getValue(Song song) {
+            return song.getGenre();
+        }
+    };
+
+    private final int weight;
+
+    IndexedField(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return this field's bit in a mask of fields
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    public abstract String getValue(Song song);
+
+    /**
+     * @return the total weight of the fields in the mask
+     */
+    public static int getWeight(int mask) {
+        int weight = 0;
+        for (IndexedField field : values()) {
+            if ((mask & field.getMask()) != 0) {
+                weight += field.weight;
+            }
+        }
+
+        return weight;
+    }
+}
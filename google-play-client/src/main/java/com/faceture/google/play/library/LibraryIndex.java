@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over the user's library, for searching it without going to Google Play. Titles,
+ * artists, albums, album artists, composers and genres are split into case and accent folded words. A query matches
+ * the songs that have every one of its words, with the last word also matching as a prefix so partly typed queries
+ * work.
+ *
+ * Results come back shaped like PlayClient.search's: the matching songs, plus one song for each matching artist and
+ * album, ranked by which fields matched and then by play count and rating. The index is updated in place as songs
+ * change, and can be searched while being updated.
+ */
+public class LibraryIndex {
+
+    public static final int DEFAULT_LIMIT = 50;
+
+    // best match first
+    private static final Comparator<Match> RANK = (a, b) -> {
+        if (a.score != b.score) {
+            return b.score - a.score;
+        }
+        if (a.song.getPlayCount() != b.song.getPlayCount()) {
+            return b.song.getPlayCount() - a.song.getPlayCount();
+        }
+        if (a.song.getRating() != b.song.getRating()) {
+            return b.song.getRating() - a.song.getRating();
+        }
+
+        return a.song.getId().compareTo(b.song.getId());
+    };
+
+    private final TextFolder textFolder = new TextFolder();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<String, Song> songs = new HashMap<String, Song>();
+    // song id -> the words it was indexed under, so it can be removed even if the Song was changed since
+    private final Map<String, Set<String>> songTokens = new HashMap<String, Set<String>>();
+    // word -> id of each song with the word -> mask of the IndexedFields it's in
+    private final NavigableMap<String, Map<String, Integer>> postings = new TreeMap<String, Map<String, Integer>>();
+
+    public LibraryIndex() {}
+
+    public LibraryIndex(Collection<Song> songs) {
+        updateAll(songs);
+    }
+
+    /**
+     * Adds the song, or replaces the song with the same id. A deleted song is removed.
+     */
+    public void update(Song song) {
+        if (null == song || null == song.getId()) {
+            throw new IllegalArgumentException("song or its id is null");
+        }
+
+        lock.writeLock().lock();
+        try {
+            updateLocked(song);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates all of the songs at once, so searches see all of them or none of them
+     */
+    public void updateAll(Collection<Song> songs) {
+        if (null == songs) {
+            throw new IllegalArgumentException("songs is null");
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Song song : songs) {
+                if (null == song || null == song.getId()) {
+                    throw new IllegalArgumentException("song or its id is null");
+                }
+
+                updateLocked(song);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the song was in the index
+     */
+    public boolean remove(String songId) {
+        if (null == songId) {
+            throw new IllegalArgumentException("songId is null");
+        }
+
+        lock.writeLock().lock();
+        try {
+            return removeLocked(songId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Song getSong(String songId) {
+        if (null == songId) {
+            throw new IllegalArgumentException("songId is null");
+        }
+
+        lock.readLock().lock();
+        try {
+            return songs.get(songId);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return songs.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SearchResults search(String query) {
+        return search(query, DEFAULT_LIMIT);
+    }
+
+    /**
+     * @param limit the most songs, artists and albums to return, each
+     */
+    public SearchResults search(String query, int limit) {
+        if (null == query) {
+            throw new IllegalArgumentException("query is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+
+        List<String> tokens = textFolder.tokenize(query);
+
+        List<Match> matches;
+        lock.readLock().lock();
+        try {
+            matches = match(tokens);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        Collections.sort(matches, RANK);
+
+        SearchResults searchResults = new SearchResults();
+        searchResults.setSongs(top(matches, limit));
+        searchResults.setArtists(group(matches, IndexedField.ARTIST.getMask() | IndexedField.ALBUM_ARTIST.getMask(),
+                false, limit));
+        searchResults.setAlbums(group(matches, IndexedField.ALBUM.getMask(), true, limit));
+
+        return searchResults;
+    }
+
+    /**
+     * @return the songs with every one of the words, the last one matched as a prefix too
+     */
+    private List<Match> match(List<String> tokens) {
+        Map<String, Match> matches = null;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Map<String, Integer> tokenMatches = i == tokens.size() - 1 ? findPrefix(tokens.get(i)) :
+                    postings.get(tokens.get(i));
+            if (null == tokenMatches || tokenMatches.isEmpty()) {
+                return new ArrayList<Match>();
+            }
+
+            if (null == matches) {
+                matches = new HashMap<String, Match>();
+                for (Map.Entry<String, Integer> tokenMatch : tokenMatches.entrySet()) {
+                    Match match = new Match(songs.get(tokenMatch.getKey()));
+                    match.add(tokenMatch.getValue());
+                    matches.put(tokenMatch.getKey(), match);
+                }
+            }
+            else {
+                Iterator<Map.Entry<String, Match>> iterator = matches.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, Match> match = iterator.next();
+                    Integer mask = tokenMatches.get(match.getKey());
+                    if (null == mask) {
+                        iterator.remove();
+                    }
+                    else {
+                        match.getValue().add(mask);
+                    }
+                }
+            }
+        }
+
+        return null == matches ? new ArrayList<Match>() : new ArrayList<Match>(matches.values());
+    }
+
+    /**
+     * @return the songs with a word starting with the prefix, and the fields those words are in
+     */
+    private Map<String, Integer> findPrefix(String prefix) {
+        NavigableMap<String, Map<String, Integer>> words = postings.subMap(prefix, true,
+                prefix + Character.MAX_VALUE, true);
+        if (words.size() == 1) {
+            return words.firstEntry().getValue();
+        }
+
+        Map<String, Integer> songMasks = new HashMap<String, Integer>();
+        for (Map<String, Integer> wordMasks : words.values()) {
+            for (Map.Entry<String, Integer> wordMask : wordMasks.entrySet()) {
+                songMasks.merge(wordMask.getKey(), wordMask.getValue(), (a, b) -> a | b);
+            }
+        }
+
+        return songMasks;
+    }
+
+    private static List<Song> top(List<Match> matches, int limit) {
+        List<Song> top = new ArrayList<Song>();
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            top.add(matches.get(i).song);
+        }
+
+        return top;
+    }
+
+    /**
+     * @return the best ranked song of each artist or album the query matched
+     */
+    private List<Song> group(List<Match> matches, int fieldMask, boolean byAlbum, int limit) {
+        Map<String, Song> groups = new LinkedHashMap<String, Song>();
+
+        for (Match match : matches) {
+            if ((match.fields & fieldMask) == 0) {
+                continue;
+            }
+
+            Song song = match.song;
+            String artist = song.getAlbumArtist() != null && !song.getAlbumArtist().isEmpty() ?
+                    song.getAlbumArtist() : song.getArtist();
+            String key = byAlbum ? textFolder.fold(song.getAlbum()) + '\u0000' + textFolder.fold(artist) :
+                    textFolder.fold((match.fields & IndexedField.ARTIST.getMask()) != 0 ? song.getArtist() : artist);
+
+            if (!groups.containsKey(key)) {
+                groups.put(key, song);
+                if (groups.size() == limit) {
+                    break;
+                }
+            }
+        }
+
+        return new ArrayList<Song>(groups.values());
+    }
+
+    private void updateLocked(Song song) {
+        removeLocked(song.getId());
+
+        if (song.isDeleted()) {
+            return;
+        }
+
+        Set<String> tokens = new HashSet<String>();
+        songs.put(song.getId(), song);
+        songTokens.put(song.getId(), tokens);
+        for (IndexedField field : IndexedField.values()) {
+            for (String token : textFolder.tokenize(field.getValue(song))) {
+                tokens.add(token);
+
+                Map<String, Integer> songMasks = postings.get(token);
+                if (null == songMasks) {
+                    songMasks = new HashMap<String, Integer>(4);
+                    postings.put(token, songMasks);
+                }
+
+                songMasks.merge(song.getId(), field.getMask(), (a, b) -> a | b);
+            }
+        }
+    }
+
+    private boolean removeLocked(String songId) {
+        if (null == songs.remove(songId)) {
+            return false;
+        }
+
+        for (String token : songTokens.remove(songId)) {
+            Map<String, Integer> songMasks = postings.get(token);
+            if (songMasks != null) {
+                songMasks.remove(songId);
+                if (songMasks.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A song matching the query so far
+     */
+    private static class Match {
+        private final Song song;
+        private int score;
+        // every field any of the words matched in
+        private int fields;
+
+        Match(Song song) {
+            this.song = song;
+        }
+
+        void add(int mask) {
+            score += IndexedField.getWeight(mask);
+            fields |= mask;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * The user's library stored by column rather than as Song objects. The numbers are kept in primitive arrays and the
+ * Strings are dictionary encoded, so every distinct artist, album or genre is held once no matter how many songs
+ * share it. A 40k song library takes a small fraction of the heap its Songs would.
+ *
+ * A table is built with a Builder, which can read songs straight off the loadalltracks JSON without creating Songs
+ * (see PlayClient.loadSongTable). Once built it's immutable and safe to share between threads. Rows are read through
+ * the getters, or through SongViews, flyweight Songs that can be moved from row to row.
+ */
+public class SongTable {
+
+    // the String columns
+    public static final int GENRE = 0;
+    public static final int BEATS_PER_MINUTE = 1;
+    public static final int ALBUM = 2;
+    public static final int ID = 3;
+    public static final int COMPOSER = 4;
+    public static final int TITLE = 5;
+    public static final int ALBUM_ARTIST = 6;
+    public static final int ARTIST = 7;
+    public static final int MATCHED_ID = 8;
+    public static final int ALBUM_ART_URL = 9;
+    public static final int URL = 10;
+    public static final int COMMENT = 11;
+    public static final int STORE_ID = 12;
+
+    private static final int STRING_COLUMNS = 13;
+
+    // the JSON name of each String column
+    private static final String[] STRING_NAMES = {"genre", "beatsPerMinute", "album", "id", "composer", "title",
+            "albumArtist", "artist", "matchedId", "albumArtUrl", "url", "comment", "storeId"};
+
+    private final int size;
+    private final StringDictionary dictionary;
+    private final int[][] strings;
+    private final long[] lastPlayed;
+    private final long[] durationMillis;
+    private final long[] creationDate;
+    private final int[] type;
+    private final int[] disc;
+    private final int[] year;
+    private final int[] track;
+    private final int[] playCount;
+    private final int[] rating;
+    private final BitSet deleted;
+
+    // row of each id's dictionary code, or -1
+    private final int[] rowsById;
+
+    private SongTable(Builder builder) {
+        size = builder.size;
+        dictionary = builder.dictionary;
+        dictionary.freeze();
+
+        strings = new int[STRING_COLUMNS][];
+        for (int column = 0; column < STRING_COLUMNS; column++) {
+            strings[column] = Arrays.copyOf(builder.strings[column], size);
+        }
+        lastPlayed = Arrays.copyOf(builder.lastPlayed, size);
+        durationMillis = Arrays.copyOf(builder.durationMillis, size);
+        creationDate = Arrays.copyOf(builder.creationDate, size);
+        type = Arrays.copyOf(builder.type, size);
+        disc = Arrays.copyOf(builder.disc, size);
+        year = Arrays.copyOf(builder.year, size);
+        track = Arrays.copyOf(builder.track, size);
+        playCount = Arrays.copyOf(builder.playCount, size);
+        rating = Arrays.copyOf(builder.rating, size);
+        deleted = (BitSet) builder.deleted.clone();
+
+        rowsById = new int[dictionary.size()];
+        Arrays.fill(rowsById, -1);
+        for (int row = 0; row < size; row++) {
+            int code = strings[ID][row];
+            if (code != StringDictionary.NULL) {
+                rowsById[code] = row;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct Strings in the table
+     */
+    public int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    /**
+     * @param column one of the String column constants, e.g. ARTIST
+     */
+    public String getString(int column, int row) {
+        return dictionary.decode(strings[column][row]);
+    }
+
+    /**
+     * @return the dictionary code of the value in the String column, equal for equal Strings
+     */
+    public int getStringCode(int column, int row) {
+        return strings[column][row];
+    }
+
+    public String getId(int row) {
+        return getString(ID, row);
+    }
+
+    public String getTitle(int row) {
+        return getString(TITLE, row);
+    }
+
+    public String getArtist(int row) {
+        return getString(ARTIST, row);
+    }
+
+    public String getAlbum(int row) {
+        return getString(ALBUM, row);
+    }
+
+    public long getLastPlayed(int row) {
+        return lastPlayed[row];
+    }
+
+    public long getDurationMillis(int row) {
+        return durationMillis[row];
+    }
+
+    public long getCreationDate(int row) {
+        return creationDate[row];
+    }
+
+    public int getType(int row) {
+        return type[row];
+    }
+
+    public int getDisc(int row) {
+        return disc[row];
+    }
+
+    public int getYear(int row) {
+        return year[row];
+    }
+
+    public int getTrack(int row) {
+        return track[row];
+    }
+
+    public int getPlayCount(int row) {
+        return playCount[row];
+    }
+
+    public int getRating(int row) {
+        return rating[row];
+    }
+
+    public boolean isDeleted(int row) {
+        return deleted.get(row);
+    }
+
+    /**
+     * @return the row of the song with the id, or -1 if there isn't one
+     */
+    public int findRow(String id) {
+        if (null == id) {
+            throw new IllegalArgumentException("id is null");
+        }
+
+        int code = dictionary.find(id);
+        return StringDictionary.NULL == code ? -1 : rowsById[code];
+    }
+
+    /**
+     * @return a flyweight view of the row
+     */
+    public SongView getSong(int row) {
+        return new SongView(this, row);
+    }
+
+    /**
+     * Hands every row to the consumer through a single view, which is moved along as it goes, so the consumer must
+     * not keep it
+     */
+    public void forEach(Consumer<Song> consumer) {
+        if (null == consumer) {
+            throw new IllegalArgumentException("consumer is null");
+        }
+        if (0 == size) {
+            return;
+        }
+
+        SongView songView = new SongView(this, 0);
+        for (int row = 0; row < size; row++) {
+            consumer.accept(songView.moveTo(row));
+        }
+    }
+
+    /**
+     * @return a full, independent copy of the row as a Song
+     */
+    public Song toSong(int row) {
+        Song song = new Song();
+        song.setGenre(getString(GENRE, row));
+        song.setBeatsPerMinute(getString(BEATS_PER_MINUTE, row));
+        song.setAlbum(getString(ALBUM, row));
+        song.setLastPlayed(lastPlayed[row]);
+        song.setType(type[row]);
+        song.setDisc(disc[row]);
+        song.setId(getString(ID, row));
+        song.setComposer(getString(COMPOSER, row));
+        song.setTitle(getString(TITLE, row));
+        song.setAlbumArtist(getString(ALBUM_ARTIST, row));
+        song.setYear(year[row]);
+        song.setArtist(getString(ARTIST, row));
+        song.setTrack(track[row]);
+        song.setDurationMillis(durationMillis[row]);
+        song.setMatchedId(getString(MATCHED_ID, row));
+        song.setAlbumArtUrl(getString(ALBUM_ART_URL, row));
+        song.setDeleted(deleted.get(row));
+        song.setUrl(getString(URL, row));
+        song.setCreationDate(creationDate[row]);
+        song.setPlayCount(playCount[row]);
+        song.setRating(rating[row]);
+        song.setComment(getString(COMMENT, row));
+        song.setStoreId(getString(STORE_ID, row));
+
+        return song;
+    }
+
+    /**
+     * Builds a SongTable a song at a time, from Songs or straight from their JSON
+     */
+    public static class Builder implements Consumer<Song> {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final StringDictionary dictionary = new StringDictionary();
+        private final int[][] strings = new int[STRING_COLUMNS][INITIAL_CAPACITY];
+        private long[] lastPlayed = new long[INITIAL_CAPACITY];
+        private long[] durationMillis = new long[INITIAL_CAPACITY];
+        private long[] creationDate = new long[INITIAL_CAPACITY];
+        private int[] type = new int[INITIAL_CAPACITY];
+        private int[] disc = new int[INITIAL_CAPACITY];
+        private int[] year = new int[INITIAL_CAPACITY];
+        private int[] track = new int[INITIAL_CAPACITY];
+        private int[] playCount = new int[INITIAL_CAPACITY];
+        private int[] rating = new int[INITIAL_CAPACITY];
+        private final BitSet deleted = new BitSet();
+        private int size;
+        private boolean built;
+
+        public void accept(Song song) {
+            add(song);
+        }
+
+        public Builder add(Song song) {
+            if (null == song) {
+                throw new IllegalArgumentException("song is null");
+            }
+
+            int row = startRow();
+            setString(GENRE, row, song.getGenre());
+            setString(BEATS_PER_MINUTE, row, song.getBeatsPerMinute());
+            setString(ALBUM, row, song.getAlbum());
+            setString(ID, row, song.getId());
+            setString(COMPOSER, row, song.getComposer());
+            setString(TITLE, row, song.getTitle());
+            setString(ALBUM_ARTIST, row, song.getAlbumArtist());
+            setString(ARTIST, row, song.getArtist());
+            setString(MATCHED_ID, row, song.getMatchedId());
+            setString(ALBUM_ART_URL, row, song.getAlbumArtUrl());
+            setString(URL, row, song.getUrl());
+            setString(COMMENT, row, song.getComment());
+            setString(STORE_ID, row, song.getStoreId());
+            lastPlayed[row] = song.getLastPlayed();
+            durationMillis[row] = song.getDurationMillis();
+            creationDate[row] = song.getCreationDate();
+            type[row] = song.getType();
+            disc[row] = song.getDisc();
+            year[row] = song.getYear();
+            track[row] = song.getTrack();
+            playCount[row] = song.getPlayCount();
+            rating[row] = song.getRating();
+            deleted.set(row, song.isDeleted());
+            size++;
+
+            return this;
+        }
+
+        /**
+         * Reads the song object the reader is positioned at straight into the columns, without creating a Song.
+         * Fields that aren't Song fields are skipped.
+         */
+        public Builder readSong(JsonReader jsonReader) throws IOException {
+            if (null == jsonReader) {
+                throw new IllegalArgumentException("jsonReader is null");
+            }
+
+            int row = startRow();
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    jsonReader.nextNull();
+                }
+                else if ("lastPlayed".equals(name)) {
+                    lastPlayed[row] = jsonReader.nextLong();
+                }
+                else if ("durationMillis".equals(name)) {
+                    durationMillis[row] = jsonReader.nextLong();
+                }
+                else if ("creationDate".equals(name)) {
+                    creationDate[row] = jsonReader.nextLong();
+                }
+                else if ("type".equals(name)) {
+                    type[row] = jsonReader.nextInt();
+                }
+                else if ("disc".equals(name)) {
+                    disc[row] = jsonReader.nextInt();
+                }
+                else if ("year".equals(name)) {
+                    year[row] = jsonReader.nextInt();
+                }
+                else if ("track".equals(name)) {
+                    track[row] = jsonReader.nextInt();
+                }
+                else if ("playCount".equals(name)) {
+                    playCount[row] = jsonReader.nextInt();
+                }
+                else if ("rating".equals(name)) {
+                    rating[row] = jsonReader.nextInt();
+                }
+                else if ("deleted".equals(name)) {
+                    deleted.set(row, jsonReader.nextBoolean());
+                }
+                else {
+                    int column = getStringColumn(name);
+                    if (column >= 0) {
+                        setString(column, row, jsonReader.nextString());
+                    }
+                    else {
+                        jsonReader.skipValue();
+                    }
+                }
+            }
+            jsonReader.endObject();
+            size++;
+
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the table; the builder can't be used after this
+         */
+        public SongTable build() {
+            if (built) {
+                throw new IllegalStateException("already built");
+            }
+
+            built = true;
+            return new SongTable(this);
+        }
+
+        /**
+         * Makes room for a row and clears it
+         */
+        private int startRow() {
+            if (built) {
+                throw new IllegalStateException("already built");
+            }
+
+            if (size == type.length) {
+                int capacity = size * 2;
+                for (int column = 0; column < STRING_COLUMNS; column++) {
+                    strings[column] = Arrays.copyOf(strings[column], capacity);
+                }
+                lastPlayed = Arrays.copyOf(lastPlayed, capacity);
+                durationMillis = Arrays.copyOf(durationMillis, capacity);
+                creationDate = Arrays.copyOf(creationDate, capacity);
+                type = Arrays.copyOf(type, capacity);
+                disc = Arrays.copyOf(disc, capacity);
+                year = Arrays.copyOf(year, capacity);
+                track = Arrays.copyOf(track, capacity);
+                playCount = Arrays.copyOf(playCount, capacity);
+                rating = Arrays.copyOf(rating, capacity);
+            }
+
+            // every column, as a song that failed part way through may have left values in this row
+            for (int column = 0; column < STRING_COLUMNS; column++) {
+                strings[column][size] = StringDictionary.NULL;
+            }
+            lastPlayed[size] = 0;
+            durationMillis[size] = 0;
+            creationDate[size] = 0;
+            type[size] = 0;
+            disc[size] = 0;
+            year[size] = 0;
+            track[size] = 0;
+            playCount[size] = 0;
+            rating[size] = 0;
+            deleted.clear(size);
+
+            return size;
+        }
+
+        private void setString(int column, int row, String value) {
+            strings[column][row] = dictionary.encode(value);
+        }
+
+        private static int getStringColumn(String name) {
+            for (int column = 0; column < STRING_COLUMNS; column++) {
+                if (STRING_NAMES[column].equals(name)) {
+                    return column;
+                }
+            }
+
+            return -1;
+        }
+    }
+}
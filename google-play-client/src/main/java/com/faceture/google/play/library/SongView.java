@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+
+/**
+ * A flyweight Song that reads a row of a SongTable instead of holding its own fields. It can be moved from row to
+ * row, so a whole table can be read through a single view. Views are read-only; use SongTable.toSong() for a Song
+ * that can be changed or serialized.
+ */
+public class SongView extends Song {
+
+    private final SongTable songTable;
+    private int row;
+
+    public SongView(SongTable songTable, int row) {
+        if (null == songTable) {
+            throw new IllegalArgumentException("songTable is null");
+        }
+
+        this.songTable = songTable;
+        moveTo(row);
+    }
+
+    /**
+     * Points the view at another row of the table
+     */
+    public SongView moveTo(int row) {
+        if (row < 0 || row >= songTable.size()) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + songTable.size());
+        }
+
+        this.row = row;
+        return this;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public String getGenre() {
+        return songTable.getString(SongTable.GENRE, row);
+    }
+
+    @Override
+    public String getBeatsPerMinute() {
+        return songTable.getString(SongTable.BEATS_PER_MINUTE, row);
+    }
+
+    @Override
+    public String getAlbum() {
+        return songTable.getString(SongTable.ALBUM, row);
+    }
+
+    @Override
+    public long getLastPlayed() {
+        return songTable.getLastPlayed(row);
+    }
+
+    @Override
+    public int getType() {
+        return songTable.getType(row);
+    }
+
+    @Override
+    public int getDisc() {
+        return songTable.getDisc(row);
+    }
+
+    @Override
+    public String getId() {
+        return songTable.getString(SongTable.ID, row);
+    }
+
+    @Override
+    public String getComposer() {
+        return songTable.getString(SongTable.COMPOSER, row);
+    }
+
+    @Override
+    public String getTitle() {
+        return songTable.getString(SongTable.TITLE, row);
+    }
+
+    @Override
+    public String getAlbumArtist() {
+        return songTable.getString(SongTable.ALBUM_ARTIST, row);
+    }
+
+    @Override
+    public int getYear() {
+        return songTable.getYear(row);
+    }
+
+    @Override
+    public String getArtist() {
+        return songTable.getString(SongTable.ARTIST, row);
+    }
+
+    @Override
+    public int getTrack() {
+        return songTable.getTrack(row);
+    }
+
+    @Override
+    public long getDurationMillis() {
+        return songTable.getDurationMillis(row);
+    }
+
+    @Override
+    public String getMatchedId() {
+        return songTable.getString(SongTable.MATCHED_ID, row);
+    }
+
+    @Override
+    public String getAlbumArtUrl() {
+        return songTable.getString(SongTable.ALBUM_ART_URL, row);
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return songTable.isDeleted(row);
+    }
+
+    @Override
+    public String getUrl() {
+        return songTable.getString(SongTable.URL, row);
+    }
+
+    @Override
+    public long getCreationDate() {
+        return songTable.getCreationDate(row);
+    }
+
+    @Override
+    public int getPlayCount() {
+        return songTable.getPlayCount(row);
+    }
+
+    @Override
+    public int getRating() {
+        return songTable.getRating(row);
+    }
+
+    @Override
+    public String getComment() {
+        return songTable.getString(SongTable.COMMENT, row);
+    }
+
+    @Override
+    public String getStoreId() {
+        return songTable.getString(SongTable.STORE_ID, row);
+    }
+
+    @Override
+    public void setGenre(String genre) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setBeatsPerMinute(String beatsPerMinute) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAlbum(String album) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setLastPlayed(long lastPlayed) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setType(int type) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDisc(int disc) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setId(String id) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setComposer(String composer) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTitle(String title) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAlbumArtist(String albumArtist) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setYear(int year) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setArtist(String artist) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTrack(int track) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDurationMillis(long durationMillis) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setMatchedId(String matchedId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAlbumArtUrl(String albumArtUrl) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDeleted(boolean deleted) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setUrl(String url) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setCreationDate(long creationDate) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setPlayCount(int playCount) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setRating(int rating) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setComment(String comment) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setStoreId(String storeId) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("SongView is read-only");
+    }
+}
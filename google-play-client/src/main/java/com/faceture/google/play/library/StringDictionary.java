@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives each distinct String a small int code, so a column of repeated values can be stored as an int array holding
+ * every value only once. Null is encoded as -1.
+ */
+public class StringDictionary {
+
+    public static final int NULL = -1;
+
+    private Map<String, Integer> codes = new HashMap<String, Integer>();
+    private String[] values = new String[64];
+    private int size;
+    // once frozen, an open addressed hash table of code + 1 by the value's hash, 0 for an empty slot
+    private int[] slots;
+
+    /**
+     * @return the code of the value, adding it if it's new
+     */
+    public int encode(String value) {
+        if (null == value) {
+            return NULL;
+        }
+        if (null == codes) {
+            throw new IllegalStateException("dictionary is frozen");
+        }
+
+        Integer code = codes.get(value);
+        if (null == code) {
+            code = size;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            codes.put(value, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * @return the code of the value, or NULL if it isn't in the dictionary
+     */
+    public int find(String value) {
+        if (null == value) {
+            return NULL;
+        }
+        if (null == codes) {
+            int mask = slots.length - 1;
+            for (int slot = spread(value.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (values[slots[slot] - 1].equals(value)) {
+                    return slots[slot] - 1;
+                }
+            }
+            return NULL;
+        }
+
+        Integer code = codes.get(value);
+        return null == code ? NULL : code;
+    }
+
+    public String decode(int code) {
+        return NULL == code ? null : values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Drops what's only needed for adding values, leaving a read-only dictionary
+     */
+    public void freeze() {
+        if (null == codes) {
+            return;
+        }
+
+        codes = null;
+        values = Arrays.copyOf(values, size);
+
+        // at most half full, so probes stay short
+        slots = new int[Integer.highestOneBit(Math.max(size, 1)) << 2];
+        int mask = slots.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = spread(values[code].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
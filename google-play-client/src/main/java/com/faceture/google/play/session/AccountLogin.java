@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlaySession;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * Logs an account in, for the SessionManager to call whenever the account needs a new session
+ */
+public interface AccountLogin {
+
+    /**
+     * @return the account's new session
+     * @throws LoginFailedException if Google refused the login
+     */
+    PlaySession login(String accountId) throws IOException, URISyntaxException;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlaySession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A PlaySessionStore that keeps each account's session in a small binary file of its own in one directory, so a
+ * session is read only when its account is first used. The file is named after a SHA-256 hash of the account id,
+ * keeping the ids out of the directory listing, and is replaced atomically so a crash never leaves half a session.
+ * New files are only readable by their owner where the file system supports it, since they hold credentials.
+ */
+public class FilePlaySessionStore implements PlaySessionStore {
+
+    static final String SUFFIX = ".session";
+
+    // the first bytes of every session file, then its format version
+    static final int MAGIC = 0x47505353;
+    static final int VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * @param directory where the session files go, created if it doesn't exist
+     */
+    public FilePlaySessionStore(File directory) throws IOException {
+        if (null == directory) {
+            throw new IllegalArgumentException("directory is null");
+        }
+
+        Files.createDirectories(directory.toPath());
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the session, or null if there isn't one or it was written in a format this version doesn't read
+     * @throws IOException if the file can't be read or isn't a session file
+     */
+    public PlaySession load(String accountId) throws IOException {
+        File file = getFile(accountId);
+
+        InputStream inputStream;
+        try {
+            inputStream = Files.newInputStream(file.toPath());
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " isn't a session file");
+            }
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+
+            // a hash collision is as good as impossible, but a session must never go to the wrong account
+            if (!accountId.equals(in.readUTF())) {
+                return null;
+            }
+
+            long issuedAtMillis = in.readLong();
+            String xtCookie = in.readUTF();
+            String sjsaidCookie = in.readUTF();
+            String authToken = in.readUTF();
+
+            return new PlaySession(xtCookie, sjsaidCookie, authToken, issuedAtMillis);
+        }
+        catch (EOFException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(file + " holds an invalid session", e);
+        }
+    }
+
+    public void save(String accountId, PlaySession playSession) throws IOException {
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+        File file = getFile(accountId);
+
+        // temp files are only readable by their owner on POSIX file systems, and the move keeps that
+        Path tempFile = Files.createTempFile(directory.toPath(), "session", ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream)))
+            {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(accountId);
+                out.writeLong(playSession.getIssuedAtMillis());
+                out.writeUTF(playSession.getXtCookie());
+                out.writeUTF(playSession.getSjsaidCookie());
+                out.writeUTF(playSession.getAuthToken());
+            }
+
+            Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public void remove(String accountId) throws IOException {
+        Files.deleteIfExists(getFile(accountId).toPath());
+    }
+
+    File getFile(String accountId) {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(accountId.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every JRE has SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        name.append(SUFFIX);
+
+        return new File(directory, name.toString());
+    }
+}
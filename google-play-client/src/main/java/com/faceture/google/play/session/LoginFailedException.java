@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.LoginResult;
+
+import java.io.IOException;
+
+/**
+ * Thrown when Google refuses to log an account in, e.g. because its password has changed
+ */
+public class LoginFailedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String accountId;
+    private final LoginResult loginResult;
+
+    public LoginFailedException(String accountId, LoginResult loginResult) {
+        super("login failed for account " + accountId + ": " + loginResult);
+
+        this.accountId = accountId;
+        this.loginResult = loginResult;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public LoginResult getLoginResult() {
+        return loginResult;
+    }
+}
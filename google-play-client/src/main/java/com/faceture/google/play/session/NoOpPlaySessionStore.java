@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlaySession;
+
+/**
+ * A PlaySessionStore that keeps nothing, for when the sessions don't need to outlive the process
+ */
+public class NoOpPlaySessionStore implements PlaySessionStore {
+
+    public PlaySession load(String accountId) {
+        return null;
+    }
+
+    public void save(String accountId, PlaySession playSession) {
+    }
+
+    public void remove(String accountId) {
+    }
+}
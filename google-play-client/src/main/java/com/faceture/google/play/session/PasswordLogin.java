@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.LoginResponse;
+import com.faceture.google.play.LoginResult;
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlaySession;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.function.Function;
+
+/**
+ * Logs accounts in with PlayClient.login, using the account id as the email address
+ */
+public class PasswordLogin implements AccountLogin {
+
+    private final PlayClient playClient;
+    private final Function<String, String> passwordSource;
+
+    /**
+     * @param passwordSource gives the password of an email address, or null if it isn't known
+     */
+    public PasswordLogin(PlayClient playClient, Function<String, String> passwordSource) {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == passwordSource) {
+            throw new IllegalArgumentException("passwordSource is null");
+        }
+
+        this.playClient = playClient;
+        this.passwordSource = passwordSource;
+    }
+
+    @Override
+    public PlaySession login(String accountId) throws IOException, URISyntaxException {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        String password = passwordSource.apply(accountId);
+        if (null == password || password.isEmpty()) {
+            throw new LoginFailedException(accountId, LoginResult.BAD_CREDENTIALS);
+        }
+
+        LoginResponse loginResponse = playClient.login(accountId, password);
+        if (loginResponse.getLoginResult() != LoginResult.SUCCESS) {
+            throw new LoginFailedException(accountId, loginResponse.getLoginResult());
+        }
+
+        return loginResponse.getPlaySession();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlaySession;
+
+import java.io.IOException;
+
+/**
+ * Keeps the PlaySessions of the accounts somewhere that outlives the process, so that a restarted service can carry
+ * on with them rather than logging every account in again. Called from many threads at once, so implementations
+ * must be thread safe.
+ */
+public interface PlaySessionStore {
+
+    /**
+     * @return the account's session as it was last saved, with its issue time, or null if there isn't one
+     */
+    PlaySession load(String accountId) throws IOException;
+
+    /**
+     * Replaces whatever was saved for the account
+     */
+    void save(String accountId, PlaySession playSession) throws IOException;
+
+    /**
+     * Forgets the account's session, e.g. when it logs out. Does nothing if there isn't one.
+     */
+    void remove(String accountId) throws IOException;
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlaySession;
+import com.faceture.google.play.SessionCall;
+import com.faceture.google.play.SessionExpiredException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a live session for each account. A call refused because its session has expired logs the account in again
+ * and is repeated once; however many calls are refused at the same time, the account is only logged in once and the
+ * others wait for that login. Sessions nearing refreshAfterMillis are replaced in the background, so that calls
+ * don't normally wait for a login at all.
+ */
+public class SessionManager implements Closeable {
+
+    /**
+     * Background refreshes start up to this fraction of refreshAfterMillis early, varying by account, so that
+     * accounts logged in together aren't all refreshed together
+     */
+    static final double REFRESH_SPREAD = 0.1;
+
+    private final PlayClient playClient;
+    private final AccountLogin accountLogin;
+    private final PlaySessionStore playSessionStore;
+    private final SessionManagerConfig sessionManagerConfig;
+    private final Clock clock;
+
+    private final ConcurrentMap<String, PlaySession> sessionsById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<PlaySession>> loginsById = new ConcurrentHashMap<>();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder failedLogins = new LongAdder();
+    private final LongAdder failedSaves = new LongAdder();
+    private final ScheduledFuture<?> refreshTask;
+
+    public SessionManager(PlayClient playClient, AccountLogin accountLogin, PlaySessionStore playSessionStore) {
+        this(playClient, accountLogin, playSessionStore, new SessionManagerConfig(), Clock.systemUTC());
+    }
+
+    public SessionManager(PlayClient playClient, AccountLogin accountLogin, PlaySessionStore playSessionStore,
+                          SessionManagerConfig sessionManagerConfig, Clock clock)
+    {
+        if (null == playClient) {
+            throw new IllegalArgumentException("playClient is null");
+        }
+        if (null == accountLogin) {
+            throw new IllegalArgumentException("accountLogin is null");
+        }
+        if (null == playSessionStore) {
+            throw new IllegalArgumentException("playSessionStore is null");
+        }
+        if (null == sessionManagerConfig) {
+            throw new IllegalArgumentException("sessionManagerConfig is null");
+        }
+        if (null == clock) {
+            throw new IllegalArgumentException("clock is null");
+        }
+
+        this.playClient = playClient;
+        this.accountLogin = accountLogin;
+        this.playSessionStore = playSessionStore;
+        this.sessionManagerConfig = sessionManagerConfig;
+        this.clock = clock;
+
+        long refreshIntervalMillis = sessionManagerConfig.getRefreshIntervalMillis();
+        refreshTask = refreshIntervalMillis == 0 ? null : sessionManagerConfig.getScheduler().scheduleWithFixedDelay(
+                this::refreshAging, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes the call with the account's session. If it's refused because the session has expired, the account is
+     * logged in again and the call is made once more with the new session.
+     *
+     * @throws LoginFailedException if the account had to be logged in and Google refused
+     */
+    public <T> T call(String accountId, SessionCall<T> sessionCall) throws IOException, URISyntaxException {
+        if (null == sessionCall) {
+            throw new IllegalArgumentException("sessionCall is null");
+        }
+
+        PlaySession playSession = getSession(accountId);
+        try {
+            return sessionCall.call(playClient, playSession);
+        }
+        catch (IOException | RuntimeException e) {
+            if (!isSessionExpired(e)) {
+                throw e;
+            }
+        }
+
+        return sessionCall.call(playClient, renewSession(accountId, playSession));
+    }
+
+    /**
+     * @return the account's session: the one in memory, else the one in the PlaySessionStore, else a new one from
+     * logging the account in
+     */
+    public PlaySession getSession(String accountId) throws IOException, URISyntaxException {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        PlaySession playSession = sessionsById.get(accountId);
+        if (null != playSession) {
+            return playSession;
+        }
+
+        PlaySession storedSession = playSessionStore.load(accountId);
+        if (null != storedSession) {
+            PlaySession existingSession = sessionsById.putIfAbsent(accountId, storedSession);
+            return null == existingSession ? storedSession : existingSession;
+        }
+
+        return renewSession(accountId, null);
+    }
+
+    /**
+     * Replaces the given session of the account by logging it in again. Only one login per account runs at a time:
+     * callers that arrive while one is running wait for its session, and callers whose session has already been
+     * replaced get the replacement straight away.
+     *
+     * @param expiredSession the session that stopped working, or null if the account has none
+     * @return the account's new session
+     */
+    public PlaySession renewSession(String accountId, PlaySession expiredSession)
+            throws IOException, URISyntaxException
+    {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        CompletableFuture<PlaySession> login = loginsById.get(accountId);
+        if (null != login) {
+            return await(login);
+        }
+
+        PlaySession currentSession = sessionsById.get(accountId);
+        if (null != currentSession && currentSession != expiredSession) {
+            return currentSession;
+        }
+
+        CompletableFuture<PlaySession> ourLogin = new CompletableFuture<>();
+        login = loginsById.putIfAbsent(accountId, ourLogin);
+        if (null != login) {
+            return await(login);
+        }
+
+        try {
+            // another login may have finished between the checks above and taking the lock
+            currentSession = sessionsById.get(accountId);
+            if (null != currentSession && currentSession != expiredSession) {
+                ourLogin.complete(currentSession);
+                return currentSession;
+            }
+
+            PlaySession playSession = login(accountId, ourLogin);
+            ourLogin.complete(playSession);
+            return playSession;
+        }
+        catch (IOException | URISyntaxException | RuntimeException | Error e) {
+            ourLogin.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            loginsById.remove(accountId, ourLogin);
+        }
+    }
+
+    /**
+     * Adds or replaces the session of an account that was logged in elsewhere, saving it to the PlaySessionStore
+     */
+    public void putSession(String accountId, PlaySession playSession) throws IOException {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+        if (null == playSession) {
+            throw new IllegalArgumentException("playSession is null");
+        }
+
+        sessionsById.put(accountId, playSession);
+        playSessionStore.save(accountId, playSession);
+    }
+
+    /**
+     * Forgets the account's session, in memory and in the PlaySessionStore, e.g. when it logs out. A login of the
+     * account that's running is cancelled, so its session isn't kept.
+     */
+    public void removeSession(String accountId) throws IOException {
+        if (null == accountId || accountId.isEmpty()) {
+            throw new IllegalArgumentException("accountId is null or empty");
+        }
+
+        CompletableFuture<PlaySession> login = loginsById.remove(accountId);
+        if (null != login) {
+            // waits for the login if it's keeping its session, so that the session is removed after it
+            synchronized (login) {
+                login.cancel(false);
+            }
+        }
+
+        sessionsById.remove(accountId);
+        playSessionStore.remove(accountId);
+    }
+
+    /**
+     * @return the ids of the accounts that have a session in memory
+     */
+    public Set<String> getAccountIds() {
+        return Collections.unmodifiableSet(sessionsById.keySet());
+    }
+
+    /**
+     * @return how many times an account has been logged in, including failed attempts
+     */
+    public long getLoginCount() {
+        return logins.sum();
+    }
+
+    public long getFailedLoginCount() {
+        return failedLogins.sum();
+    }
+
+    /**
+     * @return how many new sessions couldn't be saved to the PlaySessionStore. They were still used.
+     */
+    public long getFailedSaveCount() {
+        return failedSaves.sum();
+    }
+
+    /**
+     * Stops refreshing sessions in the background
+     */
+    @Override
+    public void close() {
+        if (null != refreshTask) {
+            refreshTask.cancel(false);
+        }
+    }
+
+    /**
+     * Replaces the sessions that are due to be refreshed, one account at a time. A failed refresh leaves the old
+     * session in place, to be tried again next time.
+     */
+    void refreshAging() {
+        long now = clock.millis();
+
+        for (Map.Entry<String, PlaySession> entry : sessionsById.entrySet()) {
+            String accountId = entry.getKey();
+            PlaySession playSession = entry.getValue();
+
+            if (now - playSession.getIssuedAtMillis() >= getRefreshAfterMillis(accountId)) {
+                try {
+                    renewSession(accountId, playSession);
+                }
+                catch (Throwable t) {
+                    // already counted as a failed login; the old session may still work until the next attempt. An
+                    // Error is caught too, or the scheduler would stop refreshing every account for good.
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the age at which the account's session is refreshed, spread evenly between refreshAfterMillis and
+     * REFRESH_SPREAD of it earlier
+     */
+    long getRefreshAfterMillis(String accountId) {
+        long refreshAfterMillis = sessionManagerConfig.getRefreshAfterMillis();
+        double spread = Math.floorMod(accountId.hashCode(), 1000) / 1000.0 * REFRESH_SPREAD;
+
+        return refreshAfterMillis - (long) (refreshAfterMillis * spread);
+    }
+
+    /**
+     * @throws CancellationException if the account's session was removed while it was logging in
+     */
+    private PlaySession login(String accountId, CompletableFuture<PlaySession> ourLogin)
+            throws IOException, URISyntaxException
+    {
+        logins.increment();
+
+        PlaySession playSession;
+        try {
+            playSession = accountLogin.login(accountId);
+        }
+        catch (IOException | URISyntaxException | RuntimeException e) {
+            failedLogins.increment();
+            throw e;
+        }
+
+        synchronized (ourLogin) {
+            if (ourLogin.isCancelled()) {
+                throw new CancellationException("the session of " + accountId + " was removed while logging in");
+            }
+
+            sessionsById.put(accountId, playSession);
+            try {
+                playSessionStore.save(accountId, playSession);
+            }
+            catch (IOException e) {
+                // the session is good whether or not it outlives the process
+                failedSaves.increment();
+            }
+        }
+
+        return playSession;
+    }
+
+    private static PlaySession await(CompletableFuture<PlaySession> login) throws IOException, URISyntaxException {
+        try {
+            return login.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the login");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof URISyntaxException) {
+                throw (URISyntaxException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return true if the failure, or anything that caused it, was a refusal because the session had expired
+     */
+    static boolean isSessionExpired(Throwable e) {
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (cause instanceof SessionExpiredException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
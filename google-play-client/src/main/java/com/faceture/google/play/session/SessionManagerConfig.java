@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for how the SessionManager keeps sessions fresh
+ */
+public class SessionManagerConfig {
+
+    public static final long DEFAULT_REFRESH_AFTER_MILLIS = 12L * 60 * 60 * 1000;
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 60 * 1000;
+
+    private static ScheduledExecutorService defaultScheduler;
+
+    private long refreshAfterMillis;
+    private long refreshIntervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    public SessionManagerConfig() {
+        this(DEFAULT_REFRESH_AFTER_MILLIS, DEFAULT_REFRESH_INTERVAL_MILLIS, null);
+    }
+
+    /**
+     * @param refreshAfterMillis how old a session may get before it's replaced in the background. Keep it well
+     *                           inside the time Google takes to expire one.
+     * @param refreshIntervalMillis how often to look for sessions to replace, 0 to never replace them in the
+     *                              background
+     * @param scheduler runs the background logins, or null for a shared daemon thread
+     */
+    public SessionManagerConfig(long refreshAfterMillis, long refreshIntervalMillis,
+                                ScheduledExecutorService scheduler)
+    {
+        if (refreshAfterMillis <= 0) {
+            throw new IllegalArgumentException("refreshAfterMillis must be positive");
+        }
+        if (refreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("refreshIntervalMillis is negative");
+        }
+
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.scheduler = scheduler;
+    }
+
+    public long getRefreshAfterMillis() {
+        return refreshAfterMillis;
+    }
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return null == scheduler ? getDefaultScheduler() : scheduler;
+    }
+
+    /**
+     * @return a shared daemon thread, created on first use
+     */
+    private static synchronized ScheduledExecutorService getDefaultScheduler() {
+        if (null == defaultScheduler) {
+            defaultScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "google-play-client-session-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return defaultScheduler;
+    }
+}
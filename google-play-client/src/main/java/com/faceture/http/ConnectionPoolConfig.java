@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+/**
+ * Settings for the pooled connection manager shared by all of the HttpClients created by the HttpClientFactory
+ */
+public class ConnectionPoolConfig {
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_ROUTE = 50;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+    public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 5000;
+
+    private int maxTotal;
+    private int maxPerRoute;
+    private long keepAliveMillis;
+    private long idleTimeoutMillis;
+    private long evictionIntervalMillis;
+
+    public ConnectionPoolConfig() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                DEFAULT_EVICTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param maxTotal the maximum number of open connections across all routes
+     * @param maxPerRoute the maximum number of open connections to a single host
+     * @param keepAliveMillis how long to keep a connection alive when the server doesn't send a Keep-Alive timeout
+     * @param idleTimeoutMillis connections idle for longer than this are closed by the evictor
+     * @param evictionIntervalMillis how often the evictor looks for expired and idle connections
+     */
+    public ConnectionPoolConfig(int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis,
+                                long evictionIntervalMillis)
+    {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("maxTotal must be positive");
+        }
+        if (maxPerRoute <= 0) {
+            throw new IllegalArgumentException("maxPerRoute must be positive");
+        }
+        if (maxPerRoute > maxTotal) {
+            throw new IllegalArgumentException("maxPerRoute must not be greater than maxTotal");
+        }
+        if (keepAliveMillis <= 0) {
+            throw new IllegalArgumentException("keepAliveMillis must be positive");
+        }
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+        }
+        if (evictionIntervalMillis <= 0) {
+            throw new IllegalArgumentException("evictionIntervalMillis must be positive");
+        }
+
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.keepAliveMillis = keepAliveMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+}
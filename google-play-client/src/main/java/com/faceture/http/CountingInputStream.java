@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.faceture.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read from a response body, and hands the count over once the body is closed or finished with
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final LongConsumer onFinish;
+    private volatile long byteCount;
+    private boolean finished;
+
+    /**
+     * @param onFinish given the number of bytes read, once
+     */
+    public CountingInputStream(InputStream inputStream, LongConsumer onFinish) {
+        super(inputStream);
+
+        if (null == inputStream) {
+            throw new IllegalArgumentException("inputStream is null");
+        }
+        if (null == onFinish) {
+            throw new IllegalArgumentException("onFinish is null");
+        }
+
+        this.onFinish = onFinish;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            byteCount++;
+        }
+
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            byteCount += read;
+        }
+
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        byteCount += skipped;
+
+        return skipped;
+    }
+
+    /**
+     * Reset would read the same bytes twice
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        }
+        finally {
+            finish();
+        }
+    }
+
+    /**
+     * Hands over the count without closing the stream, e.g. when the request has been aborted. Only the first call,
+     * or close, does anything.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+        }
+
+        onFinish.accept(byteCount);
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+}
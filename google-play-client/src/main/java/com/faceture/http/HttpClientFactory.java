@@ -17,25 +17,215 @@
 
 package com.faceture.http;
 
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.cookie.Cookie;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.reactor.IOReactorException;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 
 /**
- * Creates HttpClient-related objects
+ * Creates HttpClient-related objects.
+ *
+ * There is a single blocking HttpClient over one thread-safe pooled connection manager, so connections (and their TLS
+ * sessions) are reused across requests. Each request is executed in its own context with its own cookie store,
+ * which keeps the client stateless across PlaySessions. Call shutdown() when done to release the pooled sockets.
+ *
+ * For non-blocking calls there is a single NIO-based HttpAsyncClient, with its own connection pool sized by the same
+ * ConnectionPoolConfig. It is created on first use and runs its I/O on a handful of reactor threads.
  */
 public class HttpClientFactory {
 
-    public DefaultHttpClient createHttpClient() {
-        return new DefaultHttpClient();
+    private final ConnectionPoolConfig connectionPoolConfig;
+    private final TimedClientConnManager connectionManager;
+    private final PooledKeepAliveStrategy keepAliveStrategy;
+    private final IdleConnectionEvictor idleConnectionEvictor;
+
+    private CloseableHttpClient httpClient;
+    private volatile TimedNHttpClientConnManager asyncConnectionManager;
+    private CloseableHttpAsyncClient httpAsyncClient;
+    private boolean shutdown;
+
+    public HttpClientFactory() {
+        this(new ConnectionPoolConfig());
+    }
+
+    public HttpClientFactory(ConnectionPoolConfig connectionPoolConfig) {
+        if (null == connectionPoolConfig) {
+            throw new IllegalArgumentException("connectionPoolConfig is null");
+        }
+
+        this.connectionPoolConfig = connectionPoolConfig;
+
+        connectionManager = new TimedClientConnManager();
+        connectionManager.setMaxTotal(connectionPoolConfig.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(connectionPoolConfig.getMaxPerRoute());
+
+        keepAliveStrategy = new PooledKeepAliveStrategy(connectionPoolConfig.getKeepAliveMillis());
+
+        idleConnectionEvictor = new IdleConnectionEvictor(connectionManager,
+                connectionPoolConfig.getIdleTimeoutMillis(), connectionPoolConfig.getEvictionIntervalMillis());
+    }
+
+    /**
+     * @return the shared blocking HttpClient. Execute each request in a context from createHttpClientContext.
+     */
+    public synchronized CloseableHttpClient getHttpClient() {
+        if (shutdown) {
+            throw new IllegalStateException("HttpClientFactory has been shut down");
+        }
+
+        if (null == httpClient) {
+            // only start evicting once there is something in the pool to evict
+            idleConnectionEvictor.start();
+
+            // the pool is shut down by shutdown() rather than by closing the client
+            httpClient = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .setConnectionManagerShared(true)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .disableContentCompression()
+                    .build();
+        }
+
+        return httpClient;
+    }
+
+    /**
+     * @return the shared, started HttpAsyncClient
+     */
+    public synchronized CloseableHttpAsyncClient getHttpAsyncClient() {
+        if (shutdown) {
+            throw new IllegalStateException("HttpClientFactory has been shut down");
+        }
+
+        if (null == httpAsyncClient) {
+            try {
+                asyncConnectionManager = new TimedNHttpClientConnManager();
+            }
+            catch (IOReactorException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            asyncConnectionManager.setMaxTotal(connectionPoolConfig.getMaxTotal());
+            asyncConnectionManager.setDefaultMaxPerRoute(connectionPoolConfig.getMaxPerRoute());
+
+            httpAsyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .build();
+            httpAsyncClient.start();
+        }
+
+        return httpAsyncClient;
+    }
+
+    /**
+     * @return a context for a single request, with its own cookie store so cookies don't leak between sessions
+     */
+    public HttpClientContext createHttpClientContext(CookieStore cookieStore) {
+        if (null == cookieStore) {
+            throw new IllegalArgumentException("cookieStore is null");
+        }
+
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        httpClientContext.setCookieStore(cookieStore);
+
+        return httpClientContext;
+    }
+
+    public CookieStore createCookieStore() {
+        return new BasicCookieStore();
+    }
+
+    /**
+     * Closes all of the pooled connections and stops the idle connection evictor. HttpClients can't be created after
+     * this has been called.
+     */
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+
+        idleConnectionEvictor.shutdown();
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            }
+            catch (IOException e) {
+                // the pool is shut down below regardless
+            }
+        }
+        connectionManager.shutdown();
+
+        if (httpAsyncClient != null) {
+            try {
+                httpAsyncClient.close();
+            }
+            catch (IOException e) {
+                // the reactor is going away regardless, there's nothing useful for the caller to do about it
+            }
+        }
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    public TimedClientConnManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Turns on timing how long the blocking requests wait for a pooled connection, see takePoolWaitNanos()
+     */
+    public void setPoolWaitTiming(boolean poolWaitTiming) {
+        connectionManager.setTiming(poolWaitTiming);
+    }
+
+    public boolean isPoolWaitTiming() {
+        return connectionManager.isTiming();
+    }
+
+    /**
+     * @return how long the calling thread's last blocking request waited for a pooled connection, or -1 if that
+     * wasn't timed. Each wait is only returned once.
+     */
+    public long takePoolWaitNanos() {
+        return connectionManager.takeWaitNanos();
+    }
+
+    /**
+     * Times how long the next non-blocking request executed on the calling thread waits for a pooled connection,
+     * see getAsyncPoolWaitNanos(). Pass null once it has been executed. Does nothing before getHttpAsyncClient().
+     */
+    public void setAsyncPoolWaitContext(HttpClientContext httpClientContext) {
+        TimedNHttpClientConnManager asyncConnectionManager = this.asyncConnectionManager;
+        if (asyncConnectionManager != null) {
+            asyncConnectionManager.setTimedContext(httpClientContext);
+        }
+    }
+
+    /**
+     * @return how long the non-blocking request executed in the context waited for a pooled connection, including
+     * connecting a new one, or -1 if that wasn't timed
+     */
+    public long getAsyncPoolWaitNanos(HttpClientContext httpClientContext) {
+        if (null == httpClientContext) {
+            throw new IllegalArgumentException("httpClientContext is null");
+        }
+
+        return TimedNHttpClientConnManager.getWaitNanos(httpClientContext);
     }
 
     public HttpPost createHttpPost() {
@@ -46,15 +236,15 @@ public class HttpClientFactory {
         return new HttpGet();
     }
 
-    public MultipartEntity createMultipartEntity() {
-        return new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
+    public MultipartEntityBuilder createMultipartEntityBuilder() {
+        return MultipartEntityBuilder.create().setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
     }
 
-    public StringBody createStringBody(String string) throws UnsupportedEncodingException {
+    public StringBody createStringBody(String string) {
         if (null == string || string.isEmpty()) {
             throw new IllegalArgumentException("string is null or empty");
         }
 
-        return new StringBody(string);
+        return new StringBody(string, ContentType.TEXT_PLAIN);
     }
 }
@@ -24,31 +24,40 @@ import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.cookie.Cookie;
-import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
-
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
 
 /**
  * HTTP utility
@@ -76,6 +85,72 @@ public class HttpUtil {
         return responseStr;
     }
 
+    /**
+     * @return the response body as a stream, without reading it into memory
+     */
+    public InputStream getResponseStream(HttpResponse httpResponse) throws IOException {
+        if (null == httpResponse) {
+            throw new IllegalArgumentException("httpResponse is null");
+        }
+
+        HttpEntity entity = httpResponse.getEntity();
+        if (null == entity) {
+            throw new IOException("response has no body");
+        }
+
+        return entity.getContent();
+    }
+
+    /**
+     * Replaces the response's body with one that counts the bytes read from it
+     * @param onFinish given the number of bytes read once the body is closed
+     * @return the counted body, which getResponseString and getResponseStream now read, or null if there's no body
+     */
+    public CountingInputStream countResponseBytes(HttpResponse httpResponse, LongConsumer onFinish)
+            throws IOException
+    {
+        if (null == httpResponse) {
+            throw new IllegalArgumentException("httpResponse is null");
+        }
+
+        HttpEntity entity = httpResponse.getEntity();
+        if (null == entity) {
+            return null;
+        }
+
+        CountingInputStream content = new CountingInputStream(entity.getContent(), onFinish);
+
+        BasicHttpEntity countedEntity = new BasicHttpEntity();
+        countedEntity.setContent(content);
+        countedEntity.setContentLength(entity.getContentLength());
+        countedEntity.setContentType(entity.getContentType());
+        countedEntity.setContentEncoding(entity.getContentEncoding());
+        countedEntity.setChunked(entity.isChunked());
+        httpResponse.setEntity(countedEntity);
+
+        return content;
+    }
+
+    /**
+     * @return the charset of the response body, UTF-8 when the response doesn't say
+     */
+    public Charset getResponseCharset(HttpResponse httpResponse) {
+        if (null == httpResponse) {
+            throw new IllegalArgumentException("httpResponse is null");
+        }
+
+        HttpEntity entity = httpResponse.getEntity();
+        Charset charset = null;
+        if (entity != null) {
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null) {
+                charset = contentType.getCharset();
+            }
+        }
+
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
     public String getQueryString(Map<String, String> queryParams) {
         if (null == queryParams || queryParams.isEmpty()) {
             throw new IllegalArgumentException("queryParams is null or empty");
@@ -108,15 +183,24 @@ public class HttpUtil {
         // figure out the scheme
         String scheme = https ? Scheme.HTTPS : Scheme.HTTP;
 
+        // the host name may carry a port, e.g. localhost:8080
+        String host = hostName;
+        int port = -1;
+        int colon = hostName.lastIndexOf(':');
+        if (colon > 0 && hostName.indexOf(':') == colon) {
+            host = hostName.substring(0, colon);
+            port = Integer.parseInt(hostName.substring(colon + 1));
+        }
+
         // set the URI
         URL url;
         if (queryString != null && !queryString.isEmpty()) {
             // we have query params
-            url = new URL(scheme, hostName, path + "?" + queryString);
+            url = new URL(scheme, host, port, path + "?" + queryString);
         }
         else {
             // no query params
-            url = new URL(scheme, hostName, path);
+            url = new URL(scheme, host, port, path);
         }
 
         httpRequest.setURI(url.toURI());
@@ -135,7 +219,7 @@ public class HttpUtil {
         }
     }
 
-    public void setFormData(HttpPost httpPost, Map<String, String> formData) throws UnsupportedEncodingException {
+    public void setFormData(HttpPost httpPost, Map<String, String> formData) {
         if (null == httpPost) {
             throw new IllegalArgumentException("httpPost is null");
         }
@@ -144,16 +228,15 @@ public class HttpUtil {
         }
 
         // create the multipart form
-        MultipartEntity multipartEntity = httpClientFactory.createMultipartEntity();
+        MultipartEntityBuilder multipartEntityBuilder = httpClientFactory.createMultipartEntityBuilder();
 
         // add the fields
         for (Map.Entry<String, String> field: formData.entrySet()) {
-            StringBody stringBody = httpClientFactory.createStringBody(field.getValue());
-            multipartEntity.addPart(field.getKey(), stringBody);
+            multipartEntityBuilder.addPart(field.getKey(), httpClientFactory.createStringBody(field.getValue()));
         }
 
         // add the form to the POST
-        httpPost.setEntity(multipartEntity);
+        httpPost.setEntity(multipartEntityBuilder.build());
     }
 
     public void setCookies(HttpRequestBase httpRequest, Map<String, String> cookies) {
@@ -165,7 +248,10 @@ public class HttpUtil {
         }
 
         // manually handle the cookies
-        httpRequest.getParams().setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.IGNORE_COOKIES);
+        RequestConfig requestConfig = httpRequest.getConfig();
+        httpRequest.setConfig(RequestConfig.copy(null == requestConfig ? RequestConfig.DEFAULT : requestConfig)
+                .setCookieSpec(CookieSpecs.IGNORE_COOKIES)
+                .build());
 
         String cookieHeaderValue = "";
         for (Map.Entry<String, String> cookie : cookies.entrySet()) {
@@ -178,12 +264,11 @@ public class HttpUtil {
         httpRequest.addHeader(HeaderName.COOKIE, cookieHeaderValue);
     }
 
-    public Map<String, String> getCookies(DefaultHttpClient httpClient) {
-        if (null == httpClient) {
-            throw new IllegalArgumentException("defaultHttpClient is null");
+    public Map<String, String> getCookies(CookieStore cookieStore) {
+        if (null == cookieStore) {
+            throw new IllegalArgumentException("cookieStore is null");
         }
 
-        CookieStore cookieStore = httpClient.getCookieStore();
         List<Cookie> cookies = cookieStore.getCookies();
 
         Map<String, String> cookieMap = new HashMap<String, String>();
@@ -210,21 +295,79 @@ public class HttpUtil {
     }
 
     /**
-     * This method exists to wrap the DefaultHttpClient.execute method which uses a static method and was hard to
+     * This method exists to wrap the HttpClient.execute method which uses a static method and was hard to
      * unit test.
      * @param httpClient The HttpClient to use to execute the given request
      * @param httpRequest the request to execute
+     * @param httpContext the context to execute the request in, holds the cookie store for the response cookies
      * @return the response returned from executing the given request on the http client
      * @throws java.io.IOException when execute goes wrong
      */
-    public HttpResponse execute(HttpClient httpClient, HttpRequestBase httpRequest) throws IOException {
+    public HttpResponse execute(HttpClient httpClient, HttpRequestBase httpRequest, HttpContext httpContext)
+            throws IOException
+    {
         if (null == httpClient) {
             throw new IllegalArgumentException("httpClient is null");
         }
         if (null == httpRequest) {
             throw new IllegalArgumentException("httpRequest is null");
         }
+        if (null == httpContext) {
+            throw new IllegalArgumentException("httpContext is null");
+        }
+
+        return httpClient.execute(httpRequest, httpContext);
+    }
+
+    /**
+     * Replaces the request's entity with an in-memory copy. The async client streams entities from getContent(),
+     * which the multipart form entity doesn't support for larger forms, so forms are buffered before being sent.
+     * @param httpRequest the request whose entity should be buffered
+     * @throws IOException when the entity can't be written
+     */
+    public void bufferEntity(HttpEntityEnclosingRequestBase httpRequest) throws IOException {
+        if (null == httpRequest) {
+            throw new IllegalArgumentException("httpRequest is null");
+        }
+
+        HttpEntity entity = httpRequest.getEntity();
+        if (null == entity) {
+            return;
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        entity.writeTo(outputStream);
+
+        ByteArrayEntity bufferedEntity = new ByteArrayEntity(outputStream.toByteArray());
+        bufferedEntity.setContentType(entity.getContentType());
+
+        httpRequest.setEntity(bufferedEntity);
+    }
+
+    /**
+     * This method exists to wrap the HttpAsyncClient.execute method, for the same reason as execute.
+     * @param httpAsyncClient The HttpAsyncClient to use to execute the given request
+     * @param httpRequest the request to execute
+     * @param httpContext the context to execute the request in, holds the cookie store for the response cookies
+     * @param callback called with the response once it has been fully received
+     * @return the future of the response
+     */
+    public Future<HttpResponse> executeAsync(HttpAsyncClient httpAsyncClient, HttpRequestBase httpRequest,
+                                             HttpContext httpContext, FutureCallback<HttpResponse> callback)
+    {
+        if (null == httpAsyncClient) {
+            throw new IllegalArgumentException("httpAsyncClient is null");
+        }
+        if (null == httpRequest) {
+            throw new IllegalArgumentException("httpRequest is null");
+        }
+        if (null == httpContext) {
+            throw new IllegalArgumentException("httpContext is null");
+        }
+        if (null == callback) {
+            throw new IllegalArgumentException("callback is null");
+        }
 
-        return httpClient.execute(httpRequest);
+        return httpAsyncClient.execute(httpRequest, httpContext, callback);
     }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread that periodically closes expired and idle connections in a pooled HttpClientConnectionManager, so
+ * sockets the server has already given up on aren't handed out again.
+ */
+public class IdleConnectionEvictor extends Thread {
+
+    private final HttpClientConnectionManager connectionManager;
+    private final long idleTimeoutMillis;
+    private final long evictionIntervalMillis;
+
+    private volatile boolean shutdown;
+
+    public IdleConnectionEvictor(HttpClientConnectionManager connectionManager, long idleTimeoutMillis,
+                                 long evictionIntervalMillis)
+    {
+        super("google-play-client-idle-connection-evictor");
+
+        if (null == connectionManager) {
+            throw new IllegalArgumentException("connectionManager is null");
+        }
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+        }
+        if (evictionIntervalMillis <= 0) {
+            throw new IllegalArgumentException("evictionIntervalMillis must be positive");
+        }
+
+        this.connectionManager = connectionManager;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictionIntervalMillis = evictionIntervalMillis;
+
+        // never keep the JVM alive just to tidy up sockets
+        setDaemon(true);
+    }
+
+    public void run() {
+        try {
+            while (!shutdown) {
+                synchronized (this) {
+                    wait(evictionIntervalMillis);
+                }
+                if (!shutdown) {
+                    evict();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // we're being shut down
+        }
+    }
+
+    /**
+     * Closes the expired connections and the connections that have been idle for too long
+     */
+    public void evict() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Honors the server's Keep-Alive timeout when it sends one, otherwise keeps pooled connections alive for a fixed
+ * amount of time instead of forever.
+ */
+public class PooledKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+    private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+    private final long defaultKeepAliveMillis;
+
+    public PooledKeepAliveStrategy(long defaultKeepAliveMillis) {
+        if (defaultKeepAliveMillis <= 0) {
+            throw new IllegalArgumentException("defaultKeepAliveMillis must be positive");
+        }
+
+        this.defaultKeepAliveMillis = defaultKeepAliveMillis;
+    }
+
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        if (null == response) {
+            throw new IllegalArgumentException("response is null");
+        }
+
+        long serverKeepAliveMillis = serverStrategy.getKeepAliveDuration(response, context);
+
+        return serverKeepAliveMillis > 0 ? serverKeepAliveMillis : defaultKeepAliveMillis;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pooled connection manager, which can also time how long each request waits for a connection. A blocking
+ * request gets its connection on the thread that executes it, so the wait is kept per thread for the caller to
+ * pick up with takeWaitNanos() once the request has been executed.
+ */
+public class TimedClientConnManager extends PoolingHttpClientConnectionManager {
+
+    private static final long NOT_TIMED = -1;
+
+    private final ThreadLocal<long[]> lastWaitNanos = ThreadLocal.withInitial(() -> new long[] {NOT_TIMED});
+
+    private volatile boolean timing;
+
+    public void setTiming(boolean timing) {
+        this.timing = timing;
+    }
+
+    public boolean isTiming() {
+        return timing;
+    }
+
+    /**
+     * @return the connections in the pool, whether leased or available
+     */
+    public int getConnectionsInPool() {
+        PoolStats totalStats = getTotalStats();
+
+        return totalStats.getLeased() + totalStats.getAvailable();
+    }
+
+    /**
+     * @return how long the calling thread last waited for a connection, or -1 if it hasn't waited since the last call
+     * or timing is off
+     */
+    public long takeWaitNanos() {
+        if (!timing) {
+            return NOT_TIMED;
+        }
+
+        long[] waitNanos = lastWaitNanos.get();
+        long taken = waitNanos[0];
+        waitNanos[0] = NOT_TIMED;
+
+        return taken;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+        if (!timing) {
+            return connectionRequest;
+        }
+
+        return new ConnectionRequest() {
+
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+            {
+                long start = System.nanoTime();
+                try {
+                    return connectionRequest.get(timeout, timeUnit);
+                }
+                finally {
+                    lastWaitNanos.get()[0] = System.nanoTime() - start;
+                }
+            }
+
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pooled connection manager of the HttpAsyncClient, which can also time how long each request waits for a
+ * connection. A non-blocking request asks for its connection on the thread that executes it, so the context to
+ * record the wait in is handed over per thread with setTimedContext(). The wait ends once the connection is leased,
+ * which for a new connection is after it has been connected.
+ */
+public class TimedNHttpClientConnManager extends PoolingNHttpClientConnectionManager {
+
+    private static final String WAIT_NANOS_ATTRIBUTE = TimedNHttpClientConnManager.class.getName() + ".waitNanos";
+
+    private final ThreadLocal<HttpContext> timedContext = new ThreadLocal<HttpContext>();
+
+    public TimedNHttpClientConnManager() throws IOReactorException {
+        super(new DefaultConnectingIOReactor());
+    }
+
+    /**
+     * Times the wait of the next request the calling thread executes into the context. Pass null once the request
+     * has been executed.
+     */
+    public void setTimedContext(HttpContext httpContext) {
+        if (null == httpContext) {
+            timedContext.remove();
+        }
+        else {
+            timedContext.set(httpContext);
+        }
+    }
+
+    /**
+     * @return how long the request executed in the context waited for a connection, or -1 if that wasn't timed
+     */
+    public static long getWaitNanos(HttpContext httpContext) {
+        Object waitNanos = httpContext.getAttribute(WAIT_NANOS_ATTRIBUTE);
+
+        return waitNanos instanceof Long ? (Long) waitNanos : -1;
+    }
+
+    @Override
+    public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+                                                           long leaseTimeout, TimeUnit timeUnit,
+                                                           final FutureCallback<NHttpClientConnection> callback)
+    {
+        // only the first connection of the request is timed, not those of its retries and redirects
+        final HttpContext httpContext = timedContext.get();
+        if (null == httpContext) {
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit, callback);
+        }
+        timedContext.remove();
+
+        final long start = System.nanoTime();
+        return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit,
+                new FutureCallback<NHttpClientConnection>() {
+
+            public void completed(NHttpClientConnection connection) {
+                httpContext.setAttribute(WAIT_NANOS_ATTRIBUTE, System.nanoTime() - start);
+                if (callback != null) {
+                    callback.completed(connection);
+                }
+            }
+
+            public void failed(Exception e) {
+                if (callback != null) {
+                    callback.failed(e);
+                }
+            }
+
+            public void cancelled() {
+                if (callback != null) {
+                    callback.cancelled();
+                }
+            }
+        });
+    }
+}
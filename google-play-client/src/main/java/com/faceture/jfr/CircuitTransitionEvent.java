@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for each change of state of a Path's circuit breaker
+ */
+@Name("com.faceture.CircuitTransition")
+@Label("Circuit Transition")
+@Category("Google Play Client")
+@Description("A Google Play endpoint's circuit breaker opening, half opening or closing")
+@StackTrace(false)
+public class CircuitTransitionEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    private String path;
+
+    @Label("From State")
+    private String fromState;
+
+    @Label("To State")
+    private String toState;
+
+    @Label("Failure Rate")
+    @Description("Over the breaker's window of recent calls")
+    @Percentage
+    private double failureRate;
+
+    @Label("Slow Call Rate")
+    @Description("Over the breaker's window of recent calls")
+    @Percentage
+    private double slowCallRate;
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public void setFromState(String fromState) {
+        this.fromState = fromState;
+    }
+
+    public void setToState(String toState) {
+        this.toState = toState;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void setSlowCallRate(double slowCallRate) {
+        this.slowCallRate = slowCallRate;
+    }
+}
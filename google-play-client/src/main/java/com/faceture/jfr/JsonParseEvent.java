@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for turning a response into domain objects: a whole JSON document, or one streamed page of
+ * the loadalltracks response, in which case the event also covers reading the page off the connection.
+ */
+@Name("com.faceture.JsonParse")
+@Label("JSON Parse")
+@Category("Google Play Client")
+@Description("Parsing a Google Play response")
+@StackTrace(false)
+public class JsonParseEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    private String type;
+
+    @Label("Characters")
+    @Description("The length of the JSON, -1 if it was streamed")
+    private long characters;
+
+    @Label("Song Count")
+    private int songCount;
+
+    @Label("Streamed")
+    private boolean streamed;
+
+    @Label("Failure")
+    @Description("The exception the parse failed with, if it did")
+    private String failure;
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public void setCharacters(long characters) {
+        this.characters = characters;
+    }
+
+    public void setSongCount(int songCount) {
+        this.songCount = songCount;
+    }
+
+    public void setStreamed(boolean streamed) {
+        this.streamed = streamed;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for each HTTP request the RestClient sends, lasting until the response has been read, or
+ * until its headers arrived for streamed responses. The phases are in nanoseconds.
+ */
+@Name("com.faceture.PlayRequest")
+@Label("Play Request")
+@Category("Google Play Client")
+@Description("An HTTP request to Google Play and the time spent in each phase")
+@StackTrace(false)
+public class PlayRequestEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    private String path;
+
+    @Label("Method")
+    private String method;
+
+    @Label("Status Code")
+    @Description("0 if the request failed without a response")
+    private int statusCode;
+
+    @Label("Failure")
+    @Description("The exception the request failed with, if it did")
+    private String failure;
+
+    @Label("Request Bytes")
+    @DataAmount
+    private long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    private long responseBytes;
+
+    @Label("Pool Wait")
+    @Description("Waiting for a pooled connection, -1 if unknown")
+    @Timespan
+    private long poolWait;
+
+    @Label("Response")
+    @Description("From the start of the request until the response headers arrived, including the pool wait")
+    @Timespan
+    private long response;
+
+    @Label("Body Read")
+    @Description("Reading the response body, 0 for streamed bodies that the caller reads")
+    @Timespan
+    private long bodyRead;
+
+    @Label("Streamed")
+    private boolean streamed;
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    public void setResponseBytes(long responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
+    public void setPoolWait(long poolWait) {
+        this.poolWait = poolWait;
+    }
+
+    public void setResponse(long response) {
+        this.response = response;
+    }
+
+    public void setBodyRead(long bodyRead) {
+        this.bodyRead = bodyRead;
+    }
+
+    public void setStreamed(boolean streamed) {
+        this.streamed = streamed;
+    }
+}
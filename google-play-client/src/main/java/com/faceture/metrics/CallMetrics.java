@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+/**
+ * What InMemoryClientMetrics has recorded for one kind of PlayClient call. The times are in nanoseconds.
+ */
+public class CallMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram failureLatency = new LatencyHistogram();
+
+    void recordCall(long elapsedNanos, boolean success) {
+        if (success) {
+            latency.record(elapsedNanos);
+        }
+        else {
+            failureLatency.record(elapsedNanos);
+        }
+    }
+
+    /**
+     * @return how long the calls that returned took
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return how long the calls that threw took
+     */
+    public LatencyHistogram getFailureLatency() {
+        return failureLatency;
+    }
+
+    public long getCallCount() {
+        return latency.getCount() + failureLatency.getCount();
+    }
+
+    public long getFailureCount() {
+        return failureLatency.getCount();
+    }
+}
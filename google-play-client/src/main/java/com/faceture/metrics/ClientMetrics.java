@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+/**
+ * Receives the timings and counts of the calls made by the RestClient and the PlayClient. It's called from every
+ * thread using the clients at once, so implementations must be thread safe and shouldn't block. When isEnabled()
+ * returns false nothing is timed or counted, and none of the record methods are called.
+ */
+public interface ClientMetrics {
+
+    /**
+     * @return false to skip the timing altogether. Read on every call, so it should be a constant.
+     */
+    boolean isEnabled();
+
+    /**
+     * One HTTP request and response
+     * @param path the Path the request was sent to
+     * @param statusCode the status code of the response
+     * @param poolWaitNanos how long the request waited for a pooled connection, or -1 if that isn't known. For
+     *                      non-blocking requests this includes connecting a new connection.
+     * @param responseNanos from the start of the request until the response headers arrived, including the pool wait
+     *                      and connecting. Resolving, connecting and the TLS handshake aren't timed on their own.
+     * @param bodyReadNanos how long reading the response body took, 0 for streamed bodies that the caller reads
+     * @param requestBytes the size of the request body
+     * @param responseBytes the bytes read from the response body. A streamed body is recorded once the caller has
+     *                      closed it.
+     */
+    void recordExchange(String path, int statusCode, long poolWaitNanos, long responseNanos, long bodyReadNanos,
+                        long requestBytes, long responseBytes);
+
+    /**
+     * An HTTP request that failed without a response, e.g. the connection was refused or reset
+     */
+    void recordExchangeFailure(String path, long elapsedNanos);
+
+    /**
+     * A request that's about to be sent again after a failure
+     */
+    void recordRetry(String path);
+
+    /**
+     * A second copy of a request that's being sent because the first is slow to answer
+     */
+    void recordHedge(String path);
+
+    /**
+     * A Path's circuit breaker changing state
+     * @param fromState CLOSED, OPEN or HALF_OPEN
+     * @param toState CLOSED, OPEN or HALF_OPEN
+     */
+    void recordCircuitTransition(String path, String fromState, String toState);
+
+    /**
+     * A request that was refused without being sent, because of its Path's circuit breaker or bulkhead
+     * @param reason e.g. circuit_open or bulkhead_full
+     */
+    void recordRejection(String path, String reason);
+
+    /**
+     * Turning the body of a response into domain objects
+     */
+    void recordParse(String path, long parseNanos);
+
+    /**
+     * One PlayClient call, e.g. search or loadAllTracks, which may be made up of several requests
+     * @param operation the name of the call, see Operation
+     * @param success false if the call threw
+     */
+    void recordCall(String operation, long elapsedNanos, boolean success);
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What InMemoryClientMetrics has recorded for the requests to one Path. All of the times are in nanoseconds.
+ */
+public class EndpointMetrics {
+
+    // status codes outside of this range are counted as 0
+    private static final int MAX_STATUS_CODE = 599;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final LatencyHistogram response = new LatencyHistogram();
+    private final LatencyHistogram bodyRead = new LatencyHistogram();
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram failureLatency = new LatencyHistogram();
+
+    private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS_CODE + 1);
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    private volatile String circuitState;
+    private final ConcurrentMap<String, LongAdder> circuitTransitions = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, LongAdder> rejections = new ConcurrentHashMap<String, LongAdder>();
+
+    void recordExchange(int statusCode, long poolWaitNanos, long responseNanos, long bodyReadNanos,
+                        long requestByteCount, long responseByteCount)
+    {
+        latency.record(responseNanos + bodyReadNanos);
+        if (poolWaitNanos >= 0) {
+            poolWait.record(poolWaitNanos);
+        }
+        response.record(responseNanos);
+        bodyRead.record(bodyReadNanos);
+
+        statusCounts.incrementAndGet(statusCode < 0 || statusCode > MAX_STATUS_CODE ? 0 : statusCode);
+        requestBytes.add(requestByteCount);
+        responseBytes.add(responseByteCount);
+    }
+
+    void recordExchangeFailure(long elapsedNanos) {
+        failureLatency.record(elapsedNanos);
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordHedge() {
+        hedges.increment();
+    }
+
+    void recordParse(long parseNanos) {
+        parse.record(parseNanos);
+    }
+
+    void recordCircuitTransition(String toState) {
+        circuitState = toState;
+        increment(circuitTransitions, toState);
+    }
+
+    void recordRejection(String reason) {
+        increment(rejections, reason);
+    }
+
+    private static void increment(ConcurrentMap<String, LongAdder> counts, String key) {
+        LongAdder count = counts.get(key);
+        if (null == count) {
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+
+        count.increment();
+    }
+
+    private static Map<String, Long> sum(ConcurrentMap<String, LongAdder> counts) {
+        Map<String, Long> sums = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            sums.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        return Collections.unmodifiableMap(sums);
+    }
+
+    /**
+     * @return the whole of each exchange that got a response: the response time plus reading the body
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * @return from the start of each exchange until its response headers arrived
+     */
+    public LatencyHistogram getResponse() {
+        return response;
+    }
+
+    public LatencyHistogram getBodyRead() {
+        return bodyRead;
+    }
+
+    public LatencyHistogram getParse() {
+        return parse;
+    }
+
+    /**
+     * @return how long the exchanges that failed without a response took to fail; its count is the failure count
+     */
+    public LatencyHistogram getFailureLatency() {
+        return failureLatency;
+    }
+
+    public long getExchangeCount() {
+        return latency.getCount();
+    }
+
+    public long getFailureCount() {
+        return failureLatency.getCount();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    public long getStatusCount(int statusCode) {
+        if (statusCode < 0 || statusCode > MAX_STATUS_CODE) {
+            return 0;
+        }
+
+        return statusCounts.get(statusCode);
+    }
+
+    /**
+     * @return the number of responses with each status code that has been seen, in status code order
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for (int statusCode = 0; statusCode <= MAX_STATUS_CODE; statusCode++) {
+            long count = statusCounts.get(statusCode);
+            if (count > 0) {
+                counts.put(statusCode, count);
+            }
+        }
+
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the state the circuit breaker last changed to, or null if it has never changed from closed
+     */
+    public String getCircuitState() {
+        return circuitState;
+    }
+
+    /**
+     * @return the number of times the circuit breaker changed to each state, by state
+     */
+    public Map<String, Long> getCircuitTransitionCounts() {
+        return sum(circuitTransitions);
+    }
+
+    /**
+     * @return the number of requests refused without being sent, by reason
+     */
+    public Map<String, Long> getRejectionCounts() {
+        return sum(rejections);
+    }
+}
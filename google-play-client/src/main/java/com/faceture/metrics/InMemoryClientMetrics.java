@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the metrics in memory, per Path and per PlayClient call, for a monitoring system to scrape. Recording never
+ * locks: the counters are LongAdders and atomics, and the maps are only written the first time a Path or call is
+ * seen.
+ */
+public class InMemoryClientMetrics implements ClientMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    private final ConcurrentMap<String, CallMetrics> calls = new ConcurrentHashMap<String, CallMetrics>();
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public void recordExchange(String path, int statusCode, long poolWaitNanos, long responseNanos,
+                               long bodyReadNanos, long requestBytes, long responseBytes)
+    {
+        getOrCreateEndpoint(path).recordExchange(statusCode, poolWaitNanos, responseNanos, bodyReadNanos,
+                requestBytes, responseBytes);
+    }
+
+    public void recordExchangeFailure(String path, long elapsedNanos) {
+        getOrCreateEndpoint(path).recordExchangeFailure(elapsedNanos);
+    }
+
+    public void recordRetry(String path) {
+        getOrCreateEndpoint(path).recordRetry();
+    }
+
+    public void recordHedge(String path) {
+        getOrCreateEndpoint(path).recordHedge();
+    }
+
+    public void recordCircuitTransition(String path, String fromState, String toState) {
+        getOrCreateEndpoint(path).recordCircuitTransition(toState);
+    }
+
+    public void recordRejection(String path, String reason) {
+        getOrCreateEndpoint(path).recordRejection(reason);
+    }
+
+    public void recordParse(String path, long parseNanos) {
+        getOrCreateEndpoint(path).recordParse(parseNanos);
+    }
+
+    public void recordCall(String operation, long elapsedNanos, boolean success) {
+        CallMetrics callMetrics = calls.get(operation);
+        if (null == callMetrics) {
+            callMetrics = calls.computeIfAbsent(operation, key -> new CallMetrics());
+        }
+
+        callMetrics.recordCall(elapsedNanos, success);
+    }
+
+    private EndpointMetrics getOrCreateEndpoint(String path) {
+        // computeIfAbsent locks its bin even when the key is there, so only fall back to it for a new path
+        EndpointMetrics endpointMetrics = endpoints.get(path);
+        if (null == endpointMetrics) {
+            endpointMetrics = endpoints.computeIfAbsent(path, key -> new EndpointMetrics());
+        }
+
+        return endpointMetrics;
+    }
+
+    /**
+     * @return the metrics of the given Path, or null if nothing has been sent to it
+     */
+    public EndpointMetrics getEndpoint(String path) {
+        return endpoints.get(path);
+    }
+
+    /**
+     * @return the metrics of the given PlayClient call, or null if it hasn't been made
+     */
+    public CallMetrics getCall(String operation) {
+        return calls.get(operation);
+    }
+
+    /**
+     * @return the metrics of every Path, by Path
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return Collections.unmodifiableMap(new TreeMap<String, EndpointMetrics>(endpoints));
+    }
+
+    /**
+     * @return the metrics of every PlayClient call, by call
+     */
+    public Map<String, CallMetrics> getCalls() {
+        return Collections.unmodifiableMap(new TreeMap<String, CallMetrics>(calls));
+    }
+
+    /**
+     * @return everything in the Prometheus text format, with the times in seconds
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+
+        Map<String, EndpointMetrics> endpointsByPath = getEndpoints();
+        text.append("# TYPE play_http_responses_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            for (Map.Entry<Integer, Long> statusCount : entry.getValue().getStatusCounts().entrySet()) {
+                text.append("play_http_responses_total{path=\"").append(entry.getKey()).append("\",status=\"")
+                        .append(statusCount.getKey()).append("\"} ").append(statusCount.getValue()).append('\n');
+            }
+        }
+
+        text.append("# TYPE play_http_failures_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            appendLine(text, "play_http_failures_total", "path", entry.getKey(), entry.getValue().getFailureCount());
+        }
+        text.append("# TYPE play_http_retries_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            appendLine(text, "play_http_retries_total", "path", entry.getKey(), entry.getValue().getRetryCount());
+        }
+        text.append("# TYPE play_http_hedges_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            appendLine(text, "play_http_hedges_total", "path", entry.getKey(), entry.getValue().getHedgeCount());
+        }
+        text.append("# TYPE play_http_rejections_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            for (Map.Entry<String, Long> rejectionCount : entry.getValue().getRejectionCounts().entrySet()) {
+                appendLine(text, "play_http_rejections_total",
+                        "path=\"" + entry.getKey() + "\",reason=\"" + rejectionCount.getKey() + "\"",
+                        rejectionCount.getValue());
+            }
+        }
+        text.append("# TYPE play_http_request_bytes_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            appendLine(text, "play_http_request_bytes_total", "path", entry.getKey(),
+                    entry.getValue().getRequestBytes());
+        }
+        text.append("# TYPE play_http_response_bytes_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            appendLine(text, "play_http_response_bytes_total", "path", entry.getKey(),
+                    entry.getValue().getResponseBytes());
+        }
+
+        text.append("# TYPE play_http_seconds summary\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            String labels = "path=\"" + entry.getKey() + "\",phase=\"";
+            EndpointMetrics endpointMetrics = entry.getValue();
+            appendSummary(text, "play_http_seconds", labels + "total\"", endpointMetrics.getLatency());
+            appendSummary(text, "play_http_seconds", labels + "pool_wait\"", endpointMetrics.getPoolWait());
+            appendSummary(text, "play_http_seconds", labels + "response\"", endpointMetrics.getResponse());
+            appendSummary(text, "play_http_seconds", labels + "body_read\"", endpointMetrics.getBodyRead());
+            appendSummary(text, "play_http_seconds", labels + "parse\"", endpointMetrics.getParse());
+        }
+
+        text.append("# TYPE play_circuit_state gauge\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            String circuitState = entry.getValue().getCircuitState();
+            if (null != circuitState) {
+                appendLine(text, "play_circuit_state",
+                        "path=\"" + entry.getKey() + "\",state=\"" + circuitState + "\"", 1);
+            }
+        }
+        text.append("# TYPE play_circuit_transitions_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : endpointsByPath.entrySet()) {
+            for (Map.Entry<String, Long> transitionCount : entry.getValue().getCircuitTransitionCounts().entrySet()) {
+                appendLine(text, "play_circuit_transitions_total",
+                        "path=\"" + entry.getKey() + "\",state=\"" + transitionCount.getKey() + "\"",
+                        transitionCount.getValue());
+            }
+        }
+
+        Map<String, CallMetrics> callsByOperation = getCalls();
+        text.append("# TYPE play_call_seconds summary\n");
+        for (Map.Entry<String, CallMetrics> entry : callsByOperation.entrySet()) {
+            appendSummary(text, "play_call_seconds", "operation=\"" + entry.getKey() + "\"",
+                    entry.getValue().getLatency());
+        }
+        text.append("# TYPE play_call_failures_total counter\n");
+        for (Map.Entry<String, CallMetrics> entry : callsByOperation.entrySet()) {
+            appendLine(text, "play_call_failures_total", "operation", entry.getKey(),
+                    entry.getValue().getFailureCount());
+        }
+
+        return text.toString();
+    }
+
+    private static void appendLine(StringBuilder text, String name, String labelName, String labelValue,
+                                   long value)
+    {
+        text.append(name).append('{').append(labelName).append("=\"").append(labelValue).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void appendLine(StringBuilder text, String name, String labels, long value) {
+        text.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void appendSummary(StringBuilder text, String name, String labels, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+
+        for (double quantile : QUANTILES) {
+            text.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND).append('\n');
+        }
+        text.append(name).append("_sum{").append(labels).append("} ")
+                .append(histogram.getSum() / NANOS_PER_SECOND).append('\n');
+        text.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+/**
+ * Metrics that are turned off, the default
+ */
+public class NoOpClientMetrics implements ClientMetrics {
+
+    public boolean isEnabled() {
+        return false;
+    }
+
+    public void recordExchange(String path, int statusCode, long poolWaitNanos, long responseNanos,
+                               long bodyReadNanos, long requestBytes, long responseBytes)
+    {
+    }
+
+    public void recordExchangeFailure(String path, long elapsedNanos) {
+    }
+
+    public void recordRetry(String path) {
+    }
+
+    public void recordHedge(String path) {
+    }
+
+    public void recordCircuitTransition(String path, String fromState, String toState) {
+    }
+
+    public void recordRejection(String path, String reason) {
+    }
+
+    public void recordParse(String path, long parseNanos) {
+    }
+
+    public void recordCall(String operation, long elapsedNanos, boolean success) {
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+/**
+ * The rate and burst of one token bucket
+ */
+public class RateLimit {
+
+    /**
+     * Never runs out of tokens
+     */
+    public static final RateLimit UNLIMITED = new RateLimit();
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private boolean limited;
+    private double permitsPerSecond;
+    private int burst;
+
+    /**
+     * @param permitsPerSecond how fast the bucket fills up
+     * @param burst how many tokens the bucket holds, i.e. how many requests can go at once after a quiet spell
+     */
+    public RateLimit(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || permitsPerSecond > NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("permitsPerSecond must be above 0 and at most a billion");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+
+        this.limited = true;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    private RateLimit() {
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return how long it takes to add one token to the bucket
+     */
+    long getIntervalNanos() {
+        return Math.max(1, Math.round(NANOS_PER_SECOND / permitsPerSecond));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import com.faceture.metrics.ClientMetrics;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds requests back so that no session, and no Path across all of the sessions, goes faster than its RateLimit.
+ * Every request takes a token from its session's bucket and from its Path's bucket. When one of them is empty the
+ * request either fails straight away (tryAcquire), waits on the calling thread (acquire), or gets a future that a
+ * scheduler completes once the tokens are there (acquireAsync), as long as that's within the longest wait.
+ *
+ * The buckets are lock-free. Sessions are known by a key, e.g. their auth token, and the buckets of idle sessions are
+ * dropped once there are a lot of them.
+ */
+public class RateLimiter {
+
+    // the reason given to ClientMetrics.recordRejection
+    public static final String RATE_LIMITED = "rate_limited";
+
+    // at this many session buckets, the full ones are dropped before another is added
+    static final int MAX_IDLE_SESSIONS = 10000;
+
+    private final RateLimiterConfig config;
+    private final ClientMetrics clientMetrics;
+    private final boolean limited;
+    private final long maxWaitNanos;
+
+    private final ConcurrentMap<String, TokenBucket> sessionBuckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentMap<String, TokenBucket> pathBuckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public RateLimiter(RateLimiterConfig config, ClientMetrics clientMetrics) {
+        if (null == config) {
+            throw new IllegalArgumentException("config is null");
+        }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
+
+        this.config = config;
+        this.clientMetrics = clientMetrics;
+        this.limited = config.isLimited();
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+    }
+
+    /**
+     * Takes the tokens for a request without ever waiting
+     * @param sessionKey the session the request is for, or null if it isn't for one, e.g. a login
+     * @return false if either bucket is empty, in which case nothing has been taken
+     */
+    public boolean tryAcquire(String sessionKey, String path) {
+        if (!limited) {
+            return true;
+        }
+
+        long nowNanos = nanoTime();
+        TokenBucket sessionBucket = getSessionBucket(sessionKey, nowNanos);
+        if (sessionBucket != null && !sessionBucket.tryAcquire(nowNanos)) {
+            recordRejection(path);
+            return false;
+        }
+
+        TokenBucket pathBucket = getPathBucket(path, nowNanos);
+        if (pathBucket != null && !pathBucket.tryAcquire(nowNanos)) {
+            if (sessionBucket != null) {
+                sessionBucket.release();
+            }
+            recordRejection(path);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Takes the tokens for a request, waiting on this thread until they're there
+     * @param sessionKey the session the request is for, or null if it isn't for one, e.g. a login
+     * @throws RateLimitedException if the wait would be longer than the longest wait
+     * @throws InterruptedIOException if the thread was interrupted while waiting, in which case the tokens have been
+     * put back
+     */
+    public void acquire(String sessionKey, String path) throws RateLimitedException, InterruptedIOException {
+        long waitNanos = reserve(sessionKey, path);
+        if (waitNanos > 0) {
+            try {
+                sleep(waitNanos);
+            }
+            catch (InterruptedIOException e) {
+                release(sessionKey, path);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Non-blocking version of acquire, which never parks a thread
+     * @return a future completed once the tokens are there, on the scheduler's thread if that takes a while, or one
+     * that has failed with RateLimitedException
+     */
+    public CompletableFuture<Void> acquireAsync(String sessionKey, String path) {
+        long waitNanos;
+        try {
+            waitNanos = reserve(sessionKey, path);
+        }
+        catch (RateLimitedException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<Void>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        if (0 == waitNanos) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> acquired = new CompletableFuture<Void>();
+        config.getScheduler().schedule(() -> acquired.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        return acquired;
+    }
+
+    /**
+     * @return the number of sessions that have a bucket
+     */
+    public int getSessionCount() {
+        return sessionBuckets.size();
+    }
+
+    /**
+     * @return how long to wait before using the tokens it has taken
+     */
+    private long reserve(String sessionKey, String path) throws RateLimitedException {
+        if (!limited) {
+            return 0;
+        }
+
+        long nowNanos = nanoTime();
+        long sessionWaitNanos = 0;
+        TokenBucket sessionBucket = getSessionBucket(sessionKey, nowNanos);
+        if (sessionBucket != null) {
+            sessionWaitNanos = sessionBucket.reserve(nowNanos, maxWaitNanos);
+            if (sessionWaitNanos < 0) {
+                recordRejection(path);
+                throw new RateLimitedException(path);
+            }
+        }
+
+        long pathWaitNanos = 0;
+        TokenBucket pathBucket = getPathBucket(path, nowNanos);
+        if (pathBucket != null) {
+            pathWaitNanos = pathBucket.reserve(nowNanos, maxWaitNanos);
+            if (pathWaitNanos < 0) {
+                if (sessionBucket != null) {
+                    sessionBucket.release();
+                }
+                recordRejection(path);
+                throw new RateLimitedException(path);
+            }
+        }
+
+        return Math.max(sessionWaitNanos, pathWaitNanos);
+    }
+
+    /**
+     * Puts back the tokens of a request that won't be sent
+     */
+    private void release(String sessionKey, String path) {
+        long nowNanos = nanoTime();
+
+        TokenBucket sessionBucket = getSessionBucket(sessionKey, nowNanos);
+        if (sessionBucket != null) {
+            sessionBucket.release();
+        }
+
+        TokenBucket pathBucket = getPathBucket(path, nowNanos);
+        if (pathBucket != null) {
+            pathBucket.release();
+        }
+    }
+
+    private TokenBucket getSessionBucket(String sessionKey, long nowNanos) {
+        RateLimit sessionLimit = config.getSessionLimit();
+        if (null == sessionKey || !sessionLimit.isLimited()) {
+            return null;
+        }
+
+        TokenBucket tokenBucket = sessionBuckets.get(sessionKey);
+        if (null == tokenBucket) {
+            if (sessionBuckets.size() >= MAX_IDLE_SESSIONS) {
+                sweep(nowNanos);
+            }
+            tokenBucket = sessionBuckets.computeIfAbsent(sessionKey, key -> new TokenBucket(sessionLimit, nowNanos));
+        }
+
+        return tokenBucket;
+    }
+
+    private TokenBucket getPathBucket(String path, long nowNanos) {
+        RateLimit pathLimit = config.getPathLimit(path);
+        if (!pathLimit.isLimited()) {
+            return null;
+        }
+
+        TokenBucket tokenBucket = pathBuckets.get(path);
+        if (null == tokenBucket) {
+            tokenBucket = pathBuckets.computeIfAbsent(path, key -> new TokenBucket(pathLimit, nowNanos));
+        }
+
+        return tokenBucket;
+    }
+
+    /**
+     * Drops the buckets that are full, which are no different from new ones. A token taken from a bucket just as it's
+     * dropped is forgotten, which lets at most one extra request through.
+     */
+    private void sweep(long nowNanos) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            sessionBuckets.values().removeIf(tokenBucket -> tokenBucket.isFull(nowNanos));
+        }
+        finally {
+            sweeping.set(false);
+        }
+    }
+
+    private void recordRejection(String path) {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordRejection(path, RATE_LIMITED);
+        }
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("interrupted waiting for the rate limit");
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for the RateLimiter: a token bucket for each session, and one for each Path shared by every session
+ */
+public class RateLimiterConfig {
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5000;
+
+    /**
+     * Never holds a request back
+     */
+    public static final RateLimiterConfig UNLIMITED = new RateLimiterConfig(RateLimit.UNLIMITED, RateLimit.UNLIMITED);
+
+    private static ScheduledExecutorService defaultScheduler;
+
+    private RateLimit sessionLimit;
+    private RateLimit pathLimit;
+    private Map<String, RateLimit> pathLimits;
+    private long maxWaitMillis;
+    private ScheduledExecutorService scheduler;
+
+    public RateLimiterConfig(RateLimit sessionLimit, RateLimit pathLimit) {
+        this(sessionLimit, pathLimit, Collections.<String, RateLimit>emptyMap(), DEFAULT_MAX_WAIT_MILLIS, null);
+    }
+
+    /**
+     * @param sessionLimit the limit of each session, across all of the Paths
+     * @param pathLimit the limit of each Path that isn't in pathLimits, across all of the sessions
+     * @param pathLimits the limits of particular Paths, by Path
+     * @param maxWaitMillis how long a request may be held back before it fails with a RateLimitedException instead,
+     *                      0 to never hold one back
+     * @param scheduler completes the non-blocking waits, or null for a shared daemon thread
+     */
+    public RateLimiterConfig(RateLimit sessionLimit, RateLimit pathLimit, Map<String, RateLimit> pathLimits,
+                             long maxWaitMillis, ScheduledExecutorService scheduler)
+    {
+        if (null == sessionLimit) {
+            throw new IllegalArgumentException("sessionLimit is null");
+        }
+        if (null == pathLimit) {
+            throw new IllegalArgumentException("pathLimit is null");
+        }
+        if (null == pathLimits) {
+            throw new IllegalArgumentException("pathLimits is null");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis is negative");
+        }
+
+        this.sessionLimit = sessionLimit;
+        this.pathLimit = pathLimit;
+        this.pathLimits = Collections.unmodifiableMap(new HashMap<String, RateLimit>(pathLimits));
+        this.maxWaitMillis = maxWaitMillis;
+        this.scheduler = scheduler;
+    }
+
+    public RateLimit getSessionLimit() {
+        return sessionLimit;
+    }
+
+    /**
+     * @return the limit of the given Path
+     */
+    public RateLimit getPathLimit(String path) {
+        RateLimit rateLimit = pathLimits.get(path);
+
+        return null == rateLimit ? pathLimit : rateLimit;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return null == scheduler ? getDefaultScheduler() : scheduler;
+    }
+
+    /**
+     * @return false if nothing is ever held back
+     */
+    public boolean isLimited() {
+        if (sessionLimit.isLimited() || pathLimit.isLimited()) {
+            return true;
+        }
+        for (RateLimit rateLimit : pathLimits.values()) {
+            if (rateLimit.isLimited()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return a shared daemon thread, created on first use
+     */
+    private static synchronized ScheduledExecutorService getDefaultScheduler() {
+        if (null == defaultScheduler) {
+            defaultScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "google-play-client-rate-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return defaultScheduler;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Rather than a count of tokens it keeps the time at which the bucket will be full again,
+ * so taking a token is a single compare-and-set, and nothing has to top the bucket up in the background. A token can
+ * also be reserved ahead of time, in which case the caller is told how long to wait before using it.
+ *
+ * The times are System.nanoTime() values, passed in so the bucket can be tested without waiting.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+
+    // when the bucket will be full again; at or before now it's full
+    private final AtomicLong fullAtNanos;
+
+    public TokenBucket(RateLimit rateLimit, long nowNanos) {
+        if (null == rateLimit) {
+            throw new IllegalArgumentException("rateLimit is null");
+        }
+        if (!rateLimit.isLimited()) {
+            throw new IllegalArgumentException("rateLimit is unlimited");
+        }
+
+        this.intervalNanos = rateLimit.getIntervalNanos();
+        this.capacityNanos = intervalNanos * rateLimit.getBurst();
+        this.fullAtNanos = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * @return true, having taken a token, or false if the bucket is empty
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAtNanos.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            if (next - nowNanos > capacityNanos) {
+                return false;
+            }
+            if (fullAtNanos.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes a token that may only be there in the future
+     * @param maxWaitNanos the longest the caller is willing to wait for it
+     * @return how long to wait before using the token, 0 if it's there now, or -1 if it would take longer than
+     * maxWaitNanos, in which case nothing has been taken
+     */
+    public long reserve(long nowNanos, long maxWaitNanos) {
+        while (true) {
+            long current = fullAtNanos.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long waitNanos = Math.max(0, next - nowNanos - capacityNanos);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAtNanos.compareAndSet(current, next)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Puts back a token that was taken but not used
+     */
+    public void release() {
+        fullAtNanos.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * @return true if the bucket is full, so it's no different from a new one
+     */
+    public boolean isFull(long nowNanos) {
+        return fullAtNanos.get() <= nowNanos;
+    }
+
+    /**
+     * @return the number of whole tokens in the bucket
+     */
+    public int getAvailableTokens(long nowNanos) {
+        long emptyNanos = Math.max(0, fullAtNanos.get() - nowNanos);
+        return (int) ((capacityNanos - emptyNanos) / intervalNanos);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bulkhead of one Path, bounding how many calls can be in flight to it at once
+ */
+public class Bulkhead {
+
+    private final BulkheadConfig config;
+    private final Semaphore semaphore;
+
+    public Bulkhead(BulkheadConfig config) {
+        if (null == config) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.config = config;
+        this.semaphore = new Semaphore(config.getMaxConcurrentCalls());
+    }
+
+    /**
+     * Waits up to the configured time for a call to finish if the bulkhead is full
+     *
+     * @return true if the call may go ahead, in which case it must be followed by release
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public boolean tryAcquire() throws InterruptedIOException {
+        if (0 == config.getMaxWaitMillis()) {
+            return semaphore.tryAcquire();
+        }
+
+        try {
+            return semaphore.tryAcquire(config.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("interrupted waiting for a call");
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+    }
+
+    /**
+     * Never waits, for calls that mustn't block the thread
+     *
+     * @return true if the call may go ahead, in which case it must be followed by release
+     */
+    public boolean tryAcquireNow() {
+        return semaphore.tryAcquire();
+    }
+
+    public void release() {
+        semaphore.release();
+    }
+
+    public int getActiveCalls() {
+        return config.getMaxConcurrentCalls() - semaphore.availablePermits();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+/**
+ * Settings for the bulkhead of one Path, which bounds how many calls can be in flight to it at once. A slow endpoint
+ * then only ties up its own share of the threads and pooled connections, and the calls beyond that fail fast.
+ */
+public class BulkheadConfig {
+
+    // half of the connection pool's default per route, so one endpoint can't take all of the connections to a host
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 25;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 0;
+
+    /**
+     * Never refuses a call
+     */
+    public static final BulkheadConfig UNBOUNDED = new BulkheadConfig(Integer.MAX_VALUE, 0);
+
+    private int maxConcurrentCalls;
+    private long maxWaitMillis;
+
+    public BulkheadConfig() {
+        this(DEFAULT_MAX_CONCURRENT_CALLS, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxConcurrentCalls the most calls in flight to the Path at once
+     * @param maxWaitMillis how long a blocking call waits for one of the others to finish before failing, 0 to fail
+     *                      straight away. Non-blocking calls never wait.
+     */
+    public BulkheadConfig(int maxConcurrentCalls, long maxWaitMillis) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis is negative");
+        }
+
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public boolean isBounded() {
+        return maxConcurrentCalls != Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to a Path that already has as many calls in flight as its bulkhead allows
+ */
+public class BulkheadFullException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    public BulkheadFullException(String path) {
+        super("the bulkhead of " + path + " is full");
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+}
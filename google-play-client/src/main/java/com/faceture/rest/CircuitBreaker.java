@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.time.Clock;
+
+/**
+ * The circuit breaker of one Path. It keeps whether each of the most recent calls failed or was slow, and opens when
+ * either rate reaches its threshold. While open it refuses every call. Once the open time has passed it's half open
+ * and lets a few trial calls through: if they all succeed in time it closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Told about every change of state, outside of the breaker's lock
+     */
+    public interface Listener {
+        /**
+         * @param failureRate the failure rate over the window when the state changed
+         * @param slowCallRate the slow call rate over the window when the state changed
+         */
+        void onTransition(State from, State to, double failureRate, double slowCallRate);
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final CircuitBreakerConfig config;
+    private final Clock clock;
+    private final Listener listener;
+    private final long slowCallNanos;
+
+    // the rest is guarded by this
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private int slowCount;
+    private State state = State.CLOSED;
+    private long openUntilMillis;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(CircuitBreakerConfig config, Clock clock, Listener listener) {
+        if (null == config) {
+            throw new IllegalArgumentException("config is null");
+        }
+        if (null == clock) {
+            throw new IllegalArgumentException("clock is null");
+        }
+        if (null == listener) {
+            throw new IllegalArgumentException("listener is null");
+        }
+
+        this.config = config;
+        this.clock = clock;
+        this.listener = listener;
+        this.slowCallNanos = config.getSlowCallMillis() * 1000000;
+        this.window = new byte[config.isEnabled() ? config.getWindowSize() : 0];
+    }
+
+    /**
+     * @return true if the call may go ahead, in which case it must be followed by onSuccess, onFailure or
+     * releasePermission
+     */
+    public boolean tryAcquirePermission() {
+        if (!config.isEnabled()) {
+            return true;
+        }
+
+        Transition transition = null;
+        boolean permitted;
+        synchronized (this) {
+            if (State.OPEN == state && clock.millis() >= openUntilMillis) {
+                transition = transitionTo(State.HALF_OPEN);
+            }
+
+            if (State.CLOSED == state) {
+                permitted = true;
+            }
+            else if (State.HALF_OPEN == state && halfOpenPermits > 0) {
+                halfOpenPermits--;
+                permitted = true;
+            }
+            else {
+                permitted = false;
+            }
+        }
+
+        notifyListener(transition);
+        return permitted;
+    }
+
+    /**
+     * Gives back the permission of a call that never reached the endpoint, so says nothing about it
+     */
+    public void releasePermission() {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (State.HALF_OPEN == state && halfOpenPermits + halfOpenSuccesses < config.getHalfOpenCalls()) {
+                halfOpenPermits++;
+            }
+        }
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized double getFailureRate() {
+        return rate(failureCount);
+    }
+
+    public synchronized double getSlowCallRate() {
+        return rate(slowCount);
+    }
+
+    private void record(boolean failed, long durationNanos) {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        boolean slow = durationNanos >= slowCallNanos;
+        Transition transition = null;
+        synchronized (this) {
+            if (State.CLOSED == state) {
+                addToWindow(failed, slow);
+                if (windowCount >= config.getMinimumCalls()
+                        && (rate(failureCount) >= config.getFailureRateThreshold()
+                        || rate(slowCount) >= config.getSlowCallRateThreshold()))
+                {
+                    transition = transitionTo(State.OPEN);
+                }
+            }
+            else if (State.HALF_OPEN == state) {
+                if (failed || slow) {
+                    transition = transitionTo(State.OPEN);
+                }
+                else if (++halfOpenSuccesses >= config.getHalfOpenCalls()) {
+                    transition = transitionTo(State.CLOSED);
+                }
+            }
+            // a call let through before the breaker opened is ignored
+        }
+
+        notifyListener(transition);
+    }
+
+    private void addToWindow(boolean failed, boolean slow) {
+        if (windowCount == window.length) {
+            byte oldest = window[windowIndex];
+            if ((oldest & FAILED) != 0) {
+                failureCount--;
+            }
+            if ((oldest & SLOW) != 0) {
+                slowCount--;
+            }
+        }
+        else {
+            windowCount++;
+        }
+
+        window[windowIndex] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        windowIndex = (windowIndex + 1) % window.length;
+        if (failed) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCount++;
+        }
+    }
+
+    private double rate(int count) {
+        return 0 == windowCount ? 0 : (double) count / windowCount;
+    }
+
+    private Transition transitionTo(State to) {
+        Transition transition = new Transition(state, to, rate(failureCount), rate(slowCount));
+
+        state = to;
+        if (State.OPEN == to) {
+            openUntilMillis = clock.millis() + config.getOpenMillis();
+        }
+        else if (State.HALF_OPEN == to) {
+            halfOpenPermits = config.getHalfOpenCalls();
+            halfOpenSuccesses = 0;
+        }
+        else {
+            windowIndex = 0;
+            windowCount = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+
+        return transition;
+    }
+
+    private void notifyListener(Transition transition) {
+        if (null != transition) {
+            listener.onTransition(transition.from, transition.to, transition.failureRate, transition.slowCallRate);
+        }
+    }
+
+    private static class Transition {
+        private final State from;
+        private final State to;
+        private final double failureRate;
+        private final double slowCallRate;
+
+        private Transition(State from, State to, double failureRate, double slowCallRate) {
+            this.from = from;
+            this.to = to;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+/**
+ * Settings for the circuit breaker of one Path. The breaker opens when too many of the recent calls failed or were
+ * slow, refuses every call while it's open, then lets a few trial calls through to see if the endpoint has
+ * recovered.
+ */
+public class CircuitBreakerConfig {
+
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10000;
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+    public static final int DEFAULT_HALF_OPEN_CALLS = 5;
+
+    /**
+     * Never opens
+     */
+    public static final CircuitBreakerConfig DISABLED = new CircuitBreakerConfig(false);
+
+    private boolean enabled;
+    private double failureRateThreshold;
+    private double slowCallRateThreshold;
+    private long slowCallMillis;
+    private int windowSize;
+    private int minimumCalls;
+    private long openMillis;
+    private int halfOpenCalls;
+
+    /**
+     * The default settings
+     */
+    public CircuitBreakerConfig() {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_SLOW_CALL_RATE_THRESHOLD, DEFAULT_SLOW_CALL_MILLIS,
+                DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_MILLIS, DEFAULT_HALF_OPEN_CALLS);
+    }
+
+    /**
+     * @param failureRateThreshold the breaker opens when at least this fraction of the calls in the window failed,
+     *                             i.e. threw an IOException or got a 5xx or 429
+     * @param slowCallRateThreshold the breaker opens when at least this fraction of the calls in the window were slow
+     * @param slowCallMillis calls that take at least this long are slow, whether they failed or not
+     * @param windowSize how many of the most recent calls the rates are worked out over
+     * @param minimumCalls the rates aren't looked at until the window has this many calls
+     * @param openMillis how long the breaker stays open before letting the trial calls through
+     * @param halfOpenCalls how many trial calls must succeed, none of them slow, to close the breaker again. The first
+     *                      one that doesn't opens it again.
+     */
+    public CircuitBreakerConfig(double failureRateThreshold, double slowCallRateThreshold, long slowCallMillis,
+                                int windowSize, int minimumCalls, long openMillis, int halfOpenCalls)
+    {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("failureRateThreshold must be above 0 and at most 1");
+        }
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("slowCallRateThreshold must be above 0 and at most 1");
+        }
+        if (slowCallMillis <= 0) {
+            throw new IllegalArgumentException("slowCallMillis must be positive");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        if (minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be positive and at most windowSize");
+        }
+        if (openMillis < 0) {
+            throw new IllegalArgumentException("openMillis is negative");
+        }
+        if (halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("halfOpenCalls must be positive");
+        }
+
+        this.enabled = true;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    private CircuitBreakerConfig(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+}
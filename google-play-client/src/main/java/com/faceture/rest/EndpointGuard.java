@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.jfr.CircuitTransitionEvent;
+import com.faceture.jfr.JfrSupport;
+import com.faceture.metrics.ClientMetrics;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Gives each Path its own CircuitBreaker and Bulkhead, so that an endpoint that's failing or slow fails fast instead
+ * of tying up the threads and connections the other endpoints need. A call counts as failed when it throws an
+ * IOException or gets a 5xx or 429. Refused calls throw CircuitOpenException or BulkheadFullException without being
+ * sent. For streamed responses the call is over once the headers have arrived, so reading the body isn't covered.
+ */
+public class EndpointGuard {
+
+    // the reasons given to ClientMetrics.recordRejection
+    public static final String CIRCUIT_OPEN = "circuit_open";
+    public static final String BULKHEAD_FULL = "bulkhead_full";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    private final CircuitBreakerConfig circuitBreakerConfig;
+    private final BulkheadConfig bulkheadConfig;
+    private final Map<String, CircuitBreakerConfig> circuitBreakerConfigs;
+    private final Map<String, BulkheadConfig> bulkheadConfigs;
+    private final ClientMetrics clientMetrics;
+    private final Clock clock;
+    private final boolean enabled;
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers =
+            new ConcurrentHashMap<String, CircuitBreaker>();
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    /**
+     * Every Path gets the same settings
+     */
+    public EndpointGuard(CircuitBreakerConfig circuitBreakerConfig, BulkheadConfig bulkheadConfig,
+                         ClientMetrics clientMetrics)
+    {
+        this(circuitBreakerConfig, bulkheadConfig, Collections.<String, CircuitBreakerConfig>emptyMap(),
+                Collections.<String, BulkheadConfig>emptyMap(), clientMetrics, Clock.systemUTC());
+    }
+
+    /**
+     * @param circuitBreakerConfig for the Paths that aren't in circuitBreakerConfigs
+     * @param bulkheadConfig for the Paths that aren't in bulkheadConfigs
+     * @param circuitBreakerConfigs the settings of particular Paths, by Path
+     * @param bulkheadConfigs the settings of particular Paths, by Path
+     * @param clock for timing how long the circuit breakers stay open
+     */
+    public EndpointGuard(CircuitBreakerConfig circuitBreakerConfig, BulkheadConfig bulkheadConfig,
+                         Map<String, CircuitBreakerConfig> circuitBreakerConfigs,
+                         Map<String, BulkheadConfig> bulkheadConfigs, ClientMetrics clientMetrics, Clock clock)
+    {
+        if (null == circuitBreakerConfig) {
+            throw new IllegalArgumentException("circuitBreakerConfig is null");
+        }
+        if (null == bulkheadConfig) {
+            throw new IllegalArgumentException("bulkheadConfig is null");
+        }
+        if (null == circuitBreakerConfigs) {
+            throw new IllegalArgumentException("circuitBreakerConfigs is null");
+        }
+        if (null == bulkheadConfigs) {
+            throw new IllegalArgumentException("bulkheadConfigs is null");
+        }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
+        if (null == clock) {
+            throw new IllegalArgumentException("clock is null");
+        }
+
+        this.circuitBreakerConfig = circuitBreakerConfig;
+        this.bulkheadConfig = bulkheadConfig;
+        this.circuitBreakerConfigs = new HashMap<String, CircuitBreakerConfig>(circuitBreakerConfigs);
+        this.bulkheadConfigs = new HashMap<String, BulkheadConfig>(bulkheadConfigs);
+        this.clientMetrics = clientMetrics;
+        this.clock = clock;
+
+        // with nothing to guard, calls go straight through without looking anything up
+        this.enabled = circuitBreakerConfig.isEnabled() || bulkheadConfig.isBounded()
+                || !circuitBreakerConfigs.isEmpty() || !bulkheadConfigs.isEmpty();
+    }
+
+    /**
+     * Sends a request if the Path's circuit breaker and bulkhead allow it, waiting for the bulkhead if its settings
+     * say to
+     * @param statusCode gets the status code of the response
+     * @throws CircuitOpenException if the circuit breaker is open
+     * @throws BulkheadFullException if the bulkhead is full
+     */
+    public <T> T call(String path, RequestRetrier.Attempt<T> attempt, ToIntFunction<T> statusCode)
+            throws IOException, URISyntaxException
+    {
+        if (!enabled) {
+            return attempt.send();
+        }
+
+        CircuitBreaker circuitBreaker = getCircuitBreaker(path);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw reject(path, CIRCUIT_OPEN, new CircuitOpenException(path));
+        }
+
+        Bulkhead bulkhead = getBulkhead(path);
+        boolean acquired = false;
+        try {
+            acquired = bulkhead.tryAcquire();
+        }
+        finally {
+            if (!acquired) {
+                circuitBreaker.releasePermission();
+            }
+        }
+        if (!acquired) {
+            throw reject(path, BULKHEAD_FULL, new BulkheadFullException(path));
+        }
+
+        try {
+            long start = System.nanoTime();
+            T response;
+            try {
+                response = attempt.send();
+            }
+            catch (IOException e) {
+                circuitBreaker.onFailure(System.nanoTime() - start);
+                throw e;
+            }
+            catch (RuntimeException | Error e) {
+                circuitBreaker.onFailure(System.nanoTime() - start);
+                throw e;
+            }
+            catch (URISyntaxException e) {
+                // the request never left
+                circuitBreaker.releasePermission();
+                throw e;
+            }
+
+            record(circuitBreaker, statusCode.applyAsInt(response), System.nanoTime() - start);
+            return response;
+        }
+        finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Non-blocking version of call, which never waits for the bulkhead
+     * @return the future response, or one that has failed with CircuitOpenException or BulkheadFullException.
+     * Cancelling it cancels the request.
+     */
+    public <T> CompletableFuture<T> callAsync(String path, Supplier<CompletableFuture<T>> request,
+                                              ToIntFunction<T> statusCode)
+    {
+        if (!enabled) {
+            return request.get();
+        }
+
+        CircuitBreaker circuitBreaker = getCircuitBreaker(path);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return failed(reject(path, CIRCUIT_OPEN, new CircuitOpenException(path)));
+        }
+
+        Bulkhead bulkhead = getBulkhead(path);
+        if (!bulkhead.tryAcquireNow()) {
+            circuitBreaker.releasePermission();
+            return failed(reject(path, BULKHEAD_FULL, new BulkheadFullException(path)));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        }
+        catch (RuntimeException e) {
+            bulkhead.release();
+            circuitBreaker.onFailure(System.nanoTime() - start);
+            throw e;
+        }
+
+        future.whenComplete((response, failure) -> {
+            bulkhead.release();
+            long elapsedNanos = System.nanoTime() - start;
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (null == failure) {
+                record(circuitBreaker, statusCode.applyAsInt(response), elapsedNanos);
+            }
+            else if (cause instanceof URISyntaxException) {
+                circuitBreaker.releasePermission();
+            }
+            else {
+                circuitBreaker.onFailure(elapsedNanos);
+            }
+        });
+
+        // the caller gets the request's own future, so that cancelling it still reaches the request
+        return future;
+    }
+
+    /**
+     * @return the Path's circuit breaker, created the first time it's asked for
+     */
+    public CircuitBreaker getCircuitBreaker(String path) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(path);
+        if (null == circuitBreaker) {
+            circuitBreaker = circuitBreakers.computeIfAbsent(path, key -> new CircuitBreaker(
+                    circuitBreakerConfigs.getOrDefault(key, circuitBreakerConfig), clock,
+                    (from, to, failureRate, slowCallRate) -> onTransition(key, from, to, failureRate, slowCallRate)));
+        }
+
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the Path's bulkhead, created the first time it's asked for
+     */
+    public Bulkhead getBulkhead(String path) {
+        Bulkhead bulkhead = bulkheads.get(path);
+        if (null == bulkhead) {
+            bulkhead = bulkheads.computeIfAbsent(path,
+                    key -> new Bulkhead(bulkheadConfigs.getOrDefault(key, bulkheadConfig)));
+        }
+
+        return bulkhead;
+    }
+
+    private static void record(CircuitBreaker circuitBreaker, int statusCode, long elapsedNanos) {
+        if (statusCode >= SERVER_ERROR || TOO_MANY_REQUESTS == statusCode) {
+            circuitBreaker.onFailure(elapsedNanos);
+        }
+        else {
+            circuitBreaker.onSuccess(elapsedNanos);
+        }
+    }
+
+    private <E extends IOException> E reject(String path, String reason, E e) {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordRejection(path, reason);
+        }
+
+        return e;
+    }
+
+    private void onTransition(String path, CircuitBreaker.State from, CircuitBreaker.State to, double failureRate,
+                              double slowCallRate)
+    {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordCircuitTransition(path, from.name(), to.name());
+        }
+
+        if (JfrSupport.isAvailable()) {
+            CircuitTransitionEvent event = new CircuitTransitionEvent();
+            if (event.shouldCommit()) {
+                event.setPath(path);
+                event.setFromState(from.name());
+                event.setToState(to.name());
+                event.setFailureRate(failureRate);
+                event.setSlowCallRate(slowCallRate);
+                event.commit();
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> failed = new CompletableFuture<T>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+}
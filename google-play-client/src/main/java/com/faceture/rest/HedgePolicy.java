@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Settings for hedging a request: when the first copy of a GET hasn't answered within a percentile of the recent
+ * latency of its Path, a second copy is sent and whichever answers first is used. A hedge budget shared by all of
+ * the requests keeps the extra load bounded.
+ */
+public class HedgePolicy {
+
+    public static final double DEFAULT_PERCENTILE = 95;
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 10;
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    public static final int DEFAULT_BUDGET_RESERVE = 5;
+
+    /**
+     * Never hedges
+     */
+    public static final HedgePolicy NONE = new HedgePolicy(Collections.<String>emptySet());
+
+    private double percentile;
+    private long minDelayMillis;
+    private int windowSize;
+    private int minSamples;
+    private double budgetRatio;
+    private int budgetReserve;
+    private Set<String> hedgedPaths;
+
+    /**
+     * @param hedgedPaths the paths of the GETs to hedge, e.g. Path.MUSIC_PLAY
+     */
+    public HedgePolicy(Set<String> hedgedPaths) {
+        this(DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY_MILLIS, DEFAULT_WINDOW_SIZE, DEFAULT_MIN_SAMPLES,
+                DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_RESERVE, hedgedPaths);
+    }
+
+    /**
+     * @param percentile the percentile of the recent latency to wait before sending the hedge, e.g. 95
+     * @param minDelayMillis the least to wait before sending the hedge, however fast the recent requests were
+     * @param windowSize how many of the most recent responses of each Path the percentile is taken over
+     * @param minSamples how many responses a Path needs before its requests are hedged
+     * @param budgetRatio the hedges may add at most this fraction of the requests sent, e.g. 0.05 for 5%
+     * @param budgetReserve the most hedges that can be saved up, all of which are available at the start
+     * @param hedgedPaths the paths of the GETs to hedge, e.g. Path.MUSIC_PLAY
+     */
+    public HedgePolicy(double percentile, long minDelayMillis, int windowSize, int minSamples, double budgetRatio,
+                       int budgetReserve, Set<String> hedgedPaths)
+    {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be above 0 and at most 100");
+        }
+        if (minDelayMillis < 0) {
+            throw new IllegalArgumentException("minDelayMillis is negative");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        if (minSamples <= 0 || minSamples > windowSize) {
+            throw new IllegalArgumentException("minSamples must be positive and at most windowSize");
+        }
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("budgetRatio must be between 0 and 1");
+        }
+        if (budgetReserve < 0) {
+            throw new IllegalArgumentException("budgetReserve is negative");
+        }
+        if (null == hedgedPaths) {
+            throw new IllegalArgumentException("hedgedPaths is null");
+        }
+
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.windowSize = windowSize;
+        this.minSamples = minSamples;
+        this.budgetRatio = budgetRatio;
+        this.budgetReserve = budgetReserve;
+        this.hedgedPaths = Collections.unmodifiableSet(new HashSet<String>(hedgedPaths));
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public int getBudgetReserve() {
+        return budgetReserve;
+    }
+
+    public Set<String> getHedgedPaths() {
+        return hedgedPaths;
+    }
+
+    public boolean isHedged(String path) {
+        return hedgedPaths.contains(path);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the most recent responses of one Path, oldest first out. Unlike the LatencyHistogram of the
+ * ClientMetrics it forgets old responses, so its percentiles follow the server as it speeds up and slows down. The
+ * latencies are also kept in order as they're recorded, so a percentile is looked up rather than sorted for on every
+ * hedged request.
+ */
+class LatencyWindow {
+
+    // in the order they were recorded, and the same ones sorted
+    private final long[] latencies;
+    private final long[] sorted;
+    private int next;
+    private int count;
+
+    LatencyWindow(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+
+        this.latencies = new long[size];
+        this.sorted = new long[size];
+    }
+
+    synchronized void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+
+        if (count == latencies.length) {
+            // the oldest latency makes room
+            int index = Arrays.binarySearch(sorted, 0, count, latencies[next]);
+            System.arraycopy(sorted, index + 1, sorted, index, count - index - 1);
+            count--;
+        }
+
+        int index = Arrays.binarySearch(sorted, 0, count, nanos);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        System.arraycopy(sorted, index, sorted, index + 1, count - index);
+        sorted[index] = nanos;
+        count++;
+
+        latencies[next] = nanos;
+        next = (next + 1) % latencies.length;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the latency the given percentage of the recorded ones are at or below, or -1 if fewer than minSamples
+     * have been recorded
+     */
+    synchronized long getValueAtPercentile(double percentile, int minSamples) {
+        if (count < minSamples || 0 == count) {
+            return -1;
+        }
+
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+
+        return sorted[Math.min(Math.max(index, 0), count - 1)];
+    }
+}
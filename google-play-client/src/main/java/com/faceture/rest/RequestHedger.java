@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.metrics.ClientMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Hedges the requests to the Paths of a HedgePolicy: once the first copy of a request has taken longer than the
+ * policy's percentile of the recent latency of its Path, a second copy is sent, the first response to arrive is used
+ * and the other exchange is aborted. Every hedge has to come out of a RetryBudget of its own, shared by every thread
+ * using the RestClient.
+ */
+public class RequestHedger {
+
+    private HedgePolicy hedgePolicy;
+    private ClientMetrics clientMetrics;
+    private RetryBudget hedgeBudget;
+
+    private final ConcurrentMap<String, LatencyWindow> windowsByPath = new ConcurrentHashMap<String, LatencyWindow>();
+
+    /**
+     * @param clientMetrics told about every hedge, unless it's disabled
+     */
+    public RequestHedger(HedgePolicy hedgePolicy, ClientMetrics clientMetrics) {
+        if (null == hedgePolicy) {
+            throw new IllegalArgumentException("hedgePolicy is null");
+        }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
+
+        this.hedgePolicy = hedgePolicy;
+        this.clientMetrics = clientMetrics;
+        this.hedgeBudget = new RetryBudget(hedgePolicy.getBudgetRatio(), hedgePolicy.getBudgetReserve());
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public RetryBudget getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public boolean isHedged(String path) {
+        return hedgePolicy.isHedged(path);
+    }
+
+    /**
+     * @return how long a request to the path waits before it's hedged, or -1 if too few of its responses have been
+     * seen to tell
+     */
+    public long getHedgeDelayNanos(String path) {
+        long percentileNanos = getOrCreateWindow(path).getValueAtPercentile(hedgePolicy.getPercentile(),
+                hedgePolicy.getMinSamples());
+        if (percentileNanos < 0) {
+            return -1;
+        }
+
+        return Math.max(percentileNanos, TimeUnit.MILLISECONDS.toNanos(hedgePolicy.getMinDelayMillis()));
+    }
+
+    /**
+     * Sends the request, and a second copy of it if the first is slow and the budget allows, then waits for the first
+     * response. A copy that fails only fails the call if the other one fails too.
+     * @param path the Path the request is sent to
+     * @param request sends one copy of the request. Cancelling the future it returns must abort the exchange.
+     * @return the response that arrived first
+     */
+    public RestResponse send(String path, Supplier<CompletableFuture<RestResponse>> request)
+            throws IOException, URISyntaxException
+    {
+        if (!hedgePolicy.isHedged(path)) {
+            return await(request.get());
+        }
+
+        hedgeBudget.recordRequest();
+
+        LatencyWindow latencyWindow = getOrCreateWindow(path);
+        long delayNanos = getHedgeDelayNanos(path);
+
+        long firstStart = nanoTime();
+        CompletableFuture<RestResponse> first = request.get();
+        recordLatency(first, latencyWindow, firstStart);
+        if (delayNanos < 0) {
+            return await(first);
+        }
+
+        try {
+            return first.get(delayNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            // it's slow, hedge it below
+        }
+        catch (InterruptedException e) {
+            throw interrupted(first);
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+
+        if (!hedgeBudget.tryRetry()) {
+            return await(first);
+        }
+
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordHedge(path);
+        }
+
+        CompletableFuture<RestResponse> second = request.get();
+        recordLatency(second, latencyWindow, nanoTime());
+
+        try {
+            return await(getFirstSuccess(first, second));
+        }
+        finally {
+            // the first copy took at least this long, leaving it out would hide the slow responses from the window
+            if (!first.isDone()) {
+                latencyWindow.record(nanoTime() - firstStart);
+            }
+
+            first.cancel(true);
+            second.cancel(true);
+        }
+    }
+
+    /**
+     * Overridden by the tests
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private LatencyWindow getOrCreateWindow(String path) {
+        LatencyWindow latencyWindow = windowsByPath.get(path);
+        if (latencyWindow != null) {
+            return latencyWindow;
+        }
+
+        return windowsByPath.computeIfAbsent(path, key -> new LatencyWindow(hedgePolicy.getWindowSize()));
+    }
+
+    private void recordLatency(CompletableFuture<RestResponse> response, LatencyWindow latencyWindow, long start) {
+        response.whenComplete((restResponse, throwable) -> {
+            if (null == throwable) {
+                latencyWindow.record(nanoTime() - start);
+            }
+        });
+    }
+
+    private static CompletableFuture<RestResponse> getFirstSuccess(CompletableFuture<RestResponse> first,
+                                                                   CompletableFuture<RestResponse> second)
+    {
+        CompletableFuture<RestResponse> firstSuccess = new CompletableFuture<RestResponse>();
+        AtomicInteger failures = new AtomicInteger();
+
+        BiConsumer<RestResponse, Throwable> onCompletion = (restResponse, throwable) -> {
+            if (null == throwable) {
+                firstSuccess.complete(restResponse);
+            }
+            else if (2 == failures.incrementAndGet()) {
+                firstSuccess.completeExceptionally(throwable);
+            }
+        };
+        first.whenComplete(onCompletion);
+        second.whenComplete(onCompletion);
+
+        return firstSuccess;
+    }
+
+    private static RestResponse await(CompletableFuture<RestResponse> response)
+            throws IOException, URISyntaxException
+    {
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            throw interrupted(response);
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static InterruptedIOException interrupted(CompletableFuture<RestResponse> response) {
+        response.cancel(true);
+        Thread.currentThread().interrupt();
+
+        return new InterruptedIOException("interrupted while waiting for the response");
+    }
+
+    /**
+     * @return the IOException to throw for the failure of a request, having thrown it directly if it can be
+     */
+    private static IOException rethrow(ExecutionException e) throws URISyntaxException {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof URISyntaxException) {
+            throw (URISyntaxException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.ratelimit.RateLimitedException;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sends a request again, following a RetryPolicy, when it fails with an I/O error or a status that may not happen
+ * again. A request is sent at most maxAttempts times, and every retry has to come out of the shared RetryBudget.
+ */
+public class RequestRetrier {
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * One attempt at sending a request
+     */
+    public interface Attempt<T> {
+        T send() throws IOException, URISyntaxException;
+    }
+
+    private RetryPolicy retryPolicy;
+    private ClientMetrics clientMetrics;
+    private RetryBudget retryBudget;
+
+    /**
+     * @param clientMetrics told about every retry, unless it's disabled
+     */
+    public RequestRetrier(RetryPolicy retryPolicy, ClientMetrics clientMetrics) {
+        if (null == retryPolicy) {
+            throw new IllegalArgumentException("retryPolicy is null");
+        }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
+
+        this.retryPolicy = retryPolicy;
+        this.clientMetrics = clientMetrics;
+        this.retryBudget = new RetryBudget(retryPolicy.getBudgetRatio(), retryPolicy.getBudgetReserve());
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param path the Path the request is sent to
+     * @param retryable false for requests that can't safely be sent twice, which are only sent once
+     * @return the first response that isn't worth retrying, or the last one if the attempts or the budget ran out
+     */
+    public RestResponse send(String path, boolean retryable, Attempt<RestResponse> attempt)
+            throws IOException, URISyntaxException
+    {
+        return send(path, retryable, attempt, RestResponse::getStatusCode, RestResponse::getHeaders,
+                restResponse -> {});
+    }
+
+    /**
+     * Like send, but a streamed response that's going to be retried is aborted rather than read
+     */
+    public RestStreamResponse sendStreaming(String path, boolean retryable, Attempt<RestStreamResponse> attempt)
+            throws IOException, URISyntaxException
+    {
+        return send(path, retryable, attempt, RestStreamResponse::getStatusCode, RestStreamResponse::getHeaders,
+                RequestRetrier::discard);
+    }
+
+    /**
+     * Waits before another attempt at a request that failed with the given exception, if it's worth another attempt.
+     * Used to pick a request up again when its response broke off part way through.
+     * @param attempts how many times the request has been sent so far
+     * @return false, without waiting, if the request shouldn't be sent again
+     */
+    public boolean backOff(String path, int attempts, IOException e) throws InterruptedIOException {
+        if (!isRetryable(e) || !takeRetry(attempts)) {
+            return false;
+        }
+
+        retry(path, getBackoffMillis(attempts));
+        return true;
+    }
+
+    private <T> T send(String path, boolean retryable, Attempt<T> attempt, ToIntFunction<T> statusCode,
+                       Function<T, Map<String, String>> headers, Consumer<T> discard)
+            throws IOException, URISyntaxException
+    {
+        if (!retryable) {
+            return attempt.send();
+        }
+
+        retryBudget.recordRequest();
+
+        int attempts = 1;
+        while (true) {
+            T response;
+            try {
+                response = attempt.send();
+            }
+            catch (IOException e) {
+                if (!backOff(path, attempts, e)) {
+                    throw e;
+                }
+                attempts++;
+                continue;
+            }
+
+            if (!retryPolicy.isRetryableStatus(statusCode.applyAsInt(response))) {
+                return response;
+            }
+
+            // the server may say how long to wait, and if that's too long the response is as good as it gets
+            long delayMillis = getRetryAfterMillis(headers.apply(response));
+            if (delayMillis < 0) {
+                delayMillis = getBackoffMillis(attempts);
+            }
+            else if (delayMillis > retryPolicy.getMaxRetryAfterMillis()) {
+                return response;
+            }
+
+            if (!takeRetry(attempts)) {
+                return response;
+            }
+
+            discard.accept(response);
+            retry(path, delayMillis);
+            attempts++;
+        }
+    }
+
+    private boolean takeRetry(int attempts) {
+        return attempts < retryPolicy.getMaxAttempts() && retryBudget.tryRetry();
+    }
+
+    private void retry(String path, long delayMillis) throws InterruptedIOException {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordRetry(path);
+        }
+
+        sleep(delayMillis);
+    }
+
+    /**
+     * @return a random wait of up to the initial backoff doubled for each attempt so far, capped at the max backoff
+     */
+    long getBackoffMillis(int attempts) {
+        long maxBackoffMillis = retryPolicy.getMaxBackoffMillis();
+        long backoffMillis = retryPolicy.getInitialBackoffMillis();
+        for (int i = 1; i < attempts && backoffMillis < maxBackoffMillis; i++) {
+            backoffMillis *= 2;
+        }
+        backoffMillis = Math.min(backoffMillis, maxBackoffMillis);
+
+        return backoffMillis > 0 ? ThreadLocalRandom.current().nextLong(backoffMillis + 1) : 0;
+    }
+
+    /**
+     * Overridden by the tests, so they don't have to wait
+     * @param millis the wait, which the jitter may have made 0
+     */
+    void sleep(long millis) throws InterruptedIOException {
+        if (0 == millis) {
+            return;
+        }
+
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * @return the wait the Retry-After header asks for, in seconds or as a date, or -1 if there isn't one
+     */
+    static long getRetryAfterMillis(Map<String, String> headers) {
+        if (null == headers) {
+            return -1;
+        }
+
+        String retryAfter = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (RETRY_AFTER.equalsIgnoreCase(header.getKey())) {
+                retryAfter = header.getValue();
+                break;
+            }
+        }
+        if (null == retryAfter || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        retryAfter = retryAfter.trim();
+
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds >= 0 ? seconds * 1000 : -1;
+        }
+        catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(retryAfter);
+            return null == date ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return false for the failures that will just happen again, for an interrupted thread, and for requests the
+     * EndpointGuard or the RateLimiter refused to send
+     */
+    static boolean isRetryable(IOException e) {
+        if (e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException) {
+            return true;
+        }
+
+        return !(e instanceof InterruptedIOException) && !(e instanceof UnknownHostException)
+                && !(e instanceof SSLException) && !(e instanceof ClientProtocolException)
+                && !(e instanceof CircuitOpenException) && !(e instanceof BulkheadFullException)
+                && !(e instanceof RateLimitedException);
+    }
+
+    private static void discard(RestStreamResponse restStreamResponse) {
+        restStreamResponse.abort();
+        try {
+            restStreamResponse.close();
+        }
+        catch (IOException e) {
+            // it's been aborted, there's nothing left to release
+        }
+    }
+}
@@ -19,23 +19,70 @@ package com.faceture.rest;
 
 import com.faceture.http.HttpClientFactory;
 import com.faceture.http.HttpUtil;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimiter;
+import com.faceture.ratelimit.RateLimiterConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
 
 /**
- * Utility class for doing RESTful calls
+ * Utility class for doing RESTful calls. The blocking calls are sent again when they fail in a way that may not
+ * happen again, as far as the RequestRetrier's RetryPolicy allows; the non-blocking ones are sent once. Every
+ * blocking attempt takes a token from the RateLimiter, and every attempt has to get past the EndpointGuard of its Path
+ * first. The blocking GETs to the Paths of the RequestHedger's HedgePolicy are sent through the non-blocking client,
+ * so that a slow one can be hedged and the loser aborted.
  */
-public class RestClient {
+public class RestClient implements Closeable {
 
     private HttpClientFactory httpClientFactory;
     private HttpUtil httpUtil;
     private RestClientUtil restClientUtil;
+    private RequestRetrier requestRetrier;
+    private EndpointGuard endpointGuard;
+    private RequestHedger requestHedger;
+    private RateLimiter rateLimiter;
 
     public RestClient(HttpClientFactory httpClientFactory, HttpUtil httpUtil, RestClientUtil restClientUtil) {
+        this(httpClientFactory, httpUtil, restClientUtil, new RequestRetrier(RetryPolicy.NONE,
+                new NoOpClientMetrics()));
+    }
+
+    public RestClient(HttpClientFactory httpClientFactory, HttpUtil httpUtil, RestClientUtil restClientUtil,
+                      RequestRetrier requestRetrier)
+    {
+        this(httpClientFactory, httpUtil, restClientUtil, requestRetrier, new EndpointGuard(
+                CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED, new NoOpClientMetrics()));
+    }
+
+    public RestClient(HttpClientFactory httpClientFactory, HttpUtil httpUtil, RestClientUtil restClientUtil,
+                      RequestRetrier requestRetrier, EndpointGuard endpointGuard)
+    {
+        this(httpClientFactory, httpUtil, restClientUtil, requestRetrier, endpointGuard,
+                new RequestHedger(HedgePolicy.NONE, new NoOpClientMetrics()));
+    }
+
+    public RestClient(HttpClientFactory httpClientFactory, HttpUtil httpUtil, RestClientUtil restClientUtil,
+                      RequestRetrier requestRetrier, EndpointGuard endpointGuard, RequestHedger requestHedger)
+    {
+        this(httpClientFactory, httpUtil, restClientUtil, requestRetrier, endpointGuard, requestHedger,
+                new RateLimiter(RateLimiterConfig.UNLIMITED, new NoOpClientMetrics()));
+    }
+
+    /**
+     * @param rateLimiter holds each attempt of a blocking request back until its session and its Path are within
+     *                    their rate limits
+     */
+    public RestClient(HttpClientFactory httpClientFactory, HttpUtil httpUtil, RestClientUtil restClientUtil,
+                      RequestRetrier requestRetrier, EndpointGuard endpointGuard, RequestHedger requestHedger,
+                      RateLimiter rateLimiter)
+    {
         if (null == httpClientFactory) {
             throw new IllegalArgumentException("httpClientFactory is null");
         }
@@ -45,15 +92,153 @@ public class RestClient {
         if (null == restClientUtil) {
             throw new IllegalArgumentException("restClientUtil is null");
         }
+        if (null == requestRetrier) {
+            throw new IllegalArgumentException("requestRetrier is null");
+        }
+        if (null == endpointGuard) {
+            throw new IllegalArgumentException("endpointGuard is null");
+        }
+        if (null == requestHedger) {
+            throw new IllegalArgumentException("requestHedger is null");
+        }
+        if (null == rateLimiter) {
+            throw new IllegalArgumentException("rateLimiter is null");
+        }
 
         this.httpClientFactory = httpClientFactory;
         this.httpUtil = httpUtil;
         this.restClientUtil = restClientUtil;
+        this.requestRetrier = requestRetrier;
+        this.endpointGuard = endpointGuard;
+        this.requestHedger = requestHedger;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RequestRetrier getRequestRetrier() {
+        return requestRetrier;
+    }
+
+    public EndpointGuard getEndpointGuard() {
+        return endpointGuard;
+    }
+
+    public RequestHedger getRequestHedger() {
+        return requestHedger;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     public RestResponse doPost(boolean https, String hostName, String path, Map<String, String> queryParams,
                          Map<String, String> httpHeaders, Map<String, String> cookies, Map<String, String> formFields)
             throws URISyntaxException, IOException
+    {
+        return doPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields, null);
+    }
+
+    /**
+     * @param sessionKey the session the request is for, e.g. its auth token, or null if it isn't for one, e.g. a
+     *                   login. Each attempt takes a token for it and for the Path from the RateLimiter.
+     */
+    public RestResponse doPost(boolean https, String hostName, String path, Map<String, String> queryParams,
+                               Map<String, String> httpHeaders, Map<String, String> cookies,
+                               Map<String, String> formFields, String sessionKey)
+            throws URISyntaxException, IOException
+    {
+        if (null == hostName || hostName.isEmpty()) {
+            throw new IllegalArgumentException("hostName is null or empty");
+        }
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        // each attempt gets a new request, only the read-only POSTs are sent more than once
+        RestResponse restResponse = requestRetrier.send(path, requestRetrier.getRetryPolicy().isReadOnlyPost(path),
+                () -> call(path, sessionKey, () -> restClientUtil.doRequest(createHttpPost(formFields), https,
+                        hostName, path, queryParams, httpHeaders, cookies), RestResponse::getStatusCode));
+
+        return restResponse;
+    }
+
+    public RestResponse doGet(boolean https, String hostName, String path, Map<String, String> queryParams,
+                        Map<String, String> httpHeaders, Map<String, String> cookies) throws IOException, URISyntaxException
+    {
+        return doGet(https, hostName, path, queryParams, httpHeaders, cookies, null);
+    }
+
+    /**
+     * @param sessionKey the session the request is for, e.g. its auth token, or null if it isn't for one. Each
+     *                   attempt takes a token for it and for the Path from the RateLimiter.
+     */
+    public RestResponse doGet(boolean https, String hostName, String path, Map<String, String> queryParams,
+                              Map<String, String> httpHeaders, Map<String, String> cookies, String sessionKey)
+            throws IOException, URISyntaxException
+    {
+        if (null == hostName || hostName.isEmpty()) {
+            throw new IllegalArgumentException("hostName is null or empty");
+        }
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        // a hedged request and its hedge count as one attempt, and take up one place in the bulkhead
+        if (requestHedger.isHedged(path)) {
+            return requestRetrier.send(path, true, () -> call(path, sessionKey, () -> requestHedger.send(path,
+                    () -> restClientUtil.doRequestAsync(httpClientFactory.createHttpGet(), https, hostName, path,
+                            queryParams, httpHeaders, cookies)), RestResponse::getStatusCode));
+        }
+
+        RestResponse restResponse = requestRetrier.send(path, true,
+                () -> call(path, sessionKey, () -> restClientUtil.doRequest(httpClientFactory.createHttpGet(),
+                        https, hostName, path, queryParams, httpHeaders, cookies), RestResponse::getStatusCode));
+
+        return restResponse;
+    }
+
+    /**
+     * Like doPost, but the response body is streamed rather than read into a String. The caller must close the
+     * returned response.
+     */
+    public RestStreamResponse doStreamingPost(boolean https, String hostName, String path,
+                                              Map<String, String> queryParams, Map<String, String> httpHeaders,
+                                              Map<String, String> cookies, Map<String, String> formFields)
+            throws URISyntaxException, IOException
+    {
+        return doStreamingPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields, null);
+    }
+
+    /**
+     * @param sessionKey the session the request is for, e.g. its auth token, or null if it isn't for one. Each
+     *                   attempt takes a token for it and for the Path from the RateLimiter.
+     */
+    public RestStreamResponse doStreamingPost(boolean https, String hostName, String path,
+                                              Map<String, String> queryParams, Map<String, String> httpHeaders,
+                                              Map<String, String> cookies, Map<String, String> formFields,
+                                              String sessionKey)
+            throws URISyntaxException, IOException
+    {
+        if (null == hostName || hostName.isEmpty()) {
+            throw new IllegalArgumentException("hostName is null or empty");
+        }
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        // a page that fails part way through is picked up again by its reader, this only retries opening it
+        return requestRetrier.sendStreaming(path, requestRetrier.getRetryPolicy().isReadOnlyPost(path),
+                () -> call(path, sessionKey, () -> restClientUtil.doStreamingRequest(createHttpPost(formFields),
+                        https, hostName, path, queryParams, httpHeaders, cookies), RestStreamResponse::getStatusCode));
+    }
+
+    /**
+     * Non-blocking version of doPost
+     * @return the future response, which fails with the IOException or URISyntaxException doPost would have thrown
+     */
+    public CompletableFuture<RestResponse> doPostAsync(boolean https, String hostName, String path,
+                                                       Map<String, String> queryParams,
+                                                       Map<String, String> httpHeaders, Map<String, String> cookies,
+                                                       Map<String, String> formFields)
     {
         if (null == hostName || hostName.isEmpty()) {
             throw new IllegalArgumentException("hostName is null or empty");
@@ -70,13 +255,17 @@ public class RestClient {
             httpUtil.setFormData(httpPost, formFields);
         }
 
-        RestResponse restResponse = restClientUtil.doRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies);
-
-        return restResponse;
+        return endpointGuard.callAsync(path, () -> restClientUtil.doRequestAsync(httpPost, https, hostName, path,
+                queryParams, httpHeaders, cookies), RestResponse::getStatusCode);
     }
 
-    public RestResponse doGet(boolean https, String hostName, String path, Map<String, String> queryParams,
-                        Map<String, String> httpHeaders, Map<String, String> cookies) throws IOException, URISyntaxException
+    /**
+     * Non-blocking version of doGet
+     * @return the future response, which fails with the IOException or URISyntaxException doGet would have thrown
+     */
+    public CompletableFuture<RestResponse> doGetAsync(boolean https, String hostName, String path,
+                                                      Map<String, String> queryParams,
+                                                      Map<String, String> httpHeaders, Map<String, String> cookies)
     {
         if (null == hostName || hostName.isEmpty()) {
             throw new IllegalArgumentException("hostName is null or empty");
@@ -87,10 +276,38 @@ public class RestClient {
 
         HttpGet httpGet = httpClientFactory.createHttpGet();
 
-        RestResponse restResponse = restClientUtil.doRequest(httpGet, https, hostName, path, queryParams, httpHeaders, cookies);
+        return endpointGuard.callAsync(path, () -> restClientUtil.doRequestAsync(httpGet, https, hostName, path,
+                queryParams, httpHeaders, cookies), RestResponse::getStatusCode);
+    }
+
+    /**
+     * One attempt of a blocking request: a token from the RateLimiter, then the EndpointGuard
+     */
+    private <T> T call(String path, String sessionKey, RequestRetrier.Attempt<T> attempt,
+                       ToIntFunction<T> statusCode) throws IOException, URISyntaxException
+    {
+        rateLimiter.acquire(sessionKey, path);
 
-        return restResponse;
+        return endpointGuard.call(path, attempt, statusCode);
     }
 
+    private HttpPost createHttpPost(Map<String, String> formFields) {
+        // create our POST request
+        HttpPost httpPost = httpClientFactory.createHttpPost();
+
+        // set the form data -- optional
+        if (formFields != null && !formFields.isEmpty()) {
+            httpUtil.setFormData(httpPost, formFields);
+        }
+
+        return httpPost;
+    }
+
+    /**
+     * Releases the pooled HTTP connections. The RestClient can't be used after this has been called.
+     */
+    public void close() {
+        httpClientFactory.shutdown();
+    }
 
 }
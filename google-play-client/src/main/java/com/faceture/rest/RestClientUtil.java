@@ -17,32 +17,55 @@
 
 package com.faceture.rest;
 
+import com.faceture.http.CountingInputStream;
 import com.faceture.http.HttpClientFactory;
 import com.faceture.http.HttpUtil;
+import com.faceture.jfr.JfrSupport;
+import com.faceture.jfr.PlayRequestEvent;
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.cookie.Cookie;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
 
 /**
  * Helper for the RestClient
  */
 public class RestClientUtil {
 
+    // for bodies that are read in full before the exchange is recorded, so the count is taken straight away
+    private static final LongConsumer IGNORE_BYTE_COUNT = byteCount -> { };
+
     // dependencies
     private HttpClientFactory httpClientFactory;
     private HttpUtil httpUtil;
     private RestResponseFactory restResponseFactory;
+    private ClientMetrics clientMetrics;
 
     public RestClientUtil(HttpClientFactory httpClientFactory, HttpUtil httpUtil,
                           RestResponseFactory restResponseFactory)
+    {
+        this(httpClientFactory, httpUtil, restResponseFactory, new NoOpClientMetrics());
+    }
+
+    /**
+     * @param clientMetrics told about every request, unless it's disabled
+     */
+    public RestClientUtil(HttpClientFactory httpClientFactory, HttpUtil httpUtil,
+                          RestResponseFactory restResponseFactory, ClientMetrics clientMetrics)
     {
         if (null == httpClientFactory) {
             throw new IllegalArgumentException("httpClientFactory is null");
@@ -53,10 +76,18 @@ public class RestClientUtil {
         if (null == restResponseFactory) {
             throw new IllegalArgumentException("restResponseFactory is null");
         }
+        if (null == clientMetrics) {
+            throw new IllegalArgumentException("clientMetrics is null");
+        }
 
         this.httpClientFactory = httpClientFactory;
         this.httpUtil = httpUtil;
         this.restResponseFactory = restResponseFactory;
+        this.clientMetrics = clientMetrics;
+
+        if (clientMetrics.isEnabled()) {
+            httpClientFactory.setPoolWaitTiming(true);
+        }
     }
 
     public RestResponse doRequest(HttpRequestBase httpRequest, boolean https, String hostName, String path,
@@ -73,6 +104,270 @@ public class RestClientUtil {
             throw new IllegalArgumentException("path is null or empty");
         }
 
+        // set the headers, the URI and the cookies
+        prepareRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+        // get the HTTP Client, and a cookie store for just this request
+        CloseableHttpClient httpClient = httpClientFactory.getHttpClient();
+        CookieStore cookieStore = httpClientFactory.createCookieStore();
+        HttpClientContext httpClientContext = httpClientFactory.createHttpClientContext(cookieStore);
+
+        // only time the request when something is listening
+        PlayRequestEvent playRequestEvent = startPlayRequestEvent(httpRequest, path, false);
+        if (clientMetrics.isEnabled() || playRequestEvent != null) {
+            return doTimedRequest(httpClient, httpRequest, httpClientContext, cookieStore, path, playRequestEvent);
+        }
+
+        HttpResponse httpResponse = httpUtil.execute(httpClient, httpRequest, httpClientContext);
+        String responseBody = httpUtil.getResponseString(httpResponse);
+
+        // get the cookies returned in the response
+        return createResponse(httpResponse, responseBody, httpUtil.getCookies(cookieStore));
+    }
+
+    private RestResponse doTimedRequest(CloseableHttpClient httpClient, HttpRequestBase httpRequest,
+                                        HttpClientContext httpClientContext, CookieStore cookieStore, String path,
+                                        PlayRequestEvent playRequestEvent) throws IOException
+    {
+        // drop the wait of an earlier request on this thread that failed before it was taken
+        httpClientFactory.takePoolWaitNanos();
+
+        long start = System.nanoTime();
+        HttpResponse httpResponse;
+        CountingInputStream countedBody;
+        String responseBody;
+        long poolWaitNanos;
+        long responseNanos;
+        long bodyReadNanos;
+        try {
+            httpResponse = httpUtil.execute(httpClient, httpRequest, httpClientContext);
+            poolWaitNanos = httpClientFactory.takePoolWaitNanos();
+            responseNanos = System.nanoTime() - start;
+
+            countedBody = httpUtil.countResponseBytes(httpResponse, IGNORE_BYTE_COUNT);
+            responseBody = httpUtil.getResponseString(httpResponse);
+            bodyReadNanos = System.nanoTime() - start - responseNanos;
+        }
+        catch (IOException e) {
+            recordFailure(path, start, playRequestEvent, e);
+            throw e;
+        }
+        catch (RuntimeException e) {
+            recordFailure(path, start, playRequestEvent, e);
+            throw e;
+        }
+
+        RestResponse restResponse = createResponse(httpResponse, responseBody, httpUtil.getCookies(cookieStore));
+
+        recordExchange(path, httpResponse.getStatusLine().getStatusCode(), poolWaitNanos, responseNanos,
+                bodyReadNanos, getRequestBytes(httpRequest), getResponseBytes(countedBody), playRequestEvent);
+
+        return restResponse;
+    }
+
+    /**
+     * Like doRequest, but the body is left on the connection for the caller to stream. The caller must close the
+     * returned response.
+     */
+    public RestStreamResponse doStreamingRequest(HttpRequestBase httpRequest, boolean https, String hostName,
+                                                 String path, Map<String, String> queryParams,
+                                                 Map<String, String> httpHeaders, Map<String, String> cookies)
+            throws URISyntaxException, IOException
+    {
+        if (null == httpRequest) {
+            throw new IllegalArgumentException("httpRequest is null");
+        }
+        if (null == hostName || hostName.isEmpty()) {
+            throw new IllegalArgumentException("hostName is null or empty");
+        }
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        // set the headers, the URI and the cookies
+        prepareRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+        // get the HTTP Client, and a cookie store for just this request
+        CloseableHttpClient httpClient = httpClientFactory.getHttpClient();
+        CookieStore cookieStore = httpClientFactory.createCookieStore();
+        HttpClientContext httpClientContext = httpClientFactory.createHttpClientContext(cookieStore);
+
+        PlayRequestEvent playRequestEvent = startPlayRequestEvent(httpRequest, path, true);
+        boolean timed = clientMetrics.isEnabled() || playRequestEvent != null;
+
+        long start = 0;
+        if (timed) {
+            httpClientFactory.takePoolWaitNanos();
+            start = System.nanoTime();
+        }
+
+        HttpResponse httpResponse;
+        try {
+            httpResponse = httpUtil.execute(httpClient, httpRequest, httpClientContext);
+        }
+        catch (IOException e) {
+            if (timed) {
+                recordFailure(path, start, playRequestEvent, e);
+            }
+            throw e;
+        }
+        catch (RuntimeException e) {
+            if (timed) {
+                recordFailure(path, start, playRequestEvent, e);
+            }
+            throw e;
+        }
+
+        try {
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+
+            // the body is read by the caller, so only the time until the headers arrived is known, and the bytes
+            // read are recorded once the caller closes it
+            if (timed) {
+                long poolWaitNanos = httpClientFactory.takePoolWaitNanos();
+                long responseNanos = System.nanoTime() - start;
+                long requestBytes = getRequestBytes(httpRequest);
+                httpUtil.countResponseBytes(httpResponse, responseBytes -> recordExchange(path, statusCode,
+                        poolWaitNanos, responseNanos, 0, requestBytes, responseBytes, playRequestEvent));
+            }
+
+            return restResponseFactory.createStream(statusCode, httpUtil.getCookies(cookieStore),
+                    httpUtil.getHeaders(httpResponse), httpUtil.getResponseStream(httpResponse),
+                    httpUtil.getResponseCharset(httpResponse), httpRequest);
+        }
+        catch (IOException e) {
+            // nobody is going to close the response, so don't leave the connection hanging
+            httpRequest.abort();
+            if (timed) {
+                recordFailure(path, start, playRequestEvent, e);
+            }
+            throw e;
+        }
+        catch (RuntimeException e) {
+            httpRequest.abort();
+            if (timed) {
+                recordFailure(path, start, playRequestEvent, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking version of doRequest. The request is sent by the shared NIO HttpAsyncClient and the returned
+     * future is completed on one of its reactor threads once the whole response has arrived. Cancelling the future
+     * aborts the HTTP exchange.
+     */
+    public CompletableFuture<RestResponse> doRequestAsync(final HttpRequestBase httpRequest, boolean https,
+                                                          String hostName, final String path,
+                                                          Map<String, String> queryParams,
+                                                          Map<String, String> httpHeaders,
+                                                          Map<String, String> cookies)
+    {
+        if (null == httpRequest) {
+            throw new IllegalArgumentException("httpRequest is null");
+        }
+        if (null == hostName || hostName.isEmpty()) {
+            throw new IllegalArgumentException("hostName is null or empty");
+        }
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path is null or empty");
+        }
+
+        final CompletableFuture<RestResponse> restResponseFuture = new CompletableFuture<RestResponse>();
+
+        try {
+            // set the headers, the URI and the cookies
+            prepareRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            // the async client can only stream entities that are in memory
+            if (httpRequest instanceof HttpEntityEnclosingRequestBase) {
+                httpUtil.bufferEntity((HttpEntityEnclosingRequestBase) httpRequest);
+            }
+        }
+        catch (URISyntaxException e) {
+            restResponseFuture.completeExceptionally(e);
+            return restResponseFuture;
+        }
+        catch (IOException e) {
+            restResponseFuture.completeExceptionally(e);
+            return restResponseFuture;
+        }
+
+        // each request gets its own cookie store, like the blocking requests
+        final CookieStore cookieStore = httpClientFactory.createCookieStore();
+        final HttpClientContext httpClientContext = httpClientFactory.createHttpClientContext(cookieStore);
+
+        // the whole response has arrived by the time completed() is called, so there's no separate body read
+        final long start = clientMetrics.isEnabled() ? System.nanoTime() : 0;
+
+        CloseableHttpAsyncClient httpAsyncClient = httpClientFactory.getHttpAsyncClient();
+        if (clientMetrics.isEnabled()) {
+            httpClientFactory.setAsyncPoolWaitContext(httpClientContext);
+        }
+
+        final Future<HttpResponse> httpResponseFuture;
+        try {
+            httpResponseFuture = httpUtil.executeAsync(httpAsyncClient, httpRequest, httpClientContext,
+                    new FutureCallback<HttpResponse>() {
+
+                public void completed(HttpResponse httpResponse) {
+                    try {
+                        CountingInputStream countedBody = clientMetrics.isEnabled()
+                                ? httpUtil.countResponseBytes(httpResponse, IGNORE_BYTE_COUNT) : null;
+                        String responseBody = httpUtil.getResponseString(httpResponse);
+                        RestResponse restResponse = createResponse(httpResponse, responseBody,
+                                httpUtil.getCookies(cookieStore));
+
+                        if (clientMetrics.isEnabled()) {
+                            long poolWaitNanos = httpClientFactory.getAsyncPoolWaitNanos(httpClientContext);
+                            clientMetrics.recordExchange(path, httpResponse.getStatusLine().getStatusCode(),
+                                    poolWaitNanos, System.nanoTime() - start, 0, getRequestBytes(httpRequest),
+                                    getResponseBytes(countedBody));
+                        }
+
+                        restResponseFuture.complete(restResponse);
+                    }
+                    catch (IOException e) {
+                        restResponseFuture.completeExceptionally(e);
+                    }
+                    catch (RuntimeException e) {
+                        restResponseFuture.completeExceptionally(e);
+                    }
+                }
+
+                public void failed(Exception e) {
+                    if (clientMetrics.isEnabled()) {
+                        clientMetrics.recordExchangeFailure(path, System.nanoTime() - start);
+                    }
+
+                    restResponseFuture.completeExceptionally(e);
+                }
+
+                public void cancelled() {
+                    restResponseFuture.cancel(false);
+                }
+            });
+        }
+        finally {
+            if (clientMetrics.isEnabled()) {
+                httpClientFactory.setAsyncPoolWaitContext(null);
+            }
+        }
+
+        // let the caller abort the exchange
+        restResponseFuture.whenComplete((restResponse, throwable) -> {
+            if (restResponseFuture.isCancelled()) {
+                httpResponseFuture.cancel(true);
+            }
+        });
+
+        return restResponseFuture;
+    }
+
+    private void prepareRequest(HttpRequestBase httpRequest, boolean https, String hostName, String path,
+                                Map<String, String> queryParams, Map<String, String> httpHeaders,
+                                Map<String, String> cookies) throws URISyntaxException, IOException
+    {
         // set the headers -- optional
         if (httpHeaders != null && !httpHeaders.isEmpty()) {
             httpUtil.setHeaders(httpRequest, httpHeaders);
@@ -88,29 +383,96 @@ public class RestClientUtil {
         // set the URI
         httpUtil.setUri(httpRequest, https, hostName, path, queryString);
 
-        // get the HTTP Client
-        DefaultHttpClient httpClient = httpClientFactory.createHttpClient();
-
         // set the cookies -- optional
         if (cookies != null && !cookies.isEmpty()) {
             httpUtil.setCookies(httpRequest, cookies);
         }
+    }
 
-        HttpResponse httpResponse = httpUtil.execute(httpClient, httpRequest);
-
-        String responseBody = httpUtil.getResponseString(httpResponse);
-
+    private RestResponse createResponse(HttpResponse httpResponse, String responseBody, Map<String, String> cookies) {
         int statusCode = httpResponse.getStatusLine().getStatusCode();
 
-        // get the cookies returned in the response
-        cookies = httpUtil.getCookies(httpClient);
-
         // get the headers returned in the response
-        httpHeaders = httpUtil.getHeaders(httpResponse);
+        Map<String, String> httpHeaders = httpUtil.getHeaders(httpResponse);
 
         // return the response
         return restResponseFactory.create(statusCode, cookies, httpHeaders, responseBody);
     }
 
+    /**
+     * @return a started request event if Flight Recorder is recording them, otherwise null
+     */
+    private PlayRequestEvent startPlayRequestEvent(HttpRequestBase httpRequest, String path, boolean streamed) {
+        if (!JfrSupport.isAvailable()) {
+            return null;
+        }
+
+        PlayRequestEvent playRequestEvent = new PlayRequestEvent();
+        if (!playRequestEvent.isEnabled()) {
+            return null;
+        }
+
+        // the pool waits are only timed once something wants them
+        if (!httpClientFactory.isPoolWaitTiming()) {
+            httpClientFactory.setPoolWaitTiming(true);
+        }
+
+        playRequestEvent.setPath(path);
+        playRequestEvent.setMethod(httpRequest.getMethod());
+        playRequestEvent.setStreamed(streamed);
+        playRequestEvent.begin();
+
+        return playRequestEvent;
+    }
+
+    private void recordExchange(String path, int statusCode, long poolWaitNanos, long responseNanos,
+                                long bodyReadNanos, long requestBytes, long responseBytes,
+                                PlayRequestEvent playRequestEvent)
+    {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordExchange(path, statusCode, poolWaitNanos, responseNanos, bodyReadNanos, requestBytes,
+                    responseBytes);
+        }
+
+        if (playRequestEvent != null) {
+            playRequestEvent.end();
+            if (playRequestEvent.shouldCommit()) {
+                playRequestEvent.setStatusCode(statusCode);
+                playRequestEvent.setPoolWait(poolWaitNanos);
+                playRequestEvent.setResponse(responseNanos);
+                playRequestEvent.setBodyRead(bodyReadNanos);
+                playRequestEvent.setRequestBytes(requestBytes);
+                playRequestEvent.setResponseBytes(responseBytes);
+                playRequestEvent.commit();
+            }
+        }
+    }
+
+    private void recordFailure(String path, long start, PlayRequestEvent playRequestEvent, Exception e) {
+        if (clientMetrics.isEnabled()) {
+            clientMetrics.recordExchangeFailure(path, System.nanoTime() - start);
+        }
 
+        if (playRequestEvent != null) {
+            playRequestEvent.end();
+            if (playRequestEvent.shouldCommit()) {
+                playRequestEvent.setPoolWait(httpClientFactory.takePoolWaitNanos());
+                playRequestEvent.setFailure(e.getClass().getName());
+                playRequestEvent.commit();
+            }
+        }
+    }
+
+    private static long getRequestBytes(HttpRequestBase httpRequest) {
+        if (!(httpRequest instanceof HttpEntityEnclosingRequestBase)) {
+            return 0;
+        }
+
+        HttpEntity entity = ((HttpEntityEnclosingRequestBase) httpRequest).getEntity();
+        return null == entity ? 0 : Math.max(entity.getContentLength(), 0);
+    }
+
+    private static long getResponseBytes(CountingInputStream countedBody) {
+        return null == countedBody ? 0 : countedBody.getByteCount();
+    }
 }
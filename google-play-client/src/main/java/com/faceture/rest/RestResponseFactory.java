@@ -17,6 +17,10 @@
 
 package com.faceture.rest;
 
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
@@ -27,4 +31,11 @@ public class RestResponseFactory {
     public RestResponse create(int responseCode, Map<String, String> cookies, Map<String, String> headers, String body) {
         return new RestResponse(responseCode, cookies, headers, body);
     }
+
+    public RestStreamResponse createStream(int responseCode, Map<String, String> cookies, Map<String, String> headers,
+                                           InputStream body, Charset charset, HttpRequestBase httpRequest)
+    {
+        // param checking logic is in the RestStreamResponse constructor
+        return new RestStreamResponse(responseCode, cookies, headers, body, charset, httpRequest);
+    }
 }
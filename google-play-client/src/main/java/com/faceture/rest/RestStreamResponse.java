@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.http.CountingInputStream;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Response from a REST call whose body hasn't been read yet. The body is streamed straight off the connection, so the
+ * response must be closed to give the connection back to the pool.
+ */
+public class RestStreamResponse implements Closeable {
+
+    private int statusCode;
+    private Map<String, String> cookies;
+    private Map<String, String> headers;
+    private InputStream body;
+    private Charset charset;
+    private HttpRequestBase httpRequest;
+
+    private volatile boolean aborted;
+
+    public RestStreamResponse(int statusCode, Map<String, String> cookies, Map<String, String> headers,
+                              InputStream body, Charset charset, HttpRequestBase httpRequest)
+    {
+        if (null == body) {
+            throw new IllegalArgumentException("body is null");
+        }
+        if (null == charset) {
+            throw new IllegalArgumentException("charset is null");
+        }
+        if (null == httpRequest) {
+            throw new IllegalArgumentException("httpRequest is null");
+        }
+
+        this.statusCode = statusCode;
+        this.cookies = cookies;
+        this.headers = headers;
+        this.body = body;
+        this.charset = charset;
+        this.httpRequest = httpRequest;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, String> getCookies() {
+        return cookies;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return a reader over the body, decoded with the response's charset
+     */
+    public Reader getBodyReader() {
+        return new InputStreamReader(body, charset);
+    }
+
+    /**
+     * Reads the rest of the body into a String. Only meant for small bodies, like error messages.
+     */
+    public String readBody() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+
+        return new String(outputStream.toByteArray(), charset);
+    }
+
+    /**
+     * Closes the body. Whatever hasn't been read yet is drained so the connection can be reused. Once the response
+     * has been aborted the body is left alone, though the bytes read from a counted body are still handed over.
+     */
+    public void close() throws IOException {
+        if (!aborted) {
+            body.close();
+        }
+        else if (body instanceof CountingInputStream) {
+            ((CountingInputStream) body).finish();
+        }
+    }
+
+    /**
+     * Aborts the request, dropping the connection instead of draining it. Use this to stop reading a large body early.
+     */
+    public void abort() {
+        aborted = true;
+        httpRequest.abort();
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+}
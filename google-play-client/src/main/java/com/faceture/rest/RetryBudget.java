@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the retries at a fraction of the requests, so that when a server is failing the retries don't multiply the
+ * load on it. Every request deposits a fraction of a retry and every retry withdraws a whole one, with the balance
+ * capped at the reserve. It's shared by every thread using the RestClient, so it's lock-free.
+ */
+public class RetryBudget {
+
+    // the balance is kept in thousandths of a retry
+    private static final long RETRY = 1000;
+
+    private final long deposit;
+    private final long cap;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio the fraction of a retry each request deposits
+     * @param reserve the most retries that can be saved up, all of which are available at the start
+     */
+    public RetryBudget(double ratio, int reserve) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1");
+        }
+        if (reserve < 0) {
+            throw new IllegalArgumentException("reserve is negative");
+        }
+
+        this.deposit = Math.round(ratio * RETRY);
+        this.cap = reserve * RETRY;
+        this.balance = new AtomicLong(cap);
+    }
+
+    /**
+     * Called once for each request, not for its retries
+     */
+    public void recordRequest() {
+        if (0 == deposit) {
+            return;
+        }
+
+        while (true) {
+            long current = balance.get();
+            if (current >= cap) {
+                return;
+            }
+            if (balance.compareAndSet(current, Math.min(cap, current + deposit))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true, having taken a retry out of the budget, or false if there isn't one left
+     */
+    public boolean tryRetry() {
+        while (true) {
+            long current = balance.get();
+            if (current < RETRY) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - RETRY)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of whole retries left
+     */
+    public int getAvailableRetries() {
+        return (int) (balance.get() / RETRY);
+    }
+}
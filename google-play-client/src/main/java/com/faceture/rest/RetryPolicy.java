@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import org.apache.http.HttpStatus;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Settings for sending a request again after it failed in a way that may not happen again, e.g. a reset connection or
+ * a 503. Only GETs and the POSTs known to be read-only are retried, with exponential backoff and jitter between the
+ * attempts. A retry budget shared by all of the requests stops the retries from piling onto a struggling server.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+    public static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = 30000;
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    public static final int DEFAULT_BUDGET_RESERVE = 10;
+
+    /**
+     * Never retries
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, 0, 0, Collections.<String>emptySet());
+
+    private int maxAttempts;
+    private long initialBackoffMillis;
+    private long maxBackoffMillis;
+    private long maxRetryAfterMillis;
+    private double budgetRatio;
+    private int budgetReserve;
+    private Set<String> readOnlyPostPaths;
+
+    /**
+     * @param readOnlyPostPaths the paths of the POSTs that don't change anything, so they can be sent again
+     */
+    public RetryPolicy(Set<String> readOnlyPostPaths) {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_MAX_RETRY_AFTER_MILLIS, DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_RESERVE, readOnlyPostPaths);
+    }
+
+    /**
+     * @param maxAttempts the most times a request is sent, 1 to never retry
+     * @param initialBackoffMillis the most to wait before the first retry. Each retry after that may wait up to twice
+     *                             as long as the one before; the actual wait is random, so that clients that failed
+     *                             together don't retry together.
+     * @param maxBackoffMillis the most to wait before any retry
+     * @param maxRetryAfterMillis the longest Retry-After the server may ask for. A response asking for a longer wait
+     *                            is returned rather than retried.
+     * @param budgetRatio the retries may add at most this fraction of the requests sent, e.g. 0.1 for 10%
+     * @param budgetReserve the most retries that can be saved up, all of which are available at the start
+     * @param readOnlyPostPaths the paths of the POSTs that don't change anything, so they can be sent again
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, long maxRetryAfterMillis,
+                       double budgetRatio, int budgetReserve, Set<String> readOnlyPostPaths)
+    {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("initialBackoffMillis is negative");
+        }
+        if (maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("maxBackoffMillis must not be less than initialBackoffMillis");
+        }
+        if (maxRetryAfterMillis < 0) {
+            throw new IllegalArgumentException("maxRetryAfterMillis is negative");
+        }
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("budgetRatio must be between 0 and 1");
+        }
+        if (budgetReserve < 0) {
+            throw new IllegalArgumentException("budgetReserve is negative");
+        }
+        if (null == readOnlyPostPaths) {
+            throw new IllegalArgumentException("readOnlyPostPaths is null");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.budgetRatio = budgetRatio;
+        this.budgetReserve = budgetReserve;
+        this.readOnlyPostPaths = Collections.unmodifiableSet(new HashSet<String>(readOnlyPostPaths));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public long getMaxRetryAfterMillis() {
+        return maxRetryAfterMillis;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public int getBudgetReserve() {
+        return budgetReserve;
+    }
+
+    public Set<String> getReadOnlyPostPaths() {
+        return readOnlyPostPaths;
+    }
+
+    public boolean isReadOnlyPost(String path) {
+        return readOnlyPostPaths.contains(path);
+    }
+
+    /**
+     * @return true for the statuses of a server that's overloaded or briefly unavailable
+     */
+    public boolean isRetryableStatus(int statusCode) {
+        switch (statusCode) {
+            case 429:
+            case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+            case HttpStatus.SC_BAD_GATEWAY:
+            case HttpStatus.SC_SERVICE_UNAVAILABLE:
+            case HttpStatus.SC_GATEWAY_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.cache;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the ExpiringCache
+ */
+public class ExpiringCacheTest extends TestCase {
+
+    // class under test
+    ExpiringCache<String, String> expiringCache;
+
+    // dependencies
+    MutableClock clock;
+    final long timeToLiveMillis = 1000;
+
+    // counts the loads
+    final AtomicInteger loads = new AtomicInteger();
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        clock = new MutableClock(0);
+
+        expiringCache = new ExpiringCache<String, String>(2, (value, nowMillis) -> timeToLiveMillis, clock);
+    }
+
+    public void testConsFailsDueToZeroMaxSize() {
+        try {
+            new ExpiringCache<String, String>(0, (value, nowMillis) -> timeToLiveMillis, clock);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullCacheExpiry() {
+        try {
+            new ExpiringCache<String, String>(2, null, clock);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullClock() {
+        try {
+            new ExpiringCache<String, String>(2, (value, nowMillis) -> timeToLiveMillis, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetFailsDueToNullKey() throws IOException, URISyntaxException {
+        try {
+            expiringCache.get(null, this::load);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetCachesUntilExpired() throws IOException, URISyntaxException {
+        assertEquals("value1", expiringCache.get("key", this::load));
+        assertEquals("value1", expiringCache.get("key", this::load));
+
+        clock.setMillis(timeToLiveMillis - 1);
+        assertEquals("value1", expiringCache.get("key", this::load));
+
+        clock.setMillis(timeToLiveMillis);
+        assertEquals("value2", expiringCache.get("key", this::load));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws IOException, URISyntaxException {
+        expiringCache.get("a", this::load);
+        expiringCache.get("b", this::load);
+
+        // using a makes b the least recently used
+        expiringCache.get("a", this::load);
+        expiringCache.get("c", this::load);
+
+        assertEquals(2, expiringCache.size());
+        assertEquals(3, loads.get());
+
+        expiringCache.get("a", this::load);
+        assertEquals(3, loads.get());
+        expiringCache.get("b", this::load);
+        assertEquals(4, loads.get());
+    }
+
+    public void testZeroTimeToLiveIsNotCached() throws IOException, URISyntaxException {
+        expiringCache = new ExpiringCache<String, String>(2, (value, nowMillis) -> 0, clock);
+
+        assertEquals("value1", expiringCache.get("key", this::load));
+        assertEquals("value2", expiringCache.get("key", this::load));
+        assertEquals(0, expiringCache.size());
+    }
+
+    public void testFailureIsNotCached() throws IOException, URISyntaxException {
+        try {
+            expiringCache.get("key", () -> {
+                throw new IOException();
+            });
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        assertEquals("value1", expiringCache.get("key", this::load));
+    }
+
+    public void testInvalidateAndClear() throws IOException, URISyntaxException {
+        expiringCache.get("a", this::load);
+        expiringCache.get("b", this::load);
+
+        expiringCache.invalidate("a");
+        assertEquals(1, expiringCache.size());
+        assertEquals("value3", expiringCache.get("a", this::load));
+
+        expiringCache.clear();
+        assertEquals(0, expiringCache.size());
+    }
+
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheLoader<String> slowLoader = () -> {
+            loading.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return load();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> expiringCache.get("key", slowLoader));
+            assertTrue(loading.await(2, TimeUnit.SECONDS));
+
+            Future<String> second = executor.submit(() -> expiringCache.get("key", slowLoader));
+            Future<String> third = executor.submit(() -> expiringCache.get("key", slowLoader));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals("value1", first.get(2, TimeUnit.SECONDS));
+            assertEquals("value1", second.get(2, TimeUnit.SECONDS));
+            assertEquals("value1", third.get(2, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testErrorIsHandedToWaitingThreads() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheLoader<String> failingLoader = () -> {
+            loading.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new OutOfMemoryError();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> expiringCache.get("key", failingLoader));
+            assertTrue(loading.await(2, TimeUnit.SECONDS));
+
+            Future<String> second = executor.submit(() -> expiringCache.get("key", failingLoader));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> future : Arrays.asList(first, second)) {
+                try {
+                    future.get(2, TimeUnit.SECONDS);
+
+                    fail("should have thrown ExecutionException");
+                }
+                catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof OutOfMemoryError);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, expiringCache.size());
+        assertEquals("value1", expiringCache.get("key", this::load));
+    }
+
+    private String load() {
+        return "value" + loads.incrementAndGet();
+    }
+}
@@ -18,9 +18,17 @@
 package com.faceture.google.gson;
 
 import com.faceture.google.play.domain.SearchRequest;
+import com.faceture.jfr.EventRecorder;
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import jdk.jfr.consumer.RecordedEvent;
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
 /**
  * Tests the GsonWrapper
  */
@@ -56,6 +64,15 @@ public class GsonWrapperTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
+    public void testConsFailsDueToNullSongCounter() {
+        try {
+            gsonWrapper = new GsonWrapper(gson, null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
     public void testToJsonFailsDueToNullObj() {
         try {
             gsonWrapper.toJson(null);
@@ -73,7 +90,7 @@ public class GsonWrapperTest extends TestCase {
 
     public void testFromJsonFailsDueToNullJson() {
         try {
-            gsonWrapper.fromJson(null, SearchRequest.class);
+            gsonWrapper.fromJson((String) null, SearchRequest.class);
 
             fail("should have thrown exception");
         }
@@ -102,4 +119,72 @@ public class GsonWrapperTest extends TestCase {
 
         assertEquals(searchRequest, gsonWrapper.fromJson(jsonSearchRequest, SearchRequest.class));
     }
+
+    public void testFromJsonEmitsParseEvent() throws Exception {
+        gsonWrapper = new GsonWrapper(gson, obj -> 3);
+
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.JsonParse",
+                () -> assertEquals(searchRequest, gsonWrapper.fromJson(jsonSearchRequest, SearchRequest.class)));
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("SearchRequest", event.getString("type"));
+        assertEquals(jsonSearchRequest.length(), event.getLong("characters"));
+        assertEquals(3, event.getInt("songCount"));
+        assertFalse(event.getBoolean("streamed"));
+        assertNull(event.getString("failure"));
+    }
+
+    public void testFromJsonEmitsFailedParseEvent() throws Exception {
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.JsonParse", () -> {
+            try {
+                gsonWrapper.fromJson("{\"q\":", SearchRequest.class);
+
+                fail("should have thrown exception");
+            }
+            catch (JsonSyntaxException e) {}
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(JsonSyntaxException.class.getName(), events.get(0).getString("failure"));
+        assertEquals(0, events.get(0).getInt("songCount"));
+    }
+
+    public void testCreateJsonReaderFailsDueToNullReader() {
+        try {
+            gsonWrapper.createJsonReader(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testFromJsonReaderFailsDueToNullJsonReader() {
+        try {
+            gsonWrapper.fromJson((JsonReader) null, SearchRequest.class);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testFromJsonReaderFailsDueToNullClass() {
+        try {
+            gsonWrapper.fromJson(gsonWrapper.createJsonReader(new StringReader(jsonSearchRequest)), null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testFromJsonReaderReadsOneValueAtATime() throws IOException {
+        JsonReader jsonReader = gsonWrapper.createJsonReader(
+                new StringReader("[" + jsonSearchRequest + "," + jsonSearchRequest + "]"));
+
+        jsonReader.beginArray();
+        assertEquals(searchRequest, gsonWrapper.fromJson(jsonReader, SearchRequest.class));
+        assertEquals(searchRequest, gsonWrapper.fromJson(jsonReader, SearchRequest.class));
+        assertFalse(jsonReader.hasNext());
+        jsonReader.endArray();
+    }
 }
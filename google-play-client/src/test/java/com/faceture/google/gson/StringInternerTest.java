@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.gson;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the StringInterner
+ */
+public class StringInternerTest extends TestCase {
+
+    public void testConsFailsDueToBadCapacity() {
+        try {
+            new StringInterner(0);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCapacityRoundedUp() {
+        assertEquals(1024, new StringInterner(1000).getCapacity());
+        assertEquals(1024, new StringInterner(1024).getCapacity());
+        assertEquals(StringInterner.DEFAULT_CAPACITY, new StringInterner().getCapacity());
+    }
+
+    public void testIntern() {
+        StringInterner stringInterner = new StringInterner();
+
+        String first = new String("artist");
+        String second = new String("artist");
+
+        assertSame(first, stringInterner.intern(first));
+        assertSame(first, stringInterner.intern(second));
+        assertNull(stringInterner.intern(null));
+    }
+
+    public void testBounded() {
+        StringInterner stringInterner = new StringInterner(1);
+
+        String a = new String("a");
+        String b = new String("b");
+        stringInterner.intern(a);
+        stringInterner.intern(b);
+
+        // b replaced a, so a new copy of a is kept instead
+        String a2 = new String("a");
+        assertSame(a2, stringInterner.intern(a2));
+        assertSame(a2, stringInterner.intern(new String("a")));
+    }
+
+    public void testClear() {
+        StringInterner stringInterner = new StringInterner();
+        stringInterner.intern(new String("a"));
+        stringInterner.clear();
+
+        String a = new String("a");
+        assertSame(a, stringInterner.intern(a));
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.*;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimit;
+import com.faceture.ratelimit.RateLimitedException;
+import com.faceture.ratelimit.RateLimiter;
+import com.faceture.ratelimit.RateLimiterConfig;
+import com.faceture.rest.RestClient;
+import com.faceture.rest.RestResponse;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the AsyncPlayClient
+ */
+public class AsyncPlayClientTest extends TestCase {
+
+    // the class under test
+    AsyncPlayClient asyncPlayClient;
+
+    // dependencies
+    RestClient restClient;
+    PlaySessionFactory playSessionFactory;
+    GoogleUtil googleUtil;
+    GsonWrapper gsonWrapper;
+    PlayDomainFactory playDomainFactory;
+    LoginResponseFactory loginResponseFactory;
+    Executor executor;
+
+    // params
+    final String emailAddress = "emailAddress";
+    final String password = "password";
+    final String query = "query";
+    final String songId = "songId";
+    final String authToken = "authToken";
+    PlaySession playSession;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        // mock dependencies
+        restClient = mock(RestClient.class);
+        playSessionFactory = mock(PlaySessionFactory.class);
+        googleUtil = mock(GoogleUtil.class);
+        gsonWrapper = mock(GsonWrapper.class);
+        playDomainFactory = mock(PlayDomainFactory.class);
+        loginResponseFactory = mock(LoginResponseFactory.class);
+        playSession = mock(PlaySession.class);
+        when(playSession.getAuthToken()).thenReturn(authToken);
+
+        // map the responses on the calling thread
+        executor = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        asyncPlayClient = new AsyncPlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper,
+                playDomainFactory, loginResponseFactory, executor);
+    }
+
+    public void testConsFailsDueToNullRestClient() {
+        try {
+            new AsyncPlayClient(null, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                    loginResponseFactory, executor);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullExecutor() {
+        try {
+            new AsyncPlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                    loginResponseFactory, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testLoginFailsDueToNullEmailAddress() {
+        try {
+            asyncPlayClient.login(null, password);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testLoginFailsDueToBadCredentials() throws Exception {
+        // mock interactions
+        RestResponse googleLoginResponse = mockResponse(HttpStatus.SC_FORBIDDEN, null);
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.GOOGLE), eq(Path.GOOGLE_LOGIN),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(googleLoginResponse));
+
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null)).thenReturn(loginResponse);
+
+        // do the call
+        assertEquals(loginResponse, asyncPlayClient.login(emailAddress, password).get());
+
+        // never got as far as Play
+        verify(restClient, never()).doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOGIN),
+                anyMap(), anyMap(), anyMap(), anyMap());
+    }
+
+    public void testLoginHappyPath() throws Exception {
+        // mock the login to Google
+        String googleLoginResponseBody = Const.GOOLE_LOGIN_AUTH + authToken + "\n";
+        RestResponse googleLoginResponse = mockResponse(HttpStatus.SC_OK, googleLoginResponseBody);
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.GOOGLE), eq(Path.GOOGLE_LOGIN),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(googleLoginResponse));
+        when(googleUtil.getAuthTokenFromLoginResponse(googleLoginResponseBody)).thenReturn(authToken);
+
+        // mock the login to Play
+        Map<String, String> cookies = new HashMap<String, String>();
+        cookies.put(CookieName.XT, "xt");
+        cookies.put(CookieName.SJSAID, "sjsaid");
+        RestResponse playLoginResponse = mockResponse(HttpStatus.SC_OK, null);
+        when(playLoginResponse.getCookies()).thenReturn(cookies);
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOGIN),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(playLoginResponse));
+
+        when(playSessionFactory.create("xt", "sjsaid", authToken)).thenReturn(playSession);
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.SUCCESS, playSession)).thenReturn(loginResponse);
+
+        // do the call
+        assertEquals(loginResponse, asyncPlayClient.login(emailAddress, password).get());
+    }
+
+    public void testSearchFailsDueToNullPlaySession() {
+        try {
+            asyncPlayClient.search(query, null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchHappyPath() throws Exception {
+        // mock interactions
+        RestResponse restResponse = mockResponse(HttpStatus.SC_OK, "body");
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(restResponse));
+
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        SearchResults searchResults = mock(SearchResults.class);
+        when(gsonWrapper.fromJson("body", SearchResponse.class)).thenReturn(searchResponse);
+        when(searchResponse.getResults()).thenReturn(searchResults);
+
+        // do the call
+        assertEquals(searchResults, asyncPlayClient.search(query, playSession).get());
+    }
+
+    public void testSearchFailsDueToBadStatus() throws Exception {
+        // mock interactions
+        RestResponse restResponse = mockResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "body");
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(restResponse));
+
+        // do the call
+        try {
+            asyncPlayClient.search(query, playSession).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testGetPlayURIFailsDueToEmptySongId() {
+        try {
+            asyncPlayClient.getPlayURI("", playSession);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetPlayURIHappyPath() throws Exception {
+        // mock interactions
+        RestResponse restResponse = mockResponse(HttpStatus.SC_OK, "body");
+        when(restClient.doGetAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_PLAY),
+                anyMap(), anyMap(), anyMap())).thenReturn(completed(restResponse));
+
+        StreamingUrl streamingUrl = new StreamingUrl();
+        streamingUrl.setUrl("http://google.com");
+        when(gsonWrapper.fromJson("body", StreamingUrl.class)).thenReturn(streamingUrl);
+
+        // do the call
+        assertEquals(new URI("http://google.com"), asyncPlayClient.getPlayURI(songId, playSession).get());
+    }
+
+    public void testLoadAllTracksFailsDueToNullPlaySession() {
+        try {
+            asyncPlayClient.loadAllTracks(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testLoadAllTracksFollowsContinuationTokens() throws Exception {
+        // two pages of tracks
+        LoadAllTracksRequest firstRequest = new LoadAllTracksRequest();
+        LoadAllTracksRequest secondRequest = new LoadAllTracksRequest("token");
+        when(playDomainFactory.createLoadAllTracksRequest()).thenReturn(firstRequest);
+        when(playDomainFactory.createLoadAllTracksRequest("token")).thenReturn(secondRequest);
+        when(gsonWrapper.toJson(firstRequest)).thenReturn("first");
+        when(gsonWrapper.toJson(secondRequest)).thenReturn("second");
+
+        Map<String, String> firstForm = new HashMap<String, String>();
+        firstForm.put(FormFieldConst.JSON_NAME, "first");
+        Map<String, String> secondForm = new HashMap<String, String>();
+        secondForm.put(FormFieldConst.JSON_NAME, "second");
+
+        RestResponse firstResponse = mockResponse(HttpStatus.SC_OK, "firstBody");
+        RestResponse secondResponse = mockResponse(HttpStatus.SC_OK, "secondBody");
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                anyMap(), anyMap(), anyMap(), eq(firstForm))).thenReturn(completed(firstResponse));
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                anyMap(), anyMap(), anyMap(), eq(secondForm))).thenReturn(completed(secondResponse));
+
+        when(gsonWrapper.fromJson("firstBody", LoadAllTracksResponse.class))
+                .thenReturn(createPage("token", new Song()));
+        when(gsonWrapper.fromJson("secondBody", LoadAllTracksResponse.class))
+                .thenReturn(createPage(null, new Song(), new Song()));
+
+        // do the call
+        Collection<Song> songs = asyncPlayClient.loadAllTracks(playSession).get();
+
+        // verify results
+        assertEquals(3, songs.size());
+    }
+
+    public void testLoadAllPlaylistsHappyPath() throws Exception {
+        // mock interactions
+        RestResponse restResponse = mockResponse(HttpStatus.SC_OK, "body");
+        when(restClient.doPostAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_PLAYLIST),
+                anyMap(), anyMap(), anyMap(), anyMap())).thenReturn(completed(restResponse));
+
+        LoadAllPlaylistsResponse loadAllPlaylistsResponse = new LoadAllPlaylistsResponse();
+        Collection<Playlist> playlists = new ArrayList<Playlist>();
+        playlists.add(new Playlist());
+        loadAllPlaylistsResponse.setPlaylists(playlists);
+        when(gsonWrapper.fromJson("body", LoadAllPlaylistsResponse.class)).thenReturn(loadAllPlaylistsResponse);
+
+        // do the call
+        assertEquals(playlists, asyncPlayClient.loadAllPlaylists(playSession).get());
+    }
+
+    public void testCloseClosesRestClient() {
+        asyncPlayClient.close();
+
+        verify(restClient).close();
+    }
+
+    private RestResponse mockResponse(int statusCode, String body) {
+        RestResponse restResponse = mock(RestResponse.class);
+        when(restResponse.getStatusCode()).thenReturn(statusCode);
+        when(restResponse.getBody()).thenReturn(body);
+
+        return restResponse;
+    }
+
+    private CompletableFuture<RestResponse> completed(RestResponse restResponse) {
+        return CompletableFuture.completedFuture(restResponse);
+    }
+
+    private LoadAllTracksResponse createPage(String continuationToken, Song... songs) {
+        List<Song> playlist = new ArrayList<Song>();
+        for (Song song : songs) {
+            playlist.add(song);
+        }
+
+        LoadAllTracksResponse loadAllTracksResponse = new LoadAllTracksResponse();
+        loadAllTracksResponse.setContinuationToken(continuationToken);
+        loadAllTracksResponse.setPlaylist(playlist);
+
+        return loadAllTracksResponse;
+    }
+
+    public void testConsFailsDueToNullRateLimiter() {
+        try {
+            new AsyncPlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                    loginResponseFactory, executor, new PlayEndpoints(), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetPlayURIFailsWhenRateLimited() throws Exception {
+        RateLimiterConfig rateLimiterConfig = new RateLimiterConfig(new RateLimit(0.001, 1), RateLimit.UNLIMITED,
+                Collections.<String, RateLimit>emptyMap(), 0, null);
+        asyncPlayClient = new AsyncPlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper,
+                playDomainFactory, loginResponseFactory, executor, new PlayEndpoints(),
+                new RateLimiter(rateLimiterConfig, new NoOpClientMetrics()));
+
+        // mock interactions
+        RestResponse restResponse = mockResponse(HttpStatus.SC_OK, "body");
+        when(restClient.doGetAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_PLAY),
+                anyMap(), anyMap(), anyMap())).thenReturn(completed(restResponse));
+
+        StreamingUrl streamingUrl = new StreamingUrl();
+        streamingUrl.setUrl("http://google.com");
+        when(gsonWrapper.fromJson("body", StreamingUrl.class)).thenReturn(streamingUrl);
+
+        // the first call takes the only token, the second is rejected without reaching the rest client
+        assertEquals(new URI("http://google.com"), asyncPlayClient.getPlayURI(songId, playSession).get());
+        try {
+            asyncPlayClient.getPlayURI(songId, playSession).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RateLimitedException);
+        }
+
+        verify(restClient, times(1)).doGetAsync(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_PLAY),
+                anyMap(), anyMap(), anyMap());
+    }
+}
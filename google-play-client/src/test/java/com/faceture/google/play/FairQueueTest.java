@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the FairQueue
+ */
+public class FairQueueTest extends TestCase {
+
+    // class under test
+    FairQueue<String> fairQueue;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        fairQueue = new FairQueue<String>();
+    }
+
+    public void testFlowFailsDueToBadWeight() {
+        try {
+            new FairQueue.Flow<String>(0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testEmptyQueue() {
+        assertNull(fairQueue.poll());
+        assertEquals(0, fairQueue.size());
+    }
+
+    public void testOneFlowIsFifo() {
+        FairQueue.Flow<String> flow = new FairQueue.Flow<String>(1);
+        fairQueue.offer(flow, "a1");
+        fairQueue.offer(flow, "a2");
+        fairQueue.offer(flow, "a3");
+
+        assertEquals(Arrays.asList("a1", "a2", "a3"), pollAll());
+    }
+
+    public void testBusyFlowDoesntStarveTheOthers() {
+        FairQueue.Flow<String> busy = new FairQueue.Flow<String>(1);
+        FairQueue.Flow<String> quiet = new FairQueue.Flow<String>(1);
+        for (int i = 1; i <= 4; i++) {
+            fairQueue.offer(busy, "a" + i);
+        }
+        fairQueue.offer(quiet, "b1");
+        fairQueue.offer(quiet, "b2");
+
+        assertEquals(6, fairQueue.size());
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3", "a4"), pollAll());
+    }
+
+    public void testWeightsSetTheShares() {
+        FairQueue.Flow<String> light = new FairQueue.Flow<String>(1);
+        FairQueue.Flow<String> heavy = new FairQueue.Flow<String>(2);
+        for (int i = 1; i <= 3; i++) {
+            fairQueue.offer(light, "a" + i);
+        }
+        for (int i = 1; i <= 6; i++) {
+            fairQueue.offer(heavy, "b" + i);
+        }
+
+        assertEquals(Arrays.asList("a1", "b1", "b2", "a2", "b3", "b4", "a3", "b5", "b6"), pollAll());
+    }
+
+    public void testIdleFlowCantSaveUpTurns() {
+        FairQueue.Flow<String> busy = new FairQueue.Flow<String>(1);
+        FairQueue.Flow<String> idle = new FairQueue.Flow<String>(1);
+        for (int i = 1; i <= 4; i++) {
+            fairQueue.offer(busy, "a" + i);
+        }
+        assertEquals("a1", fairQueue.poll());
+        assertEquals("a2", fairQueue.poll());
+        assertEquals("a3", fairQueue.poll());
+
+        // it joins at the current virtual time rather than at the start
+        fairQueue.offer(idle, "b1");
+        fairQueue.offer(idle, "b2");
+
+        assertEquals(Arrays.asList("b1", "a4", "b2"), pollAll());
+    }
+
+    public void testRemoveAndClear() {
+        FairQueue.Flow<String> first = new FairQueue.Flow<String>(1);
+        FairQueue.Flow<String> second = new FairQueue.Flow<String>(1);
+        fairQueue.offer(first, "a1");
+        fairQueue.offer(second, "b1");
+        fairQueue.offer(first, "a2");
+
+        assertEquals(Arrays.asList("a1", "a2"), fairQueue.remove(first));
+        assertTrue(fairQueue.remove(first).isEmpty());
+        assertEquals(1, fairQueue.size());
+
+        fairQueue.offer(first, "a3");
+        assertEquals(2, fairQueue.clear().size());
+        assertEquals(0, fairQueue.size());
+        assertNull(fairQueue.poll());
+    }
+
+    private List<String> pollAll() {
+        List<String> items = new ArrayList<String>();
+        String item;
+        while ((item = fairQueue.poll()) != null) {
+            items.add(item);
+        }
+
+        return items;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests the LibrarySnapshot
+ */
+public class LibrarySnapshotTest extends TestCase {
+
+    // class under test
+    LibrarySnapshot librarySnapshot;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        librarySnapshot = new LibrarySnapshot();
+    }
+
+    public void testGetSongFailsDueToNullId() {
+        try {
+            librarySnapshot.getSong(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testPutAndRemove() {
+        Song song = createSong("1");
+
+        assertFalse(librarySnapshot.put(song));
+        assertTrue(librarySnapshot.put(song));
+        assertEquals(song, librarySnapshot.getSong("1"));
+        assertEquals(1, librarySnapshot.size());
+
+        assertTrue(librarySnapshot.remove("1"));
+        assertFalse(librarySnapshot.remove("1"));
+        assertNull(librarySnapshot.getSong("1"));
+    }
+
+    public void testRetain() {
+        librarySnapshot.put(createSong("1"));
+        librarySnapshot.put(createSong("2"));
+        librarySnapshot.put(createSong("3"));
+
+        assertEquals(2, librarySnapshot.retain(Arrays.asList("2", "4")));
+        assertEquals(1, librarySnapshot.getSongs().size());
+        assertNotNull(librarySnapshot.getSong("2"));
+    }
+
+    public void testGetSongsIsReadOnly() {
+        librarySnapshot.put(createSong("1"));
+
+        try {
+            librarySnapshot.getSongs().clear();
+
+            fail("should have thrown UnsupportedOperationException");
+        }
+        catch (UnsupportedOperationException e) {}
+    }
+
+    private Song createSong(String id) {
+        Song song = new Song();
+        song.setId(id);
+
+        return song;
+    }
+}
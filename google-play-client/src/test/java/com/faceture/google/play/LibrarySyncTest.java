@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the LibrarySync
+ */
+public class LibrarySyncTest extends TestCase {
+
+    // class under test
+    LibrarySync librarySync;
+
+    // dependencies
+    PlayClient playClient;
+    LibrarySnapshot librarySnapshot;
+
+    // params
+    PlaySession playSession;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+        librarySnapshot = new LibrarySnapshot();
+        playSession = mock(PlaySession.class);
+
+        librarySync = new LibrarySync(playClient, librarySnapshot);
+    }
+
+    public void testConsFailsDueToNullPlayClient() {
+        try {
+            new LibrarySync(null, librarySnapshot);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullLibrarySnapshot() {
+        try {
+            new LibrarySync(playClient, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSyncFailsDueToNullSession() throws IOException, URISyntaxException {
+        try {
+            librarySync.sync(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testFirstSyncLoadsEverything() throws IOException, URISyntaxException {
+        LoadAllTracksIterator allTracks = mockIterator(10.0, false, createSong("1", false), createSong("2", false));
+        when(playClient.iterateAllTracks(playSession)).thenReturn(allTracks);
+
+        LibrarySyncResult result = librarySync.sync(playSession);
+
+        assertTrue(result.isFullResync());
+        assertEquals(2, result.getInserted());
+        assertTrue(librarySnapshot.isLoaded());
+        assertEquals(10.0, librarySnapshot.getRequestTime());
+        assertEquals(2, librarySnapshot.size());
+        verify(allTracks).close();
+        verify(playClient, never()).iterateTrackChanges(any(PlaySession.class), anyDouble());
+    }
+
+    public void testSyncAppliesChanges() throws IOException, URISyntaxException {
+        loadLibrary();
+
+        Song changedSong = createSong("2", false);
+        LoadAllTracksIterator changes = mockIterator(20.0, true, createSong("1", true), changedSong,
+                createSong("4", false));
+        when(playClient.iterateTrackChanges(playSession, 10.0)).thenReturn(changes);
+
+        LibrarySyncResult result = librarySync.sync(playSession);
+
+        assertFalse(result.isFullResync());
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+
+        assertNull(librarySnapshot.getSong("1"));
+        assertSame(changedSong, librarySnapshot.getSong("2"));
+        assertNotNull(librarySnapshot.getSong("3"));
+        assertNotNull(librarySnapshot.getSong("4"));
+        assertEquals(20.0, librarySnapshot.getRequestTime());
+        verify(changes).close();
+    }
+
+    public void testRefusedDeltaReplacesLibrary() throws IOException, URISyntaxException {
+        loadLibrary();
+
+        Song keptSong = librarySnapshot.getSong("3");
+        LoadAllTracksIterator everything = mockIterator(20.0, false, createSong("3", false), createSong("5", false),
+                createSong("6", true));
+        when(playClient.iterateTrackChanges(playSession, 10.0)).thenReturn(everything);
+
+        LibrarySyncResult result = librarySync.sync(playSession);
+
+        assertTrue(result.isFullResync());
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(2, result.getDeleted());
+
+        assertEquals(2, librarySnapshot.size());
+        assertNotSame(keptSong, librarySnapshot.getSong("3"));
+        assertNotNull(librarySnapshot.getSong("5"));
+        assertNull(librarySnapshot.getSong("6"));
+
+        // nothing else was downloaded
+        verify(playClient, times(1)).iterateAllTracks(playSession);
+    }
+
+    public void testFailedSyncLeavesLibraryAlone() throws IOException, URISyntaxException {
+        loadLibrary();
+
+        LoadAllTracksIterator changes = mock(LoadAllTracksIterator.class);
+        when(changes.nextSong()).thenReturn(createSong("1", true)).thenThrow(new IOException());
+        when(playClient.iterateTrackChanges(playSession, 10.0)).thenReturn(changes);
+
+        try {
+            librarySync.sync(playSession);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        assertEquals(3, librarySnapshot.size());
+        assertEquals(10.0, librarySnapshot.getRequestTime());
+        verify(changes).close();
+    }
+
+    public void testMissingRequestTimeKeepsOldOne() throws IOException, URISyntaxException {
+        loadLibrary();
+
+        LoadAllTracksIterator changes = mockIterator(0, true, createSong("4", false));
+        when(playClient.iterateTrackChanges(playSession, 10.0)).thenReturn(changes);
+
+        librarySync.sync(playSession);
+
+        assertEquals(10.0, librarySnapshot.getRequestTime());
+    }
+
+    private void loadLibrary() throws IOException, URISyntaxException {
+        LoadAllTracksIterator allTracks = mockIterator(10.0, false, createSong("1", false), createSong("2", false),
+                createSong("3", false));
+        when(playClient.iterateAllTracks(playSession)).thenReturn(allTracks);
+
+        librarySync.resync(playSession);
+    }
+
+    private LoadAllTracksIterator mockIterator(double requestTime, boolean differentialUpdate, Song... songs)
+            throws IOException, URISyntaxException
+    {
+        LoadAllTracksIterator loadAllTracksIterator = mock(LoadAllTracksIterator.class);
+
+        // the songs after the first, with a null on the end to finish the iteration
+        Song[] rest = new Song[songs.length];
+        System.arraycopy(songs, 1, rest, 0, songs.length - 1);
+        when(loadAllTracksIterator.nextSong()).thenReturn(songs[0], rest);
+        when(loadAllTracksIterator.getRequestTime()).thenReturn(requestTime);
+        when(loadAllTracksIterator.isDifferentialUpdate()).thenReturn(differentialUpdate);
+
+        return loadAllTracksIterator;
+    }
+
+    private Song createSong(String id, boolean deleted) {
+        Song song = new Song();
+        song.setId(id);
+        song.setDeleted(deleted);
+
+        return song;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.PlayDomainFactory;
+import com.faceture.google.play.domain.Song;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
+import com.faceture.rest.RestStreamResponse;
+import com.faceture.rest.RetryPolicy;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the LoadAllTracksIterator
+ */
+public class LoadAllTracksIteratorTest extends TestCase {
+
+    // dependencies
+    LoadAllTracksPageSource pageSource;
+    PlayClientUtil playClientUtil;
+
+    // pages
+    RestStreamResponse firstPage;
+    RestStreamResponse secondPage;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        pageSource = mock(LoadAllTracksPageSource.class);
+        playClientUtil = new PlayClientUtil(mock(PlaySessionFactory.class), mock(GoogleUtil.class),
+                new GsonWrapper(new Gson()), mock(PlayDomainFactory.class), mock(LoginResponseFactory.class));
+
+        firstPage = mockPage("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}],\"continuationToken\":\"token\"}");
+        secondPage = mockPage("{\"playlist\":[{\"id\":\"3\"}]}");
+        when(pageSource.openPage(null)).thenReturn(firstPage);
+        when(pageSource.openPage("token")).thenReturn(secondPage);
+    }
+
+    public void testConsFailsDueToNullPageSource() {
+        try {
+            new LoadAllTracksIterator(null, playClientUtil, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullPlayClientUtil() {
+        try {
+            new LoadAllTracksIterator(pageSource, null, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullRequestRetrier() {
+        try {
+            new LoadAllTracksIterator(pageSource, playClientUtil, null, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testNothingLoadedUntilAsked() throws IOException, URISyntaxException {
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null);
+
+        verifyZeroInteractions(pageSource);
+        assertEquals(-1, iterator.getPageNumber());
+
+        // the second page isn't loaded until the first is used up
+        assertEquals("1", iterator.next().getId());
+        verify(pageSource, never()).openPage("token");
+    }
+
+    public void testIteratesAcrossPages() throws IOException, URISyntaxException {
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null);
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals(0, iterator.getPageNumber());
+        assertNull(iterator.getPageContinuationToken());
+        assertEquals("2", iterator.next().getId());
+        assertEquals(2, iterator.getPageSongCount());
+
+        assertEquals("3", iterator.next().getId());
+        assertEquals(1, iterator.getPageNumber());
+        assertEquals("token", iterator.getPageContinuationToken());
+        assertEquals(1, iterator.getPageSongCount());
+
+        assertFalse(iterator.hasNext());
+        assertTrue(iterator.isFinished());
+        assertNull(iterator.nextSong());
+
+        try {
+            iterator.next();
+
+            fail("should have thrown NoSuchElementException");
+        }
+        catch (NoSuchElementException e) {}
+
+        // read to the end, so nothing was aborted
+        verify(firstPage).close();
+        verify(secondPage).close();
+        verify(firstPage, never()).abort();
+        verify(secondPage, never()).abort();
+    }
+
+    public void testFirstPageFields() throws IOException, URISyntaxException {
+        RestStreamResponse changes = mockPage("{\"playlist\":[{\"id\":\"1\"}],\"requestTime\":12.5," +
+                "\"differentialUpdate\":true}");
+        when(pageSource.openPage(null)).thenReturn(changes);
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null);
+
+        iterator.nextSong();
+        assertEquals(0.0, iterator.getRequestTime());
+        assertFalse(iterator.isDifferentialUpdate());
+
+        // known once the page has been read to the end
+        assertNull(iterator.nextSong());
+        assertEquals(12.5, iterator.getRequestTime());
+        assertTrue(iterator.isDifferentialUpdate());
+    }
+
+    public void testStartsAtContinuationToken() throws IOException, URISyntaxException {
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, "token");
+
+        assertEquals("3", iterator.nextSong().getId());
+        assertNull(iterator.nextSong());
+        verify(pageSource, never()).openPage(null);
+    }
+
+    public void testCloseAbortsOpenPage() throws IOException, URISyntaxException {
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null);
+
+        iterator.next();
+        iterator.close();
+
+        verify(firstPage).abort();
+        verify(firstPage).close();
+        verify(pageSource, never()).openPage("token");
+
+        try {
+            iterator.hasNext();
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+
+        // closing again does nothing
+        iterator.close();
+        verify(firstPage).close();
+    }
+
+    public void testBadPageIsAborted() throws IOException, URISyntaxException {
+        RestStreamResponse badPage = mockPage("{\"playlist\":[{\"id\":\"1\"},{\"id\":");
+        when(pageSource.openPage(null)).thenReturn(badPage);
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null);
+
+        assertEquals("1", iterator.next().getId());
+        try {
+            iterator.hasNext();
+
+            fail("should have thrown exception");
+        }
+        catch (UncheckedIOException e) {}
+        catch (RuntimeException e) {}
+
+        verify(badPage).abort();
+        verify(badPage).close();
+    }
+
+    private RestStreamResponse mockPage(String body) throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restStreamResponse.getBodyReader()).thenReturn(new StringReader(body));
+
+        return restStreamResponse;
+    }
+
+    public void testBrokenPageIsResumed() throws IOException, URISyntaxException {
+        RestStreamResponse brokenPage = mockBrokenPage("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"},");
+        RestStreamResponse reloadedPage = mockPage("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}," +
+                "{\"id\":\"2b\"}],\"continuationToken\":\"token\"}");
+        when(pageSource.openPage(null)).thenReturn(brokenPage, reloadedPage);
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null,
+                createRequestRetrier(3));
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+
+        // the songs already read are skipped on the reloaded page, and the next page is still loaded
+        assertEquals("2b", iterator.next().getId());
+        assertEquals(0, iterator.getPageNumber());
+        assertEquals(3, iterator.getPageSongCount());
+        assertEquals("3", iterator.next().getId());
+        assertFalse(iterator.hasNext());
+
+        verify(brokenPage).abort();
+        verify(brokenPage).close();
+        verify(pageSource, times(2)).openPage(null);
+    }
+
+    public void testBrokenPageFailsWhenAttemptsRunOut() throws IOException, URISyntaxException {
+        RestStreamResponse brokenPage = mockBrokenPage("{\"playlist\":[{\"id\":\"1\"},");
+        RestStreamResponse brokenAgain = mockBrokenPage("{\"playlist\":[{\"id\":\"1\"},");
+        when(pageSource.openPage(null)).thenReturn(brokenPage, brokenAgain);
+        LoadAllTracksIterator iterator = new LoadAllTracksIterator(pageSource, playClientUtil, null,
+                createRequestRetrier(2));
+
+        assertEquals("1", iterator.next().getId());
+        try {
+            iterator.nextSong();
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        verify(brokenAgain).abort();
+        verify(brokenAgain).close();
+        verify(pageSource, times(2)).openPage(null);
+    }
+
+    private RequestRetrier createRequestRetrier(int maxAttempts) {
+        // no waiting between the attempts
+        return new RequestRetrier(new RetryPolicy(maxAttempts, 0, 0, 0, 0.1, 10, Collections.<String>emptySet()),
+                new NoOpClientMetrics());
+    }
+
+    /**
+     * @return a page whose connection is reset after the given part of the body
+     */
+    private RestStreamResponse mockBrokenPage(String body) throws IOException {
+        final StringReader bodyReader = new StringReader(body);
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restStreamResponse.getBodyReader()).thenReturn(new Reader() {
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = bodyReader.read(buffer, offset, length);
+                if (read < 0) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+
+            public void close() {
+            }
+        });
+
+        return restStreamResponse;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.faceture.google.play.library.SongTable;
+import com.faceture.jfr.EventRecorder;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import jdk.jfr.consumer.RecordedEvent;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the LoadAllTracksReader
+ */
+public class LoadAllTracksReaderTest extends TestCase {
+
+    // dependencies
+    GsonWrapper gsonWrapper;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        gsonWrapper = new GsonWrapper(new Gson());
+    }
+
+    public void testConsFailsDueToNullGsonWrapper() {
+        try {
+            new LoadAllTracksReader(null, mock(JsonReader.class));
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullJsonReader() {
+        try {
+            new LoadAllTracksReader(gsonWrapper, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testNextSongWithTokenAfterSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\",\"title\":\"one\"},{\"id\":\"2\"}]," +
+                "\"continuationToken\":\"token\",\"requestTime\":1.5,\"differentialUpdate\":false}");
+
+        Song song = reader.nextSong();
+        assertEquals("1", song.getId());
+        assertEquals("one", song.getTitle());
+        assertEquals("2", reader.nextSong().getId());
+
+        // the token isn't known until the songs are done
+        assertNull(reader.getContinuationToken());
+        assertFalse(reader.isFinished());
+
+        assertNull(reader.nextSong());
+        assertTrue(reader.isFinished());
+        assertEquals("token", reader.getContinuationToken());
+        assertEquals(1.5, reader.getPage().getRequestTime());
+        assertEquals(2, reader.getSongCount());
+
+        // stays done
+        assertNull(reader.nextSong());
+    }
+
+    public void testNextSongWithTokenBeforeSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"continuationToken\":\"token\",\"playlist\":[{\"id\":\"1\"}]}");
+
+        assertEquals("1", reader.nextSong().getId());
+        assertEquals("token", reader.getContinuationToken());
+        assertNull(reader.nextSong());
+    }
+
+    public void testReadToSongsWithTokenBeforeSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"continuationToken\":\"token\",\"playlist\":[{\"id\":\"1\"}]}");
+
+        assertEquals("token", reader.readToSongs());
+
+        // no song was read, so the first one is still there
+        assertEquals("1", reader.nextSong().getId());
+        assertNull(reader.nextSong());
+    }
+
+    public void testReadToSongsWithTokenAfterSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"}],\"continuationToken\":\"token\"}");
+
+        assertNull(reader.readToSongs());
+
+        assertEquals("1", reader.nextSong().getId());
+        assertNull(reader.nextSong());
+        assertEquals("token", reader.getContinuationToken());
+    }
+
+    public void testNextSongSkipsUnknownFields() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"unknown\":{\"a\":[1,2,{\"b\":null}]},\"playlist\":" +
+                "[{\"id\":\"1\",\"newField\":[true]}],\"continuationToken\":null}");
+
+        assertEquals("1", reader.nextSong().getId());
+        assertNull(reader.nextSong());
+        assertNull(reader.getContinuationToken());
+    }
+
+    public void testNextSongSkipsNullPrimitives() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"requestTime\":null,\"differentialUpdate\":null," +
+                "\"playlist\":[{\"id\":\"1\"}],\"continuation\":null,\"continuationToken\":\"token\"}");
+
+        assertEquals("1", reader.nextSong().getId());
+        assertNull(reader.nextSong());
+        assertEquals("token", reader.getContinuationToken());
+        assertEquals(0.0, reader.getPage().getRequestTime());
+        assertFalse(reader.getPage().isDifferentialUpdate());
+        assertFalse(reader.getPage().isContinuation());
+    }
+
+    public void testNextSongWithNoSongs() throws IOException {
+        assertNull(createReader("{\"playlist\":[],\"continuationToken\":\"\"}").nextSong());
+        assertNull(createReader("{\"playlist\":null}").nextSong());
+        assertNull(createReader("{}").nextSong());
+    }
+
+    public void testNextSongIntoSongTableBuilder() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\",\"title\":\"one\"},{\"id\":\"2\"}]," +
+                "\"continuationToken\":\"token\"}");
+        SongTable.Builder builder = new SongTable.Builder();
+
+        assertTrue(reader.nextSong(builder));
+        assertTrue(reader.nextSong(builder));
+        assertFalse(reader.nextSong(builder));
+        assertEquals("token", reader.getContinuationToken());
+        assertEquals(2, reader.getSongCount());
+
+        SongTable songTable = builder.build();
+        assertEquals(2, songTable.size());
+        assertEquals("one", songTable.getTitle(0));
+        assertEquals("2", songTable.getId(1));
+    }
+
+    public void testNextSongFailsDueToNullSongTableBuilder() throws IOException {
+        try {
+            createReader("{}").nextSong((SongTable.Builder) null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testReadToEndSkipsUnreadSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"}]," +
+                "\"continuationToken\":\"token\"}");
+
+        assertEquals("1", reader.nextSong().getId());
+
+        LoadAllTracksResponse page = reader.readToEnd();
+        assertEquals("token", page.getContinuationToken());
+        assertEquals(1, reader.getSongCount());
+        assertTrue(reader.isFinished());
+    }
+
+    public void testEmitsParseEventForThePage() throws Exception {
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.JsonParse", () -> {
+            LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+            while (reader.nextSong() != null) {
+            }
+            reader.close();
+        });
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("LoadAllTracksResponse", event.getString("type"));
+        assertEquals(-1, event.getLong("characters"));
+        assertEquals(2, event.getInt("songCount"));
+        assertTrue(event.getBoolean("streamed"));
+        assertNull(event.getString("failure"));
+    }
+
+    public void testEmitsFailedParseEventWhenClosedEarly() throws Exception {
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.JsonParse", () -> {
+            LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+            reader.nextSong();
+            reader.close();
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).getInt("songCount"));
+        assertNotNull(events.get(0).getString("failure"));
+    }
+
+    private LoadAllTracksReader createReader(String json) {
+        return new LoadAllTracksReader(gsonWrapper, gsonWrapper.createJsonReader(new StringReader(json)));
+    }
+
+    public void testSkipSongs() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"}]," +
+                "\"continuationToken\":\"token\"}");
+
+        reader.skipSongs(2);
+        assertEquals("3", reader.nextSong().getId());
+        assertNull(reader.nextSong());
+        assertEquals("token", reader.getContinuationToken());
+
+        // only the songs read are counted
+        assertEquals(1, reader.getSongCount());
+    }
+
+    public void testSkipSongsFailsWhenPageRunsOut() throws IOException {
+        LoadAllTracksReader reader = createReader("{\"playlist\":[{\"id\":\"1\"}]}");
+
+        try {
+            reader.skipSongs(2);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+    }
+}
@@ -17,8 +17,19 @@
 
 package com.faceture.google.play;
 
+import com.faceture.http.ConnectionPoolConfig;
+import com.faceture.http.HttpClientFactory;
+import com.faceture.metrics.InMemoryClientMetrics;
+import com.faceture.ratelimit.RateLimit;
+import com.faceture.ratelimit.RateLimiterConfig;
+import com.faceture.rest.BulkheadConfig;
+import com.faceture.rest.CircuitBreakerConfig;
+import com.faceture.rest.HedgePolicy;
+import com.faceture.rest.RetryPolicy;
 import junit.framework.TestCase;
 
+import java.util.Collections;
+
 /**
  * Tests the PlayClientBuilder
  */
@@ -34,6 +45,216 @@ public class PlayClientBuilderTest extends TestCase {
     }
 
     public void testCreate() {
-        assertNotNull(playClientBuilder.create());
+        PlayClient playClient = playClientBuilder.create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testCreateAsync() {
+        AsyncPlayClient asyncPlayClient = playClientBuilder.createAsync();
+        assertNotNull(asyncPlayClient);
+
+        asyncPlayClient.close();
+    }
+
+    public void testWithMethodsChain() {
+        assertSame(playClientBuilder, playClientBuilder.withConnectionPoolConfig(new ConnectionPoolConfig()));
+        assertSame(playClientBuilder, playClientBuilder.withEndpoints(new PlayEndpoints()));
+        assertSame(playClientBuilder, playClientBuilder.withMetrics(new InMemoryClientMetrics()));
+        assertSame(playClientBuilder, playClientBuilder.withRetryPolicy(RetryPolicy.NONE));
+        assertSame(playClientBuilder, playClientBuilder.withCircuitBreakerConfig(new CircuitBreakerConfig()));
+        assertSame(playClientBuilder, playClientBuilder.withBulkheadConfig(new BulkheadConfig()));
+        assertSame(playClientBuilder, playClientBuilder.withRateLimiterConfig(RateLimiterConfig.UNLIMITED));
+        assertSame(playClientBuilder, playClientBuilder.withHedgePolicy(HedgePolicy.NONE));
+
+        HttpClientFactory httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig());
+        assertSame(playClientBuilder, playClientBuilder.withHttpClientFactory(httpClientFactory));
+        httpClientFactory.shutdown();
+    }
+
+    public void testCreateWithConnectionPoolConfig() {
+        PlayClient playClient = playClientBuilder.withConnectionPoolConfig(new ConnectionPoolConfig(10, 5, 1000, 1000,
+                1000)).create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithConnectionPoolConfigFailsDueToNull() {
+        try {
+            playClientBuilder.withConnectionPoolConfig(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateWithPlayEndpoints() {
+        PlayClient playClient = playClientBuilder.withEndpoints(
+                new PlayEndpoints(false, "localhost:8080", "localhost:8080")).create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithEndpointsFailsDueToNull() {
+        try {
+            playClientBuilder.withEndpoints(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateWithHttpClientFactory() {
+        HttpClientFactory httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig());
+        PlayClient playClient = playClientBuilder.withHttpClientFactory(httpClientFactory).create();
+        assertNotNull(playClient);
+
+        // the client owns the factory once it's been handed over
+        playClient.close();
+        assertTrue(httpClientFactory.isShutdown());
+    }
+
+    public void testWithHttpClientFactoryFailsDueToNull() {
+        try {
+            playClientBuilder.withHttpClientFactory(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConnectionPoolConfigTakesThePlaceOfAnEarlierHttpClientFactory() {
+        HttpClientFactory httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig());
+        PlayClient playClient = playClientBuilder.withHttpClientFactory(httpClientFactory)
+                .withConnectionPoolConfig(new ConnectionPoolConfig()).create();
+
+        playClient.close();
+        assertFalse(httpClientFactory.isShutdown());
+        httpClientFactory.shutdown();
+    }
+
+    public void testCreateWithClientMetrics() {
+        HttpClientFactory httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig());
+        PlayClient playClient = playClientBuilder.withHttpClientFactory(httpClientFactory)
+                .withMetrics(new InMemoryClientMetrics()).create();
+        assertNotNull(playClient);
+
+        // the pool waits are timed for the metrics
+        assertTrue(httpClientFactory.getConnectionManager().isTiming());
+
+        playClient.close();
+    }
+
+    public void testWithMetricsFailsDueToNull() {
+        try {
+            playClientBuilder.withMetrics(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateAsyncWithClientMetrics() {
+        AsyncPlayClient asyncPlayClient = playClientBuilder.withMetrics(new InMemoryClientMetrics()).createAsync();
+        assertNotNull(asyncPlayClient);
+
+        asyncPlayClient.close();
+    }
+
+    public void testCreateWithRetryPolicy() {
+        PlayClient playClient = playClientBuilder.withRetryPolicy(RetryPolicy.NONE).create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithRetryPolicyFailsDueToNull() {
+        try {
+            playClientBuilder.withRetryPolicy(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateWithEndpointGuardConfigs() {
+        PlayClient playClient = playClientBuilder.withCircuitBreakerConfig(CircuitBreakerConfig.DISABLED)
+                .withBulkheadConfig(new BulkheadConfig(10, 100)).create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithEndpointGuardConfigsFailsDueToNull() {
+        try {
+            playClientBuilder.withCircuitBreakerConfig(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            playClientBuilder.withBulkheadConfig(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateWithRateLimiterConfig() {
+        PlayClient playClient = playClientBuilder.withRateLimiterConfig(
+                new RateLimiterConfig(new RateLimit(5, 10), RateLimit.UNLIMITED)).create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithRateLimiterConfigFailsDueToNull() {
+        try {
+            playClientBuilder.withRateLimiterConfig(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateAsyncWithRateLimiterConfig() {
+        AsyncPlayClient asyncPlayClient = playClientBuilder.withRateLimiterConfig(
+                new RateLimiterConfig(new RateLimit(5, 10), RateLimit.UNLIMITED)).createAsync();
+        assertNotNull(asyncPlayClient);
+
+        asyncPlayClient.close();
+    }
+
+    public void testCreateWithHedgePolicy() {
+        PlayClient playClient = playClientBuilder.withHedgePolicy(new HedgePolicy(PlayClientBuilder.HEDGED_GET_PATHS))
+                .create();
+        assertNotNull(playClient);
+
+        playClient.close();
+    }
+
+    public void testWithHedgePolicyFailsDueToNull() {
+        try {
+            playClientBuilder.withHedgePolicy(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testReadOnlyPostPaths() {
+        assertTrue(PlayClientBuilder.READ_ONLY_POST_PATHS.contains(Path.MUSIC_SEARCH));
+        assertTrue(PlayClientBuilder.READ_ONLY_POST_PATHS.contains(Path.MUSIC_LOAD_ALL_TRACKS));
+        assertTrue(PlayClientBuilder.READ_ONLY_POST_PATHS.contains(Path.MUSIC_LOAD_PLAYLIST));
+        assertFalse(PlayClientBuilder.READ_ONLY_POST_PATHS.contains(Path.GOOGLE_LOGIN));
+        assertFalse(PlayClientBuilder.READ_ONLY_POST_PATHS.contains(Path.MUSIC_LOGIN));
+    }
+
+    public void testHedgedGetPaths() {
+        assertEquals(Collections.singleton(Path.MUSIC_PLAY), PlayClientBuilder.HEDGED_GET_PATHS);
     }
 }
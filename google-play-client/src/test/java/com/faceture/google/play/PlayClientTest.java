@@ -20,18 +20,33 @@ package com.faceture.google.play;
 import com.faceture.google.GoogleUtil;
 import com.faceture.google.gson.GsonWrapper;
 import com.faceture.google.play.domain.*;
+import com.faceture.google.play.library.SongTable;
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
 import com.faceture.rest.RestClient;
 import com.faceture.rest.RestResponse;
+import com.faceture.rest.RestStreamResponse;
+import com.faceture.rest.RetryPolicy;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import junit.framework.TestCase;
 import org.apache.http.HttpStatus;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.*;
 
@@ -80,6 +95,11 @@ public class PlayClientTest extends TestCase {
         playDomainFactory = mock(PlayDomainFactory.class);
         loginResponseFactory = mock(LoginResponseFactory.class);
 
+        // a broken page is loaded again, with no waiting
+        RequestRetrier requestRetrier = new RequestRetrier(new RetryPolicy(2, 0, 0, 0, 0.1, 10,
+                Collections.<String>emptySet()), new NoOpClientMetrics());
+        when(restClient.getRequestRetrier()).thenReturn(requestRetrier);
+
         playClient = new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
                 loginResponseFactory);
     }
@@ -294,7 +314,8 @@ public class PlayClientTest extends TestCase {
         RestResponse searchRestResponse = mock(RestResponse.class);
 
         when(restClient.doPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH), isA((Map.class)),
-                isA(Map.class), (Map<String, String>) isNull(), isA(Map.class))).thenReturn(searchRestResponse);
+                isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(searchRestResponse);
 
         String searchResultBody = "searchResultBody";
         when(searchRestResponse.getBody()).thenReturn(searchResultBody);
@@ -310,6 +331,35 @@ public class PlayClientTest extends TestCase {
         assertEquals(searchResults, playClient.search(query, playSession));
     }
 
+    @SuppressWarnings("unchecked")
+    public void testSearchUsesPlayEndpoints() throws IOException, URISyntaxException {
+        playClient = new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory, new PlayEndpoints(false, "localhost:8081", "localhost:8082"));
+
+        RestResponse searchRestResponse = mock(RestResponse.class);
+        when(restClient.doPost(eq(false), eq("localhost:8082"), eq(Path.MUSIC_SEARCH), isA((Map.class)),
+                isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(searchRestResponse);
+        when(searchRestResponse.getBody()).thenReturn("searchResultBody");
+        when(searchRestResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        when(gsonWrapper.fromJson("searchResultBody", SearchResponse.class)).thenReturn(searchResponse);
+        SearchResults searchResults = mock(SearchResults.class);
+        when(searchResponse.getResults()).thenReturn(searchResults);
+
+        assertEquals(searchResults, playClient.search(query, playSession));
+    }
+
+    public void testConsFailsDueToNullPlayEndpoints() {
+        try {
+            new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                    loginResponseFactory, null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
     public void testGetPlayURIFailsDueToNullSongId() throws IOException, URISyntaxException {
         try {
             playClient.getPlayURI(null, playSession);
@@ -343,7 +393,7 @@ public class PlayClientTest extends TestCase {
         // mock request and response
         RestResponse restResponse = mock(RestResponse.class);
         when(restClient.doGet(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_PLAY), isA(Map.class),
-                isA(Map.class), isA(Map.class))).thenReturn(restResponse);
+                isA(Map.class), isA(Map.class), anyString())).thenReturn(restResponse);
 
         when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
 
@@ -371,6 +421,249 @@ public class PlayClientTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
+    public void testLoadAllTracksFailsDueToNullConsumer() throws IOException, URISyntaxException {
+        try {
+            playClient.loadAllTracks(playSession, null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadAllTracksHappyPath() throws IOException, URISyntaxException {
+        // two pages, the second found through the continuation token of the first
+        RestStreamResponse firstPage = mockStreamResponse(
+                "{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}],\"continuationToken\":\"token\"}");
+        RestStreamResponse secondPage = mockStreamResponse("{\"playlist\":[{\"id\":\"3\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(firstPage, secondPage);
+        mockJsonParsing();
+
+        // do the call
+        Collection<Song> songs = playClient.loadAllTracks(playSession);
+
+        // verify results
+        assertEquals(3, songs.size());
+        verify(playDomainFactory).createLoadAllTracksRequest("token");
+        verify(firstPage).close();
+        verify(secondPage).close();
+        verify(firstPage, never()).abort();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadAllTracksAbortsPageWhenConsumerFails() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        try {
+            playClient.loadAllTracks(playSession, new Consumer<Song>() {
+                public void accept(Song song) {
+                    throw new IllegalStateException();
+                }
+            });
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+
+        verify(page).abort();
+        verify(page).close();
+    }
+
+    public void testLoadSongTableFailsDueToNullPlaySession() throws IOException, URISyntaxException {
+        try {
+            playClient.loadSongTable(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadSongTableHappyPath() throws IOException, URISyntaxException {
+        RestStreamResponse firstPage = mockStreamResponse(
+                "{\"playlist\":[{\"id\":\"1\",\"artist\":\"a\"},{\"id\":\"2\",\"artist\":\"a\"}]," +
+                "\"continuationToken\":\"token\"}");
+        RestStreamResponse secondPage = mockStreamResponse("{\"playlist\":[{\"id\":\"3\",\"playCount\":7}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(firstPage, secondPage);
+        mockJsonParsing();
+
+        SongTable songTable = playClient.loadSongTable(playSession);
+
+        assertEquals(3, songTable.size());
+        assertEquals("a", songTable.getArtist(1));
+        assertEquals(7, songTable.getPlayCount(songTable.findRow("3")));
+        verify(playDomainFactory).createLoadAllTracksRequest("token");
+        verify(firstPage).close();
+        verify(secondPage).close();
+        verify(firstPage, never()).abort();
+        // no Songs were created for the table
+        verify(gsonWrapper, never()).fromJson(any(JsonReader.class), eq(Song.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadSongTableAbortsBadPage() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse("{\"playlist\":[{\"id\":\"1\",\"playCount\":\"x\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        try {
+            playClient.loadSongTable(playSession);
+
+            fail("should have thrown exception");
+        }
+        catch (NumberFormatException e) {}
+
+        verify(page).abort();
+        verify(page).close();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadSongTableResumesBrokenPage() throws IOException, URISyntaxException {
+        RestStreamResponse brokenPage = mockStreamResponse("{\"playlist\":[{\"id\":\"1\"},");
+        when(brokenPage.getBodyReader()).thenReturn(new Reader() {
+            private final Reader body = new StringReader("{\"playlist\":[{\"id\":\"1\"},");
+
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = body.read(buffer, offset, length);
+                if (read < 0) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+
+            public void close() {
+            }
+        });
+        RestStreamResponse reloadedPage = mockStreamResponse("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(brokenPage, reloadedPage);
+        mockJsonParsing();
+
+        SongTable songTable = playClient.loadSongTable(playSession);
+
+        // the song read before the page broke off isn't added twice
+        assertEquals(2, songTable.size());
+        assertEquals("1", songTable.getId(0));
+        assertEquals("2", songTable.getId(1));
+        verify(brokenPage).abort();
+        verify(reloadedPage, never()).abort();
+    }
+
+    public void testIterateAllTracksFailsDueToNullPlaySession() {
+        try {
+            playClient.iterateAllTracks(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testIterateAllTracksWithPrefetchFailsDueToNullPlaySession() {
+        try {
+            playClient.iterateAllTracks(null, null, new PrefetchConfig());
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testStreamAllTracksWithPrefetch() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        Stream<Song> songs = playClient.streamAllTracks(playSession, new PrefetchConfig());
+        try {
+            assertEquals(2, songs.count());
+        }
+        finally {
+            songs.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testIterateAllTracksFromContinuationToken() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse("{\"playlist\":[{\"id\":\"3\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        LoadAllTracksIterator iterator = playClient.iterateAllTracks(playSession, "token");
+
+        // nothing is requested until the songs are asked for
+        verify(restClient, never()).doStreamingPost(anyBoolean(), anyString(), anyString(), anyMap(), anyMap(),
+                anyMap(), anyMap(), anyString());
+
+        assertEquals("3", iterator.next().getId());
+        assertEquals("token", iterator.getPageContinuationToken());
+        verify(playDomainFactory).createLoadAllTracksRequest("token");
+        iterator.close();
+    }
+
+    public void testIterateTrackChangesFailsDueToNullPlaySession() {
+        try {
+            playClient.iterateTrackChanges(null, 1.0);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testIterateTrackChangesSendsTheLastRequestTime() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse("{\"playlist\":[{\"id\":\"3\"}]}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        LoadAllTracksIterator iterator = playClient.iterateTrackChanges(playSession, 1234.5);
+
+        assertEquals("3", iterator.next().getId());
+        verify(playDomainFactory).createLoadAllTracksRequest(null, 1234.5);
+        verify(playDomainFactory, never()).createLoadAllTracksRequest();
+        iterator.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testStreamAllTracksStopsEarly() throws IOException, URISyntaxException {
+        RestStreamResponse page = mockStreamResponse(
+                "{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}],\"continuationToken\":\"token\"}");
+        when(restClient.doStreamingPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_ALL_TRACKS),
+                isA(Map.class), anyMap(), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(page);
+        mockJsonParsing();
+
+        Stream<Song> songs = playClient.streamAllTracks(playSession);
+        try {
+            assertEquals(1, songs.limit(1).count());
+        }
+        finally {
+            songs.close();
+        }
+
+        // only the first page was requested, and it was aborted rather than drained
+        verify(restClient, times(1)).doStreamingPost(anyBoolean(), anyString(), anyString(), anyMap(), anyMap(),
+                anyMap(), anyMap(), anyString());
+        verify(page).abort();
+        verify(page).close();
+    }
+
     public void testLoadAllPlaylistsFailsDueToNullSession() throws IOException, URISyntaxException {
         try {
             playClient.loadAllPlaylists(null);
@@ -385,7 +678,8 @@ public class PlayClientTest extends TestCase {
         // mock interactions
         RestResponse restResponse = mock(RestResponse.class);
         when(restClient.doPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_LOAD_PLAYLIST),
-                    isA((Map.class)), isA(Map.class), (Map<String, String>) isNull(), isA(Map.class))).thenReturn(restResponse);
+                    isA((Map.class)), isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                    .thenReturn(restResponse);
 
         when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
 
@@ -409,4 +703,107 @@ public class PlayClientTest extends TestCase {
         assertFalse(resultPlaylists.isEmpty());
     }
 
+    public void testCloseClosesRestClient() {
+        playClient.close();
+
+        verify(restClient).close();
+    }
+
+    private RestStreamResponse mockStreamResponse(String body) throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restStreamResponse.getBodyReader()).thenReturn(new StringReader(body));
+
+        return restStreamResponse;
+    }
+
+    private void mockJsonParsing() {
+        final Gson gson = new Gson();
+        when(gsonWrapper.createJsonReader(any(Reader.class))).thenAnswer(new Answer<JsonReader>() {
+            public JsonReader answer(InvocationOnMock invocation) {
+                return new JsonReader((Reader) invocation.getArguments()[0]);
+            }
+        });
+        when(gsonWrapper.fromJson(any(JsonReader.class), eq(Song.class))).thenAnswer(new Answer<Song>() {
+            public Song answer(InvocationOnMock invocation) {
+                return gson.fromJson((JsonReader) invocation.getArguments()[0], Song.class);
+            }
+        });
+    }
+
+    public void testConsFailsDueToNullClientMetrics() {
+        try {
+            new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                    loginResponseFactory, new PlayEndpoints(), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSearchRecordsCallAndParse() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        playClient = new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory, new PlayEndpoints(), clientMetrics);
+
+        RestResponse searchRestResponse = mock(RestResponse.class);
+        when(restClient.doPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH), isA((Map.class)),
+                isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(searchRestResponse);
+        when(searchRestResponse.getBody()).thenReturn("searchResultBody");
+        when(searchRestResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        when(gsonWrapper.fromJson("searchResultBody", SearchResponse.class)).thenReturn(searchResponse);
+        SearchResults searchResults = mock(SearchResults.class);
+        when(searchResponse.getResults()).thenReturn(searchResults);
+
+        playClient.search(query, playSession);
+
+        verify(clientMetrics).recordParse(eq(Path.MUSIC_SEARCH), anyLong());
+        verify(clientMetrics).recordCall(eq(Operation.SEARCH), anyLong(), eq(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testGetPlayURIRecordsFailedCall() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        playClient = new PlayClient(restClient, playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory, new PlayEndpoints(), clientMetrics);
+
+        when(restClient.doGet(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_PLAY), isA(Map.class),
+                isA(Map.class), isA(Map.class), anyString())).thenThrow(new IOException("connection reset"));
+
+        try {
+            playClient.getPlayURI(songId, playSession);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        verify(clientMetrics).recordCall(eq(Operation.GET_PLAY_URI), anyLong(), eq(false));
+        verify(clientMetrics, never()).recordParse(anyString(), anyLong());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSearchIsRateLimitedBySession() throws IOException, URISyntaxException {
+        RestResponse searchRestResponse = mock(RestResponse.class);
+        when(restClient.doPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH), isA((Map.class)),
+                isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), anyString()))
+                .thenReturn(searchRestResponse);
+        when(searchRestResponse.getBody()).thenReturn("searchResultBody");
+        when(searchRestResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        when(gsonWrapper.fromJson("searchResultBody", SearchResponse.class)).thenReturn(searchResponse);
+        SearchResults searchResults = mock(SearchResults.class);
+        when(searchResponse.getResults()).thenReturn(searchResults);
+        when(playSession.getAuthToken()).thenReturn("authToken");
+
+        playClient.search(query, playSession);
+
+        // the RestClient takes a token for the session on every attempt
+        verify(restClient).doPost(eq(Const.USE_HTTPS), eq(HostName.PLAY), eq(Path.MUSIC_SEARCH),
+                isA((Map.class)), isA(Map.class), (Map<String, String>) isNull(), isA(Map.class), eq("authToken"));
+    }
 }
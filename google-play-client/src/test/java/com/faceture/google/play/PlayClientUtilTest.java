@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.*;
+import com.faceture.rest.RestResponse;
+import com.faceture.rest.RestStreamResponse;
+import com.google.gson.stream.JsonReader;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the PlayClientUtil
+ */
+public class PlayClientUtilTest extends TestCase {
+
+    // class under test
+    PlayClientUtil playClientUtil;
+
+    // dependencies
+    PlaySessionFactory playSessionFactory;
+    GoogleUtil googleUtil;
+    GsonWrapper gsonWrapper;
+    PlayDomainFactory playDomainFactory;
+    LoginResponseFactory loginResponseFactory;
+
+    // params
+    final String xtValue = "xtValue";
+    final String sjsaidValue = "sjsaidValue";
+    final String authToken = "authToken";
+    final String authHeaderValue = "authHeaderValue";
+    final String json = "json";
+    PlaySession playSession;
+    RestResponse restResponse;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        // mock dependencies
+        playSessionFactory = mock(PlaySessionFactory.class);
+        googleUtil = mock(GoogleUtil.class);
+        gsonWrapper = mock(GsonWrapper.class);
+        playDomainFactory = mock(PlayDomainFactory.class);
+        loginResponseFactory = mock(LoginResponseFactory.class);
+
+        // mock params
+        playSession = mock(PlaySession.class);
+        when(playSession.getXtCookie()).thenReturn(xtValue);
+        when(playSession.getSjsaidCookie()).thenReturn(sjsaidValue);
+        when(playSession.getAuthToken()).thenReturn(authToken);
+        restResponse = mock(RestResponse.class);
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restResponse.getBody()).thenReturn(json);
+
+        playClientUtil = new PlayClientUtil(playSessionFactory, googleUtil, gsonWrapper, playDomainFactory,
+                loginResponseFactory);
+    }
+
+    public void testConsFailsDueToNullPlaySessionFactory() {
+        try {
+            new PlayClientUtil(null, googleUtil, gsonWrapper, playDomainFactory, loginResponseFactory);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullGoogleUtil() {
+        try {
+            new PlayClientUtil(playSessionFactory, null, gsonWrapper, playDomainFactory, loginResponseFactory);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullGsonWrapper() {
+        try {
+            new PlayClientUtil(playSessionFactory, googleUtil, null, playDomainFactory, loginResponseFactory);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullPlayDomainFactory() {
+        try {
+            new PlayClientUtil(playSessionFactory, googleUtil, gsonWrapper, null, loginResponseFactory);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullLoginResponseFactory() {
+        try {
+            new PlayClientUtil(playSessionFactory, googleUtil, gsonWrapper, playDomainFactory, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateLoginFormFailsDueToEmptyEmailAddress() {
+        try {
+            playClientUtil.createLoginForm("", "password");
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateLoginFormHappyPath() {
+        Map<String, String> loginForm = playClientUtil.createLoginForm("emailAddress", "password");
+
+        assertEquals(FormFieldConst.SERVICE_VALUE, loginForm.get(FormFieldConst.SERVICE_NAME));
+        assertEquals("emailAddress", loginForm.get(FormFieldConst.EMAIL_NAME));
+        assertEquals("password", loginForm.get(FormFieldConst.PASSWORD_NAME));
+    }
+
+    public void testGetGoogleLoginFailureWhenOk() {
+        assertNull(playClientUtil.getGoogleLoginFailure(restResponse));
+    }
+
+    public void testGetGoogleLoginFailureDueToBadCredentials() {
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_FORBIDDEN);
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null)).thenReturn(loginResponse);
+
+        assertEquals(loginResponse, playClientUtil.getGoogleLoginFailure(restResponse));
+    }
+
+    public void testGetGoogleLoginFailureDueToOtherError() {
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.FAILURE, null)).thenReturn(loginResponse);
+
+        assertEquals(loginResponse, playClientUtil.getGoogleLoginFailure(restResponse));
+    }
+
+    public void testGetAuthToken() {
+        when(googleUtil.getAuthTokenFromLoginResponse(json)).thenReturn(authToken);
+
+        assertEquals(authToken, playClientUtil.getAuthToken(restResponse));
+    }
+
+    public void testCreatePlayLoginQueryParams() {
+        Map<String, String> queryParams = playClientUtil.createPlayLoginQueryParams();
+
+        assertEquals(QueryParamConst.HL_VALUE, queryParams.get(QueryParamConst.HL_NAME));
+        assertEquals(QueryParamConst.U_VALUE, queryParams.get(QueryParamConst.U_NAME));
+    }
+
+    public void testCreatePlayLoginResponseHappyPath() {
+        Map<String, String> cookies = new HashMap<String, String>();
+        cookies.put(CookieName.XT, xtValue);
+        cookies.put(CookieName.SJSAID, sjsaidValue);
+        when(restResponse.getCookies()).thenReturn(cookies);
+        when(playSessionFactory.create(xtValue, sjsaidValue, authToken)).thenReturn(playSession);
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.SUCCESS, playSession)).thenReturn(loginResponse);
+
+        assertEquals(loginResponse, playClientUtil.createPlayLoginResponse(restResponse, authToken));
+    }
+
+    public void testCreatePlayLoginResponseDueToBadCredentials() {
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_FORBIDDEN);
+        LoginResponse loginResponse = mock(LoginResponse.class);
+        when(loginResponseFactory.create(LoginResult.BAD_CREDENTIALS, null)).thenReturn(loginResponse);
+
+        assertEquals(loginResponse, playClientUtil.createPlayLoginResponse(restResponse, authToken));
+    }
+
+    public void testCreateAuthHeaders() {
+        when(googleUtil.createAuthHeaderValue(authToken)).thenReturn(authHeaderValue);
+
+        assertEquals(authHeaderValue, playClientUtil.createAuthHeaders(authToken).get(HeaderName.AUTHORIZATION));
+    }
+
+    public void testCreateSessionQueryParams() {
+        Map<String, String> queryParams = playClientUtil.createSessionQueryParams(playSession);
+
+        assertEquals(QueryParamConst.U_VALUE, queryParams.get(QueryParamConst.U_NAME));
+        assertEquals(xtValue, queryParams.get(QueryParamConst.XT_NAME));
+    }
+
+    public void testCreatePlayQueryParamsFailsDueToEmptySongId() {
+        try {
+            playClientUtil.createPlayQueryParams("");
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreatePlayQueryParams() {
+        Map<String, String> queryParams = playClientUtil.createPlayQueryParams("songId");
+
+        assertEquals(QueryParamConst.PT_VALUE, queryParams.get(QueryParamConst.PT_NAME));
+        assertEquals("songId", queryParams.get(QueryParamConst.SONG_ID_NAME));
+    }
+
+    public void testCreateSessionCookies() {
+        Map<String, String> cookies = playClientUtil.createSessionCookies(playSession);
+
+        assertEquals(xtValue, cookies.get(CookieName.XT));
+        assertEquals(sjsaidValue, cookies.get(CookieName.SJSAID));
+    }
+
+    public void testCreateSearchForm() {
+        SearchRequest searchRequest = new SearchRequest("query");
+        when(playDomainFactory.createSearchRequest("query")).thenReturn(searchRequest);
+        when(gsonWrapper.toJson(searchRequest)).thenReturn(json);
+
+        assertEquals(json, playClientUtil.createSearchForm("query").get(FormFieldConst.JSON_NAME));
+    }
+
+    public void testCreateLoadAllTracksFormForFirstPage() {
+        LoadAllTracksRequest loadAllTracksRequest = new LoadAllTracksRequest();
+        when(playDomainFactory.createLoadAllTracksRequest()).thenReturn(loadAllTracksRequest);
+        when(gsonWrapper.toJson(loadAllTracksRequest)).thenReturn(json);
+
+        assertEquals(json, playClientUtil.createLoadAllTracksForm(null).get(FormFieldConst.JSON_NAME));
+    }
+
+    public void testCreateLoadAllTracksFormForNextPage() {
+        LoadAllTracksRequest loadAllTracksRequest = new LoadAllTracksRequest("token");
+        when(playDomainFactory.createLoadAllTracksRequest("token")).thenReturn(loadAllTracksRequest);
+        when(gsonWrapper.toJson(loadAllTracksRequest)).thenReturn(json);
+
+        assertEquals(json, playClientUtil.createLoadAllTracksForm("token").get(FormFieldConst.JSON_NAME));
+    }
+
+    public void testCreateLoadAllTracksFormForChanges() {
+        LoadAllTracksRequest loadAllTracksRequest = new LoadAllTracksRequest();
+        when(playDomainFactory.createLoadAllTracksRequest(null, 1.5)).thenReturn(loadAllTracksRequest);
+        when(gsonWrapper.toJson(loadAllTracksRequest)).thenReturn(json);
+
+        assertEquals(json, playClientUtil.createLoadAllTracksForm("", 1.5).get(FormFieldConst.JSON_NAME));
+    }
+
+    public void testCheckStatusFailsDueToBadStatus() {
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+
+        try {
+            playClientUtil.checkStatus(restResponse);
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testCheckStatusOfStreamFailsDueToBadStatus() throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        when(restStreamResponse.readBody()).thenReturn("error");
+
+        try {
+            playClientUtil.checkStatus(restStreamResponse);
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+
+        verify(restStreamResponse).close();
+    }
+
+    public void testCheckStatusFailsWithSessionExpiredFor401() {
+        RestResponse restResponse = mock(RestResponse.class);
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_UNAUTHORIZED);
+
+        try {
+            playClientUtil.checkStatus(restResponse);
+
+            fail("should have thrown SessionExpiredException");
+        }
+        catch (SessionExpiredException e) {
+            assertEquals(HttpStatus.SC_UNAUTHORIZED, e.getStatusCode());
+            assertTrue(e.getMessage().startsWith("Bad status: 401"));
+        }
+    }
+
+    public void testCheckStatusOfStreamFailsWithSessionExpiredFor403() throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_FORBIDDEN);
+        when(restStreamResponse.readBody()).thenReturn("error");
+
+        try {
+            playClientUtil.checkStatus(restStreamResponse);
+
+            fail("should have thrown SessionExpiredException");
+        }
+        catch (SessionExpiredException e) {
+            assertEquals(HttpStatus.SC_FORBIDDEN, e.getStatusCode());
+        }
+
+        verify(restStreamResponse).close();
+    }
+
+    public void testCheckStatusFailsWithoutSessionExpiredFor503() {
+        RestResponse restResponse = mock(RestResponse.class);
+        when(restResponse.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+
+        try {
+            playClientUtil.checkStatus(restResponse);
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            assertFalse(e instanceof SessionExpiredException);
+        }
+    }
+
+    public void testCreateLoadAllTracksReader() throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        Reader bodyReader = new StringReader("{}");
+        when(restStreamResponse.getBodyReader()).thenReturn(bodyReader);
+        when(gsonWrapper.createJsonReader(bodyReader)).thenReturn(new JsonReader(bodyReader));
+
+        assertNotNull(playClientUtil.createLoadAllTracksReader(restStreamResponse));
+        verify(restStreamResponse, never()).close();
+    }
+
+    public void testGetSearchResults() {
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        SearchResults searchResults = mock(SearchResults.class);
+        when(gsonWrapper.fromJson(json, SearchResponse.class)).thenReturn(searchResponse);
+        when(searchResponse.getResults()).thenReturn(searchResults);
+
+        assertEquals(searchResults, playClientUtil.getSearchResults(restResponse));
+    }
+
+    public void testGetPlayURI() throws URISyntaxException {
+        StreamingUrl streamingUrl = new StreamingUrl();
+        streamingUrl.setUrl("http://google.com");
+        when(gsonWrapper.fromJson(json, StreamingUrl.class)).thenReturn(streamingUrl);
+
+        assertEquals(new URI("http://google.com"), playClientUtil.getPlayURI(restResponse));
+    }
+
+    public void testGetContinuationToken() {
+        LoadAllTracksResponse loadAllTracksResponse = new LoadAllTracksResponse();
+        assertNull(playClientUtil.getContinuationToken(loadAllTracksResponse));
+
+        loadAllTracksResponse.setContinuationToken("");
+        assertNull(playClientUtil.getContinuationToken(loadAllTracksResponse));
+
+        loadAllTracksResponse.setContinuationToken("token");
+        assertEquals("token", playClientUtil.getContinuationToken(loadAllTracksResponse));
+    }
+
+    public void testGetPlaylists() {
+        LoadAllPlaylistsResponse loadAllPlaylistsResponse = new LoadAllPlaylistsResponse();
+        Collection<Playlist> playlists = new ArrayList<Playlist>();
+        loadAllPlaylistsResponse.setPlaylists(playlists);
+        when(gsonWrapper.fromJson(json, LoadAllPlaylistsResponse.class)).thenReturn(loadAllPlaylistsResponse);
+
+        assertEquals(playlists, playClientUtil.getPlaylists(restResponse));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the PlayEndpoints
+ */
+public class PlayEndpointsTest extends TestCase {
+
+    public void testDefaults() {
+        PlayEndpoints playEndpoints = new PlayEndpoints();
+
+        assertEquals(Const.USE_HTTPS, playEndpoints.isHttps());
+        assertEquals(HostName.GOOGLE, playEndpoints.getGoogleHostName());
+        assertEquals(HostName.PLAY, playEndpoints.getPlayHostName());
+    }
+
+    public void testCons() {
+        PlayEndpoints playEndpoints = new PlayEndpoints(false, "localhost:1", "localhost:2");
+
+        assertFalse(playEndpoints.isHttps());
+        assertEquals("localhost:1", playEndpoints.getGoogleHostName());
+        assertEquals("localhost:2", playEndpoints.getPlayHostName());
+    }
+
+    public void testConsFailsDueToNullGoogleHostName() {
+        try {
+            new PlayEndpoints(false, null, "localhost");
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToEmptyPlayHostName() {
+        try {
+            new PlayEndpoints(false, "localhost", "");
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
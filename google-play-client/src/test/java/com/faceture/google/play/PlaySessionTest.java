@@ -98,4 +98,24 @@ public class PlaySessionTest extends TestCase {
     public void testGetAuthTokenHappyPath() {
         assertEquals(authToken, playSession.getAuthToken());
     }
+
+    public void testConsFailsDueToNegativeIssuedAtMillis() {
+        try {
+            playSession = new PlaySession(xtCookie, sjsaidCookie, authToken, -1);
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testIssuedAtMillisDefaultsToNow() {
+        long before = System.currentTimeMillis();
+        playSession = new PlaySession(xtCookie, sjsaidCookie, authToken);
+
+        assertTrue(playSession.getIssuedAtMillis() >= before);
+        assertTrue(playSession.getIssuedAtMillis() <= System.currentTimeMillis());
+    }
+
+    public void testGetIssuedAtMillisHappyPath() {
+        assertEquals(1234, new PlaySession(xtCookie, sjsaidCookie, authToken, 1234).getIssuedAtMillis());
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.cache.MutableClock;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the PlayUriCache
+ */
+public class PlayUriCacheTest extends TestCase {
+
+    // class under test
+    PlayUriCache playUriCache;
+
+    // dependencies
+    PlayClient playClient;
+    MutableClock clock;
+
+    // params
+    final String songId = "songId";
+    final long nowMillis = 1350000000000L;
+    final long marginMillis = 60000;
+    PlaySession playSession;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+        clock = new MutableClock(nowMillis);
+        playSession = new PlaySession("xt", "sjsaid", "authToken");
+
+        playUriCache = new PlayUriCache(playClient, 10, marginMillis, 5000, clock);
+    }
+
+    public void testConsFailsDueToNullPlayClient() {
+        try {
+            new PlayUriCache(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetPlayURIFailsDueToEmptySongId() throws IOException, URISyntaxException {
+        try {
+            playUriCache.getPlayURI("", playSession);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetPlayURIFailsDueToNullPlaySession() throws IOException, URISyntaxException {
+        try {
+            playUriCache.getPlayURI(songId, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetExpireMillis() throws URISyntaxException {
+        assertEquals(1350000600000L, PlayUriCache.getExpireMillis(
+                new URI("http://o-o.preferred.lax.v1.lscache.c.example.com/videoplayback?id=1&expire=1350000600&sig=x")));
+        assertEquals(0, PlayUriCache.getExpireMillis(new URI("http://example.com/videoplayback?id=1")));
+        assertEquals(0, PlayUriCache.getExpireMillis(new URI("http://example.com/videoplayback?expire=soon")));
+        assertEquals(0, PlayUriCache.getExpireMillis(new URI("http://example.com/videoplayback")));
+    }
+
+    public void testCachedUntilMarginBeforeExpiry() throws IOException, URISyntaxException {
+        // expires in ten minutes
+        URI uri = new URI("http://example.com/videoplayback?expire=" + (nowMillis / 1000 + 600));
+        when(playClient.getPlayURI(songId, playSession)).thenReturn(uri);
+
+        assertEquals(uri, playUriCache.getPlayURI(songId, playSession));
+        assertEquals(uri, playUriCache.getPlayURI(songId, playSession));
+        verify(playClient, times(1)).getPlayURI(songId, playSession);
+
+        // one margin before the expiration it's loaded again
+        clock.setMillis(nowMillis + 600000 - marginMillis);
+        playUriCache.getPlayURI(songId, playSession);
+        verify(playClient, times(2)).getPlayURI(songId, playSession);
+    }
+
+    public void testUrlWithoutExpiryUsesDefault() throws IOException, URISyntaxException {
+        when(playClient.getPlayURI(songId, playSession)).thenReturn(new URI("http://example.com/videoplayback"));
+
+        playUriCache.getPlayURI(songId, playSession);
+        clock.setMillis(nowMillis + 4999);
+        playUriCache.getPlayURI(songId, playSession);
+        verify(playClient, times(1)).getPlayURI(songId, playSession);
+
+        clock.setMillis(nowMillis + 5000);
+        playUriCache.getPlayURI(songId, playSession);
+        verify(playClient, times(2)).getPlayURI(songId, playSession);
+    }
+
+    public void testCachedPerSession() throws IOException, URISyntaxException {
+        PlaySession otherSession = new PlaySession("xt", "sjsaid", "otherAuthToken");
+        when(playClient.getPlayURI(eq(songId), any(PlaySession.class)))
+                .thenReturn(new URI("http://example.com/videoplayback"));
+
+        playUriCache.getPlayURI(songId, playSession);
+        playUriCache.getPlayURI(songId, otherSession);
+
+        verify(playClient).getPlayURI(songId, playSession);
+        verify(playClient).getPlayURI(songId, otherSession);
+        assertEquals(2, playUriCache.size());
+    }
+
+    public void testInvalidate() throws IOException, URISyntaxException {
+        when(playClient.getPlayURI(songId, playSession)).thenReturn(new URI("http://example.com/videoplayback"));
+
+        playUriCache.getPlayURI(songId, playSession);
+        playUriCache.invalidate(songId, playSession);
+        playUriCache.getPlayURI(songId, playSession);
+
+        verify(playClient, times(2)).getPlayURI(songId, playSession);
+    }
+}
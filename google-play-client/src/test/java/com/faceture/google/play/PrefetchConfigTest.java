@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Executor;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the PrefetchConfig
+ */
+public class PrefetchConfigTest extends TestCase {
+
+    Executor executor;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        executor = mock(Executor.class);
+    }
+
+    public void testConsFailsDueToZeroPrefetchPages() {
+        try {
+            new PrefetchConfig(0, 10, executor);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroBufferSize() {
+        try {
+            new PrefetchConfig(1, 0, executor);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullExecutor() {
+        try {
+            new PrefetchConfig(1, 10, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testDefaults() {
+        PrefetchConfig prefetchConfig = new PrefetchConfig();
+
+        assertEquals(PrefetchConfig.DEFAULT_PREFETCH_PAGES, prefetchConfig.getPrefetchPages());
+        assertEquals(PrefetchConfig.DEFAULT_BUFFER_SIZE, prefetchConfig.getBufferSize());
+        assertNotNull(prefetchConfig.getExecutor());
+
+        // the default executor is shared
+        assertSame(prefetchConfig.getExecutor(), new PrefetchConfig().getExecutor());
+    }
+
+    public void testHappyPath() {
+        PrefetchConfig prefetchConfig = new PrefetchConfig(2, 10, executor);
+
+        assertEquals(2, prefetchConfig.getPrefetchPages());
+        assertEquals(10, prefetchConfig.getBufferSize());
+        assertEquals(executor, prefetchConfig.getExecutor());
+    }
+}
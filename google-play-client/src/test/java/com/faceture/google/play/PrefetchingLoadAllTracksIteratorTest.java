@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.GoogleUtil;
+import com.faceture.google.gson.GsonWrapper;
+import com.faceture.google.play.domain.PlayDomainFactory;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.rest.RequestRetrier;
+import com.faceture.rest.RestStreamResponse;
+import com.faceture.rest.RetryPolicy;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the PrefetchingLoadAllTracksIterator
+ */
+public class PrefetchingLoadAllTracksIteratorTest extends TestCase {
+
+    // dependencies
+    LoadAllTracksPageSource pageSource;
+    PlayClientUtil playClientUtil;
+    ExecutorService executor;
+
+    // pages, each with the token of the next one ahead of its songs
+    RestStreamResponse firstPage;
+    RestStreamResponse secondPage;
+    RestStreamResponse thirdPage;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        pageSource = mock(LoadAllTracksPageSource.class);
+        playClientUtil = new PlayClientUtil(mock(PlaySessionFactory.class), mock(GoogleUtil.class),
+                new GsonWrapper(new Gson()), mock(PlayDomainFactory.class), mock(LoginResponseFactory.class));
+        executor = Executors.newCachedThreadPool();
+
+        firstPage = mockPage("{\"continuationToken\":\"second\",\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+        secondPage = mockPage("{\"continuationToken\":\"third\",\"playlist\":[{\"id\":\"3\"}]}");
+        thirdPage = mockPage("{\"playlist\":[{\"id\":\"4\"}]}");
+        when(pageSource.openPage(null)).thenReturn(firstPage);
+        when(pageSource.openPage("second")).thenReturn(secondPage);
+        when(pageSource.openPage("third")).thenReturn(thirdPage);
+    }
+
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullPageSource() {
+        try {
+            new PrefetchingLoadAllTracksIterator(null, playClientUtil, null, new PrefetchConfig(1, 10, executor));
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullPlayClientUtil() {
+        try {
+            new PrefetchingLoadAllTracksIterator(pageSource, null, null, new PrefetchConfig(1, 10, executor));
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullPrefetchConfig() {
+        try {
+            new PrefetchingLoadAllTracksIterator(pageSource, playClientUtil, null, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullRequestRetrier() {
+        try {
+            new PrefetchingLoadAllTracksIterator(pageSource, playClientUtil, null, new PrefetchConfig(1, 10, executor),
+                    null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testIteratesAcrossPages() throws IOException, URISyntaxException {
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10);
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals(0, iterator.getPageNumber());
+        assertNull(iterator.getPageContinuationToken());
+        assertEquals("2", iterator.next().getId());
+        assertEquals("3", iterator.next().getId());
+        assertEquals(1, iterator.getPageNumber());
+        assertEquals("second", iterator.getPageContinuationToken());
+        assertEquals("4", iterator.next().getId());
+        assertEquals("third", iterator.getPageContinuationToken());
+        assertEquals(1, iterator.getPageSongCount());
+
+        assertFalse(iterator.hasNext());
+        assertTrue(iterator.isFinished());
+        assertNull(iterator.nextSong());
+
+        verify(firstPage).close();
+        verify(secondPage).close();
+        verify(thirdPage).close();
+        verify(firstPage, never()).abort();
+        iterator.close();
+    }
+
+    public void testNextPageRequestedWhileReadingCurrentOne() throws Exception {
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10);
+
+        // only the first song has been read, but the second page is already on its way
+        assertEquals("1", iterator.next().getId());
+        waitForPage("second");
+
+        iterator.close();
+    }
+
+    public void testPrefetchIsBounded() throws Exception {
+        // one page ahead, one song buffered
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 1);
+
+        assertEquals("1", iterator.next().getId());
+        waitForPage("second");
+        Thread.sleep(200);
+
+        // the loader is held back by the full buffer, so the third page isn't requested yet
+        verify(pageSource, never()).openPage("third");
+
+        iterator.close();
+    }
+
+    public void testRequestsAreChainedAheadWhenTokensComeFirst() throws Exception {
+        // two pages ahead, one song buffered
+        PrefetchingLoadAllTracksIterator iterator = createIterator(2, 1);
+
+        // the loader is held back on the first page, but the second page's token has gone out with the third request
+        assertEquals("1", iterator.next().getId());
+        waitForPage("third");
+
+        assertEquals("2", iterator.next().getId());
+        assertEquals("3", iterator.next().getId());
+        assertEquals("4", iterator.next().getId());
+        assertFalse(iterator.hasNext());
+        verify(pageSource, times(1)).openPage("third");
+
+        iterator.close();
+    }
+
+    public void testNoEarlyRequestWhenTokenComesAfterSongs() throws Exception {
+        firstPage = mockPage("{\"playlist\":[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"},{\"id\":\"4\"}]," +
+                "\"continuationToken\":\"second\"}");
+        secondPage = mockPage("{\"playlist\":[{\"id\":\"5\"}]}");
+        when(pageSource.openPage(null)).thenReturn(firstPage);
+        when(pageSource.openPage("second")).thenReturn(secondPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(2, 1);
+
+        // the loader is held back on the first page by the full buffer
+        assertEquals("1", iterator.next().getId());
+        Thread.sleep(200);
+
+        // the token isn't known until the first page's songs are done
+        verify(pageSource, never()).openPage("second");
+
+        for (int id = 2; id <= 5; id++) {
+            assertEquals(String.valueOf(id), iterator.next().getId());
+        }
+        assertFalse(iterator.hasNext());
+
+        iterator.close();
+    }
+
+    public void testCloseAbortsPagesRequestedAhead() throws Exception {
+        PrefetchingLoadAllTracksIterator iterator = createIterator(2, 1);
+
+        assertEquals("1", iterator.next().getId());
+        waitForPage("third");
+        iterator.close();
+
+        eventually(() -> verify(secondPage, atLeastOnce()).abort());
+        eventually(() -> verify(thirdPage, atLeastOnce()).abort());
+    }
+
+    public void testCloseAbortsLoading() throws Exception {
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 1);
+
+        assertEquals("1", iterator.next().getId());
+        iterator.close();
+
+        // the loader was blocked on the full buffer, it gives up on the page once it notices
+        eventually(() -> verify(firstPage, atLeastOnce()).abort());
+
+        try {
+            iterator.hasNext();
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testFailureIsPassedToReader() throws Exception {
+        when(pageSource.openPage("second")).thenThrow(new IOException());
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10);
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+
+        try {
+            iterator.hasNext();
+
+            fail("should have thrown UncheckedIOException");
+        }
+        catch (UncheckedIOException e) {}
+    }
+
+    public void testErrorIsPassedToReader() throws Exception {
+        when(pageSource.openPage("second")).thenThrow(new StackOverflowError());
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10);
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+
+        try {
+            iterator.nextSong();
+
+            fail("should have thrown StackOverflowError");
+        }
+        catch (StackOverflowError e) {}
+    }
+
+    public void testPageThatFailsToOpenIsClosed() throws Exception {
+        RestStreamResponse badPage = mock(RestStreamResponse.class);
+        when(badPage.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(badPage.getBodyReader()).thenThrow(new IllegalStateException());
+        when(pageSource.openPage("second")).thenReturn(badPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10, createRequestRetrier(3));
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+        try {
+            iterator.nextSong();
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+
+        verify(badPage).abort();
+        verify(badPage).close();
+        verify(pageSource).openPage("second");
+    }
+
+    public void testPageThatBreaksWhileOpeningIsResumed() throws Exception {
+        RestStreamResponse brokenPage = mock(RestStreamResponse.class);
+        // the error body breaks off while it's read
+        when(brokenPage.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        when(brokenPage.readBody()).thenThrow(new IOException("connection reset"));
+        when(pageSource.openPage(null)).thenReturn(brokenPage, firstPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10, createRequestRetrier(3));
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+        assertEquals("3", iterator.next().getId());
+        assertEquals("4", iterator.next().getId());
+        assertFalse(iterator.hasNext());
+
+        verify(brokenPage).abort();
+        verify(brokenPage, atLeastOnce()).close();
+        verify(pageSource, times(2)).openPage(null);
+        iterator.close();
+    }
+
+    public void testBrokenPageIsResumed() throws Exception {
+        RestStreamResponse brokenPage = mockBrokenPage("{\"continuationToken\":\"second\",\"playlist\":[" +
+                "{\"id\":\"1\"},{\"id\":\"2\"},");
+        RestStreamResponse reloadedPage = mockPage("{\"continuationToken\":\"second\",\"playlist\":[" +
+                "{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"2b\"}]}");
+        when(pageSource.openPage(null)).thenReturn(brokenPage, reloadedPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10, createRequestRetrier(3));
+
+        // the songs already read are skipped on the reloaded page, and the next page is only requested once
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+        assertEquals("2b", iterator.next().getId());
+        assertEquals(0, iterator.getPageNumber());
+        assertEquals("3", iterator.next().getId());
+        assertEquals("4", iterator.next().getId());
+        assertFalse(iterator.hasNext());
+
+        verify(brokenPage).abort();
+        verify(brokenPage).close();
+        verify(pageSource, times(2)).openPage(null);
+        verify(pageSource).openPage("second");
+        iterator.close();
+    }
+
+    public void testBrokenPrefetchedPageIsResumed() throws Exception {
+        RestStreamResponse brokenPage = mockBrokenPage("{\"continuationToken\":\"third\",\"play");
+        when(pageSource.openPage("second")).thenReturn(brokenPage, secondPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10, createRequestRetrier(3));
+
+        assertEquals("1", iterator.next().getId());
+        assertEquals("2", iterator.next().getId());
+        assertEquals("3", iterator.next().getId());
+        assertEquals("4", iterator.next().getId());
+        assertFalse(iterator.hasNext());
+
+        verify(brokenPage).abort();
+        verify(brokenPage).close();
+        verify(pageSource, times(2)).openPage("second");
+        iterator.close();
+    }
+
+    public void testBrokenPageFailsWithoutRetries() throws Exception {
+        RestStreamResponse brokenPage = mockBrokenPage("{\"playlist\":[{\"id\":\"1\"},");
+        when(pageSource.openPage(null)).thenReturn(brokenPage);
+        PrefetchingLoadAllTracksIterator iterator = createIterator(1, 10);
+
+        assertEquals("1", iterator.next().getId());
+        try {
+            iterator.hasNext();
+
+            fail("should have thrown UncheckedIOException");
+        }
+        catch (UncheckedIOException e) {}
+
+        verify(pageSource).openPage(null);
+    }
+
+    private void waitForPage(final String continuationToken) throws Exception {
+        eventually(() -> {
+            try {
+                verify(pageSource).openPage(continuationToken);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Retries the verification for up to two seconds, for things done by the loader thread
+     */
+    private void eventually(Runnable verification) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                verification.run();
+                return;
+            }
+            catch (AssertionError e) {
+                Thread.sleep(20);
+            }
+        }
+
+        verification.run();
+    }
+
+    private PrefetchingLoadAllTracksIterator createIterator(int prefetchPages, int bufferSize) {
+        return new PrefetchingLoadAllTracksIterator(pageSource, playClientUtil, null,
+                new PrefetchConfig(prefetchPages, bufferSize, executor));
+    }
+
+    private PrefetchingLoadAllTracksIterator createIterator(int prefetchPages, int bufferSize,
+                                                            RequestRetrier requestRetrier)
+    {
+        return new PrefetchingLoadAllTracksIterator(pageSource, playClientUtil, null,
+                new PrefetchConfig(prefetchPages, bufferSize, executor), requestRetrier);
+    }
+
+    private RequestRetrier createRequestRetrier(int maxAttempts) {
+        // no waiting between the attempts
+        return new RequestRetrier(new RetryPolicy(maxAttempts, 0, 0, 0, 0.1, 10, Collections.<String>emptySet()),
+                new NoOpClientMetrics());
+    }
+
+    private RestStreamResponse mockPage(String body) throws IOException {
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restStreamResponse.getBodyReader()).thenReturn(new StringReader(body));
+
+        return restStreamResponse;
+    }
+
+    /**
+     * @return a page whose connection is reset after the given part of the body
+     */
+    private RestStreamResponse mockBrokenPage(String body) throws IOException {
+        final StringReader bodyReader = new StringReader(body);
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restStreamResponse.getBodyReader()).thenReturn(new Reader() {
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = bodyReader.read(buffer, offset, length);
+                if (read < 0) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+
+            public void close() {
+            }
+        });
+
+        return restStreamResponse;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.cache.MutableClock;
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the SearchCache
+ */
+public class SearchCacheTest extends TestCase {
+
+    // class under test
+    SearchCache searchCache;
+
+    // dependencies
+    PlayClient playClient;
+    MutableClock clock;
+
+    // params
+    final String query = "query";
+    final long timeToLiveMillis = 1000;
+    PlaySession playSession;
+    SearchResults searchResults;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+        clock = new MutableClock(0);
+        playSession = new PlaySession("xt", "sjsaid", "authToken");
+        searchResults = new SearchResults();
+        searchResults.setArtists(Arrays.asList(new Song()));
+        searchResults.setAlbums(Arrays.asList(new Song()));
+        searchResults.setSongs(Arrays.asList(new Song(), new Song()));
+
+        searchCache = new SearchCache(playClient, 10, timeToLiveMillis, clock);
+    }
+
+    public void testConsFailsDueToNullPlayClient() {
+        try {
+            new SearchCache(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroTimeToLive() {
+        try {
+            new SearchCache(playClient, 10, 0, clock);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchFailsDueToEmptyQuery() throws IOException, URISyntaxException {
+        try {
+            searchCache.search("", playSession);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchFailsDueToNullSession() throws IOException, URISyntaxException {
+        try {
+            searchCache.search(query, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchCachedUntilTimeToLive() throws IOException, URISyntaxException {
+        when(playClient.search(query, playSession)).thenReturn(searchResults);
+
+        assertSameResults(searchResults, searchCache.search(query, playSession));
+        clock.setMillis(timeToLiveMillis - 1);
+        assertSameResults(searchResults, searchCache.search(query, playSession));
+        verify(playClient, times(1)).search(query, playSession);
+
+        clock.setMillis(timeToLiveMillis);
+        searchCache.search(query, playSession);
+        verify(playClient, times(2)).search(query, playSession);
+    }
+
+    public void testCallerChangesDoNotReachTheCache() throws IOException, URISyntaxException {
+        when(playClient.search(query, playSession)).thenReturn(searchResults);
+
+        SearchResults first = searchCache.search(query, playSession);
+        first.getSongs().clear();
+        first.setAlbums(null);
+
+        SearchResults second = searchCache.search(query, playSession);
+        assertNotSame(first, second);
+        assertSameResults(searchResults, second);
+        verify(playClient, times(1)).search(query, playSession);
+    }
+
+    public void testSearchCachedPerSessionAndQuery() throws IOException, URISyntaxException {
+        PlaySession otherSession = new PlaySession("xt", "sjsaid", "otherAuthToken");
+
+        searchCache.search(query, playSession);
+        searchCache.search(query, otherSession);
+        searchCache.search("other query", playSession);
+        searchCache.search(query, playSession);
+
+        verify(playClient).search(query, playSession);
+        verify(playClient).search(query, otherSession);
+        verify(playClient).search("other query", playSession);
+        assertEquals(3, searchCache.size());
+
+        searchCache.clear();
+        assertEquals(0, searchCache.size());
+    }
+
+    public void testConcurrentIdenticalSearchesShareOneRequest() throws Exception {
+        final CountDownLatch searching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(playClient.search(query, playSession)).thenAnswer(invocation -> {
+            searching.countDown();
+            release.await();
+            return searchResults;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SearchResults> first = executor.submit(() -> searchCache.search(query, playSession));
+            assertTrue(searching.await(2, TimeUnit.SECONDS));
+            Future<SearchResults> second = executor.submit(() -> searchCache.search(query, playSession));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSameResults(searchResults, first.get(2, TimeUnit.SECONDS));
+            assertSameResults(searchResults, second.get(2, TimeUnit.SECONDS));
+            verify(playClient, times(1)).search(query, playSession);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testErrorReachesConcurrentSearches() throws Exception {
+        final CountDownLatch searching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(playClient.search(query, playSession)).thenAnswer(invocation -> {
+            searching.countDown();
+            release.await();
+            throw new StackOverflowError();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SearchResults> first = executor.submit(() -> searchCache.search(query, playSession));
+            assertTrue(searching.await(2, TimeUnit.SECONDS));
+            Future<SearchResults> second = executor.submit(() -> searchCache.search(query, playSession));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<SearchResults> future : Arrays.asList(first, second)) {
+                try {
+                    future.get(2, TimeUnit.SECONDS);
+
+                    fail("should have thrown ExecutionException");
+                }
+                catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof StackOverflowError);
+                }
+            }
+            assertEquals(0, searchCache.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertSameResults(SearchResults expected, SearchResults actual) {
+        assertEquals(expected.getArtists(), actual.getArtists());
+        assertEquals(expected.getAlbums(), actual.getAlbums());
+        assertEquals(expected.getSongs(), actual.getSongs());
+    }
+}
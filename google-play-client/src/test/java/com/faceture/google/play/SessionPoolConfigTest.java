@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Tests the SessionPoolConfig
+ */
+public class SessionPoolConfigTest extends TestCase {
+
+    final Executor executor = Runnable::run;
+
+    public void testDefaults() {
+        SessionPoolConfig sessionPoolConfig = new SessionPoolConfig();
+
+        assertEquals(SessionPoolConfig.DEFAULT_MAX_CONCURRENT_CALLS, sessionPoolConfig.getMaxConcurrentCalls());
+        assertEquals(SessionPoolConfig.DEFAULT_MAX_QUEUED_CALLS, sessionPoolConfig.getMaxQueuedCalls());
+        assertNotNull(sessionPoolConfig.getExecutor());
+
+        // the default pool is shared
+        assertSame(sessionPoolConfig.getExecutor(), new SessionPoolConfig().getExecutor());
+    }
+
+    public void testConsFailsDueToBadMaxConcurrentCalls() {
+        try {
+            new SessionPoolConfig(0, 10, executor);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToBadMaxQueuedCalls() {
+        try {
+            new SessionPoolConfig(10, 0, executor);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullExecutor() {
+        try {
+            new SessionPoolConfig(10, 10, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
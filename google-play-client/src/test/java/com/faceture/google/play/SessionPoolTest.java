@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play;
+
+import com.faceture.google.play.session.PlaySessionStore;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the SessionPool
+ */
+public class SessionPoolTest extends TestCase {
+
+    // class under test
+    SessionPool sessionPool;
+
+    // dependencies
+    PlayClient playClient;
+    List<Runnable> workers;
+
+    final PlaySession aliceSession = new PlaySession("xt", "sjsaid", "alice");
+    final PlaySession bobSession = new PlaySession("xt", "sjsaid", "bob");
+    final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+
+        // the workers only run when the test says so
+        workers = new ArrayList<Runnable>();
+        Executor executor = workers::add;
+
+        sessionPool = new SessionPool(playClient, new SessionPoolConfig(1, 3, executor));
+        sessionPool.putAccount("alice", aliceSession);
+        sessionPool.putAccount("bob", bobSession);
+    }
+
+    public void testConsFailsDueToNullPlayClient() {
+        try {
+            new SessionPool(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullSessionPoolConfig() {
+        try {
+            new SessionPool(playClient, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullPlaySessionStore() {
+        try {
+            new SessionPool(playClient, new SessionPoolConfig(), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testPutAccountFailsDueToBadArguments() throws IOException {
+        try {
+            sessionPool.putAccount("", aliceSession);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            sessionPool.putAccount("carol", null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            sessionPool.putAccount("carol", aliceSession, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testPutAccountReplacesTheSession() throws IOException {
+        PlaySession newSession = new PlaySession("xt2", "sjsaid2", "alice2");
+        sessionPool.putAccount("alice", newSession);
+
+        assertSame(newSession, sessionPool.getSession("alice"));
+        assertSame(bobSession, sessionPool.getSession("bob"));
+        assertNull(sessionPool.getSession("carol"));
+        assertEquals(2, sessionPool.getAccountIds().size());
+    }
+
+    public void testSubmitFailsDueToUnknownAccount() {
+        try {
+            sessionPool.submit("carol", record("carol"));
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSubmitMakesTheCallWithTheSession() throws Exception {
+        CompletableFuture<PlaySession> future = sessionPool.submit("alice",
+                (client, session) -> client == playClient ? session : null);
+        assertFalse(future.isDone());
+        assertEquals(1, sessionPool.getQueueDepth());
+        assertEquals(1, sessionPool.getAccountStats("alice").getQueueDepth());
+
+        runWorkers();
+
+        assertSame(aliceSession, future.get());
+        assertEquals(0, sessionPool.getQueueDepth());
+        AccountStats accountStats = sessionPool.getAccountStats("alice");
+        assertEquals(0, accountStats.getQueueDepth());
+        assertEquals(0, accountStats.getInFlight());
+        assertEquals(1, accountStats.getCompletedCount());
+        assertEquals(1, accountStats.getQueueWait().getCount());
+        assertEquals(1, accountStats.getLatency().getCount());
+    }
+
+    public void testBusyAccountDoesntStarveTheOthers() {
+        for (int i = 0; i < 3; i++) {
+            sessionPool.submit("alice", record("alice"));
+        }
+        sessionPool.submit("bob", record("bob"));
+
+        // one worker at most
+        assertEquals(1, workers.size());
+        runWorkers();
+
+        assertEquals(Arrays.asList("alice", "bob", "alice", "alice"), calls);
+    }
+
+    public void testWeightedAccountGetsMoreTurns() throws IOException {
+        sessionPool.putAccount("bob", bobSession, 2);
+        for (int i = 0; i < 3; i++) {
+            sessionPool.submit("alice", record("alice"));
+            sessionPool.submit("bob", record("bob"));
+        }
+
+        runWorkers();
+
+        assertEquals(Arrays.asList("alice", "bob", "bob", "alice", "bob", "alice"), calls);
+    }
+
+    public void testFullQueueRefusesCalls() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            sessionPool.submit("alice", record("alice"));
+        }
+
+        try {
+            sessionPool.submit("alice", record("alice")).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SessionPoolFullException);
+            assertEquals("alice", ((SessionPoolFullException) e.getCause()).getAccountId());
+        }
+        assertEquals(1, sessionPool.getAccountStats("alice").getRejectedCount());
+
+        // the other accounts have queues of their own
+        assertFalse(sessionPool.submit("bob", record("bob")).isDone());
+    }
+
+    public void testFailedCallFailsItsFuture() throws InterruptedException {
+        CompletableFuture<String> future = sessionPool.submit("alice", (client, session) -> {
+            throw new IOException("connection reset");
+        });
+
+        runWorkers();
+
+        try {
+            future.get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, sessionPool.getAccountStats("alice").getFailedCount());
+    }
+
+    public void testCancelledCallIsSkipped() {
+        sessionPool.submit("alice", record("alice")).cancel(false);
+        sessionPool.submit("bob", record("bob"));
+
+        runWorkers();
+
+        assertEquals(Collections.singletonList("bob"), calls);
+    }
+
+    public void testRemoveAccountCancelsItsCalls() {
+        CompletableFuture<String> future = sessionPool.submit("alice", record("alice"));
+        sessionPool.submit("bob", record("bob"));
+
+        assertTrue(sessionPool.removeAccount("alice"));
+        assertFalse(sessionPool.removeAccount("alice"));
+        assertTrue(future.isCancelled());
+        assertNull(sessionPool.getAccountStats("alice"));
+
+        runWorkers();
+
+        assertEquals(Collections.singletonList("bob"), calls);
+    }
+
+    public void testCloseCancelsTheWaitingCalls() {
+        CompletableFuture<String> future = sessionPool.submit("alice", record("alice"));
+
+        sessionPool.close();
+
+        assertTrue(future.isCancelled());
+        assertEquals(0, sessionPool.getQueueDepth());
+        try {
+            sessionPool.submit("alice", record("alice"));
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testRejectedWorkerFailsTheWaitingCalls() throws IOException, InterruptedException {
+        Executor rejecting = runnable -> {
+            throw new RejectedExecutionException("shut down");
+        };
+        sessionPool = new SessionPool(playClient, new SessionPoolConfig(1, 3, rejecting));
+        sessionPool.putAccount("alice", aliceSession);
+
+        try {
+            sessionPool.submit("alice", record("alice")).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(0, sessionPool.getAccountStats("alice").getQueueDepth());
+    }
+
+    private SessionCall<String> record(String accountId) {
+        return (client, session) -> {
+            calls.add(accountId);
+            return accountId;
+        };
+    }
+
+    private void runWorkers() {
+        while (!workers.isEmpty()) {
+            workers.remove(0).run();
+        }
+    }
+
+    public void testPutAccountSavesTheSession() throws IOException {
+        PlaySessionStore playSessionStore = mock(PlaySessionStore.class);
+        sessionPool = new SessionPool(playClient, new SessionPoolConfig(1, 3, workers::add), playSessionStore);
+
+        sessionPool.putAccount("alice", aliceSession, 3);
+
+        verify(playSessionStore).save("alice", aliceSession);
+    }
+
+    public void testSubmitReadsTheSessionBackFromTheStore() throws Exception {
+        PlaySessionStore playSessionStore = mock(PlaySessionStore.class);
+        when(playSessionStore.load("carol")).thenReturn(aliceSession);
+        sessionPool = new SessionPool(playClient, new SessionPoolConfig(1, 3, workers::add), playSessionStore);
+        assertNull(sessionPool.getSession("carol"));
+
+        CompletableFuture<PlaySession> first = sessionPool.submit("carol", (client, session) -> session);
+        CompletableFuture<PlaySession> second = sessionPool.submit("carol", (client, session) -> session);
+        runWorkers();
+
+        assertSame(aliceSession, first.get());
+        assertSame(aliceSession, second.get());
+        assertSame(aliceSession, sessionPool.getSession("carol"));
+
+        // only read the first time it's used
+        verify(playSessionStore, times(1)).load("carol");
+    }
+
+    public void testSubmitFailsWhenTheStoreFails() throws Exception {
+        PlaySessionStore playSessionStore = mock(PlaySessionStore.class);
+        when(playSessionStore.load("carol")).thenThrow(new IOException("disk on fire"));
+        sessionPool = new SessionPool(playClient, new SessionPoolConfig(1, 3, workers::add), playSessionStore);
+
+        try {
+            sessionPool.submit("carol", record("carol")).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(sessionPool.getAccountStats("carol"));
+    }
+}
@@ -55,4 +55,17 @@ public class PlayDomainFactoryTest extends TestCase {
         assertNotNull(playDomainFactory.createSearchRequest("query"));
     }
 
+    public void testCreateLoadAllTracksRequestForChanges() {
+        LoadAllTracksRequest firstPage = playDomainFactory.createLoadAllTracksRequest(null, 1.5);
+        assertEquals("", firstPage.getContinuationToken());
+        assertEquals(1.5, firstPage.getLastRequestTime());
+
+        LoadAllTracksRequest nextPage = playDomainFactory.createLoadAllTracksRequest("token", 1.5);
+        assertEquals("token", nextPage.getContinuationToken());
+        assertEquals(1.5, nextPage.getLastRequestTime());
+
+        // a full load doesn't send a time
+        assertNull(playDomainFactory.createLoadAllTracksRequest().getLastRequestTime());
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.domain;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests the SongCounter
+ */
+public class SongCounterTest extends TestCase {
+
+    // class under test
+    SongCounter songCounter = new SongCounter();
+
+    public void testLoadAllTracksResponse() {
+        LoadAllTracksResponse response = new LoadAllTracksResponse();
+        assertEquals(0, songCounter.applyAsInt(response));
+
+        response.setPlaylist(Arrays.asList(new Song(), new Song()));
+        assertEquals(2, songCounter.applyAsInt(response));
+    }
+
+    public void testSearchResponse() {
+        SearchResponse response = new SearchResponse();
+        assertEquals(0, songCounter.applyAsInt(response));
+
+        SearchResults searchResults = new SearchResults();
+        response.setResults(searchResults);
+        assertEquals(0, songCounter.applyAsInt(response));
+
+        // only the songs count, not the artists and albums
+        searchResults.setSongs(Arrays.asList(new Song()));
+        searchResults.setArtists(Arrays.asList(new Song(), new Song()));
+        assertEquals(1, songCounter.applyAsInt(response));
+    }
+
+    public void testLoadAllPlaylistsResponse() {
+        LoadAllPlaylistsResponse response = new LoadAllPlaylistsResponse();
+        assertEquals(0, songCounter.applyAsInt(response));
+
+        Playlist first = new Playlist();
+        first.setPlaylist(Arrays.asList(new Song(), new Song()));
+        Playlist second = new Playlist();
+        second.setPlaylist(Arrays.asList(new Song()));
+        response.setPlaylists(Arrays.asList(first, second, new Playlist()));
+        assertEquals(3, songCounter.applyAsInt(response));
+    }
+
+    public void testOtherTypes() {
+        assertEquals(0, songCounter.applyAsInt(new SearchRequest("query")));
+        assertEquals(0, songCounter.applyAsInt("string"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.domain.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+/**
+ * Tests the PlayTypeAdapterFactory and the adapters it hands out against Gson's reflective parsing
+ */
+public class PlayTypeAdapterFactoryTest extends TestCase {
+
+    private static final String SONG_JSON = "{\"genre\":\"Rock\",\"album\":\"Album\",\"lastPlayed\":1349000000000000," +
+            "\"id\":\"id1\",\"title\":\"Title\",\"artist\":\"Artist\",\"year\":1999,\"durationMillis\":240000," +
+            "\"deleted\":false,\"rating\":4,\"unknown\":[{\"a\":1}]}";
+
+    private static final String PAGE_JSON = "{\"title\":\"All\",\"playlistId\":\"all\",\"requestTime\":1.3490001E15," +
+            "\"continuationToken\":\"token\",\"differentialUpdate\":true,\"playlist\":[" + SONG_JSON + "," +
+            SONG_JSON + "],\"continuation\":true,\"unknown\":{\"x\":[1,2,3]}}";
+
+    Gson gson;
+    Gson reflectiveGson;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        gson = new GsonBuilder().registerTypeAdapterFactory(new PlayTypeAdapterFactory(new StringInterner())).create();
+        reflectiveGson = new Gson();
+    }
+
+    public void testConsFailsDueToNullStringInterner() {
+        try {
+            new PlayTypeAdapterFactory(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testAdapterConsFailOnNullDependencies() {
+        try {
+            new PlaylistTypeAdapter(null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new LoadAllTracksResponseTypeAdapter(null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new LoadAllPlaylistsResponseTypeAdapter(null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new SearchResultsTypeAdapter(null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+        try {
+            new SearchResponseTypeAdapter(null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreate() {
+        PlayTypeAdapterFactory factory = new PlayTypeAdapterFactory(new StringInterner());
+
+        assertTrue(factory.create(gson, TypeToken.get(Song.class)) instanceof SongTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(Playlist.class)) instanceof PlaylistTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(LoadAllTracksResponse.class))
+                instanceof LoadAllTracksResponseTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(LoadAllPlaylistsResponse.class))
+                instanceof LoadAllPlaylistsResponseTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(SearchResponse.class)) instanceof SearchResponseTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(SearchResults.class)) instanceof SearchResultsTypeAdapter);
+        assertTrue(factory.create(gson, TypeToken.get(StreamingUrl.class)) instanceof StreamingUrlTypeAdapter);
+
+        // the same adapter every time
+        TypeAdapter<Song> songAdapter = factory.create(gson, TypeToken.get(Song.class));
+        assertSame(songAdapter, factory.create(gson, TypeToken.get(Song.class)));
+
+        // everything else is left to Gson
+        assertNull(factory.create(gson, TypeToken.get(SearchRequest.class)));
+        assertNull(factory.create(gson, TypeToken.get(String.class)));
+        assertNull(factory.create(gson, new TypeToken<Map<String, Song>>() {}));
+    }
+
+    public void testLoadAllTracksResponse() {
+        assertSameParse(PAGE_JSON, LoadAllTracksResponse.class);
+        assertSameParse("{\"playlist\":null,\"title\":null}", LoadAllTracksResponse.class);
+        assertSameParse("{}", LoadAllTracksResponse.class);
+    }
+
+    public void testPlaylist() {
+        assertSameParse(PAGE_JSON, Playlist.class);
+    }
+
+    public void testLoadAllPlaylistsResponse() {
+        assertSameParse("{\"playlists\":[" + PAGE_JSON + "," + PAGE_JSON + "],\"other\":true}",
+                LoadAllPlaylistsResponse.class);
+        assertSameParse("{\"playlists\":[]}", LoadAllPlaylistsResponse.class);
+    }
+
+    public void testSearchResponse() {
+        assertSameParse("{\"results\":{\"artists\":[" + SONG_JSON + "],\"albums\":[],\"songs\":[" + SONG_JSON +
+                "," + SONG_JSON + "],\"other\":1},\"other\":\"x\"}", SearchResponse.class);
+        assertSameParse("{\"results\":{}}", SearchResponse.class);
+        assertSameParse("{}", SearchResponse.class);
+    }
+
+    public void testStreamingUrl() {
+        assertSameParse("{\"url\":\"http://example.com/stream?expire=1\",\"other\":[{}]}", StreamingUrl.class);
+        assertSameParse("{}", StreamingUrl.class);
+    }
+
+    public void testNulls() {
+        assertNull(gson.fromJson("null", LoadAllTracksResponse.class));
+        assertNull(gson.fromJson("null", StreamingUrl.class));
+        assertEquals("null", gson.toJson(null, SearchResponse.class));
+    }
+
+    /**
+     * Parses with both Gsons and checks the results are the same, by comparing their reflective JSON, and that the
+     * adapters write what Gson would
+     */
+    private <T> void assertSameParse(String json, Class<T> classOfT) {
+        T expected = reflectiveGson.fromJson(json, classOfT);
+        T actual = gson.fromJson(json, classOfT);
+
+        String expectedJson = reflectiveGson.toJson(expected);
+        assertEquals(expectedJson, reflectiveGson.toJson(actual));
+        assertEquals(expectedJson, gson.toJson(actual));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.gson;
+
+import com.faceture.google.gson.StringInterner;
+import com.faceture.google.play.domain.LoadAllTracksResponse;
+import com.faceture.google.play.domain.Song;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Tests the SongTypeAdapter
+ */
+public class SongTypeAdapterTest extends TestCase {
+
+    private static final String SONG_JSON = "{\"genre\":\"Rock\",\"beatsPerMinute\":\"120\",\"album\":\"Album\"," +
+            "\"lastPlayed\":1349000000000000,\"type\":2,\"disc\":1,\"id\":\"id1\",\"composer\":\"Composer\"," +
+            "\"title\":\"Title\",\"albumArtist\":\"Artist\",\"year\":1999,\"artist\":\"Artist\",\"track\":3," +
+            "\"durationMillis\":240000,\"matchedId\":\"m1\",\"albumArtUrl\":\"//art\",\"deleted\":true," +
+            "\"url\":\"\",\"creationDate\":1348000000000000,\"playCount\":5,\"rating\":4,\"comment\":null," +
+            "\"storeId\":\"s1\",\"unknown\":{\"a\":[1,{\"b\":2}]}}";
+
+    Gson gson;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        gson = createGson(new StringInterner());
+    }
+
+    public void testConsFailsDueToNullStringInterner() {
+        try {
+            new SongTypeAdapter(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testReadMatchesReflection() {
+        Song expected = new Gson().fromJson(SONG_JSON, Song.class);
+        Song actual = gson.fromJson(SONG_JSON, Song.class);
+
+        assertSongEquals(expected, actual);
+        assertEquals(1349000000000000L, actual.getLastPlayed());
+        assertTrue(actual.isDeleted());
+    }
+
+    public void testWriteMatchesReflection() {
+        Song song = new Gson().fromJson(SONG_JSON, Song.class);
+
+        assertEquals(new Gson().toJson(song), gson.toJson(song));
+        assertEquals(new Gson().toJson(new Song()), gson.toJson(new Song()));
+        assertEquals("null", gson.toJson(null, Song.class));
+    }
+
+    public void testNulls() {
+        assertNull(gson.fromJson("null", Song.class));
+
+        Song song = gson.fromJson("{\"artist\":null,\"year\":null}", Song.class);
+        assertNull(song.getArtist());
+        assertEquals(0, song.getYear());
+    }
+
+    public void testRepeatedValuesShared() {
+        LoadAllTracksResponse response = gson.fromJson(createLibraryJson(2, 1), LoadAllTracksResponse.class);
+
+        Iterator<Song> songs = response.getPlaylist().iterator();
+        Song first = songs.next();
+        Song second = songs.next();
+        assertSame(first.getArtist(), second.getArtist());
+        assertSame(first.getAlbum(), second.getAlbum());
+        assertSame(first.getAlbumArtist(), second.getAlbumArtist());
+        assertSame(first.getGenre(), second.getGenre());
+        assertSame(first.getAlbumArtUrl(), second.getAlbumArtUrl());
+        assertNotSame(first.getTitle(), second.getTitle());
+    }
+
+    /**
+     * Measures the heap kept by the repeated fields of a large synthetic library, parsed with and without the
+     * interner. Each distinct String instance is counted once, at its header plus its chars. With 20000 songs over
+     * 200 albums this comes to about 7MB reflectively against about 43KB interned.
+     */
+    public void testHeapSavingsOnLargeLibrary() {
+        String json = createLibraryJson(20000, 100);
+
+        long reflective = measureRepeatedFields(new Gson().fromJson(json, LoadAllTracksResponse.class));
+        long interned = measureRepeatedFields(gson.fromJson(json, LoadAllTracksResponse.class));
+
+        assertTrue("reflective " + reflective + " interned " + interned, interned * 50 < reflective);
+    }
+
+    private long measureRepeatedFields(LoadAllTracksResponse response) {
+        Set<String> instances = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (Song song : response.getPlaylist()) {
+            instances.add(song.getArtist());
+            instances.add(song.getAlbum());
+            instances.add(song.getAlbumArtist());
+            instances.add(song.getGenre());
+            instances.add(song.getAlbumArtUrl());
+        }
+
+        // a String is a 24 byte object plus a 16 byte array header plus its chars
+        long bytes = 0;
+        for (String instance : instances) {
+            bytes += 40 + 2 * instance.length();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return a library of songs by artist, two albums each, ten songs per album
+     */
+    private String createLibraryJson(int songCount, int artistCount) {
+        StringBuilder json = new StringBuilder("{\"playlist\":[");
+        for (int i = 0; i < songCount; i++) {
+            int artist = i % artistCount;
+            int album = (i / 10) % 2;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(i)
+                    .append("\",\"title\":\"Song ").append(i)
+                    .append("\",\"artist\":\"Artist ").append(artist)
+                    .append("\",\"albumArtist\":\"Artist ").append(artist)
+                    .append("\",\"album\":\"Album ").append(artist).append('-').append(album)
+                    .append("\",\"genre\":\"Genre ").append(artist % 20)
+                    .append("\",\"albumArtUrl\":\"//lh3.googleusercontent.com/art/").append(artist).append('-')
+                    .append(album).append("=s130\"}");
+        }
+        json.append("]}");
+
+        return json.toString();
+    }
+
+    private Gson createGson(StringInterner stringInterner) {
+        return new GsonBuilder().registerTypeAdapter(Song.class, new SongTypeAdapter(stringInterner)).create();
+    }
+
+    private void assertSongEquals(Song expected, Song actual) {
+        assertEquals(new Gson().toJson(expected), new Gson().toJson(actual));
+    }
+}
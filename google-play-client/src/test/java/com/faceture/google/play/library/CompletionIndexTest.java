@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the CompletionIndex
+ */
+public class CompletionIndexTest extends TestCase {
+
+    // class under test
+    CompletionIndex completionIndex;
+
+    String[] completions;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        completionIndex = new CompletionIndex(Arrays.asList(
+                createSong("1", "Halo", "Beyonc\u00e9", "I Am... Sasha Fierce", 10, 5),
+                createSong("2", "Hallelujah", "Jeff Buckley", "Grace", 30, 0),
+                createSong("3", "Single Ladies", "Beyonc\u00e9", "I Am... Sasha Fierce", 20, 0),
+                createSong("4", "Halo", "Depeche Mode", "Violator", 1, 0)));
+        completions = new String[5];
+    }
+
+    public void testCompleteFailsDueToNullPrefix() {
+        try {
+            completionIndex.complete(null, completions);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCompleteRanksByPlayCount() {
+        // Hallelujah has the most plays, the two Halos add up to 11
+        assertEquals(Arrays.asList("Hallelujah", "Halo"), complete("hal"));
+        assertEquals(Arrays.asList("Halo"), complete("halo"));
+    }
+
+    public void testCompleteIsCaseAndAccentFolded() {
+        assertEquals(Arrays.asList("Beyonc\u00e9"), complete("BEY"));
+        assertEquals(Arrays.asList("Beyonc\u00e9"), complete("beyonc\u00e9"));
+    }
+
+    public void testCompleteMatchesStartOfAnyWord() {
+        assertEquals(Arrays.asList("Single Ladies"), complete("lad"));
+        assertEquals(Arrays.asList("I Am... Sasha Fierce"), complete("fier"));
+        assertEquals(Arrays.asList("Depeche Mode"), complete("mode"));
+
+        // but not the middle of one
+        assertTrue(complete("ngle").isEmpty());
+    }
+
+    public void testCompleteBreaksTiesOnRating() {
+        completionIndex.updateAll(Arrays.asList(createSong("5", "Rated", "x", "y", 0, 5),
+                createSong("6", "Rare", "x", "y", 0, 1)));
+
+        assertEquals(Arrays.asList("Rated", "Rare"), complete("ra"));
+    }
+
+    public void testCompleteFillsNoMoreThanArray() {
+        completions = new String[1];
+
+        assertEquals(Arrays.asList("Hallelujah"), complete("h"));
+        assertEquals(0, completionIndex.complete("", completions));
+    }
+
+    public void testUpdateReplacesSong() {
+        completionIndex.update(createSong("2", "Lover, You Should've Come Over", "Jeff Buckley", "Grace", 30, 0));
+
+        assertEquals(Arrays.asList("Halo"), complete("hal"));
+        assertEquals(Arrays.asList("Lover, You Should've Come Over"), complete("lover"));
+    }
+
+    public void testRemoveDropsPhrasesNoLongerUsed() {
+        int size = completionIndex.size();
+
+        assertTrue(completionIndex.remove("1"));
+        assertFalse(completionIndex.remove("1"));
+
+        // Halo and the album are still used by other songs
+        assertEquals(size, completionIndex.size());
+
+        completionIndex.remove("4");
+        assertEquals(Arrays.asList("Hallelujah"), complete("hal"));
+        assertTrue(complete("depeche").isEmpty());
+    }
+
+    public void testDeletedSongIsRemoved() {
+        Song deleted = createSong("2", "Hallelujah", "Jeff Buckley", "Grace", 30, 0);
+        deleted.setDeleted(true);
+
+        completionIndex.update(deleted);
+
+        assertTrue(complete("jeff").isEmpty());
+    }
+
+    public void testLargeLibraryUsesPrecomputedCompletions() {
+        List<Song> songs = new ArrayList<Song>();
+        for (int i = 0; i < 2000; i++) {
+            songs.add(createSong("song" + i, "Track " + i, "Artist " + (i % 100), "Album " + (i % 200), i, 0));
+        }
+        completionIndex = new CompletionIndex(songs);
+
+        assertEquals(Arrays.asList("Track 1999", "Track 1998", "Track 1997", "Track 1996", "Track 1995"),
+                complete("t"));
+        assertEquals(Arrays.asList("Track 1999", "Track 1998", "Track 1997", "Track 1996", "Track 1995"),
+                complete("TR"));
+        assertEquals(Arrays.asList("Track 1999", "Track 1998", "Track 1997", "Track 1996", "Track 1995"),
+                complete("tra"));
+        // the album's plays are the total of its ten songs
+        assertEquals(Arrays.asList("Album 199", "Track 1999", "Track 1998", "Track 1997", "Track 1996"),
+                complete("199"));
+
+        // removing most of the songs renumbers what's left
+        for (int i = 0; i < 1900; i++) {
+            completionIndex.remove("song" + i);
+        }
+        assertEquals(Arrays.asList("Track 1999", "Track 1998", "Track 1997", "Track 1996", "Track 1995"),
+                complete("tr"));
+        assertTrue(complete("track 18").isEmpty());
+    }
+
+    public void testNonAsciiPrefixesWithLongRanges() {
+        List<Song> songs = new ArrayList<Song>();
+        for (int i = 0; i < 300; i++) {
+            songs.add(createSong("song" + i, "\u00d8ya " + i, "\u00c6gir", "x" + i, i, 0));
+        }
+        completionIndex = new CompletionIndex(songs);
+
+        assertEquals(Arrays.asList("\u00d8ya 299", "\u00d8ya 298", "\u00d8ya 297", "\u00d8ya 296", "\u00d8ya 295"),
+                complete("\u00f8"));
+        assertEquals(Arrays.asList("\u00d8ya 299", "\u00d8ya 298", "\u00d8ya 297", "\u00d8ya 296", "\u00d8ya 295"),
+                complete("\u00d8Y"));
+        assertEquals(Arrays.asList("\u00c6gir"), complete("\u00e6g"));
+        assertTrue(complete("\u00f8x").isEmpty());
+    }
+
+    public void testUpdatesGiveSameCompletionsAsRebuilding() {
+        Map<String, Song> songs = new LinkedHashMap<String, Song>();
+        for (int i = 0; i < 2000; i++) {
+            Song song = createSong("song" + i, "Track " + i, "Artist " + (i % 100), "Album " + (i % 200), i, i % 6);
+            songs.put(song.getId(), song);
+        }
+        completionIndex = new CompletionIndex(songs.values());
+        completions = new String[CompletionIndex.MAX_COMPLETIONS];
+
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            String id = "song" + random.nextInt(2100);
+            int change = random.nextInt(4);
+            if (0 == change) {
+                songs.remove(id);
+                completionIndex.remove(id);
+            }
+            else {
+                // new songs, new titles and plays going both up and down
+                Song song = createSong(id, 1 == change ? "Tune " + i : "Track " + id, "Artist " + random.nextInt(120),
+                        "Album " + random.nextInt(200), random.nextInt(4000), random.nextInt(6));
+                songs.put(id, song);
+                completionIndex.update(song);
+            }
+        }
+
+        CompletionIndex rebuilt = new CompletionIndex(songs.values());
+        String[] rebuiltCompletions = new String[CompletionIndex.MAX_COMPLETIONS];
+        for (String prefix : Arrays.asList("t", "tr", "tu", "a", "al", "ar", "1", "19", "track 1", "tune")) {
+            int count = rebuilt.complete(prefix, rebuiltCompletions);
+
+            assertEquals(prefix, Arrays.asList(rebuiltCompletions).subList(0, count), complete(prefix));
+        }
+        assertEquals(rebuilt.size(), completionIndex.size());
+    }
+
+    private List<String> complete(String prefix) {
+        int count = completionIndex.complete(prefix, completions);
+
+        return Arrays.asList(completions).subList(0, count);
+    }
+
+    private Song createSong(String id, String title, String artist, String album, int playCount, int rating) {
+        Song song = new Song();
+        song.setId(id);
+        song.setTitle(title);
+        song.setArtist(artist);
+        song.setAlbum(album);
+        song.setPlayCount(playCount);
+        song.setRating(rating);
+
+        return song;
+    }
+}
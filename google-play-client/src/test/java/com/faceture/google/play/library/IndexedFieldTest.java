@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+/**
+ * Tests the IndexedField
+ */
+public class IndexedFieldTest extends TestCase {
+
+    public void testGetValue() {
+        Song song = new Song();
+        song.setTitle("title");
+        song.setArtist("artist");
+        song.setAlbum("album");
+        song.setAlbumArtist("albumArtist");
+        song.setComposer("composer");
+        song.setGenre("genre");
+
+        assertEquals("title", IndexedField.TITLE.getValue(song));
+        assertEquals("artist", IndexedField.ARTIST.getValue(song));
+        assertEquals("album", IndexedField.ALBUM.getValue(song));
+        assertEquals("albumArtist", IndexedField.ALBUM_ARTIST.getValue(song));
+        assertEquals("composer", IndexedField.COMPOSER.getValue(song));
+        assertEquals("genre", IndexedField.GENRE.getValue(song));
+    }
+
+    public void testGetWeightOfMask() {
+        assertEquals(0, IndexedField.getWeight(0));
+        assertEquals(IndexedField.TITLE.getWeight(), IndexedField.getWeight(IndexedField.TITLE.getMask()));
+        assertEquals(IndexedField.TITLE.getWeight() + IndexedField.GENRE.getWeight(),
+                IndexedField.getWeight(IndexedField.TITLE.getMask() | IndexedField.GENRE.getMask()));
+    }
+}
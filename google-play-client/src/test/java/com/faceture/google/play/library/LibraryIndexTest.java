@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.SearchResults;
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tests the LibraryIndex
+ */
+public class LibraryIndexTest extends TestCase {
+
+    // class under test
+    LibraryIndex libraryIndex;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        libraryIndex = new LibraryIndex(Arrays.asList(
+                createSong("1", "Halo", "Beyonc\u00e9", "I Am... Sasha Fierce", 10),
+                createSong("2", "D\u00e9j\u00e0 Vu", "Beyonc\u00e9", "B'Day", 5),
+                createSong("3", "Single Ladies", "Beyonc\u00e9", "I Am... Sasha Fierce", 20),
+                createSong("4", "Halo", "Depeche Mode", "Violator", 1),
+                createSong("5", "Sasha", "Someone Else", "Halo Sessions", 0)));
+    }
+
+    public void testSearchFailsDueToNullQuery() {
+        try {
+            libraryIndex.search(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchFailsDueToZeroLimit() {
+        try {
+            libraryIndex.search("halo", 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testUpdateFailsDueToNullId() {
+        try {
+            libraryIndex.update(new Song());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSearchIsCaseAndAccentFolded() {
+        assertEquals(Arrays.asList("2"), ids(libraryIndex.search("DEJA VU").getSongs()));
+        assertEquals(Arrays.asList("3", "1", "2"), ids(libraryIndex.search("beyonce").getSongs()));
+    }
+
+    public void testSearchRanksTitleMatchesFirst() {
+        // both title matches before the album match, then by play count
+        assertEquals(Arrays.asList("1", "4", "5"), ids(libraryIndex.search("halo").getSongs()));
+    }
+
+    public void testSearchNeedsEveryWord() {
+        assertEquals(Arrays.asList("1"), ids(libraryIndex.search("halo beyonce").getSongs()));
+        assertTrue(libraryIndex.search("halo nobody").getSongs().isEmpty());
+        assertTrue(libraryIndex.search("").getSongs().isEmpty());
+    }
+
+    public void testSearchMatchesLastWordAsPrefix() {
+        assertEquals(Arrays.asList("3"), ids(libraryIndex.search("single lad").getSongs()));
+        assertEquals(Arrays.asList("3", "1", "2"), ids(libraryIndex.search("bey").getSongs()));
+
+        // only the last word
+        assertTrue(libraryIndex.search("sing ladies").getSongs().isEmpty());
+    }
+
+    public void testSearchGroupsArtistsAndAlbums() {
+        SearchResults searchResults = libraryIndex.search("sasha");
+
+        // one song for the album, the best ranked one
+        assertEquals(Arrays.asList("3"), ids(searchResults.getAlbums()));
+        assertTrue(searchResults.getArtists().isEmpty());
+
+        searchResults = libraryIndex.search("beyonce");
+        assertEquals(Arrays.asList("3"), ids(searchResults.getArtists()));
+        assertTrue(searchResults.getAlbums().isEmpty());
+    }
+
+    public void testSearchLimit() {
+        assertEquals(2, libraryIndex.search("beyonce", 2).getSongs().size());
+    }
+
+    public void testUpdateReplacesSong() {
+        libraryIndex.update(createSong("4", "Enjoy the Silence", "Depeche Mode", "Violator", 1));
+
+        assertEquals(Arrays.asList("1", "5"), ids(libraryIndex.search("halo").getSongs()));
+        assertEquals(Arrays.asList("4"), ids(libraryIndex.search("silence").getSongs()));
+        assertEquals(5, libraryIndex.size());
+    }
+
+    public void testUpdateAfterSongWasChangedInPlace() {
+        Song song = createSong("6", "Yesterday", "The Beatles", "Help!", 0);
+        libraryIndex.update(song);
+
+        song.setTitle("Something");
+        libraryIndex.update(song);
+
+        assertTrue(libraryIndex.search("yesterday").getSongs().isEmpty());
+        assertEquals(Arrays.asList("6"), ids(libraryIndex.search("something").getSongs()));
+
+        song.setArtist("George Harrison");
+        libraryIndex.remove("6");
+
+        assertTrue(libraryIndex.search("beatles").getSongs().isEmpty());
+        assertTrue(libraryIndex.search("something").getSongs().isEmpty());
+    }
+
+    public void testUpdateWithDeletedSongRemovesIt() {
+        Song deleted = createSong("4", "Halo", "Depeche Mode", "Violator", 1);
+        deleted.setDeleted(true);
+
+        libraryIndex.update(deleted);
+
+        assertNull(libraryIndex.getSong("4"));
+        assertTrue(libraryIndex.search("depeche").getSongs().isEmpty());
+    }
+
+    public void testRemove() {
+        assertTrue(libraryIndex.remove("2"));
+        assertFalse(libraryIndex.remove("2"));
+
+        assertTrue(libraryIndex.search("deja").getSongs().isEmpty());
+        assertEquals(4, libraryIndex.size());
+    }
+
+    private List<String> ids(Collection<Song> songs) {
+        List<String> ids = new ArrayList<String>();
+        for (Song song : songs) {
+            ids.add(song.getId());
+        }
+
+        return ids;
+    }
+
+    private Song createSong(String id, String title, String artist, String album, int playCount) {
+        Song song = new Song();
+        song.setId(id);
+        song.setTitle(title);
+        song.setArtist(artist);
+        song.setAlbum(album);
+        song.setPlayCount(playCount);
+
+        return song;
+    }
+}
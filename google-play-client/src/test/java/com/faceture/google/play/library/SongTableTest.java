@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tests the SongTable
+ */
+public class SongTableTest extends TestCase {
+
+    private static final String SONG_JSON = "{\"genre\":\"Rock\",\"beatsPerMinute\":\"120\",\"album\":\"Album\"," +
+            "\"lastPlayed\":1349000000000000,\"type\":2,\"disc\":1,\"id\":\"id1\",\"composer\":\"Composer\"," +
+            "\"title\":\"Title\",\"albumArtist\":\"Artist\",\"year\":1999,\"artist\":\"Artist\",\"track\":3," +
+            "\"durationMillis\":240000,\"matchedId\":\"m1\",\"albumArtUrl\":\"//art\",\"deleted\":true," +
+            "\"url\":\"\",\"creationDate\":1348000000000000,\"playCount\":5,\"rating\":4,\"comment\":null," +
+            "\"storeId\":\"s1\",\"unknown\":{\"a\":[1]}}";
+
+    public void testAddAndGet() {
+        SongTable songTable = new SongTable.Builder().add(createSong("1", "Artist", 3))
+                .add(createSong("2", "Artist", 4)).build();
+
+        assertEquals(2, songTable.size());
+        assertEquals("1", songTable.getId(0));
+        assertEquals("Title 2", songTable.getTitle(1));
+        assertEquals("Artist", songTable.getArtist(1));
+        assertEquals("Album", songTable.getAlbum(0));
+        assertEquals(4, songTable.getPlayCount(1));
+        assertEquals(1000L, songTable.getDurationMillis(0));
+        assertNull(songTable.getString(SongTable.COMMENT, 0));
+
+        // equal Strings are held once
+        assertEquals(songTable.getStringCode(SongTable.ARTIST, 0), songTable.getStringCode(SongTable.ARTIST, 1));
+        assertEquals(songTable.getStringCode(SongTable.ARTIST, 0),
+                songTable.getStringCode(SongTable.ALBUM_ARTIST, 0));
+        assertSame(songTable.getArtist(0), songTable.getArtist(1));
+    }
+
+    public void testReadSongMatchesGson() throws IOException {
+        SongTable.Builder builder = new SongTable.Builder();
+        JsonReader jsonReader = new JsonReader(new StringReader(SONG_JSON));
+        builder.readSong(jsonReader);
+        SongTable songTable = builder.build();
+
+        Song expected = new Gson().fromJson(SONG_JSON, Song.class);
+        Song actual = songTable.toSong(0);
+
+        assertSongEquals(expected, actual);
+        assertTrue(actual.isDeleted());
+        assertEquals(1349000000000000L, actual.getLastPlayed());
+        assertEquals("120", actual.getBeatsPerMinute());
+    }
+
+    public void testReadSongAfterOneFailedPartWay() throws IOException {
+        SongTable.Builder builder = new SongTable.Builder();
+        try {
+            builder.readSong(new JsonReader(new StringReader("{\"playCount\":7,\"deleted\":true,\"rating\":\"x\"}")));
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException | NumberFormatException e) {}
+
+        builder.readSong(new JsonReader(new StringReader("{\"id\":\"id1\"}")));
+        SongTable songTable = builder.build();
+
+        assertEquals(1, songTable.size());
+        assertEquals("id1", songTable.getId(0));
+        assertEquals(0, songTable.getPlayCount(0));
+        assertFalse(songTable.isDeleted(0));
+    }
+
+    public void testReadSongFailsDueToNullJsonReader() throws IOException {
+        try {
+            new SongTable.Builder().readSong(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testAddFailsDueToNullSong() {
+        try {
+            new SongTable.Builder().add(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGrowsPastInitialCapacity() {
+        SongTable.Builder builder = new SongTable.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.accept(createSong(String.valueOf(i), "Artist " + (i % 10), i));
+        }
+        SongTable songTable = builder.build();
+
+        assertEquals(5000, songTable.size());
+        assertEquals(4999, songTable.getPlayCount(4999));
+        assertEquals("Artist 9", songTable.getArtist(4999));
+        assertEquals(1234, songTable.findRow("1234"));
+        assertEquals(-1, songTable.findRow("nope"));
+    }
+
+    public void testFindRowFailsDueToNullId() {
+        try {
+            new SongTable.Builder().build().findRow(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testBuilderCantBeReused() {
+        SongTable.Builder builder = new SongTable.Builder();
+        builder.build();
+
+        try {
+            builder.add(createSong("1", "Artist", 0));
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+
+        try {
+            builder.build();
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testForEachMovesOneView() {
+        SongTable songTable = new SongTable.Builder().add(createSong("1", "a", 1)).add(createSong("2", "b", 2))
+                .build();
+        final List<String> ids = new ArrayList<String>();
+        final List<Song> views = new ArrayList<Song>();
+
+        songTable.forEach(new Consumer<Song>() {
+            public void accept(Song song) {
+                ids.add(song.getId());
+                views.add(song);
+            }
+        });
+
+        assertEquals(2, ids.size());
+        assertEquals("1", ids.get(0));
+        assertEquals("2", ids.get(1));
+        assertSame(views.get(0), views.get(1));
+    }
+
+    public void testToSongIsACopy() {
+        Song song = createSong("1", "Artist", 3);
+        SongTable songTable = new SongTable.Builder().add(song).build();
+
+        Song copy = songTable.toSong(0);
+        assertSongEquals(song, copy);
+        assertFalse(copy instanceof SongView);
+    }
+
+    /**
+     * Song has no equals(), so compare every field
+     */
+    static void assertSongEquals(Song expected, Song actual) {
+        assertEquals(expected.getGenre(), actual.getGenre());
+        assertEquals(expected.getBeatsPerMinute(), actual.getBeatsPerMinute());
+        assertEquals(expected.getAlbum(), actual.getAlbum());
+        assertEquals(expected.getLastPlayed(), actual.getLastPlayed());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getDisc(), actual.getDisc());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getComposer(), actual.getComposer());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getAlbumArtist(), actual.getAlbumArtist());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getTrack(), actual.getTrack());
+        assertEquals(expected.getDurationMillis(), actual.getDurationMillis());
+        assertEquals(expected.getMatchedId(), actual.getMatchedId());
+        assertEquals(expected.getAlbumArtUrl(), actual.getAlbumArtUrl());
+        assertEquals(expected.isDeleted(), actual.isDeleted());
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.getPlayCount(), actual.getPlayCount());
+        assertEquals(expected.getRating(), actual.getRating());
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getStoreId(), actual.getStoreId());
+    }
+
+    private Song createSong(String id, String artist, int playCount) {
+        Song song = new Song();
+        song.setId(id);
+        song.setTitle("Title " + id);
+        song.setArtist(artist);
+        song.setAlbumArtist(artist);
+        song.setAlbum("Album");
+        song.setPlayCount(playCount);
+        song.setDurationMillis(1000L);
+
+        return song;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import com.faceture.google.play.domain.Song;
+import junit.framework.TestCase;
+
+/**
+ * Tests the SongView
+ */
+public class SongViewTest extends TestCase {
+
+    SongTable songTable;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        Song first = new Song();
+        first.setId("1");
+        first.setTitle("one");
+        first.setRating(5);
+        first.setDeleted(true);
+        Song second = new Song();
+        second.setId("2");
+        second.setGenre("Jazz");
+        second.setYear(1959);
+
+        songTable = new SongTable.Builder().add(first).add(second).build();
+    }
+
+    public void testGetters() {
+        SongView songView = songTable.getSong(0);
+
+        assertEquals(0, songView.getRow());
+        assertEquals("1", songView.getId());
+        assertEquals("one", songView.getTitle());
+        assertEquals(5, songView.getRating());
+        assertTrue(songView.isDeleted());
+        assertNull(songView.getGenre());
+
+        songView.moveTo(1);
+        assertEquals("2", songView.getId());
+        assertEquals("Jazz", songView.getGenre());
+        assertEquals(1959, songView.getYear());
+        assertFalse(songView.isDeleted());
+    }
+
+    public void testMatchesToSong() {
+        SongTableTest.assertSongEquals(songTable.toSong(0), songTable.getSong(0));
+        SongTableTest.assertSongEquals(songTable.toSong(1), songTable.getSong(1));
+    }
+
+    public void testMoveToFailsOutOfBounds() {
+        SongView songView = songTable.getSong(0);
+
+        try {
+            songView.moveTo(2);
+
+            fail("should have thrown exception");
+        }
+        catch (IndexOutOfBoundsException e) {}
+
+        try {
+            songView.moveTo(-1);
+
+            fail("should have thrown exception");
+        }
+        catch (IndexOutOfBoundsException e) {}
+    }
+
+    public void testSettersFail() {
+        try {
+            songTable.getSong(0).setTitle("other");
+
+            fail("should have thrown exception");
+        }
+        catch (UnsupportedOperationException e) {}
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the StringDictionary
+ */
+public class StringDictionaryTest extends TestCase {
+
+    public void testEncodeDecode() {
+        StringDictionary dictionary = new StringDictionary();
+
+        int a = dictionary.encode("a");
+        int b = dictionary.encode("b");
+
+        assertEquals(a, dictionary.encode(new String("a")));
+        assertTrue(a != b);
+        assertEquals(2, dictionary.size());
+        assertEquals("a", dictionary.decode(a));
+        assertEquals("b", dictionary.decode(b));
+    }
+
+    public void testNull() {
+        StringDictionary dictionary = new StringDictionary();
+
+        assertEquals(StringDictionary.NULL, dictionary.encode(null));
+        assertNull(dictionary.decode(StringDictionary.NULL));
+        assertEquals(StringDictionary.NULL, dictionary.find(null));
+        assertEquals(0, dictionary.size());
+    }
+
+    public void testGrows() {
+        StringDictionary dictionary = new StringDictionary();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.encode("value" + i));
+        }
+        assertEquals("value999", dictionary.decode(999));
+    }
+
+    public void testFind() {
+        StringDictionary dictionary = new StringDictionary();
+        int a = dictionary.encode("a");
+
+        assertEquals(a, dictionary.find("a"));
+        assertEquals(StringDictionary.NULL, dictionary.find("b"));
+        assertEquals(1, dictionary.size());
+    }
+
+    public void testFreeze() {
+        StringDictionary dictionary = new StringDictionary();
+        int a = dictionary.encode("a");
+        dictionary.freeze();
+
+        assertEquals("a", dictionary.decode(a));
+        assertEquals(a, dictionary.find("a"));
+        assertEquals(StringDictionary.NULL, dictionary.find("b"));
+
+        try {
+            dictionary.encode("b");
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testFindAfterFreeze() {
+        StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.encode("value" + i));
+        }
+        dictionary.freeze();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.find("value" + i));
+        }
+        assertEquals(StringDictionary.NULL, dictionary.find("value1000"));
+        assertEquals(StringDictionary.NULL, dictionary.find(null));
+    }
+
+    public void testFindInEmptyFrozenDictionary() {
+        StringDictionary dictionary = new StringDictionary();
+        dictionary.freeze();
+
+        assertEquals(StringDictionary.NULL, dictionary.find("a"));
+    }
+}
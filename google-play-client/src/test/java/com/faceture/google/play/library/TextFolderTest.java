@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.library;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests the TextFolder
+ */
+public class TextFolderTest extends TestCase {
+
+    // class under test
+    TextFolder textFolder;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        textFolder = new TextFolder();
+    }
+
+    public void testFold() {
+        assertEquals("", textFolder.fold(null));
+        assertEquals("", textFolder.fold(""));
+        assertEquals("beyonce deja vu", textFolder.fold("Beyonc\u00e9 D\u00e9j\u00e0 Vu"));
+        assertEquals("motorhead", textFolder.fold("MOT\u00d6RHEAD"));
+    }
+
+    public void testTokenize() {
+        assertTrue(textFolder.tokenize(null).isEmpty());
+        assertTrue(textFolder.tokenize(" - ").isEmpty());
+        assertEquals(Arrays.asList("sigur", "ros", "hoppipolla"),
+                textFolder.tokenize("Sigur R\u00f3s \u2013 Hopp\u00edpolla"));
+        assertEquals(Arrays.asList("ac", "dc", "t", "n", "t", "1976"), textFolder.tokenize("AC/DC: T.N.T. (1976)"));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.PlaySession;
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Tests the FilePlaySessionStore
+ */
+public class FilePlaySessionStoreTest extends TestCase {
+
+    // class under test
+    FilePlaySessionStore filePlaySessionStore;
+
+    File directory;
+    final String accountId = "user@example.com";
+    final PlaySession playSession = new PlaySession("xtCookie", "sjsaidCookie", "authToken", 1234567890123L);
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        directory = Files.createTempDirectory("play-sessions").toFile();
+        filePlaySessionStore = new FilePlaySessionStore(new File(directory, "sessions"));
+    }
+
+    public void tearDown() throws Exception {
+        deleteRecursively(directory);
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullDirectory() throws IOException {
+        try {
+            new FilePlaySessionStore(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsCreatesTheDirectory() {
+        assertTrue(filePlaySessionStore.getDirectory().isDirectory());
+    }
+
+    public void testLoadWithoutSave() throws IOException {
+        assertNull(filePlaySessionStore.load(accountId));
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        filePlaySessionStore.save(accountId, playSession);
+
+        // as a new store would after a restart
+        PlaySession loaded = new FilePlaySessionStore(filePlaySessionStore.getDirectory()).load(accountId);
+
+        assertEquals("xtCookie", loaded.getXtCookie());
+        assertEquals("sjsaidCookie", loaded.getSjsaidCookie());
+        assertEquals("authToken", loaded.getAuthToken());
+        assertEquals(1234567890123L, loaded.getIssuedAtMillis());
+        assertNull(filePlaySessionStore.load("other@example.com"));
+    }
+
+    public void testSaveReplaces() throws IOException {
+        filePlaySessionStore.save(accountId, playSession);
+        filePlaySessionStore.save(accountId, new PlaySession("xt2", "sjsaid2", "token2", 5));
+
+        assertEquals("token2", filePlaySessionStore.load(accountId).getAuthToken());
+
+        // just the session file, no temp files left behind
+        assertEquals(1, filePlaySessionStore.getDirectory().list().length);
+    }
+
+    public void testRemove() throws IOException {
+        filePlaySessionStore.save(accountId, playSession);
+
+        filePlaySessionStore.remove(accountId);
+        filePlaySessionStore.remove(accountId);
+
+        assertNull(filePlaySessionStore.load(accountId));
+    }
+
+    public void testFileNameHidesTheAccountId() throws IOException {
+        filePlaySessionStore.save(accountId, playSession);
+
+        String name = filePlaySessionStore.getDirectory().list()[0];
+        assertFalse(name.contains("example"));
+        assertTrue(name.matches("[0-9a-f]{64}\\.session"));
+    }
+
+    public void testFileIsOnlyReadableByItsOwner() throws IOException {
+        filePlaySessionStore.save(accountId, playSession);
+        File file = filePlaySessionStore.getFile(accountId);
+        if (!Files.getFileStore(file.toPath()).supportsFileAttributeView("posix")) {
+            return;
+        }
+
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+        assertEquals(PosixFilePermissions.fromString("rw-------"), permissions);
+    }
+
+    public void testLoadFailsDueToForeignFile() throws IOException {
+        Files.write(filePlaySessionStore.getFile(accountId).toPath(), "not a session".getBytes("UTF-8"));
+
+        try {
+            filePlaySessionStore.load(accountId);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+    }
+
+    public void testLoadFailsDueToTruncatedFile() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(filePlaySessionStore.getFile(accountId))))
+        {
+            out.writeInt(FilePlaySessionStore.MAGIC);
+            out.writeByte(FilePlaySessionStore.VERSION);
+            out.writeUTF(accountId);
+        }
+
+        try {
+            filePlaySessionStore.load(accountId);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+    }
+
+    public void testLoadSkipsOtherVersions() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(filePlaySessionStore.getFile(accountId))))
+        {
+            out.writeInt(FilePlaySessionStore.MAGIC);
+            out.writeByte(FilePlaySessionStore.VERSION + 1);
+        }
+
+        assertNull(filePlaySessionStore.load(accountId));
+    }
+
+    public void testGetFileFailsDueToEmptyAccountId() {
+        try {
+            filePlaySessionStore.getFile("");
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
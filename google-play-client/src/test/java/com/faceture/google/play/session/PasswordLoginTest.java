@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.google.play.LoginResponse;
+import com.faceture.google.play.LoginResult;
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlaySession;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.function.Function;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the PasswordLogin
+ */
+public class PasswordLoginTest extends TestCase {
+
+    static final String EMAIL = "user@example.com";
+
+    // class under test
+    PasswordLogin passwordLogin;
+
+    // dependencies
+    PlayClient playClient;
+    Function<String, String> passwordSource;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+        passwordSource = email -> EMAIL.equals(email) ? "password" : null;
+
+        passwordLogin = new PasswordLogin(playClient, passwordSource);
+    }
+
+    public void testConsFailsDueToNullArgs() {
+        try {
+            new PasswordLogin(null, passwordSource);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new PasswordLogin(playClient, null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testLogin() throws IOException, URISyntaxException {
+        PlaySession playSession = new PlaySession("xt", "sjsaid", "auth");
+        when(playClient.login(EMAIL, "password")).thenReturn(new LoginResponse(LoginResult.SUCCESS, playSession));
+
+        assertSame(playSession, passwordLogin.login(EMAIL));
+    }
+
+    public void testLoginFailsWhenRefused() throws IOException, URISyntaxException {
+        when(playClient.login(EMAIL, "password")).thenReturn(new LoginResponse(LoginResult.BAD_CREDENTIALS, null));
+
+        try {
+            passwordLogin.login(EMAIL);
+
+            fail("should have thrown exception");
+        }
+        catch (LoginFailedException e) {
+            assertEquals(EMAIL, e.getAccountId());
+            assertEquals(LoginResult.BAD_CREDENTIALS, e.getLoginResult());
+        }
+    }
+
+    public void testLoginFailsWithoutPassword() throws IOException, URISyntaxException {
+        try {
+            passwordLogin.login("other@example.com");
+
+            fail("should have thrown exception");
+        }
+        catch (LoginFailedException e) {
+            assertEquals(LoginResult.BAD_CREDENTIALS, e.getLoginResult());
+        }
+
+        verifyZeroInteractions(playClient);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the SessionManagerConfig
+ */
+public class SessionManagerConfigTest extends TestCase {
+
+    public void testDefaults() {
+        SessionManagerConfig sessionManagerConfig = new SessionManagerConfig();
+
+        assertEquals(SessionManagerConfig.DEFAULT_REFRESH_AFTER_MILLIS, sessionManagerConfig.getRefreshAfterMillis());
+        assertEquals(SessionManagerConfig.DEFAULT_REFRESH_INTERVAL_MILLIS,
+                sessionManagerConfig.getRefreshIntervalMillis());
+        assertNotNull(sessionManagerConfig.getScheduler());
+    }
+
+    public void testConsFailsDueToBadArgs() {
+        try {
+            new SessionManagerConfig(0, 1000, null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new SessionManagerConfig(1000, -1, null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
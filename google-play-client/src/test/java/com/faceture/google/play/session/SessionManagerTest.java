@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.google.play.session;
+
+import com.faceture.cache.MutableClock;
+import com.faceture.google.play.LoginResult;
+import com.faceture.google.play.PlayClient;
+import com.faceture.google.play.PlaySession;
+import com.faceture.google.play.SessionExpiredException;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the SessionManager
+ */
+public class SessionManagerTest extends TestCase {
+
+    static final String ACCOUNT_ID = "user@example.com";
+    static final long REFRESH_AFTER_MILLIS = 10000;
+
+    // class under test
+    SessionManager sessionManager;
+
+    // dependencies
+    PlayClient playClient;
+    AccountLogin accountLogin;
+    PlaySessionStore playSessionStore;
+    SessionManagerConfig sessionManagerConfig;
+    MutableClock clock;
+
+    PlaySession oldSession;
+    PlaySession newSession;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        playClient = mock(PlayClient.class);
+        accountLogin = mock(AccountLogin.class);
+        playSessionStore = mock(PlaySessionStore.class);
+        sessionManagerConfig = new SessionManagerConfig(REFRESH_AFTER_MILLIS, 0, null);
+        clock = new MutableClock(0);
+
+        oldSession = new PlaySession("xt1", "sjsaid1", "auth1", 0);
+        newSession = new PlaySession("xt2", "sjsaid2", "auth2", 0);
+
+        sessionManager = new SessionManager(playClient, accountLogin, playSessionStore, sessionManagerConfig, clock);
+    }
+
+    public void testConsFailsDueToNullArgs() {
+        try {
+            new SessionManager(null, accountLogin, playSessionStore, sessionManagerConfig, clock);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new SessionManager(playClient, null, playSessionStore, sessionManagerConfig, clock);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new SessionManager(playClient, accountLogin, null, sessionManagerConfig, clock);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new SessionManager(playClient, accountLogin, playSessionStore, null, clock);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new SessionManager(playClient, accountLogin, playSessionStore, sessionManagerConfig, null);
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetSessionLogsInOnce() throws IOException, URISyntaxException {
+        when(accountLogin.login(ACCOUNT_ID)).thenReturn(newSession);
+
+        assertSame(newSession, sessionManager.getSession(ACCOUNT_ID));
+        assertSame(newSession, sessionManager.getSession(ACCOUNT_ID));
+
+        verify(accountLogin, times(1)).login(ACCOUNT_ID);
+        verify(playSessionStore).save(ACCOUNT_ID, newSession);
+        assertEquals(1, sessionManager.getLoginCount());
+        assertTrue(sessionManager.getAccountIds().contains(ACCOUNT_ID));
+    }
+
+    public void testGetSessionLoadsFromStore() throws IOException, URISyntaxException {
+        when(playSessionStore.load(ACCOUNT_ID)).thenReturn(oldSession);
+
+        assertSame(oldSession, sessionManager.getSession(ACCOUNT_ID));
+
+        verify(accountLogin, never()).login(ACCOUNT_ID);
+    }
+
+    public void testGetSessionFailsDueToEmptyAccountId() throws IOException, URISyntaxException {
+        try {
+            sessionManager.getSession("");
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCallRetriesOnceAfterSessionExpired() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        when(accountLogin.login(ACCOUNT_ID)).thenReturn(newSession);
+
+        String result = sessionManager.call(ACCOUNT_ID, (client, session) -> {
+            if (session == oldSession) {
+                throw new SessionExpiredException(401, "Bad status: 401");
+            }
+            return session.getAuthToken();
+        });
+
+        assertEquals("auth2", result);
+        verify(accountLogin, times(1)).login(ACCOUNT_ID);
+        assertSame(newSession, sessionManager.getSession(ACCOUNT_ID));
+    }
+
+    public void testCallRetriesAfterWrappedSessionExpired() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        when(accountLogin.login(ACCOUNT_ID)).thenReturn(newSession);
+
+        String result = sessionManager.call(ACCOUNT_ID, (client, session) -> {
+            if (session == oldSession) {
+                throw new IOException(new SessionExpiredException(403, "Bad status: 403"));
+            }
+            return session.getAuthToken();
+        });
+
+        assertEquals("auth2", result);
+    }
+
+    public void testCallDoesNotRetryOtherFailures() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            sessionManager.call(ACCOUNT_ID, (client, session) -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("Bad status: 503");
+            });
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+
+        assertEquals(1, calls.get());
+        verify(accountLogin, never()).login(ACCOUNT_ID);
+    }
+
+    public void testCallFailsWhenLoginRefused() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        LoginFailedException loginFailedException = new LoginFailedException(ACCOUNT_ID, LoginResult.BAD_CREDENTIALS);
+        when(accountLogin.login(ACCOUNT_ID)).thenThrow(loginFailedException);
+
+        try {
+            sessionManager.call(ACCOUNT_ID, (client, session) -> {
+                throw new SessionExpiredException(401, "Bad status: 401");
+            });
+
+            fail("should have thrown exception");
+        }
+        catch (LoginFailedException e) {
+            assertSame(loginFailedException, e);
+        }
+
+        assertEquals(1, sessionManager.getFailedLoginCount());
+        assertSame(oldSession, sessionManager.getSession(ACCOUNT_ID));
+    }
+
+    public void testRenewSessionReturnsReplacementWithoutLoggingIn() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, newSession);
+
+        assertSame(newSession, sessionManager.renewSession(ACCOUNT_ID, oldSession));
+
+        verify(accountLogin, never()).login(ACCOUNT_ID);
+    }
+
+    public void testConcurrentRenewalsLogInOnce() throws Exception {
+        final CountDownLatch loginStarted = new CountDownLatch(1);
+        final CountDownLatch finishLogin = new CountDownLatch(1);
+        final AtomicInteger logins = new AtomicInteger();
+        sessionManager = new SessionManager(playClient, accountId -> {
+            logins.incrementAndGet();
+            loginStarted.countDown();
+            try {
+                finishLogin.await();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return newSession;
+        }, playSessionStore, sessionManagerConfig, clock);
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+
+        final List<PlaySession> renewed = new ArrayList<PlaySession>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    PlaySession playSession = sessionManager.renewSession(ACCOUNT_ID, oldSession);
+                    synchronized (renewed) {
+                        renewed.add(playSession);
+                    }
+                }
+                catch (IOException | URISyntaxException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        assertTrue(loginStarted.await(5, TimeUnit.SECONDS));
+        finishLogin.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, logins.get());
+        assertEquals(8, renewed.size());
+        for (PlaySession playSession : renewed) {
+            assertSame(newSession, playSession);
+        }
+    }
+
+    public void testRenewSessionSurvivesStoreFailure() throws IOException, URISyntaxException {
+        when(accountLogin.login(ACCOUNT_ID)).thenReturn(newSession);
+        doThrow(new IOException("disk full")).when(playSessionStore).save(ACCOUNT_ID, newSession);
+
+        assertSame(newSession, sessionManager.renewSession(ACCOUNT_ID, null));
+
+        assertEquals(1, sessionManager.getFailedSaveCount());
+        assertSame(newSession, sessionManager.getSession(ACCOUNT_ID));
+    }
+
+    public void testRefreshAgingReplacesOldSessions() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        when(accountLogin.login(ACCOUNT_ID)).thenReturn(newSession);
+
+        clock.setMillis((long) (REFRESH_AFTER_MILLIS * (1 - SessionManager.REFRESH_SPREAD)) - 1);
+        sessionManager.refreshAging();
+        verify(accountLogin, never()).login(ACCOUNT_ID);
+
+        clock.setMillis(REFRESH_AFTER_MILLIS);
+        sessionManager.refreshAging();
+        verify(accountLogin, times(1)).login(ACCOUNT_ID);
+        assertSame(newSession, sessionManager.getSession(ACCOUNT_ID));
+    }
+
+    public void testRefreshAgingKeepsSessionWhenLoginFails() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        when(accountLogin.login(ACCOUNT_ID)).thenThrow(new IOException("unreachable"));
+
+        clock.setMillis(REFRESH_AFTER_MILLIS);
+        sessionManager.refreshAging();
+
+        assertEquals(1, sessionManager.getFailedLoginCount());
+        assertSame(oldSession, sessionManager.getSession(ACCOUNT_ID));
+    }
+
+    public void testRefreshAgingSurvivesError() throws IOException, URISyntaxException {
+        sessionManager = new SessionManager(playClient, accountId -> {
+            if (ACCOUNT_ID.equals(accountId)) {
+                throw new StackOverflowError();
+            }
+            return newSession;
+        }, playSessionStore, sessionManagerConfig, clock);
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+        sessionManager.putSession("other@example.com", oldSession);
+
+        clock.setMillis(REFRESH_AFTER_MILLIS);
+        sessionManager.refreshAging();
+
+        // the other account is still refreshed, whichever comes first
+        assertSame(oldSession, sessionManager.getSession(ACCOUNT_ID));
+        assertSame(newSession, sessionManager.getSession("other@example.com"));
+    }
+
+    public void testGetRefreshAfterMillisIsSpread() {
+        long min = (long) (REFRESH_AFTER_MILLIS * (1 - SessionManager.REFRESH_SPREAD));
+        for (int i = 0; i < 100; i++) {
+            long refreshAfterMillis = sessionManager.getRefreshAfterMillis("account" + i);
+
+            assertTrue(refreshAfterMillis >= min);
+            assertTrue(refreshAfterMillis <= REFRESH_AFTER_MILLIS);
+        }
+    }
+
+    public void testSchedulesRefreshUntilClosed() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        ScheduledFuture refreshTask = mock(ScheduledFuture.class);
+        doReturn(refreshTask).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), eq(1000L), eq(1000L),
+                eq(TimeUnit.MILLISECONDS));
+
+        sessionManager = new SessionManager(playClient, accountLogin, playSessionStore,
+                new SessionManagerConfig(REFRESH_AFTER_MILLIS, 1000, scheduler), clock);
+        sessionManager.close();
+
+        verify(refreshTask).cancel(false);
+    }
+
+    public void testRemoveSession() throws IOException, URISyntaxException {
+        sessionManager.putSession(ACCOUNT_ID, oldSession);
+
+        sessionManager.removeSession(ACCOUNT_ID);
+
+        verify(playSessionStore).remove(ACCOUNT_ID);
+        assertFalse(sessionManager.getAccountIds().contains(ACCOUNT_ID));
+    }
+
+    public void testRemoveSessionCancelsLoginInFlight() throws Exception {
+        final CountDownLatch loginStarted = new CountDownLatch(1);
+        final CountDownLatch finishLogin = new CountDownLatch(1);
+        sessionManager = new SessionManager(playClient, accountId -> {
+            loginStarted.countDown();
+            try {
+                finishLogin.await();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return newSession;
+        }, playSessionStore, sessionManagerConfig, clock);
+
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread thread = new Thread(() -> {
+            try {
+                sessionManager.renewSession(ACCOUNT_ID, null);
+            }
+            catch (Throwable t) {
+                synchronized (failures) {
+                    failures.add(t);
+                }
+            }
+        });
+        thread.start();
+
+        assertTrue(loginStarted.await(5, TimeUnit.SECONDS));
+        sessionManager.removeSession(ACCOUNT_ID);
+        finishLogin.countDown();
+        thread.join(5000);
+
+        // the login that finished after the removal doesn't bring the account back
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof CancellationException);
+        assertFalse(sessionManager.getAccountIds().contains(ACCOUNT_ID));
+        verify(playSessionStore, never()).save(ACCOUNT_ID, newSession);
+    }
+
+    public void testIsSessionExpired() {
+        assertTrue(SessionManager.isSessionExpired(new SessionExpiredException(401, "Bad status: 401")));
+        assertTrue(SessionManager.isSessionExpired(
+                new RuntimeException(new IOException(new SessionExpiredException(403, "Bad status: 403")))));
+        assertFalse(SessionManager.isSessionExpired(new IllegalStateException("Bad status: 503")));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the ConnectionPoolConfig
+ */
+public class ConnectionPoolConfigTest extends TestCase {
+
+    public void testDefaults() {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+
+        assertEquals(ConnectionPoolConfig.DEFAULT_MAX_TOTAL, config.getMaxTotal());
+        assertEquals(ConnectionPoolConfig.DEFAULT_MAX_PER_ROUTE, config.getMaxPerRoute());
+        assertEquals(ConnectionPoolConfig.DEFAULT_KEEP_ALIVE_MILLIS, config.getKeepAliveMillis());
+        assertEquals(ConnectionPoolConfig.DEFAULT_IDLE_TIMEOUT_MILLIS, config.getIdleTimeoutMillis());
+        assertEquals(ConnectionPoolConfig.DEFAULT_EVICTION_INTERVAL_MILLIS, config.getEvictionIntervalMillis());
+    }
+
+    public void testConsHappyPath() {
+        ConnectionPoolConfig config = new ConnectionPoolConfig(10, 5, 100, 200, 300);
+
+        assertEquals(10, config.getMaxTotal());
+        assertEquals(5, config.getMaxPerRoute());
+        assertEquals(100, config.getKeepAliveMillis());
+        assertEquals(200, config.getIdleTimeoutMillis());
+        assertEquals(300, config.getEvictionIntervalMillis());
+    }
+
+    public void testConsFailsDueToZeroMaxTotal() {
+        try {
+            new ConnectionPoolConfig(0, 5, 100, 200, 300);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroMaxPerRoute() {
+        try {
+            new ConnectionPoolConfig(10, 0, 100, 200, 300);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToMaxPerRouteGreaterThanMaxTotal() {
+        try {
+            new ConnectionPoolConfig(10, 11, 100, 200, 300);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroKeepAlive() {
+        try {
+            new ConnectionPoolConfig(10, 5, 0, 200, 300);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroIdleTimeout() {
+        try {
+            new ConnectionPoolConfig(10, 5, 100, 0, 300);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroEvictionInterval() {
+        try {
+            new ConnectionPoolConfig(10, 5, 100, 200, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
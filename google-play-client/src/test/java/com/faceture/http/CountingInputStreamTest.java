@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.faceture.http;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the CountingInputStream
+ */
+public class CountingInputStreamTest extends TestCase {
+
+    // class under test
+    CountingInputStream countingInputStream;
+
+    // the counts handed over
+    final List<Long> byteCounts = new ArrayList<Long>();
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        countingInputStream = new CountingInputStream(new ByteArrayInputStream(new byte[10]), byteCounts::add);
+    }
+
+    public void testConsFailsDueToNullInputStream() {
+        try {
+            new CountingInputStream(null, byteCounts::add);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullOnFinish() {
+        try {
+            new CountingInputStream(new ByteArrayInputStream(new byte[10]), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCountsBytesRead() throws IOException {
+        assertEquals(0, countingInputStream.read());
+        assertEquals(4, countingInputStream.read(new byte[4]));
+        assertEquals(2, countingInputStream.skip(2));
+        assertEquals(3, countingInputStream.read(new byte[8], 1, 7));
+        assertEquals(-1, countingInputStream.read());
+        assertEquals(-1, countingInputStream.read(new byte[4]));
+
+        assertEquals(10, countingInputStream.getByteCount());
+        assertFalse(countingInputStream.markSupported());
+        assertTrue(byteCounts.isEmpty());
+    }
+
+    public void testCloseHandsOverTheCountOnce() throws IOException {
+        countingInputStream.read(new byte[3]);
+
+        countingInputStream.close();
+        countingInputStream.close();
+        countingInputStream.finish();
+
+        assertEquals(1, byteCounts.size());
+        assertEquals(3L, (long) byteCounts.get(0));
+    }
+
+    public void testCloseHandsOverTheCountWhenCloseFails() throws IOException {
+        InputStream inputStream = mock(InputStream.class);
+        doThrow(new IOException("connection reset")).when(inputStream).close();
+        countingInputStream = new CountingInputStream(inputStream, byteCounts::add);
+
+        try {
+            countingInputStream.close();
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        assertEquals(1, byteCounts.size());
+    }
+
+    public void testFinishDoesntClose() throws IOException {
+        InputStream inputStream = mock(InputStream.class);
+        countingInputStream = new CountingInputStream(inputStream, byteCounts::add);
+
+        countingInputStream.finish();
+
+        assertEquals(1, byteCounts.size());
+        verify(inputStream, never()).close();
+    }
+}
@@ -18,8 +18,10 @@
 package com.faceture.http;
 
 import junit.framework.TestCase;
-
-import java.io.UnsupportedEncodingException;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 /**
  * tests the HttpClientFactory
@@ -35,8 +37,119 @@ public class HttpClientFactoryTest extends TestCase {
         httpClientFactory = new HttpClientFactory();
     }
 
-    public void testCreateHttpClientHappyPath() {
-        assertNotNull(httpClientFactory.createHttpClient());
+    public void tearDown() throws Exception {
+        httpClientFactory.shutdown();
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullConnectionPoolConfig() {
+        try {
+            new HttpClientFactory(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsAppliesConnectionPoolConfig() {
+        httpClientFactory.shutdown();
+        httpClientFactory = new HttpClientFactory(new ConnectionPoolConfig(20, 7, 1000, 1000, 1000));
+
+        assertEquals(20, httpClientFactory.getConnectionManager().getMaxTotal());
+        assertEquals(7, httpClientFactory.getConnectionManager().getDefaultMaxPerRoute());
+    }
+
+    public void testPoolWaitTiming() {
+        assertEquals(-1, httpClientFactory.takePoolWaitNanos());
+
+        httpClientFactory.setPoolWaitTiming(true);
+        assertTrue(httpClientFactory.getConnectionManager().isTiming());
+    }
+
+    public void testAsyncPoolWaitNotTimedByDefault() {
+        HttpClientContext httpClientContext = httpClientFactory.createHttpClientContext(
+                httpClientFactory.createCookieStore());
+
+        // setting a context before there's an async client does nothing
+        httpClientFactory.setAsyncPoolWaitContext(httpClientContext);
+        httpClientFactory.setAsyncPoolWaitContext(null);
+
+        assertEquals(-1, httpClientFactory.getAsyncPoolWaitNanos(httpClientContext));
+    }
+
+    public void testGetHttpClientIsShared() {
+        CloseableHttpClient httpClient = httpClientFactory.getHttpClient();
+
+        assertNotNull(httpClient);
+        assertSame(httpClient, httpClientFactory.getHttpClient());
+    }
+
+    public void testGetHttpAsyncClientIsSharedAndRunning() {
+        CloseableHttpAsyncClient httpAsyncClient = httpClientFactory.getHttpAsyncClient();
+
+        assertNotNull(httpAsyncClient);
+        assertTrue(httpAsyncClient.isRunning());
+        assertSame(httpAsyncClient, httpClientFactory.getHttpAsyncClient());
+    }
+
+    public void testGetHttpAsyncClientFailsAfterShutdown() {
+        httpClientFactory.shutdown();
+
+        try {
+            httpClientFactory.getHttpAsyncClient();
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testShutdownStopsHttpAsyncClient() {
+        CloseableHttpAsyncClient httpAsyncClient = httpClientFactory.getHttpAsyncClient();
+
+        httpClientFactory.shutdown();
+
+        assertFalse(httpAsyncClient.isRunning());
+    }
+
+    public void testCreateHttpClientContextFailsDueToNullCookieStore() {
+        try {
+            httpClientFactory.createHttpClientContext(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCreateHttpClientContextHappyPath() {
+        CookieStore cookieStore = httpClientFactory.createCookieStore();
+
+        HttpClientContext httpClientContext = httpClientFactory.createHttpClientContext(cookieStore);
+
+        assertSame(cookieStore, httpClientContext.getCookieStore());
+    }
+
+    public void testCreateCookieStoreHappyPath() {
+        assertNotSame(httpClientFactory.createCookieStore(), httpClientFactory.createCookieStore());
+    }
+
+    public void testGetHttpClientFailsAfterShutdown() {
+        httpClientFactory.shutdown();
+        assertTrue(httpClientFactory.isShutdown());
+
+        try {
+            httpClientFactory.getHttpClient();
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    public void testShutdownTwiceIsOk() {
+        httpClientFactory.shutdown();
+        httpClientFactory.shutdown();
+
+        assertTrue(httpClientFactory.isShutdown());
     }
 
     public void testCreateHttpPostHappyPath() {
@@ -47,11 +160,11 @@ public class HttpClientFactoryTest extends TestCase {
         assertNotNull(httpClientFactory.createHttpGet());
     }
 
-    public void testCreateMultipartEntity() {
-        assertNotNull(httpClientFactory.createMultipartEntity());
+    public void testCreateMultipartEntityBuilder() {
+        assertNotNull(httpClientFactory.createMultipartEntityBuilder());
     }
 
-    public void testCreateStringBodyFailsDueToNullString() throws UnsupportedEncodingException {
+    public void testCreateStringBodyFailsDueToNullString() {
         try {
             httpClientFactory.createStringBody(null);
 
@@ -60,7 +173,7 @@ public class HttpClientFactoryTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
-    public void testCreateStringBodyFailsDueToEmptyString() throws UnsupportedEncodingException {
+    public void testCreateStringBodyFailsDueToEmptyString() {
         try {
             httpClientFactory.createStringBody("");
 
@@ -69,7 +182,7 @@ public class HttpClientFactoryTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
-    public void testCreateStringBodyHappyPath() throws UnsupportedEncodingException {
+    public void testCreateStringBodyHappyPath() {
         assertNotNull(httpClientFactory.createStringBody("string"));
     }
 
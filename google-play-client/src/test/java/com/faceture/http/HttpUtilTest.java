@@ -22,26 +22,40 @@ import junit.framework.TestCase;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.cookie.Cookie;
-import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import static org.mockito.Mockito.*;
 
@@ -78,8 +92,8 @@ public class HttpUtilTest extends TestCase {
     Map<String, String> cookies = new HashMap<String, String>();
     String cookieName = "cookieName";
     String cookieValue = "cookieValue";
-    DefaultHttpClient defaultHttpClient;
     HttpClient httpClient;
+    HttpContext httpContext;
 
     public HttpUtilTest() {
         queryParams.put(queryParamName1, queryParamValue1);
@@ -99,8 +113,8 @@ public class HttpUtilTest extends TestCase {
         httpResponse = mock(HttpResponse.class);
         httpRequest = mock(HttpRequestBase.class);
         httpPost = mock(HttpPost.class);
-        defaultHttpClient = mock(DefaultHttpClient.class);
         httpClient = mock(HttpClient.class);
+        httpContext = mock(HttpContext.class);
 
         // create test object
         httpUtil = new HttpUtil(httpClientFactory);
@@ -224,6 +238,15 @@ public class HttpUtilTest extends TestCase {
         verify(httpRequest).setURI(uri);
     }
 
+    public void testSetUriWithPort() throws URISyntaxException, MalformedURLException {
+        // do the call
+        httpUtil.setUri(httpRequest, false, "localhost:8080", path, queryString);
+
+        // verify results
+        URI uri = new URL(Scheme.HTTP, "localhost", 8080, path + "?" + queryString).toURI();
+        verify(httpRequest).setURI(uri);
+    }
+
     public void testSetHeadersFailsDueToNullRequest() {
         try {
             httpUtil.setHeaders(null, headers);
@@ -260,7 +283,7 @@ public class HttpUtilTest extends TestCase {
         verify(httpRequest).setHeader(headerName, headerValue);
     }
 
-    public void testSetFormDataFailsDueToNullPost() throws UnsupportedEncodingException {
+    public void testSetFormDataFailsDueToNullPost() {
         try {
             httpUtil.setFormData(null, formData);
 
@@ -269,7 +292,7 @@ public class HttpUtilTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
-    public void testSetFormDataFailsDueToNullFormData() throws UnsupportedEncodingException {
+    public void testSetFormDataFailsDueToNullFormData() {
         try {
             Map<String, String> emptyHeaders = new HashMap<String, String>();
             httpUtil.setFormData(httpPost, emptyHeaders);
@@ -279,7 +302,7 @@ public class HttpUtilTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
-    public void testSetFormDataFailsDueToEmptyFormData() throws UnsupportedEncodingException {
+    public void testSetFormDataFailsDueToEmptyFormData() {
         try {
             Map<String, String> emptyForm = new HashMap<String, String>();
             httpUtil.setFormData(httpPost, emptyForm);
@@ -289,18 +312,20 @@ public class HttpUtilTest extends TestCase {
         catch (IllegalArgumentException e) {}
     }
 
-    public void testSetFormDataHappyPath() throws UnsupportedEncodingException {
-
-        MultipartEntity multipartEntity = mock(MultipartEntity.class);
-        when(httpClientFactory.createMultipartEntity()).thenReturn(multipartEntity);
-        StringBody stringBody = mock(StringBody.class);
-        when(httpClientFactory.createStringBody(fieldValue)).thenReturn(stringBody);
+    public void testSetFormDataHappyPath() throws IOException {
+        when(httpClientFactory.createMultipartEntityBuilder()).thenReturn(MultipartEntityBuilder.create());
+        when(httpClientFactory.createStringBody(fieldValue))
+                .thenReturn(new StringBody(fieldValue, ContentType.TEXT_PLAIN));
+        HttpPost realHttpPost = new HttpPost();
 
         // do the call
-        httpUtil.setFormData(httpPost, formData);
+        httpUtil.setFormData(realHttpPost, formData);
 
-        verify(multipartEntity).addPart(fieldName, stringBody);
-        verify(httpPost).setEntity(multipartEntity);
+        ByteArrayOutputStream form = new ByteArrayOutputStream();
+        realHttpPost.getEntity().writeTo(form);
+        String formString = form.toString("UTF-8");
+        assertTrue(formString.contains("name=\"" + fieldName + "\""));
+        assertTrue(formString.contains(fieldValue));
     }
 
     public void testSetCookiesFailsDueToNullHttpClient() {
@@ -332,30 +357,96 @@ public class HttpUtilTest extends TestCase {
     }
 
     public void testSetCookiesHappyPath() {
+        HttpGet httpGet = new HttpGet();
+
+        // do the call
+        httpUtil.setCookies(httpGet, cookies);
+
+        // the cookies are sent as a header, and the client's own cookie handling is turned off
+        assertEquals(cookieName + "=" + cookieValue, httpGet.getFirstHeader(HeaderName.COOKIE).getValue());
+        assertEquals(CookieSpecs.IGNORE_COOKIES, httpGet.getConfig().getCookieSpec());
+    }
+
+    public void testSetCookiesKeepsRequestConfig() {
+        HttpGet httpGet = new HttpGet();
+        httpGet.setConfig(RequestConfig.custom().setSocketTimeout(1234).build());
+
+        httpUtil.setCookies(httpGet, cookies);
+
+        assertEquals(1234, httpGet.getConfig().getSocketTimeout());
+        assertEquals(CookieSpecs.IGNORE_COOKIES, httpGet.getConfig().getCookieSpec());
+    }
+
+    public void testGetHeadersFailsDueToNullResponse() {
+        try {
+            httpUtil.getHeaders(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetHeadersHappyPath() {
         // mock interactions
-        HttpParams httpParams = mock(HttpParams.class);
-        when(httpRequest.getParams()).thenReturn(httpParams);
+        Header httpHeader = mock(Header.class);
+        Header[] httpHeaders =  {httpHeader};
+        when(httpResponse.getAllHeaders()).thenReturn(httpHeaders);
+        when(httpHeader.getName()).thenReturn(headerName);
+        when(httpHeader.getValue()).thenReturn(headerValue);
+
+        // do the call and verify results
+        assertEquals(headers, httpUtil.getHeaders(httpResponse));
+    }
+
+    public void testExecuteFailsDueToNullHttpClient() throws IOException {
+        try {
+            httpUtil.execute(null, httpRequest, httpContext);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testExecuteFailsDueToNullHttpRequest() throws IOException {
+        try {
+            httpUtil.execute(httpClient, null, httpContext);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testExecuteFailsDueToNullHttpContext() throws IOException {
+        try {
+            httpUtil.execute(httpClient, httpRequest, null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testExecuteHappyPath() throws IOException {
+        // mock interaction
+        when(httpClient.execute(httpRequest, httpContext)).thenReturn(httpResponse);
 
         // do the call
-        httpUtil.setCookies(httpRequest, cookies);
+        assertEquals(httpResponse, httpUtil.execute(httpClient, httpRequest, httpContext));
 
-        // verify interactions
-        verify(httpRequest).addHeader(eq(HeaderName.COOKIE), anyString());
+        verify(httpClient).execute(httpRequest, httpContext);
     }
 
-    public void testGetCookiesFailsDueToNullHttpClient() {
+    public void testGetCookiesFromStoreFailsDueToNullCookieStore() {
         try {
-            httpUtil.getCookies(null);
+            httpUtil.getCookies((CookieStore) null);
 
             fail("should have thrown exception");
         }
         catch (IllegalArgumentException e) {}
     }
 
-    public void testGetCookiesHappyPath() {
+    public void testGetCookiesFromStoreHappyPath() {
         // mock interactions
         CookieStore cookieStore = mock(CookieStore.class);
-        when(defaultHttpClient.getCookieStore()).thenReturn(cookieStore);
         List<Cookie> httpCookies = new ArrayList<Cookie>();
         Cookie cookie = mock(Cookie.class);
         httpCookies.add(cookie);
@@ -364,55 +455,173 @@ public class HttpUtilTest extends TestCase {
         when(cookieStore.getCookies()).thenReturn(httpCookies);
 
         // do the call
-        assertEquals(cookies, httpUtil.getCookies(defaultHttpClient));
+        assertEquals(cookies, httpUtil.getCookies(cookieStore));
     }
 
-    public void testGetHeadersFailsDueToNullResponse() {
+    public void testBufferEntityFailsDueToNullRequest() throws IOException {
         try {
-            httpUtil.getHeaders(null);
+            httpUtil.bufferEntity(null);
 
             fail("should have thrown exception");
         }
         catch (IllegalArgumentException e) {}
     }
 
-    public void testGetHeadersHappyPath() {
-        // mock interactions
-        Header httpHeader = mock(Header.class);
-        Header[] httpHeaders =  {httpHeader};
-        when(httpResponse.getAllHeaders()).thenReturn(httpHeaders);
-        when(httpHeader.getName()).thenReturn(headerName);
-        when(httpHeader.getValue()).thenReturn(headerValue);
+    public void testBufferEntityWithoutEntity() throws IOException {
+        HttpPost httpPost = new HttpPost();
 
-        // do the call and verify results
-        assertEquals(headers, httpUtil.getHeaders(httpResponse));
+        httpUtil.bufferEntity(httpPost);
+
+        assertNull(httpPost.getEntity());
     }
 
-    public void testExecuteFailsDueToNullHttpClient() throws IOException {
+    public void testBufferEntityHappyPath() throws IOException {
+        HttpPost httpPost = new HttpPost();
+        StringEntity entity = new StringEntity("body");
+        entity.setContentType("text/plain");
+        httpPost.setEntity(entity);
+
+        httpUtil.bufferEntity(httpPost);
+
+        HttpEntity bufferedEntity = httpPost.getEntity();
+        assertNotSame(entity, bufferedEntity);
+        assertTrue(bufferedEntity.isRepeatable());
+        assertEquals("text/plain", bufferedEntity.getContentType().getValue());
+        assertEquals("body", EntityUtils.toString(bufferedEntity));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsyncFailsDueToNullHttpAsyncClient() {
         try {
-            httpUtil.execute(null, httpRequest);
+            httpUtil.executeAsync(null, httpRequest, new BasicHttpContext(), mock(FutureCallback.class));
 
             fail("should have thrown exception");
         }
         catch (IllegalArgumentException e) {}
     }
 
-    public void testExecuteFailsDueToNullHttpRequest() throws IOException {
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsyncFailsDueToNullHttpRequest() {
         try {
-            httpUtil.execute(httpClient, null);
+            httpUtil.executeAsync(mock(HttpAsyncClient.class), null, new BasicHttpContext(),
+                    mock(FutureCallback.class));
 
             fail("should have thrown exception");
         }
         catch (IllegalArgumentException e) {}
     }
 
-    public void testExecuteHappyPath() throws IOException {
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsyncFailsDueToNullHttpContext() {
+        try {
+            httpUtil.executeAsync(mock(HttpAsyncClient.class), httpRequest, null, mock(FutureCallback.class));
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testExecuteAsyncFailsDueToNullCallback() {
+        try {
+            httpUtil.executeAsync(mock(HttpAsyncClient.class), httpRequest, new BasicHttpContext(), null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsyncHappyPath() {
         // mock interaction
-        when(httpClient.execute(httpRequest)).thenReturn(httpResponse);
+        HttpAsyncClient httpAsyncClient = mock(HttpAsyncClient.class);
+        HttpContext httpContext = new BasicHttpContext();
+        FutureCallback<HttpResponse> callback = mock(FutureCallback.class);
+        Future<HttpResponse> future = mock(Future.class);
+        when(httpAsyncClient.execute(httpRequest, httpContext, callback)).thenReturn(future);
 
         // do the call
-        assertEquals(httpResponse, httpUtil.execute(httpClient, httpRequest));
+        assertEquals(future, httpUtil.executeAsync(httpAsyncClient, httpRequest, httpContext, callback));
+    }
+
+    public void testGetResponseStreamFailsDueToNullHttpResponse() throws IOException {
+        try {
+            httpUtil.getResponseStream(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetResponseStreamFailsDueToNoEntity() {
+        try {
+            httpUtil.getResponseStream(httpResponse);
+
+            fail("should have thrown exception");
+        }
+        catch (IOException e) {}
+    }
+
+    public void testGetResponseStreamHappyPath() throws IOException {
+        HttpEntity entity = mock(HttpEntity.class);
+        InputStream body = mock(InputStream.class);
+        when(httpResponse.getEntity()).thenReturn(entity);
+        when(entity.getContent()).thenReturn(body);
+
+        assertEquals(body, httpUtil.getResponseStream(httpResponse));
+    }
+
+    public void testCountResponseBytesFailsDueToNullHttpResponse() throws IOException {
+        try {
+            httpUtil.countResponseBytes(null, byteCount -> { });
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCountResponseBytesWithoutEntity() throws IOException {
+        assertNull(httpUtil.countResponseBytes(httpResponse, byteCount -> { }));
+    }
+
+    public void testCountResponseBytesHappyPath() throws IOException {
+        HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        httpResponse.setEntity(new StringEntity("b\u00f6dy", ContentType.APPLICATION_JSON));
+        final List<Long> byteCounts = new ArrayList<Long>();
+
+        CountingInputStream countedBody = httpUtil.countResponseBytes(httpResponse, byteCounts::add);
+
+        // the body is read through the counter, and the count is bytes, not chars
+        assertEquals("b\u00f6dy", httpUtil.getResponseString(httpResponse));
+        assertEquals(5, countedBody.getByteCount());
+        assertEquals(1, byteCounts.size());
+        assertEquals(5L, (long) byteCounts.get(0));
+        assertEquals(ContentType.APPLICATION_JSON.toString(), httpResponse.getEntity().getContentType().getValue());
+    }
+
+    public void testGetResponseCharsetFailsDueToNullHttpResponse() {
+        try {
+            httpUtil.getResponseCharset(null);
+
+            fail("should have thrown exception");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetResponseCharsetDefaultsToUtf8() throws IOException {
+        assertEquals(StandardCharsets.UTF_8, httpUtil.getResponseCharset(httpResponse));
+
+        StringEntity entity = new StringEntity("body");
+        entity.setContentType("application/json");
+        when(httpResponse.getEntity()).thenReturn(entity);
+
+        assertEquals(StandardCharsets.UTF_8, httpUtil.getResponseCharset(httpResponse));
+    }
+
+    public void testGetResponseCharsetFromContentType() throws IOException {
+        StringEntity entity = new StringEntity("body");
+        entity.setContentType("application/json; charset=ISO-8859-1");
+        when(httpResponse.getEntity()).thenReturn(entity);
 
-        verify(httpClient).execute(httpRequest);
+        assertEquals(StandardCharsets.ISO_8859_1, httpUtil.getResponseCharset(httpResponse));
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import junit.framework.TestCase;
+import org.apache.http.conn.HttpClientConnectionManager;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the IdleConnectionEvictor
+ */
+public class IdleConnectionEvictorTest extends TestCase {
+
+    // class under test
+    IdleConnectionEvictor idleConnectionEvictor;
+
+    // dependencies
+    HttpClientConnectionManager connectionManager;
+
+    // params
+    final long idleTimeoutMillis = 1000;
+    final long evictionIntervalMillis = 10;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        connectionManager = mock(HttpClientConnectionManager.class);
+
+        idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public void tearDown() throws Exception {
+        idleConnectionEvictor.shutdown();
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullConnectionManager() {
+        try {
+            new IdleConnectionEvictor(null, idleTimeoutMillis, evictionIntervalMillis);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroIdleTimeout() {
+        try {
+            new IdleConnectionEvictor(connectionManager, 0, evictionIntervalMillis);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToZeroEvictionInterval() {
+        try {
+            new IdleConnectionEvictor(connectionManager, idleTimeoutMillis, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testIsDaemon() {
+        assertTrue(idleConnectionEvictor.isDaemon());
+    }
+
+    public void testEvict() {
+        idleConnectionEvictor.evict();
+
+        verify(connectionManager).closeExpiredConnections();
+        verify(connectionManager).closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void testRunEvictsUntilShutdown() throws InterruptedException {
+        idleConnectionEvictor.start();
+
+        // give it a few eviction intervals
+        Thread.sleep(evictionIntervalMillis * 10);
+
+        verify(connectionManager, atLeastOnce()).closeExpiredConnections();
+
+        idleConnectionEvictor.shutdown();
+        idleConnectionEvictor.join(1000);
+
+        assertTrue(idleConnectionEvictor.isShutdown());
+        assertFalse(idleConnectionEvictor.isAlive());
+    }
+}
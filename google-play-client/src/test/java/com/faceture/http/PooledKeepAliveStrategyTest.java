@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+
+/**
+ * Tests the PooledKeepAliveStrategy
+ */
+public class PooledKeepAliveStrategyTest extends TestCase {
+
+    // class under test
+    PooledKeepAliveStrategy pooledKeepAliveStrategy;
+
+    // params
+    final long defaultKeepAliveMillis = 1234;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        pooledKeepAliveStrategy = new PooledKeepAliveStrategy(defaultKeepAliveMillis);
+    }
+
+    public void testConsFailsDueToZeroKeepAlive() {
+        try {
+            new PooledKeepAliveStrategy(0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetKeepAliveDurationFailsDueToNullResponse() {
+        try {
+            pooledKeepAliveStrategy.getKeepAliveDuration(null, new BasicHttpContext());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetKeepAliveDurationUsesDefault() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+
+        assertEquals(defaultKeepAliveMillis,
+                pooledKeepAliveStrategy.getKeepAliveDuration(response, new BasicHttpContext()));
+    }
+
+    public void testGetKeepAliveDurationHonorsServerTimeout() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Keep-Alive", "timeout=5");
+
+        assertEquals(5000, pooledKeepAliveStrategy.getKeepAliveDuration(response, new BasicHttpContext()));
+    }
+}
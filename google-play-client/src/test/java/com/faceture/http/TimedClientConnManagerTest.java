@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import junit.framework.TestCase;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the TimedClientConnManager
+ */
+public class TimedClientConnManagerTest extends TestCase {
+
+    // class under test
+    TimedClientConnManager timedClientConnManager;
+
+    final HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timedClientConnManager = new TimedClientConnManager();
+    }
+
+    public void tearDown() throws Exception {
+        timedClientConnManager.shutdown();
+
+        super.tearDown();
+    }
+
+    public void testNotTimingByDefault() throws Exception {
+        assertFalse(timedClientConnManager.isTiming());
+
+        HttpClientConnection connection =
+                timedClientConnManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        timedClientConnManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+
+        assertEquals(-1, timedClientConnManager.takeWaitNanos());
+    }
+
+    public void testTimesTheWait() throws Exception {
+        timedClientConnManager.setTiming(true);
+
+        // getting a connection from the pool doesn't open it, so no server is needed
+        HttpClientConnection connection =
+                timedClientConnManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        timedClientConnManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(timedClientConnManager.takeWaitNanos() >= 0);
+
+        // a wait is only taken once
+        assertEquals(-1, timedClientConnManager.takeWaitNanos());
+    }
+
+    public void testGetConnectionsInPool() throws Exception {
+        assertEquals(0, timedClientConnManager.getConnectionsInPool());
+
+        HttpClientConnection connection =
+                timedClientConnManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        assertEquals(1, timedClientConnManager.getConnectionsInPool());
+
+        // a connection that was never opened isn't kept
+        timedClientConnManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+        assertEquals(0, timedClientConnManager.getConnectionsInPool());
+    }
+
+    public void testWaitIsPerThread() throws Exception {
+        timedClientConnManager.setTiming(true);
+
+        HttpClientConnection connection =
+                timedClientConnManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        timedClientConnManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+
+        final long[] otherThreadWait = new long[1];
+        Thread thread = new Thread(() -> otherThreadWait[0] = timedClientConnManager.takeWaitNanos());
+        thread.start();
+        thread.join();
+
+        assertEquals(-1, otherThreadWait[0]);
+        assertTrue(timedClientConnManager.takeWaitNanos() >= 0);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.http;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the TimedNHttpClientConnManager
+ */
+public class TimedNHttpClientConnManagerTest extends TestCase {
+
+    // class under test
+    TimedNHttpClientConnManager timedNHttpClientConnManager;
+
+    CloseableHttpAsyncClient httpAsyncClient;
+    HttpServer httpServer;
+    String uri;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        httpServer.start();
+        uri = "http://localhost:" + httpServer.getAddress().getPort() + "/";
+
+        timedNHttpClientConnManager = new TimedNHttpClientConnManager();
+        httpAsyncClient = HttpAsyncClients.custom().setConnectionManager(timedNHttpClientConnManager).build();
+        httpAsyncClient.start();
+    }
+
+    public void tearDown() throws Exception {
+        httpAsyncClient.close();
+        httpServer.stop(0);
+
+        super.tearDown();
+    }
+
+    public void testTimesTheWaitIntoTheContext() throws Exception {
+        HttpClientContext httpClientContext = HttpClientContext.create();
+
+        timedNHttpClientConnManager.setTimedContext(httpClientContext);
+        Future<HttpResponse> httpResponseFuture = httpAsyncClient.execute(new HttpGet(uri), httpClientContext, null);
+        timedNHttpClientConnManager.setTimedContext(null);
+
+        assertEquals(204, httpResponseFuture.get(5, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertTrue(TimedNHttpClientConnManager.getWaitNanos(httpClientContext) >= 0);
+    }
+
+    public void testNotTimedWithoutContext() throws Exception {
+        HttpClientContext httpClientContext = HttpClientContext.create();
+
+        httpAsyncClient.execute(new HttpGet(uri), httpClientContext, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(-1, TimedNHttpClientConnManager.getWaitNanos(httpClientContext));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the InMemoryClientMetrics
+ */
+public class InMemoryClientMetricsTest extends TestCase {
+
+    // class under test
+    InMemoryClientMetrics inMemoryClientMetrics;
+
+    final String path = "/music/play";
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        inMemoryClientMetrics = new InMemoryClientMetrics();
+    }
+
+    public void testIsEnabled() {
+        assertTrue(inMemoryClientMetrics.isEnabled());
+        assertFalse(new NoOpClientMetrics().isEnabled());
+    }
+
+    public void testNothingRecorded() {
+        assertNull(inMemoryClientMetrics.getEndpoint(path));
+        assertNull(inMemoryClientMetrics.getCall("search"));
+        assertTrue(inMemoryClientMetrics.getEndpoints().isEmpty());
+    }
+
+    public void testRecordExchange() {
+        inMemoryClientMetrics.recordExchange(path, 200, 1000, 5000, 2000, 100, 300);
+        inMemoryClientMetrics.recordExchange(path, 200, -1, 7000, 1000, 100, 200);
+        inMemoryClientMetrics.recordExchange(path, 503, 0, 1000, 0, 100, 0);
+
+        EndpointMetrics endpointMetrics = inMemoryClientMetrics.getEndpoint(path);
+        assertEquals(3, endpointMetrics.getExchangeCount());
+        assertEquals(2, endpointMetrics.getStatusCount(200));
+        assertEquals(1, endpointMetrics.getStatusCount(503));
+        assertEquals(0, endpointMetrics.getStatusCount(404));
+        assertEquals(2, endpointMetrics.getStatusCounts().size());
+        assertEquals(300, endpointMetrics.getRequestBytes());
+        assertEquals(500, endpointMetrics.getResponseBytes());
+
+        // the unknown pool wait isn't counted
+        assertEquals(2, endpointMetrics.getPoolWait().getCount());
+        assertEquals(3, endpointMetrics.getResponse().getCount());
+        assertEquals(8000, endpointMetrics.getLatency().getMax());
+        assertEquals(2000, endpointMetrics.getBodyRead().getMax());
+    }
+
+    public void testRecordFailuresRetriesAndParses() {
+        inMemoryClientMetrics.recordExchangeFailure(path, 3000);
+        inMemoryClientMetrics.recordRetry(path);
+        inMemoryClientMetrics.recordRetry(path);
+        inMemoryClientMetrics.recordHedge(path);
+        inMemoryClientMetrics.recordParse(path, 400);
+
+        EndpointMetrics endpointMetrics = inMemoryClientMetrics.getEndpoint(path);
+        assertEquals(0, endpointMetrics.getExchangeCount());
+        assertEquals(1, endpointMetrics.getFailureCount());
+        assertEquals(2, endpointMetrics.getRetryCount());
+        assertEquals(1, endpointMetrics.getHedgeCount());
+        assertEquals(400, endpointMetrics.getParse().getMax());
+    }
+
+    public void testRecordCircuitTransitionsAndRejections() {
+        assertNull(new EndpointMetrics().getCircuitState());
+
+        inMemoryClientMetrics.recordCircuitTransition(path, "CLOSED", "OPEN");
+        inMemoryClientMetrics.recordCircuitTransition(path, "OPEN", "HALF_OPEN");
+        inMemoryClientMetrics.recordCircuitTransition(path, "HALF_OPEN", "OPEN");
+        inMemoryClientMetrics.recordRejection(path, "circuit_open");
+        inMemoryClientMetrics.recordRejection(path, "circuit_open");
+        inMemoryClientMetrics.recordRejection(path, "bulkhead_full");
+
+        EndpointMetrics endpointMetrics = inMemoryClientMetrics.getEndpoint(path);
+        assertEquals("OPEN", endpointMetrics.getCircuitState());
+        assertEquals(Long.valueOf(2), endpointMetrics.getCircuitTransitionCounts().get("OPEN"));
+        assertEquals(Long.valueOf(1), endpointMetrics.getCircuitTransitionCounts().get("HALF_OPEN"));
+        assertEquals(Long.valueOf(2), endpointMetrics.getRejectionCounts().get("circuit_open"));
+        assertEquals(Long.valueOf(1), endpointMetrics.getRejectionCounts().get("bulkhead_full"));
+
+        String text = inMemoryClientMetrics.scrape();
+        assertTrue(text, text.contains("play_circuit_state{path=\"/music/play\",state=\"OPEN\"} 1\n"));
+        assertTrue(text, text.contains("play_circuit_transitions_total{path=\"/music/play\",state=\"OPEN\"} 2\n"));
+        assertTrue(text,
+                text.contains("play_http_rejections_total{path=\"/music/play\",reason=\"bulkhead_full\"} 1\n"));
+    }
+
+    public void testRecordCall() {
+        inMemoryClientMetrics.recordCall("search", 1000, true);
+        inMemoryClientMetrics.recordCall("search", 2000, false);
+
+        CallMetrics callMetrics = inMemoryClientMetrics.getCall("search");
+        assertEquals(2, callMetrics.getCallCount());
+        assertEquals(1, callMetrics.getFailureCount());
+        assertEquals(1000, callMetrics.getLatency().getMax());
+        assertEquals(2000, callMetrics.getFailureLatency().getMax());
+    }
+
+    public void testScrape() {
+        inMemoryClientMetrics.recordExchange(path, 200, 1000, 5000000, 2000000, 100, 300);
+        inMemoryClientMetrics.recordRetry(path);
+        inMemoryClientMetrics.recordHedge(path);
+        inMemoryClientMetrics.recordCall("getPlayURI", 8000000, true);
+
+        String text = inMemoryClientMetrics.scrape();
+
+        assertTrue(text, text.contains("play_http_responses_total{path=\"/music/play\",status=\"200\"} 1\n"));
+        assertTrue(text, text.contains("play_http_retries_total{path=\"/music/play\"} 1\n"));
+        assertTrue(text, text.contains("play_http_hedges_total{path=\"/music/play\"} 1\n"));
+        assertTrue(text, text.contains("play_http_response_bytes_total{path=\"/music/play\"} 300\n"));
+        assertTrue(text, text.contains("play_http_seconds_count{path=\"/music/play\",phase=\"total\"} 1\n"));
+        assertTrue(text, text.contains("play_call_seconds_count{operation=\"getPlayURI\"} 1\n"));
+        assertTrue(text, text.contains("play_call_seconds{operation=\"getPlayURI\",quantile=\"0.99\"} 0.008"));
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String threadPath = "/path" + (i % 2);
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    inMemoryClientMetrics.recordExchange(threadPath, 200, 0, 1000, 100, 10, 20);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10000, inMemoryClientMetrics.getEndpoint("/path0").getExchangeCount());
+        assertEquals(10000, inMemoryClientMetrics.getEndpoint("/path1").getStatusCount(200));
+        assertEquals(200000, inMemoryClientMetrics.getEndpoint("/path1").getResponseBytes());
+    }
+}
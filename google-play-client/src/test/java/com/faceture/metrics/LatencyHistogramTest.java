@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the LatencyHistogram
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    // class under test
+    LatencyHistogram latencyHistogram;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        latencyHistogram = new LatencyHistogram();
+    }
+
+    public void testEmpty() {
+        assertEquals(0, latencyHistogram.getCount());
+        assertEquals(0, latencyHistogram.getMax());
+        assertEquals(0.0, latencyHistogram.getMean());
+        assertEquals(0, latencyHistogram.getValueAtPercentile(99));
+    }
+
+    public void testSmallValuesAreExact() {
+        for (int value = 1; value <= 10; value++) {
+            latencyHistogram.record(value);
+        }
+
+        assertEquals(10, latencyHistogram.getCount());
+        assertEquals(55, latencyHistogram.getSum());
+        assertEquals(10, latencyHistogram.getMax());
+        assertEquals(5.5, latencyHistogram.getMean());
+        assertEquals(5, latencyHistogram.getValueAtPercentile(50));
+        assertEquals(10, latencyHistogram.getValueAtPercentile(100));
+    }
+
+    public void testNegativeValuesAreRecordedAsZero() {
+        latencyHistogram.record(-5);
+
+        assertEquals(1, latencyHistogram.getCount());
+        assertEquals(0, latencyHistogram.getValueAtPercentile(100));
+    }
+
+    public void testPercentilesAreWithinTheBucketPrecision() {
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000 + random.nextInt(50000000);
+            latencyHistogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = latencyHistogram.getValueAtPercentile(percentile);
+
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " >> " + exact, reported <= exact + exact / 16);
+        }
+        assertEquals(values[values.length - 1], latencyHistogram.getValueAtPercentile(100));
+    }
+
+    public void testPercentileFailsDueToOutOfRange() {
+        try {
+            latencyHistogram.getValueAtPercentile(101);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testBucketsCoverEveryValue() {
+        long[] values = {0, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.getBucket(value);
+
+            assertTrue(value + " is below its bucket", LatencyHistogram.getLowestValue(bucket) <= value);
+            assertTrue(value + " is above its bucket", LatencyHistogram.getHighestValue(bucket) >= value);
+        }
+
+        // the buckets follow on from each other
+        for (int bucket = 1; bucket <= LatencyHistogram.getBucket(Long.MAX_VALUE); bucket++) {
+            assertEquals(LatencyHistogram.getHighestValue(bucket - 1) + 1, LatencyHistogram.getLowestValue(bucket));
+        }
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final long value = (i + 1) * 1000;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    latencyHistogram.record(value);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, latencyHistogram.getCount());
+        assertEquals(4000, latencyHistogram.getMax());
+        assertEquals(10000L * (1000 + 2000 + 3000 + 4000), latencyHistogram.getSum());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the RateLimit
+ */
+public class RateLimitTest extends TestCase {
+
+    public void testConsFailsDueToBadSettings() {
+        try {
+            new RateLimit(0, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimit(Double.NaN, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimit(10, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testGetters() {
+        RateLimit rateLimit = new RateLimit(4, 10);
+
+        assertTrue(rateLimit.isLimited());
+        assertEquals(4.0, rateLimit.getPermitsPerSecond());
+        assertEquals(10, rateLimit.getBurst());
+        assertEquals(250000000, rateLimit.getIntervalNanos());
+    }
+
+    public void testUnlimited() {
+        assertFalse(RateLimit.UNLIMITED.isLimited());
+    }
+}
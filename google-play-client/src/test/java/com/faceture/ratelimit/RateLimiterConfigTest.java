@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Tests the RateLimiterConfig
+ */
+public class RateLimiterConfigTest extends TestCase {
+
+    final RateLimit rateLimit = new RateLimit(10, 5);
+
+    public void testConsFailsDueToBadArgs() {
+        Map<String, RateLimit> pathLimits = Collections.emptyMap();
+
+        try {
+            new RateLimiterConfig(null, rateLimit);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimiterConfig(rateLimit, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimiterConfig(rateLimit, rateLimit, null, 0, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimiterConfig(rateLimit, rateLimit, pathLimits, -1, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testDefaults() {
+        RateLimiterConfig config = new RateLimiterConfig(rateLimit, RateLimit.UNLIMITED);
+
+        assertSame(rateLimit, config.getSessionLimit());
+        assertSame(RateLimit.UNLIMITED, config.getPathLimit("/music/play"));
+        assertEquals(RateLimiterConfig.DEFAULT_MAX_WAIT_MILLIS, config.getMaxWaitMillis());
+        assertNotNull(config.getScheduler());
+        assertSame(config.getScheduler(), RateLimiterConfig.UNLIMITED.getScheduler());
+        assertTrue(config.isLimited());
+    }
+
+    public void testPathLimits() {
+        RateLimiterConfig config = new RateLimiterConfig(RateLimit.UNLIMITED, RateLimit.UNLIMITED,
+                Collections.singletonMap("/music/search", rateLimit), 0, null);
+
+        assertSame(rateLimit, config.getPathLimit("/music/search"));
+        assertSame(RateLimit.UNLIMITED, config.getPathLimit("/music/play"));
+        assertTrue(config.isLimited());
+    }
+
+    public void testUnlimited() {
+        assertFalse(RateLimiterConfig.UNLIMITED.isLimited());
+    }
+
+    public void testGivenScheduler() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            RateLimiterConfig config = new RateLimiterConfig(rateLimit, rateLimit,
+                    Collections.<String, RateLimit>emptyMap(), 100, scheduler);
+
+            assertSame(scheduler, config.getScheduler());
+            assertEquals(100, config.getMaxWaitMillis());
+        }
+        finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import junit.framework.TestCase;
+
+import static org.mockito.Mockito.*;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the RateLimiter
+ */
+public class RateLimiterTest extends TestCase {
+
+    // class under test
+    RateLimiter rateLimiter;
+
+    // dependencies
+    ClientMetrics clientMetrics;
+    ScheduledExecutorService scheduler;
+
+    // params
+    final String session = "authToken";
+    final String otherSession = "otherAuthToken";
+    final String path = "/music/search";
+    final String otherPath = "/music/play";
+
+    // the time the rate limiter sees, and the waits it made
+    long nowNanos = 1000000000L;
+    List<Long> sleeps = new ArrayList<Long>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        // 2 at once per session, then one every 100ms; 3 at once per path, then one every 50ms; wait up to 200ms
+        rateLimiter = createRateLimiter(new RateLimit(10, 2), new RateLimit(20, 3), 200);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdownNow();
+
+        super.tearDown();
+    }
+
+    private RateLimiter createRateLimiter(RateLimit sessionLimit, RateLimit pathLimit, long maxWaitMillis) {
+        RateLimiterConfig config = new RateLimiterConfig(sessionLimit, pathLimit,
+                Collections.<String, RateLimit>emptyMap(), maxWaitMillis, scheduler);
+
+        return new RateLimiter(config, clientMetrics) {
+            @Override
+            long nanoTime() {
+                return nowNanos;
+            }
+
+            @Override
+            void sleep(long nanos) {
+                sleeps.add(nanos);
+            }
+        };
+    }
+
+    public void testConsFailsDueToNullArgs() {
+        try {
+            new RateLimiter(null, clientMetrics);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RateLimiter(RateLimiterConfig.UNLIMITED, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testUnlimitedNeverHoldsBack() throws Exception {
+        rateLimiter = new RateLimiter(RateLimiterConfig.UNLIMITED, new NoOpClientMetrics());
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rateLimiter.tryAcquire(session, path));
+            rateLimiter.acquire(session, path);
+            assertTrue(rateLimiter.acquireAsync(session, path).isDone());
+        }
+        assertEquals(0, rateLimiter.getSessionCount());
+    }
+
+    public void testTryAcquireStopsAtTheSessionBurst() {
+        assertTrue(rateLimiter.tryAcquire(session, path));
+        assertTrue(rateLimiter.tryAcquire(session, otherPath));
+        assertFalse(rateLimiter.tryAcquire(session, path));
+
+        // other sessions have their own buckets
+        assertTrue(rateLimiter.tryAcquire(otherSession, path));
+
+        nowNanos += 100000000;
+        assertTrue(rateLimiter.tryAcquire(session, path));
+
+        verify(clientMetrics).recordRejection(path, RateLimiter.RATE_LIMITED);
+    }
+
+    public void testTryAcquireStopsAtThePathBurst() {
+        assertTrue(rateLimiter.tryAcquire("a", path));
+        assertTrue(rateLimiter.tryAcquire("b", path));
+        assertTrue(rateLimiter.tryAcquire("c", path));
+        assertFalse(rateLimiter.tryAcquire("d", path));
+
+        // the session's token was put back, so it can still use another path
+        assertTrue(rateLimiter.tryAcquire("d", otherPath));
+        assertTrue(rateLimiter.tryAcquire("d", otherPath));
+        assertFalse(rateLimiter.tryAcquire("d", otherPath));
+    }
+
+    public void testRequestsWithoutASessionOnlyUseThePath() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.tryAcquire(null, path));
+        }
+        assertFalse(rateLimiter.tryAcquire(null, path));
+        assertEquals(0, rateLimiter.getSessionCount());
+    }
+
+    public void testAcquireWaits() throws Exception {
+        rateLimiter.acquire(session, path);
+        rateLimiter.acquire(session, path);
+        assertTrue(sleeps.isEmpty());
+
+        rateLimiter.acquire(session, path);
+        rateLimiter.acquire(session, path);
+
+        assertEquals(Long.valueOf(100000000), sleeps.get(0));
+        assertEquals(Long.valueOf(200000000), sleeps.get(1));
+    }
+
+    public void testAcquireFailsPastTheLongestWait() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.acquire(session, path);
+        }
+
+        try {
+            rateLimiter.acquire(session, path);
+
+            fail("should have thrown RateLimitedException");
+        }
+        catch (RateLimitedException e) {
+            assertEquals(path, e.getPath());
+        }
+        verify(clientMetrics).recordRejection(path, RateLimiter.RATE_LIMITED);
+    }
+
+    public void testAcquireIsInterrupted() throws RateLimitedException {
+        rateLimiter = new RateLimiter(new RateLimiterConfig(new RateLimit(1, 1), RateLimit.UNLIMITED,
+                Collections.<String, RateLimit>emptyMap(), 5000, scheduler), clientMetrics);
+        try {
+            rateLimiter.acquire(session, path);
+        }
+        catch (InterruptedIOException e) {
+            fail("shouldn't have waited");
+        }
+
+        Thread.currentThread().interrupt();
+        try {
+            rateLimiter.acquire(session, path);
+
+            fail("should have thrown InterruptedIOException");
+        }
+        catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    public void testInterruptedAcquirePutsTheTokensBack() throws Exception {
+        RateLimiterConfig config = new RateLimiterConfig(new RateLimit(10, 2), new RateLimit(20, 3),
+                Collections.<String, RateLimit>emptyMap(), 200, scheduler);
+        rateLimiter = new RateLimiter(config, clientMetrics) {
+            @Override
+            long nanoTime() {
+                return nowNanos;
+            }
+
+            @Override
+            void sleep(long nanos) throws InterruptedIOException {
+                throw new InterruptedIOException("interrupted");
+            }
+        };
+
+        rateLimiter.acquire(session, path);
+        rateLimiter.acquire(session, path);
+        try {
+            rateLimiter.acquire(session, path);
+
+            fail("should have thrown InterruptedIOException");
+        }
+        catch (InterruptedIOException e) {}
+
+        // the session can still take a token 100ms on, and the path has one left for another session
+        nowNanos += 100000000;
+        assertTrue(rateLimiter.tryAcquire(session, otherPath));
+        assertTrue(rateLimiter.tryAcquire(otherSession, path));
+    }
+
+    public void testAcquireAsyncCompletesOnTheScheduler() throws Exception {
+        rateLimiter = createRateLimiter(new RateLimit(100, 1), RateLimit.UNLIMITED, 200);
+
+        assertTrue(rateLimiter.acquireAsync(session, path).isDone());
+        CompletableFuture<Void> acquired = rateLimiter.acquireAsync(session, path);
+
+        // it's completed 10ms later without a thread waiting on it
+        assertNull(acquired.get(5, TimeUnit.SECONDS));
+        assertTrue(sleeps.isEmpty());
+    }
+
+    public void testAcquireAsyncFailsPastTheLongestWait() throws InterruptedException {
+        rateLimiter = createRateLimiter(new RateLimit(10, 1), RateLimit.UNLIMITED, 0);
+        rateLimiter.acquireAsync(session, path);
+
+        try {
+            rateLimiter.acquireAsync(session, path).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RateLimitedException);
+        }
+    }
+
+    public void testIdleSessionsAreDropped() {
+        for (int i = 0; i <= RateLimiter.MAX_IDLE_SESSIONS; i++) {
+            rateLimiter.tryAcquire("session" + i, otherPath);
+            nowNanos += 100000000;
+        }
+
+        // the buckets had all filled up again, so they were dropped before the newest was added
+        assertEquals(1, rateLimiter.getSessionCount());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.ratelimit;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the TokenBucket
+ */
+public class TokenBucketTest extends TestCase {
+
+    // 10 a second, so a token every 100ms
+    static final long INTERVAL = 100000000;
+
+    final long start = 5000000000L;
+
+    public void testConsFailsDueToBadArgs() {
+        try {
+            new TokenBucket(null, start);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new TokenBucket(RateLimit.UNLIMITED, start);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testStartsFull() {
+        TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 3), start);
+
+        assertTrue(tokenBucket.isFull(start));
+        assertEquals(3, tokenBucket.getAvailableTokens(start));
+        assertTrue(tokenBucket.tryAcquire(start));
+        assertTrue(tokenBucket.tryAcquire(start));
+        assertTrue(tokenBucket.tryAcquire(start));
+        assertFalse(tokenBucket.tryAcquire(start));
+        assertEquals(0, tokenBucket.getAvailableTokens(start));
+    }
+
+    public void testRefillsAtTheRate() {
+        TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 2), start);
+        tokenBucket.tryAcquire(start);
+        tokenBucket.tryAcquire(start);
+
+        assertFalse(tokenBucket.tryAcquire(start + INTERVAL - 1));
+        assertTrue(tokenBucket.tryAcquire(start + INTERVAL));
+        assertFalse(tokenBucket.tryAcquire(start + INTERVAL));
+
+        // a long quiet spell only fills the bucket up to the burst
+        long later = start + 100 * INTERVAL;
+        assertTrue(tokenBucket.isFull(later));
+        assertEquals(2, tokenBucket.getAvailableTokens(later));
+    }
+
+    public void testReserveSaysHowLongToWait() {
+        TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 1), start);
+
+        assertEquals(0, tokenBucket.reserve(start, 0));
+        assertEquals(INTERVAL, tokenBucket.reserve(start, INTERVAL));
+        assertEquals(2 * INTERVAL, tokenBucket.reserve(start, 5 * INTERVAL));
+
+        // the reservations are queued, so a try must wait for all of them
+        assertFalse(tokenBucket.tryAcquire(start + 2 * INTERVAL));
+        assertTrue(tokenBucket.tryAcquire(start + 3 * INTERVAL));
+    }
+
+    public void testReserveTakesNothingWhenTheWaitIsTooLong() {
+        TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 1), start);
+        tokenBucket.tryAcquire(start);
+
+        assertEquals(-1, tokenBucket.reserve(start, INTERVAL - 1));
+        assertEquals(INTERVAL, tokenBucket.reserve(start, INTERVAL));
+    }
+
+    public void testReleasePutsATokenBack() {
+        TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 1), start);
+        tokenBucket.tryAcquire(start);
+
+        tokenBucket.release();
+
+        assertTrue(tokenBucket.tryAcquire(start));
+    }
+
+    public void testConcurrentAcquiresNeverOverdraw() throws InterruptedException {
+        final TokenBucket tokenBucket = new TokenBucket(new RateLimit(10, 1000), start);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executorService.execute(() -> {
+                try {
+                    go.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 1000; j++) {
+                    if (tokenBucket.tryAcquire(start)) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        go.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, acquired.get());
+    }
+}
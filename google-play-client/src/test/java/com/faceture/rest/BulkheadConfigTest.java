@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the BulkheadConfig
+ */
+public class BulkheadConfigTest extends TestCase {
+
+    public void testDefaults() {
+        BulkheadConfig config = new BulkheadConfig();
+
+        assertEquals(BulkheadConfig.DEFAULT_MAX_CONCURRENT_CALLS, config.getMaxConcurrentCalls());
+        assertEquals(BulkheadConfig.DEFAULT_MAX_WAIT_MILLIS, config.getMaxWaitMillis());
+        assertTrue(config.isBounded());
+    }
+
+    public void testUnbounded() {
+        assertFalse(BulkheadConfig.UNBOUNDED.isBounded());
+    }
+
+    public void testConsFailsDueToBadSettings() {
+        try {
+            new BulkheadConfig(0, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new BulkheadConfig(1, -1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Tests the Bulkhead
+ */
+public class BulkheadTest extends TestCase {
+
+    public void testConsFailsDueToNullArgs() {
+        try {
+            new Bulkhead(null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testBoundsTheActiveCalls() throws InterruptedIOException {
+        Bulkhead bulkhead = new Bulkhead(new BulkheadConfig(2, 0));
+
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquireNow());
+        assertEquals(2, bulkhead.getActiveCalls());
+        assertFalse(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquireNow());
+
+        bulkhead.release();
+
+        assertEquals(1, bulkhead.getActiveCalls());
+        assertTrue(bulkhead.tryAcquire());
+    }
+
+    public void testWaitsForACallToFinish() throws InterruptedException, InterruptedIOException {
+        Bulkhead bulkhead = new Bulkhead(new BulkheadConfig(1, 5000));
+        assertTrue(bulkhead.tryAcquire());
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            bulkhead.release();
+        });
+        releaser.start();
+
+        assertTrue(bulkhead.tryAcquire());
+        releaser.join();
+    }
+
+    public void testGivesUpWaiting() throws InterruptedIOException {
+        Bulkhead bulkhead = new Bulkhead(new BulkheadConfig(1, 20));
+        assertTrue(bulkhead.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(bulkhead.tryAcquire());
+        assertTrue(System.nanoTime() - start >= 20 * 1000000L);
+    }
+
+    public void testInterruptedWhileWaiting() {
+        Bulkhead bulkhead = new Bulkhead(new BulkheadConfig(1, 5000));
+        bulkhead.tryAcquireNow();
+
+        Thread.currentThread().interrupt();
+        try {
+            bulkhead.tryAcquire();
+
+            fail("should have thrown InterruptedIOException");
+        }
+        catch (InterruptedIOException e) {
+            // the interrupt is kept for the caller
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    public void testUnbounded() throws InterruptedIOException {
+        Bulkhead bulkhead = new Bulkhead(BulkheadConfig.UNBOUNDED);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bulkhead.tryAcquire());
+        }
+        assertEquals(1000, bulkhead.getActiveCalls());
+    }
+}
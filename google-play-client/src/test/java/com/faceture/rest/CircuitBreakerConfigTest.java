@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the CircuitBreakerConfig
+ */
+public class CircuitBreakerConfigTest extends TestCase {
+
+    public void testDefaults() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+
+        assertTrue(config.isEnabled());
+        assertEquals(CircuitBreakerConfig.DEFAULT_FAILURE_RATE_THRESHOLD, config.getFailureRateThreshold());
+        assertEquals(CircuitBreakerConfig.DEFAULT_SLOW_CALL_RATE_THRESHOLD, config.getSlowCallRateThreshold());
+        assertEquals(CircuitBreakerConfig.DEFAULT_SLOW_CALL_MILLIS, config.getSlowCallMillis());
+        assertEquals(CircuitBreakerConfig.DEFAULT_WINDOW_SIZE, config.getWindowSize());
+        assertEquals(CircuitBreakerConfig.DEFAULT_MINIMUM_CALLS, config.getMinimumCalls());
+        assertEquals(CircuitBreakerConfig.DEFAULT_OPEN_MILLIS, config.getOpenMillis());
+        assertEquals(CircuitBreakerConfig.DEFAULT_HALF_OPEN_CALLS, config.getHalfOpenCalls());
+    }
+
+    public void testDisabled() {
+        assertFalse(CircuitBreakerConfig.DISABLED.isEnabled());
+    }
+
+    public void testConsFailsDueToBadSettings() {
+        try {
+            new CircuitBreakerConfig(0, 0.5, 1000, 10, 5, 1000, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreakerConfig(0.5, 1.5, 1000, 10, 5, 1000, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreakerConfig(0.5, 0.5, 0, 10, 5, 1000, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreakerConfig(0.5, 0.5, 1000, 10, 11, 1000, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreakerConfig(0.5, 0.5, 1000, 10, 5, -1, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreakerConfig(0.5, 0.5, 1000, 10, 5, 1000, 0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
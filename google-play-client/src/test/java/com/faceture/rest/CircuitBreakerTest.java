@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.cache.MutableClock;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the CircuitBreaker
+ */
+public class CircuitBreakerTest extends TestCase {
+
+    private static final long FAST = 1000000;
+    private static final long SLOW = 2000000000;
+
+    private MutableClock clock;
+    private List<String> transitions;
+    private CircuitBreaker circuitBreaker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        clock = new MutableClock(1000);
+        transitions = new ArrayList<String>();
+
+        // a window of 10 calls, looked at from the 4th, open for a second, 2 trial calls, slow from a second
+        circuitBreaker = create(new CircuitBreakerConfig(0.5, 0.5, 1000, 10, 4, 1000, 2));
+    }
+
+    private CircuitBreaker create(CircuitBreakerConfig config) {
+        return new CircuitBreaker(config, clock,
+                (from, to, failureRate, slowCallRate) -> transitions.add(from + "->" + to));
+    }
+
+    public void testConsFailsDueToNullArgs() {
+        try {
+            new CircuitBreaker(null, clock, (from, to, failureRate, slowCallRate) -> {});
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreaker(new CircuitBreakerConfig(), null, (from, to, failureRate, slowCallRate) -> {});
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new CircuitBreaker(new CircuitBreakerConfig(), clock, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testStaysClosedBelowTheMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onFailure(FAST);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1.0, circuitBreaker.getFailureRate());
+        assertTrue(transitions.isEmpty());
+    }
+
+    public void testOpensAtTheFailureRate() {
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onFailure(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure(FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals("[CLOSED->OPEN]", transitions.toString());
+    }
+
+    public void testOpensAtTheSlowCallRate() {
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(SLOW);
+        circuitBreaker.onSuccess(SLOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(0.5, circuitBreaker.getSlowCallRate());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+    }
+
+    public void testOldCallsLeaveTheWindow() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onSuccess(FAST);
+            circuitBreaker.onSuccess(FAST);
+            circuitBreaker.onFailure(FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        // the window holds the last 10 of the 12 calls, 4 of which failed
+        assertEquals(0.4, circuitBreaker.getFailureRate(), 0.0001);
+    }
+
+    public void testHalfOpensAfterTheOpenTime() {
+        open();
+
+        clock.advance(999);
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        clock.advance(1);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        // only the 2 trial calls get through
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN]", transitions.toString());
+    }
+
+    public void testClosesWhenTheTrialCallsSucceed() {
+        open();
+        clock.advance(1000);
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.tryAcquirePermission();
+
+        circuitBreaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onSuccess(FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    public void testReopensWhenATrialCallFails() {
+        open();
+        clock.advance(1000);
+        circuitBreaker.tryAcquirePermission();
+
+        circuitBreaker.onFailure(FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", transitions.toString());
+    }
+
+    public void testReopensWhenATrialCallIsSlow() {
+        open();
+        clock.advance(1000);
+        circuitBreaker.tryAcquirePermission();
+
+        circuitBreaker.onSuccess(SLOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    public void testReleasePermissionGivesBackATrialCall() {
+        open();
+        clock.advance(1000);
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.tryAcquirePermission();
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.releasePermission();
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    public void testCallsFromBeforeItOpenedAreIgnored() {
+        open();
+
+        circuitBreaker.onSuccess(FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    public void testDisabledNeverOpens() {
+        CircuitBreaker disabled = create(CircuitBreakerConfig.DISABLED);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(disabled.tryAcquirePermission());
+            disabled.onFailure(SLOW);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, disabled.getState());
+        assertTrue(transitions.isEmpty());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
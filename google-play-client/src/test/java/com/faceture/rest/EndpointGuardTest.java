@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.cache.MutableClock;
+import com.faceture.jfr.EventRecorder;
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import jdk.jfr.consumer.RecordedEvent;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the EndpointGuard
+ */
+public class EndpointGuardTest extends TestCase {
+
+    // class under test
+    EndpointGuard endpointGuard;
+
+    // dependencies
+    ClientMetrics clientMetrics;
+    MutableClock clock;
+
+    // params
+    final String path = "/path";
+    final String otherPath = "/other";
+    final RestResponse ok = new RestResponse(HttpStatus.SC_OK, null, null, "");
+    final RestResponse unavailable = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+    final RestResponse tooManyRequests = new RestResponse(429, null, null, "");
+
+    // opens when half of the last 4 calls failed, once there have been 2, and stays open for a second
+    final CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig(0.5, 1, 60000, 4, 2, 1000, 1);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        clock = new MutableClock(0);
+
+        endpointGuard = createEndpointGuard(new BulkheadConfig(1, 0), Collections.<String, BulkheadConfig>emptyMap());
+    }
+
+    private EndpointGuard createEndpointGuard(BulkheadConfig bulkheadConfig,
+                                              Map<String, BulkheadConfig> bulkheadConfigs)
+    {
+        return new EndpointGuard(circuitBreakerConfig, bulkheadConfig,
+                Collections.<String, CircuitBreakerConfig>emptyMap(), bulkheadConfigs, clientMetrics, clock);
+    }
+
+    public void testConsFailsDueToNullArgs() {
+        Map<String, CircuitBreakerConfig> circuitBreakerConfigs = Collections.emptyMap();
+        Map<String, BulkheadConfig> bulkheadConfigs = Collections.emptyMap();
+
+        try {
+            new EndpointGuard(null, BulkheadConfig.UNBOUNDED, clientMetrics);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new EndpointGuard(circuitBreakerConfig, null, clientMetrics);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new EndpointGuard(circuitBreakerConfig, BulkheadConfig.UNBOUNDED, null, bulkheadConfigs, clientMetrics,
+                    clock);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new EndpointGuard(circuitBreakerConfig, BulkheadConfig.UNBOUNDED, circuitBreakerConfigs, null,
+                    clientMetrics, clock);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new EndpointGuard(circuitBreakerConfig, BulkheadConfig.UNBOUNDED, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new EndpointGuard(circuitBreakerConfig, BulkheadConfig.UNBOUNDED, circuitBreakerConfigs,
+                    bulkheadConfigs, clientMetrics, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testCallReturnsTheResponse() throws IOException, URISyntaxException {
+        assertSame(ok, call(path, ok));
+
+        assertEquals(0.0, endpointGuard.getCircuitBreaker(path).getFailureRate());
+        assertEquals(0, endpointGuard.getBulkhead(path).getActiveCalls());
+    }
+
+    public void testServerErrorsOpenTheCircuit() throws IOException, URISyntaxException {
+        call(path, ok);
+        call(path, unavailable);
+        assertEquals(CircuitBreaker.State.OPEN, endpointGuard.getCircuitBreaker(path).getState());
+
+        try {
+            call(path, ok);
+
+            fail("should have thrown CircuitOpenException");
+        }
+        catch (CircuitOpenException e) {
+            assertEquals(path, e.getPath());
+        }
+
+        verify(clientMetrics).recordCircuitTransition(path, "CLOSED", "OPEN");
+        verify(clientMetrics).recordRejection(path, EndpointGuard.CIRCUIT_OPEN);
+    }
+
+    public void testTooManyRequestsCountsAsAFailure() throws IOException, URISyntaxException {
+        call(path, tooManyRequests);
+        call(path, tooManyRequests);
+
+        assertEquals(CircuitBreaker.State.OPEN, endpointGuard.getCircuitBreaker(path).getState());
+    }
+
+    public void testExceptionsCountAsFailures() throws URISyntaxException {
+        for (int i = 0; i < 2; i++) {
+            try {
+                endpointGuard.call(path, () -> {
+                    throw new SocketException("connection reset");
+                }, RestResponse::getStatusCode);
+
+                fail("should have thrown SocketException");
+            }
+            catch (IOException e) {
+                assertTrue(e instanceof SocketException);
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, endpointGuard.getCircuitBreaker(path).getState());
+        assertEquals(0, endpointGuard.getBulkhead(path).getActiveCalls());
+    }
+
+    public void testUriSyntaxExceptionDoesntCount() throws IOException {
+        try {
+            endpointGuard.<RestResponse>call(path, () -> {
+                throw new URISyntaxException("::", "bad");
+            }, RestResponse::getStatusCode);
+
+            fail("should have thrown URISyntaxException");
+        }
+        catch (URISyntaxException e) {}
+
+        CircuitBreaker circuitBreaker = endpointGuard.getCircuitBreaker(path);
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testAnOpenCircuitOnlyAffectsItsPath() throws IOException, URISyntaxException {
+        call(path, unavailable);
+        call(path, unavailable);
+
+        assertSame(ok, call(otherPath, ok));
+        assertEquals(CircuitBreaker.State.CLOSED, endpointGuard.getCircuitBreaker(otherPath).getState());
+    }
+
+    public void testTrialCallClosesTheCircuit() throws IOException, URISyntaxException {
+        call(path, unavailable);
+        call(path, unavailable);
+        clock.advance(1000);
+
+        assertSame(ok, call(path, ok));
+
+        assertEquals(CircuitBreaker.State.CLOSED, endpointGuard.getCircuitBreaker(path).getState());
+        verify(clientMetrics).recordCircuitTransition(path, "OPEN", "HALF_OPEN");
+        verify(clientMetrics).recordCircuitTransition(path, "HALF_OPEN", "CLOSED");
+    }
+
+    public void testErrorInTrialCallCountsAsAFailure() throws IOException, URISyntaxException {
+        call(path, unavailable);
+        call(path, unavailable);
+        clock.advance(1000);
+
+        try {
+            endpointGuard.call(path, () -> {
+                throw new StackOverflowError();
+            }, RestResponse::getStatusCode);
+
+            fail("should have thrown StackOverflowError");
+        }
+        catch (StackOverflowError e) {}
+
+        // the trial permit isn't lost, so the circuit can still close
+        assertEquals(CircuitBreaker.State.OPEN, endpointGuard.getCircuitBreaker(path).getState());
+        assertEquals(0, endpointGuard.getBulkhead(path).getActiveCalls());
+        clock.advance(1000);
+        assertSame(ok, call(path, ok));
+        assertEquals(CircuitBreaker.State.CLOSED, endpointGuard.getCircuitBreaker(path).getState());
+    }
+
+    public void testFullBulkheadRejectsTheCall() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<RestResponse> slowCall = executorService.submit(() -> endpointGuard.call(path, () -> {
+                started.countDown();
+                try {
+                    finish.await();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return ok;
+            }, RestResponse::getStatusCode));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            try {
+                call(path, ok);
+
+                fail("should have thrown BulkheadFullException");
+            }
+            catch (BulkheadFullException e) {
+                assertEquals(path, e.getPath());
+            }
+
+            // the other paths have their own bulkheads
+            assertSame(ok, call(otherPath, ok));
+
+            finish.countDown();
+            assertSame(ok, slowCall.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+
+        verify(clientMetrics).recordRejection(path, EndpointGuard.BULKHEAD_FULL);
+        assertSame(ok, call(path, ok));
+    }
+
+    public void testPerPathBulkheadConfig() {
+        endpointGuard = createEndpointGuard(BulkheadConfig.UNBOUNDED,
+                Collections.singletonMap(path, new BulkheadConfig(1, 0)));
+
+        assertTrue(endpointGuard.getBulkhead(path).tryAcquireNow());
+        assertFalse(endpointGuard.getBulkhead(path).tryAcquireNow());
+        assertTrue(endpointGuard.getBulkhead(otherPath).tryAcquireNow());
+        assertTrue(endpointGuard.getBulkhead(otherPath).tryAcquireNow());
+    }
+
+    public void testDisabledGuardPassesCallsStraightThrough() throws IOException, URISyntaxException {
+        endpointGuard = new EndpointGuard(CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED,
+                new NoOpClientMetrics());
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(unavailable, call(path, unavailable));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, endpointGuard.getCircuitBreaker(path).getState());
+    }
+
+    public void testCallAsyncRecordsTheOutcome() {
+        CompletableFuture<RestResponse> first = new CompletableFuture<RestResponse>();
+        CompletableFuture<RestResponse> second = new CompletableFuture<RestResponse>();
+
+        assertSame(first, endpointGuard.callAsync(path, () -> first, RestResponse::getStatusCode));
+        first.completeExceptionally(new SocketException("connection reset"));
+        assertSame(second, endpointGuard.callAsync(path, () -> second, RestResponse::getStatusCode));
+        second.complete(unavailable);
+
+        assertEquals(CircuitBreaker.State.OPEN, endpointGuard.getCircuitBreaker(path).getState());
+        assertEquals(0, endpointGuard.getBulkhead(path).getActiveCalls());
+    }
+
+    public void testCallAsyncFailsWhenTheCircuitIsOpen() throws InterruptedException {
+        callAll(path, unavailable, unavailable);
+
+        CompletableFuture<RestResponse> future = endpointGuard.callAsync(path,
+                () -> CompletableFuture.completedFuture(ok), RestResponse::getStatusCode);
+
+        try {
+            future.get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitOpenException);
+        }
+    }
+
+    public void testCallAsyncFailsWhenTheBulkheadIsFull() throws InterruptedException {
+        CompletableFuture<RestResponse> pending = new CompletableFuture<RestResponse>();
+        endpointGuard.callAsync(path, () -> pending, RestResponse::getStatusCode);
+
+        CompletableFuture<RestResponse> future = endpointGuard.callAsync(path,
+                () -> CompletableFuture.completedFuture(ok), RestResponse::getStatusCode);
+
+        try {
+            future.get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BulkheadFullException);
+        }
+        verify(clientMetrics).recordRejection(path, EndpointGuard.BULKHEAD_FULL);
+    }
+
+    public void testTransitionEvent() throws Exception {
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.CircuitTransition",
+                () -> callAll(path, unavailable, unavailable));
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(path, event.getString("path"));
+        assertEquals("CLOSED", event.getString("fromState"));
+        assertEquals("OPEN", event.getString("toState"));
+        assertEquals(1.0, event.getDouble("failureRate"));
+        assertEquals(0.0, event.getDouble("slowCallRate"));
+    }
+
+    private RestResponse call(String path, RestResponse restResponse) throws IOException, URISyntaxException {
+        return endpointGuard.call(path, () -> restResponse, RestResponse::getStatusCode);
+    }
+
+    private void callAll(String path, RestResponse... restResponses) {
+        for (RestResponse restResponse : restResponses) {
+            try {
+                call(path, restResponse);
+            }
+            catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            catch (URISyntaxException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+/**
+ * Tests the HedgePolicy
+ */
+public class HedgePolicyTest extends TestCase {
+
+    public void testDefaults() {
+        HedgePolicy hedgePolicy = new HedgePolicy(Collections.singleton("/music/play"));
+
+        assertEquals(HedgePolicy.DEFAULT_PERCENTILE, hedgePolicy.getPercentile());
+        assertEquals(HedgePolicy.DEFAULT_MIN_DELAY_MILLIS, hedgePolicy.getMinDelayMillis());
+        assertEquals(HedgePolicy.DEFAULT_WINDOW_SIZE, hedgePolicy.getWindowSize());
+        assertEquals(HedgePolicy.DEFAULT_MIN_SAMPLES, hedgePolicy.getMinSamples());
+        assertEquals(HedgePolicy.DEFAULT_BUDGET_RATIO, hedgePolicy.getBudgetRatio());
+        assertEquals(HedgePolicy.DEFAULT_BUDGET_RESERVE, hedgePolicy.getBudgetReserve());
+        assertTrue(hedgePolicy.isHedged("/music/play"));
+        assertFalse(hedgePolicy.isHedged("/music/services/search"));
+    }
+
+    public void testNoneHedgesNothing() {
+        assertTrue(HedgePolicy.NONE.getHedgedPaths().isEmpty());
+        assertFalse(HedgePolicy.NONE.isHedged("/music/play"));
+    }
+
+    public void testConsFailsDueToBadSettings() {
+        try {
+            new HedgePolicy(0, 10, 100, 20, 0.05, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(Double.NaN, 10, 100, 20, 0.05, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, -1, 100, 20, 0.05, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, 10, 0, 20, 0.05, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, 10, 100, 101, 0.05, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, 10, 100, 20, 1.5, 5, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, 10, 100, 20, 0.05, -1, Collections.<String>emptySet());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new HedgePolicy(95, 10, 100, 20, 0.05, 5, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
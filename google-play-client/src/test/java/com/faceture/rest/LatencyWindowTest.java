@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * Tests the LatencyWindow
+ */
+public class LatencyWindowTest extends TestCase {
+
+    public void testConsFailsDueToBadSize() {
+        try {
+            new LatencyWindow(0);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testNeedsMinSamples() {
+        LatencyWindow latencyWindow = new LatencyWindow(10);
+        assertEquals(-1, latencyWindow.getValueAtPercentile(50, 1));
+
+        latencyWindow.record(100);
+        assertEquals(-1, latencyWindow.getValueAtPercentile(50, 2));
+
+        latencyWindow.record(200);
+        assertEquals(100, latencyWindow.getValueAtPercentile(50, 2));
+    }
+
+    public void testPercentiles() {
+        LatencyWindow latencyWindow = new LatencyWindow(100);
+        for (int i = 100; i > 0; i--) {
+            latencyWindow.record(i);
+        }
+
+        assertEquals(100, latencyWindow.getCount());
+        assertEquals(1, latencyWindow.getValueAtPercentile(0, 1));
+        assertEquals(50, latencyWindow.getValueAtPercentile(50, 1));
+        assertEquals(95, latencyWindow.getValueAtPercentile(95, 1));
+        assertEquals(100, latencyWindow.getValueAtPercentile(100, 1));
+    }
+
+    public void testOldLatenciesAreForgotten() {
+        LatencyWindow latencyWindow = new LatencyWindow(4);
+        for (int i = 0; i < 4; i++) {
+            latencyWindow.record(1000);
+        }
+        for (int i = 0; i < 4; i++) {
+            latencyWindow.record(10);
+        }
+
+        assertEquals(4, latencyWindow.getCount());
+        assertEquals(10, latencyWindow.getValueAtPercentile(100, 4));
+    }
+
+    public void testPercentilesMatchSortingTheWindow() {
+        LatencyWindow latencyWindow = new LatencyWindow(50);
+        Deque<Long> window = new ArrayDeque<Long>();
+        Random random = new Random(42);
+
+        // few distinct values, so that equal latencies come and go
+        for (int i = 0; i < 2000; i++) {
+            long nanos = random.nextInt(30);
+            latencyWindow.record(nanos);
+            window.addLast(nanos);
+            if (window.size() > 50) {
+                window.removeFirst();
+            }
+
+            long[] sorted = new long[window.size()];
+            int j = 0;
+            for (long latency : window) {
+                sorted[j++] = latency;
+            }
+            Arrays.sort(sorted);
+
+            for (double percentile : new double[] {0, 50, 95, 100}) {
+                int index = Math.max((int) Math.ceil(percentile / 100 * sorted.length) - 1, 0);
+                assertEquals(sorted[index], latencyWindow.getValueAtPercentile(percentile, 1));
+            }
+        }
+    }
+}
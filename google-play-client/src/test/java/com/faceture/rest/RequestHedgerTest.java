@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the RequestHedger
+ */
+public class RequestHedgerTest extends TestCase {
+
+    // class under test
+    RequestHedger requestHedger;
+
+    // dependencies
+    ClientMetrics clientMetrics;
+
+    ScheduledExecutorService scheduler;
+    final String path = "/music/play";
+    final RestResponse firstResponse = new RestResponse(HttpStatus.SC_OK, null, null, "first");
+    final RestResponse secondResponse = new RestResponse(HttpStatus.SC_OK, null, null, "second");
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        // hedges after 20ms once two responses have been seen, with room for one hedge
+        requestHedger = new RequestHedger(new HedgePolicy(50, 20, 10, 2, 0, 1, Collections.singleton(path)),
+                clientMetrics);
+    }
+
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+
+        super.tearDown();
+    }
+
+    public void testConsFailsDueToNullHedgePolicy() {
+        try {
+            new RequestHedger(null, new NoOpClientMetrics());
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullClientMetrics() {
+        try {
+            new RequestHedger(HedgePolicy.NONE, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testUnhedgedPathIsSentOnce() throws IOException, URISyntaxException {
+        CompletableFuture<RestResponse> first = completeLater(firstResponse, 50);
+        Requests requests = new Requests(first, CompletableFuture.completedFuture(secondResponse));
+
+        assertSame(firstResponse, requestHedger.send("/music/services/search", requests));
+        assertEquals(1, requests.sent);
+        assertEquals(-1, requestHedger.getHedgeDelayNanos("/music/services/search"));
+    }
+
+    public void testNoHedgeUntilEnoughResponsesHaveBeenSeen() throws IOException, URISyntaxException {
+        assertEquals(-1, requestHedger.getHedgeDelayNanos(path));
+        warmUp(1);
+        assertEquals(-1, requestHedger.getHedgeDelayNanos(path));
+
+        CompletableFuture<RestResponse> first = completeLater(firstResponse, 50);
+        Requests requests = new Requests(first, CompletableFuture.completedFuture(secondResponse));
+
+        assertSame(firstResponse, requestHedger.send(path, requests));
+        assertEquals(1, requests.sent);
+
+        // the fast responses still have to wait the min delay
+        assertTrue(requestHedger.getHedgeDelayNanos(path) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    public void testSlowRequestIsHedged() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        CompletableFuture<RestResponse> first = new CompletableFuture<RestResponse>();
+        Requests requests = new Requests(first, CompletableFuture.completedFuture(secondResponse));
+
+        assertSame(secondResponse, requestHedger.send(path, requests));
+        assertEquals(2, requests.sent);
+        assertTrue(first.isCancelled());
+        assertEquals(0, requestHedger.getHedgeBudget().getAvailableRetries());
+        verify(clientMetrics).recordHedge(path);
+    }
+
+    public void testFirstResponseWinsAfterHedging() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        CompletableFuture<RestResponse> first = completeLater(firstResponse, 100);
+        CompletableFuture<RestResponse> second = new CompletableFuture<RestResponse>();
+        Requests requests = new Requests(first, second);
+
+        assertSame(firstResponse, requestHedger.send(path, requests));
+        assertEquals(2, requests.sent);
+        assertTrue(second.isCancelled());
+    }
+
+    public void testFailedHedgeWaitsForTheFirst() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        CompletableFuture<RestResponse> first = completeLater(firstResponse, 100);
+        CompletableFuture<RestResponse> second = new CompletableFuture<RestResponse>();
+        second.completeExceptionally(new SocketException("connection reset"));
+        Requests requests = new Requests(first, second);
+
+        assertSame(firstResponse, requestHedger.send(path, requests));
+    }
+
+    public void testFailsWhenBothFail() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        CompletableFuture<RestResponse> first = new CompletableFuture<RestResponse>();
+        scheduler.schedule(() -> first.completeExceptionally(new SocketException("first")), 100,
+                TimeUnit.MILLISECONDS);
+        CompletableFuture<RestResponse> second = new CompletableFuture<RestResponse>();
+        second.completeExceptionally(new SocketException("second"));
+        Requests requests = new Requests(first, second);
+
+        try {
+            requestHedger.send(path, requests);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {
+            assertEquals("first", e.getMessage());
+        }
+    }
+
+    public void testNoHedgeWithoutBudget() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        // the one hedge in the budget is used up by the first slow request
+        Requests requests = new Requests(new CompletableFuture<RestResponse>(),
+                CompletableFuture.completedFuture(secondResponse));
+        assertSame(secondResponse, requestHedger.send(path, requests));
+
+        CompletableFuture<RestResponse> first = completeLater(firstResponse, 100);
+        requests = new Requests(first, CompletableFuture.completedFuture(secondResponse));
+
+        assertSame(firstResponse, requestHedger.send(path, requests));
+        assertEquals(1, requests.sent);
+        verify(clientMetrics, times(1)).recordHedge(path);
+    }
+
+    public void testFailureOfTheFirstIsntHedged() throws IOException, URISyntaxException {
+        warmUp(2);
+
+        CompletableFuture<RestResponse> first = new CompletableFuture<RestResponse>();
+        first.completeExceptionally(new SocketException("connection reset"));
+        Requests requests = new Requests(first, CompletableFuture.completedFuture(secondResponse));
+
+        try {
+            requestHedger.send(path, requests);
+
+            fail("should have thrown SocketException");
+        }
+        catch (IOException e) {
+            assertTrue(e instanceof SocketException);
+        }
+        assertEquals(1, requests.sent);
+    }
+
+    private void warmUp(int responses) throws IOException, URISyntaxException {
+        for (int i = 0; i < responses; i++) {
+            requestHedger.send(path, () -> CompletableFuture.completedFuture(firstResponse));
+        }
+    }
+
+    private CompletableFuture<RestResponse> completeLater(RestResponse restResponse, long delayMillis) {
+        CompletableFuture<RestResponse> future = new CompletableFuture<RestResponse>();
+        scheduler.schedule(() -> future.complete(restResponse), delayMillis, TimeUnit.MILLISECONDS);
+
+        return future;
+    }
+
+    /**
+     * Hands out the given futures in order, one for each copy of the request sent
+     */
+    private static class Requests implements Supplier<CompletableFuture<RestResponse>> {
+
+        private final Iterator<CompletableFuture<RestResponse>> futures;
+        int sent;
+
+        @SafeVarargs
+        Requests(CompletableFuture<RestResponse>... futures) {
+            this.futures = Arrays.asList(futures).iterator();
+        }
+
+        public CompletableFuture<RestResponse> get() {
+            sent++;
+            return futures.next();
+        }
+    }
+}
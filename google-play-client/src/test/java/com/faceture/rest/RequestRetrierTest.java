@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.metrics.ClientMetrics;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimitedException;
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the RequestRetrier
+ */
+public class RequestRetrierTest extends TestCase {
+
+    // class under test
+    RequestRetrier requestRetrier;
+
+    // dependencies
+    ClientMetrics clientMetrics;
+
+    // the waits between the attempts
+    List<Long> sleeps = new ArrayList<Long>();
+
+    final String path = "/path";
+    final RestResponse ok = new RestResponse(HttpStatus.SC_OK, null, null, "ok");
+    final RestResponse unavailable = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+
+        requestRetrier = createRequestRetrier(new RetryPolicy(3, 100, 1000, 5000, 0.1, 10,
+                Collections.<String>emptySet()));
+    }
+
+    public void testConsFailsDueToNullRetryPolicy() {
+        try {
+            new RequestRetrier(null, clientMetrics);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullClientMetrics() {
+        try {
+            new RequestRetrier(RetryPolicy.NONE, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testSendRetriesIOException() throws IOException, URISyntaxException {
+        Attempts attempts = new Attempts(new SocketException("connection reset"), ok);
+
+        assertSame(ok, requestRetrier.send(path, true, attempts));
+
+        assertEquals(2, attempts.count);
+        assertEquals(1, sleeps.size());
+        assertTrue(sleeps.get(0) <= 100);
+        verify(clientMetrics).recordRetry(path);
+    }
+
+    public void testSendGivesUpAfterMaxAttempts() throws URISyntaxException {
+        SocketException failure = new SocketException("connection reset");
+        Attempts attempts = new Attempts(failure, failure, failure, ok);
+
+        try {
+            requestRetrier.send(path, true, attempts);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {
+            assertSame(failure, e);
+        }
+
+        assertEquals(3, attempts.count);
+        verify(clientMetrics, times(2)).recordRetry(path);
+    }
+
+    public void testSendDoesntRetryWhenNotRetryable() throws URISyntaxException {
+        Attempts attempts = new Attempts(new SocketException("connection reset"), ok);
+
+        try {
+            requestRetrier.send(path, false, attempts);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        assertEquals(1, attempts.count);
+        verify(clientMetrics, never()).recordRetry(anyString());
+    }
+
+    public void testSendDoesntRetryHopelessFailures() throws URISyntaxException {
+        Attempts attempts = new Attempts(new UnknownHostException("nowhere"), ok);
+
+        try {
+            requestRetrier.send(path, true, attempts);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        assertEquals(1, attempts.count);
+    }
+
+    public void testSendRetriesRetryableStatus() throws IOException, URISyntaxException {
+        Attempts attempts = new Attempts(unavailable, ok);
+
+        assertSame(ok, requestRetrier.send(path, true, attempts));
+        assertEquals(2, attempts.count);
+    }
+
+    public void testSendReturnsLastResponseAfterMaxAttempts() throws IOException, URISyntaxException {
+        RestResponse last = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+        Attempts attempts = new Attempts(unavailable, unavailable, last);
+
+        assertSame(last, requestRetrier.send(path, true, attempts));
+        assertEquals(3, attempts.count);
+    }
+
+    public void testSendDoesntRetryOtherStatuses() throws IOException, URISyntaxException {
+        RestResponse forbidden = new RestResponse(HttpStatus.SC_FORBIDDEN, null, null, "");
+        Attempts attempts = new Attempts(forbidden, ok);
+
+        assertSame(forbidden, requestRetrier.send(path, true, attempts));
+        assertEquals(1, attempts.count);
+    }
+
+    public void testSendHonoursRetryAfter() throws IOException, URISyntaxException {
+        Attempts attempts = new Attempts(createResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "retry-after", "2"), ok);
+
+        assertSame(ok, requestRetrier.send(path, true, attempts));
+        assertEquals(Collections.singletonList(2000L), sleeps);
+    }
+
+    public void testSendReturnsResponseWithTooLongRetryAfter() throws IOException, URISyntaxException {
+        RestResponse throttled = createResponse(429, "Retry-After", "60");
+        Attempts attempts = new Attempts(throttled, ok);
+
+        assertSame(throttled, requestRetrier.send(path, true, attempts));
+        assertEquals(1, attempts.count);
+        assertTrue(sleeps.isEmpty());
+    }
+
+    public void testSendStopsWhenBudgetRunsOut() throws IOException, URISyntaxException {
+        requestRetrier = createRequestRetrier(new RetryPolicy(3, 0, 0, 0, 0, 1, Collections.<String>emptySet()));
+
+        assertSame(ok, requestRetrier.send(path, true, new Attempts(unavailable, ok)));
+
+        // the one retry in the reserve has been used
+        Attempts attempts = new Attempts(unavailable, ok);
+        assertSame(unavailable, requestRetrier.send(path, true, attempts));
+        assertEquals(1, attempts.count);
+    }
+
+    public void testSendStreamingAbortsRetriedResponse() throws IOException, URISyntaxException {
+        RestStreamResponse first = mock(RestStreamResponse.class);
+        when(first.getStatusCode()).thenReturn(HttpStatus.SC_BAD_GATEWAY);
+        RestStreamResponse second = mock(RestStreamResponse.class);
+        when(second.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        final List<RestStreamResponse> responses = new ArrayList<RestStreamResponse>();
+        responses.add(first);
+        responses.add(second);
+
+        assertSame(second, requestRetrier.sendStreaming(path, true, () -> responses.remove(0)));
+
+        verify(first).abort();
+        verify(first).close();
+        verify(second, never()).abort();
+    }
+
+    public void testBackOff() throws InterruptedIOException {
+        assertTrue(requestRetrier.backOff(path, 1, new SocketException("connection reset")));
+        assertTrue(requestRetrier.backOff(path, 2, new SocketException("connection reset")));
+        assertFalse(requestRetrier.backOff(path, 3, new SocketException("connection reset")));
+        assertFalse(requestRetrier.backOff(path, 1, new SSLException("bad certificate")));
+
+        assertEquals(2, sleeps.size());
+        verify(clientMetrics, times(2)).recordRetry(path);
+    }
+
+    public void testBackoffDoublesUpToMax() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(requestRetrier.getBackoffMillis(1) <= 100);
+            assertTrue(requestRetrier.getBackoffMillis(2) <= 200);
+            assertTrue(requestRetrier.getBackoffMillis(3) <= 400);
+            assertTrue(requestRetrier.getBackoffMillis(40) <= 1000);
+            assertTrue(requestRetrier.getBackoffMillis(40) >= 0);
+        }
+    }
+
+    public void testGetRetryAfterMillis() {
+        assertEquals(-1, RequestRetrier.getRetryAfterMillis(null));
+        assertEquals(-1, RequestRetrier.getRetryAfterMillis(new HashMap<String, String>()));
+        assertEquals(-1, RequestRetrier.getRetryAfterMillis(Collections.singletonMap("Retry-After", "soon")));
+        assertEquals(-1, RequestRetrier.getRetryAfterMillis(Collections.singletonMap("Retry-After", "-5")));
+        assertEquals(0, RequestRetrier.getRetryAfterMillis(Collections.singletonMap("Retry-After", "0")));
+        assertEquals(3000, RequestRetrier.getRetryAfterMillis(Collections.singletonMap("RETRY-AFTER", " 3 ")));
+
+        // dates in the past mean now
+        String past = DateUtils.formatDate(new Date(System.currentTimeMillis() - 60000));
+        assertEquals(0, RequestRetrier.getRetryAfterMillis(Collections.singletonMap("Retry-After", past)));
+
+        String future = DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000));
+        long retryAfterMillis = RequestRetrier.getRetryAfterMillis(Collections.singletonMap("Retry-After", future));
+        assertTrue(retryAfterMillis > 50000 && retryAfterMillis <= 60000);
+    }
+
+    public void testIsRetryable() {
+        assertTrue(RequestRetrier.isRetryable(new SocketException("connection reset")));
+        assertTrue(RequestRetrier.isRetryable(new SocketTimeoutException("read timed out")));
+        assertTrue(RequestRetrier.isRetryable(new ConnectTimeoutException("connect timed out")));
+        assertFalse(RequestRetrier.isRetryable(new InterruptedIOException("interrupted")));
+        assertFalse(RequestRetrier.isRetryable(new UnknownHostException("nowhere")));
+        assertFalse(RequestRetrier.isRetryable(new SSLException("bad certificate")));
+        assertFalse(RequestRetrier.isRetryable(new ClientProtocolException("circular redirect")));
+        assertFalse(RequestRetrier.isRetryable(new CircuitOpenException(path)));
+        assertFalse(RequestRetrier.isRetryable(new BulkheadFullException(path)));
+        assertFalse(RequestRetrier.isRetryable(new RateLimitedException(path)));
+    }
+
+    public void testNoMetricsRecordedWhenDisabled() throws IOException, URISyntaxException {
+        requestRetrier = new RequestRetrier(new RetryPolicy(2, 0, 0, 0, 0, 1, Collections.<String>emptySet()),
+                new NoOpClientMetrics());
+
+        assertSame(ok, requestRetrier.send(path, true, new Attempts(unavailable, ok)));
+        verify(clientMetrics, never()).recordRetry(anyString());
+    }
+
+    private RequestRetrier createRequestRetrier(RetryPolicy retryPolicy) {
+        return new RequestRetrier(retryPolicy, clientMetrics) {
+            @Override
+            void sleep(long millis) {
+                sleeps.add(millis);
+            }
+        };
+    }
+
+    private static RestResponse createResponse(int statusCode, String headerName, String headerValue) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(headerName, headerValue);
+
+        return new RestResponse(statusCode, null, headers, "");
+    }
+
+    /**
+     * Each attempt throws or returns the next of the outcomes
+     */
+    private static class Attempts implements RequestRetrier.Attempt<RestResponse> {
+
+        private final Object[] outcomes;
+        private int count;
+
+        Attempts(Object... outcomes) {
+            this.outcomes = outcomes;
+        }
+
+        public RestResponse send() throws IOException {
+            Object outcome = outcomes[count++];
+            if (outcome instanceof IOException) {
+                throw (IOException) outcome;
+            }
+            return (RestResponse) outcome;
+        }
+    }
+}
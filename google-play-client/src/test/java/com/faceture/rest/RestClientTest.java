@@ -19,16 +19,26 @@ package com.faceture.rest;
 
 import com.faceture.http.HttpClientFactory;
 import com.faceture.http.HttpUtil;
+import com.faceture.metrics.NoOpClientMetrics;
+import com.faceture.ratelimit.RateLimit;
+import com.faceture.ratelimit.RateLimitedException;
+import com.faceture.ratelimit.RateLimiter;
+import com.faceture.ratelimit.RateLimiterConfig;
 import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 
 import static org.mockito.Mockito.*;
 
 import java.io.IOException;
+import java.net.SocketException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Tests the RestClient
@@ -208,4 +218,339 @@ public class RestClientTest extends TestCase {
         assertEquals(restResponse, restClient.doGet(https, hostName, path, queryParams, httpHeaders, cookies));
 
     }
+
+    public void testDoPostAsyncFailsDueToNullHostName() {
+        try {
+            restClient.doPostAsync(https, null, path, queryParams, httpHeaders, cookies, formFields);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoPostAsyncFailsDueToEmptyPath() {
+        try {
+            restClient.doPostAsync(https, hostName, "", queryParams, httpHeaders, cookies, formFields);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoPostAsyncHappyPath() throws IOException {
+        // mock interactions
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        CompletableFuture<RestResponse> restResponseFuture = new CompletableFuture<RestResponse>();
+        when(restClientUtil.doRequestAsync(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restResponseFuture);
+
+        // do the call
+        assertEquals(restResponseFuture,
+                restClient.doPostAsync(https, hostName, path, queryParams, httpHeaders, cookies, formFields));
+
+        // verify interactions
+        verify(httpUtil).setFormData(httpPost, formFields);
+    }
+
+    public void testDoGetAsyncFailsDueToEmptyHostName() {
+        try {
+            restClient.doGetAsync(https, "", path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoGetAsyncFailsDueToNullPath() {
+        try {
+            restClient.doGetAsync(https, hostName, null, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoGetAsyncHappyPath() {
+        HttpGet httpGet = mock(HttpGet.class);
+        when(httpClientFactory.createHttpGet()).thenReturn(httpGet);
+
+        CompletableFuture<RestResponse> restResponseFuture = new CompletableFuture<RestResponse>();
+        when(restClientUtil.doRequestAsync(httpGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restResponseFuture);
+
+        // do the call
+        assertEquals(restResponseFuture, restClient.doGetAsync(https, hostName, path, queryParams, httpHeaders, cookies));
+    }
+
+    public void testCloseShutsDownHttpClientFactory() {
+        restClient.close();
+
+        verify(httpClientFactory).shutdown();
+    }
+
+    public void testDoStreamingPostFailsDueToNullHostName() throws IOException, URISyntaxException {
+        try {
+            restClient.doStreamingPost(https, null, path, queryParams, httpHeaders, cookies, formFields);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoStreamingPostFailsDueToEmptyPath() throws IOException, URISyntaxException {
+        try {
+            restClient.doStreamingPost(https, hostName, "", queryParams, httpHeaders, cookies, formFields);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoStreamingPostHappyPath() throws IOException, URISyntaxException {
+        // mock interactions
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restClientUtil.doStreamingRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restStreamResponse);
+
+        // do the call
+        assertEquals(restStreamResponse,
+                restClient.doStreamingPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields));
+
+        // verify interactions
+        verify(httpUtil).setFormData(httpPost, formFields);
+    }
+
+    public void testConsFailsDueToNullRequestRetrier() {
+        try {
+            restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testDoGetRetriesWithNewRequest() throws IOException, URISyntaxException {
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier());
+        HttpGet firstGet = mock(HttpGet.class);
+        HttpGet secondGet = mock(HttpGet.class);
+        when(httpClientFactory.createHttpGet()).thenReturn(firstGet, secondGet);
+        RestResponse restResponse = new RestResponse(HttpStatus.SC_OK, null, null, "");
+        when(restClientUtil.doRequest(firstGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenThrow(new SocketException("connection reset"));
+        when(restClientUtil.doRequest(secondGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restResponse);
+
+        assertSame(restResponse, restClient.doGet(https, hostName, path, queryParams, httpHeaders, cookies));
+    }
+
+    public void testDoPostRetriesReadOnlyPost() throws IOException, URISyntaxException {
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier());
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestResponse unavailable = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+        RestResponse restResponse = new RestResponse(HttpStatus.SC_OK, null, null, "");
+        when(restClientUtil.doRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(unavailable, restResponse);
+
+        assertSame(restResponse,
+                restClient.doPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields));
+
+        // the form is set on each attempt's request
+        verify(httpUtil, times(2)).setFormData(httpPost, formFields);
+    }
+
+    public void testDoPostDoesntRetryOtherPosts() throws IOException, URISyntaxException {
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier());
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestResponse unavailable = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+        when(restClientUtil.doRequest(httpPost, https, hostName, "/login", queryParams, httpHeaders, cookies))
+                .thenReturn(unavailable);
+
+        assertSame(unavailable,
+                restClient.doPost(https, hostName, "/login", queryParams, httpHeaders, cookies, formFields));
+
+        verify(restClientUtil, times(1)).doRequest(httpPost, https, hostName, "/login", queryParams, httpHeaders,
+                cookies);
+    }
+
+    public void testDoStreamingPostRetriesReadOnlyPost() throws IOException, URISyntaxException {
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier());
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restClientUtil.doStreamingRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenThrow(new SocketException("connection reset")).thenReturn(restStreamResponse);
+
+        assertSame(restStreamResponse,
+                restClient.doStreamingPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields));
+    }
+
+    public void testConsFailsDueToNullEndpointGuard() {
+        try {
+            restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testDoGetFailsFastWhenTheCircuitIsOpen() throws IOException, URISyntaxException {
+        // opens on the first failure
+        EndpointGuard endpointGuard = new EndpointGuard(new CircuitBreakerConfig(0.5, 0.5, 1000, 2, 1, 60000, 1),
+                BulkheadConfig.UNBOUNDED, new NoOpClientMetrics());
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                endpointGuard);
+        HttpGet httpGet = mock(HttpGet.class);
+        when(httpClientFactory.createHttpGet()).thenReturn(httpGet);
+        when(restClientUtil.doRequest(httpGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenThrow(new SocketException("connection reset"));
+
+        try {
+            restClient.doGet(https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown CircuitOpenException");
+        }
+        catch (CircuitOpenException e) {
+            assertEquals(path, e.getPath());
+        }
+
+        // the retry found the circuit open, so the request was only sent once
+        verify(restClientUtil, times(1)).doRequest(httpGet, https, hostName, path, queryParams, httpHeaders,
+                cookies);
+    }
+
+    public void testDoGetAsyncFailsWhenTheBulkheadIsFull() throws InterruptedException {
+        EndpointGuard endpointGuard = new EndpointGuard(CircuitBreakerConfig.DISABLED, new BulkheadConfig(1, 0),
+                new NoOpClientMetrics());
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                endpointGuard);
+        HttpGet httpGet = mock(HttpGet.class);
+        when(httpClientFactory.createHttpGet()).thenReturn(httpGet);
+        CompletableFuture<RestResponse> restResponseFuture = new CompletableFuture<RestResponse>();
+        when(restClientUtil.doRequestAsync(httpGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restResponseFuture);
+
+        assertSame(restResponseFuture,
+                restClient.doGetAsync(https, hostName, path, queryParams, httpHeaders, cookies));
+        try {
+            restClient.doGetAsync(https, hostName, path, queryParams, httpHeaders, cookies).get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BulkheadFullException);
+        }
+
+        // finishing the first call makes room
+        restResponseFuture.complete(new RestResponse(HttpStatus.SC_OK, null, null, ""));
+        assertSame(restResponseFuture,
+                restClient.doGetAsync(https, hostName, path, queryParams, httpHeaders, cookies));
+    }
+
+    public void testConsFailsDueToNullRequestHedger() {
+        try {
+            restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                    new EndpointGuard(CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED,
+                            new NoOpClientMetrics()), null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testDoGetSendsHedgedPathsWithTheAsyncClient() throws IOException, URISyntaxException {
+        restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                new EndpointGuard(CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED, new NoOpClientMetrics()),
+                new RequestHedger(new HedgePolicy(Collections.singleton(path)), new NoOpClientMetrics()));
+        HttpGet httpGet = mock(HttpGet.class);
+        when(httpClientFactory.createHttpGet()).thenReturn(httpGet);
+        RestResponse restResponse = new RestResponse(HttpStatus.SC_OK, null, null, "");
+        when(restClientUtil.doRequestAsync(httpGet, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(CompletableFuture.completedFuture(restResponse));
+
+        assertSame(restResponse, restClient.doGet(https, hostName, path, queryParams, httpHeaders, cookies));
+        verify(restClientUtil, never()).doRequest(httpGet, https, hostName, path, queryParams, httpHeaders,
+                cookies);
+    }
+
+    public void testConsFailsDueToNullRateLimiter() {
+        try {
+            restClient = new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                    new EndpointGuard(CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED,
+                            new NoOpClientMetrics()), new RequestHedger(HedgePolicy.NONE, new NoOpClientMetrics()),
+                    null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testEachAttemptTakesARateLimitToken() throws IOException, URISyntaxException {
+        // one request per session, and no waiting for the next token
+        restClient = createRateLimitedRestClient(new RateLimit(0.001, 1));
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestResponse unavailable = new RestResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null, "");
+        when(restClientUtil.doRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(unavailable);
+        when(restClientUtil.doRequest(httpPost, https, hostName, "/login", queryParams, httpHeaders, cookies))
+                .thenReturn(unavailable);
+
+        // the retry finds the session's bucket empty, and isn't retried itself
+        try {
+            restClient.doPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields, "authToken");
+
+            fail("should have thrown RateLimitedException");
+        }
+        catch (RateLimitedException e) {
+            assertEquals(path, e.getPath());
+        }
+        verify(restClientUtil, times(1)).doRequest(httpPost, https, hostName, path, queryParams, httpHeaders,
+                cookies);
+
+        // other sessions have their own tokens, here for a POST that is sent once
+        assertSame(unavailable, restClient.doPost(https, hostName, "/login", queryParams, httpHeaders, cookies,
+                formFields, "otherAuthToken"));
+    }
+
+    public void testDoStreamingPostIsRateLimited() throws IOException, URISyntaxException {
+        restClient = createRateLimitedRestClient(new RateLimit(0.001, 1));
+        HttpPost httpPost = mock(HttpPost.class);
+        when(httpClientFactory.createHttpPost()).thenReturn(httpPost);
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restStreamResponse.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(restClientUtil.doStreamingRequest(httpPost, https, hostName, path, queryParams, httpHeaders, cookies))
+                .thenReturn(restStreamResponse);
+
+        assertSame(restStreamResponse, restClient.doStreamingPost(https, hostName, path, queryParams, httpHeaders,
+                cookies, formFields, "authToken"));
+        try {
+            restClient.doStreamingPost(https, hostName, path, queryParams, httpHeaders, cookies, formFields,
+                    "authToken");
+
+            fail("should have thrown RateLimitedException");
+        }
+        catch (RateLimitedException e) {}
+    }
+
+    private RestClient createRateLimitedRestClient(RateLimit sessionLimit) {
+        RateLimiterConfig rateLimiterConfig = new RateLimiterConfig(sessionLimit, RateLimit.UNLIMITED,
+                Collections.<String, RateLimit>emptyMap(), 0, null);
+
+        return new RestClient(httpClientFactory, httpUtil, restClientUtil, createRequestRetrier(),
+                new EndpointGuard(CircuitBreakerConfig.DISABLED, BulkheadConfig.UNBOUNDED, new NoOpClientMetrics()),
+                new RequestHedger(HedgePolicy.NONE, new NoOpClientMetrics()),
+                new RateLimiter(rateLimiterConfig, new NoOpClientMetrics()));
+    }
+
+    private RequestRetrier createRequestRetrier() {
+        // no waiting between the attempts
+        return new RequestRetrier(new RetryPolicy(3, 0, 0, 0, 0.1, 10, Collections.singleton(path)),
+                new NoOpClientMetrics());
+    }
 }
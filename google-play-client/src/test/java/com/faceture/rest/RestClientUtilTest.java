@@ -17,23 +17,45 @@
 
 package com.faceture.rest;
 
+import com.faceture.http.CountingInputStream;
 import com.faceture.http.HttpClientFactory;
 import com.faceture.http.HttpUtil;
+import com.faceture.jfr.EventRecorder;
+import com.faceture.metrics.ClientMetrics;
+import jdk.jfr.consumer.RecordedEvent;
 import junit.framework.TestCase;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.DefaultHttpClient;
-
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.protocol.HttpContext;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Tests the RestClientUtil
@@ -65,6 +87,9 @@ public class RestClientUtilTest extends TestCase {
     String cookieName = "cookieName";
     String cookieValue = "cookieValue";
     HttpRequestBase httpRequest;
+    CloseableHttpClient httpClient;
+    CookieStore cookieStore;
+    HttpClientContext httpClientContext;
 
     public RestClientUtilTest() {
         // setup our maps
@@ -85,6 +110,14 @@ public class RestClientUtilTest extends TestCase {
         // mock params
         httpRequest = mock(HttpRequestBase.class);
 
+        // the blocking requests each get a context with their own cookie store
+        httpClient = mock(CloseableHttpClient.class);
+        when(httpClientFactory.getHttpClient()).thenReturn(httpClient);
+        cookieStore = mock(CookieStore.class);
+        when(httpClientFactory.createCookieStore()).thenReturn(cookieStore);
+        httpClientContext = HttpClientContext.create();
+        when(httpClientFactory.createHttpClientContext(cookieStore)).thenReturn(httpClientContext);
+
         // create test object
         restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory);
     }
@@ -163,14 +196,12 @@ public class RestClientUtilTest extends TestCase {
 
     public void testDoRequestWithFormHappyPath() throws IOException, URISyntaxException {
         // mock interactions
-        DefaultHttpClient httpClient = mock(DefaultHttpClient.class);
-        when(httpClientFactory.createHttpClient()).thenReturn(httpClient);
         String query = "query";
         when(httpUtil.getQueryString(queryParams)).thenReturn(query);
 
         HttpResponse httpResponse = mock(HttpResponse.class);
 
-        when(httpUtil.execute(httpClient, httpRequest)).thenReturn(httpResponse);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
 
         String responseBody = "responseBody";
         when(httpUtil.getResponseString(httpResponse)).thenReturn(responseBody);
@@ -180,7 +211,7 @@ public class RestClientUtilTest extends TestCase {
         when(httpResponse.getStatusLine()).thenReturn(statusLine);
         when(statusLine.getStatusCode()).thenReturn(statusCode);
 
-        when(httpUtil.getCookies(httpClient)).thenReturn(cookies);
+        when(httpUtil.getCookies(cookieStore)).thenReturn(cookies);
         when(httpUtil.getHeaders(httpResponse)).thenReturn(httpHeaders);
 
         RestResponse restResponse = mock(RestResponse.class);
@@ -193,6 +224,464 @@ public class RestClientUtilTest extends TestCase {
         verify(httpUtil).setUri(httpRequest, https, hostName, path, query);
         verify(httpUtil).setHeaders(httpRequest, httpHeaders);
         verify(httpUtil).setCookies(httpRequest, cookies);
-        verify(httpUtil).execute(httpClient, httpRequest);
+        verify(httpUtil).execute(httpClient, httpRequest, httpClientContext);
+    }
+
+    public void testDoRequestAsyncFailsDueToNullRequest() {
+        try {
+            restClientUtil.doRequestAsync(null, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoRequestAsyncFailsDueToEmptyHostName() {
+        try {
+            restClientUtil.doRequestAsync(httpRequest, https, "", path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoRequestAsyncFailsDueToNullPath() {
+        try {
+            restClientUtil.doRequestAsync(httpRequest, https, hostName, null, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoRequestAsyncFailsFutureDueToBadUri() throws Exception {
+        // mock interactions
+        URISyntaxException exception = new URISyntaxException("uri", "bad");
+        doThrow(exception).when(httpUtil).setUri(httpRequest, https, hostName, path, null);
+
+        // do the call
+        CompletableFuture<RestResponse> restResponseFuture =
+                restClientUtil.doRequestAsync(httpRequest, https, hostName, path, null, httpHeaders, cookies);
+
+        // verify results
+        try {
+            restResponseFuture.get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertEquals(exception, e.getCause());
+        }
+        verify(httpUtil, never()).executeAsync(any(HttpAsyncClient.class), any(HttpRequestBase.class),
+                any(HttpContext.class), any(FutureCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testDoRequestAsyncHappyPath() throws Exception {
+        // mock interactions
+        HttpPost httpPost = mock(HttpPost.class);
+        String query = "query";
+        when(httpUtil.getQueryString(queryParams)).thenReturn(query);
+
+        CloseableHttpAsyncClient httpAsyncClient = mock(CloseableHttpAsyncClient.class);
+        when(httpClientFactory.getHttpAsyncClient()).thenReturn(httpAsyncClient);
+        CookieStore cookieStore = mock(CookieStore.class);
+        when(httpClientFactory.createCookieStore()).thenReturn(cookieStore);
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        when(httpClientFactory.createHttpClientContext(cookieStore)).thenReturn(httpClientContext);
+
+        ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        Future<HttpResponse> httpResponseFuture = mock(Future.class);
+        when(httpUtil.executeAsync(eq(httpAsyncClient), eq(httpPost), eq(httpClientContext), callbackCaptor.capture()))
+                .thenReturn(httpResponseFuture);
+
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        String responseBody = "responseBody";
+        when(httpUtil.getResponseString(httpResponse)).thenReturn(responseBody);
+
+        int statusCode = HttpStatus.SC_OK;
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(statusCode);
+
+        when(httpUtil.getCookies(cookieStore)).thenReturn(cookies);
+        when(httpUtil.getHeaders(httpResponse)).thenReturn(httpHeaders);
+
+        RestResponse restResponse = mock(RestResponse.class);
+        when(restResponseFactory.create(statusCode, cookies, httpHeaders, responseBody)).thenReturn(restResponse);
+
+        // do the call
+        CompletableFuture<RestResponse> restResponseFuture =
+                restClientUtil.doRequestAsync(httpPost, https, hostName, path, queryParams, httpHeaders, cookies);
+
+        // nothing until the response arrives
+        assertFalse(restResponseFuture.isDone());
+        callbackCaptor.getValue().completed(httpResponse);
+
+        // verify results and interactions
+        assertEquals(restResponse, restResponseFuture.get());
+        verify(httpUtil).setUri(httpPost, https, hostName, path, query);
+        verify(httpUtil).setHeaders(httpPost, httpHeaders);
+        verify(httpUtil).setCookies(httpPost, cookies);
+        verify(httpUtil).bufferEntity(httpPost);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testDoRequestAsyncFailedAndCancelled() throws Exception {
+        // mock interactions
+        CloseableHttpAsyncClient httpAsyncClient = mock(CloseableHttpAsyncClient.class);
+        when(httpClientFactory.getHttpAsyncClient()).thenReturn(httpAsyncClient);
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        when(httpClientFactory.createHttpClientContext(any(CookieStore.class))).thenReturn(httpClientContext);
+
+        ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        Future<HttpResponse> httpResponseFuture = mock(Future.class);
+        when(httpUtil.executeAsync(eq(httpAsyncClient), eq(httpRequest), eq(httpClientContext),
+                callbackCaptor.capture())).thenReturn(httpResponseFuture);
+
+        // a failure completes the future exceptionally
+        CompletableFuture<RestResponse> failedFuture =
+                restClientUtil.doRequestAsync(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+        IOException exception = new IOException();
+        callbackCaptor.getValue().failed(exception);
+        try {
+            failedFuture.get();
+
+            fail("should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertEquals(exception, e.getCause());
+        }
+
+        // cancelling the future aborts the exchange
+        CompletableFuture<RestResponse> cancelledFuture =
+                restClientUtil.doRequestAsync(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+        cancelledFuture.cancel(true);
+        verify(httpResponseFuture).cancel(true);
+    }
+
+    public void testDoStreamingRequestFailsDueToNullRequest() throws IOException, URISyntaxException {
+        try {
+            restClientUtil.doStreamingRequest(null, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoStreamingRequestFailsDueToEmptyPath() throws IOException, URISyntaxException {
+        try {
+            restClientUtil.doStreamingRequest(httpRequest, https, hostName, "", queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testDoStreamingRequestHappyPath() throws IOException, URISyntaxException {
+        // mock interactions
+
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+
+        int statusCode = HttpStatus.SC_OK;
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(statusCode);
+
+        InputStream body = mock(InputStream.class);
+        when(httpUtil.getResponseStream(httpResponse)).thenReturn(body);
+        when(httpUtil.getResponseCharset(httpResponse)).thenReturn(StandardCharsets.UTF_8);
+        when(httpUtil.getCookies(cookieStore)).thenReturn(cookies);
+        when(httpUtil.getHeaders(httpResponse)).thenReturn(httpHeaders);
+
+        RestStreamResponse restStreamResponse = mock(RestStreamResponse.class);
+        when(restResponseFactory.createStream(statusCode, cookies, httpHeaders, body, StandardCharsets.UTF_8,
+                httpRequest)).thenReturn(restStreamResponse);
+
+        // do the call
+        assertEquals(restStreamResponse,
+                restClientUtil.doStreamingRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies));
+
+        // the body wasn't read
+        verify(httpUtil, never()).getResponseString(httpResponse);
+        verify(httpRequest, never()).abort();
+    }
+
+    public void testDoStreamingRequestAbortsWhenBodyCantBeOpened() throws IOException, URISyntaxException {
+        // mock interactions
+
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+
+        when(httpUtil.getResponseStream(httpResponse)).thenThrow(new IOException());
+
+        // do the call
+        try {
+            restClientUtil.doStreamingRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {}
+
+        verify(httpRequest).abort();
+    }
+
+    public void testConsFailsDueToNullClientMetrics() {
+        try {
+            new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {}
+    }
+
+    public void testConsTurnsOnPoolWaitTimingForEnabledMetrics() {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+
+        new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        verify(httpClientFactory).setPoolWaitTiming(true);
+    }
+
+    public void testDoRequestWithoutMetricsDoesntTime() throws IOException, URISyntaxException {
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        restClientUtil.doRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+        verify(httpClientFactory, never()).setPoolWaitTiming(anyBoolean());
+        verify(httpClientFactory, never()).takePoolWaitNanos();
+    }
+
+    public void testDoRequestRecordsExchange() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        when(httpClientFactory.takePoolWaitNanos()).thenReturn(5L);
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        String responseBody = "respons\u00e9Body";
+        mockCountedBody(httpResponse, responseBody);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        RestResponse restResponse = mock(RestResponse.class);
+        when(restResponseFactory.create(eq(HttpStatus.SC_OK), anyMap(), anyMap(), eq(responseBody)))
+                .thenReturn(restResponse);
+
+        assertEquals(restResponse,
+                restClientUtil.doRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies));
+
+        // the bytes read, not the chars
+        verify(clientMetrics).recordExchange(eq(path), eq(HttpStatus.SC_OK), eq(5L), anyLong(), anyLong(), eq(0L),
+                eq(13L));
+        verify(clientMetrics, never()).recordExchangeFailure(anyString(), anyLong());
+    }
+
+    public void testDoRequestRecordsFailure() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        IOException ioException = new IOException("connection reset");
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenThrow(ioException);
+
+        try {
+            restClientUtil.doRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {
+            assertSame(ioException, e);
+        }
+
+        verify(clientMetrics).recordExchangeFailure(eq(path), anyLong());
+        verify(clientMetrics, never()).recordExchange(anyString(), anyInt(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong());
+    }
+
+    public void testDoStreamingRequestRecordsExchangeOnceBodyIsClosed() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        when(httpClientFactory.takePoolWaitNanos()).thenReturn(7L);
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        AtomicReference<CountingInputStream> countedBody = mockCountedBody(httpResponse, "b\u00f6dy");
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        restClientUtil.doStreamingRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+        verify(clientMetrics, never()).recordExchange(anyString(), anyInt(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong());
+
+        // the caller reads the body
+        countedBody.get().read(new byte[16]);
+        countedBody.get().close();
+
+        verify(clientMetrics).recordExchange(eq(path), eq(HttpStatus.SC_OK), eq(7L), anyLong(), eq(0L), eq(0L),
+                eq(5L));
+    }
+
+    public void testDoStreamingRequestRecordsRuntimeFailure() throws IOException, URISyntaxException {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        IllegalStateException exception = new IllegalStateException("pool shut down");
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenThrow(exception);
+
+        try {
+            restClientUtil.doStreamingRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            assertSame(exception, e);
+        }
+
+        verify(clientMetrics).recordExchangeFailure(eq(path), anyLong());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testDoRequestAsyncRecordsPoolWait() throws Exception {
+        ClientMetrics clientMetrics = mock(ClientMetrics.class);
+        when(clientMetrics.isEnabled()).thenReturn(true);
+        restClientUtil = new RestClientUtil(httpClientFactory, httpUtil, restResponseFactory, clientMetrics);
+
+        CloseableHttpAsyncClient httpAsyncClient = mock(CloseableHttpAsyncClient.class);
+        when(httpClientFactory.getHttpAsyncClient()).thenReturn(httpAsyncClient);
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        when(httpClientFactory.createHttpClientContext(any(CookieStore.class))).thenReturn(httpClientContext);
+        when(httpClientFactory.getAsyncPoolWaitNanos(httpClientContext)).thenReturn(9L);
+
+        ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        Future<HttpResponse> httpResponseFuture = mock(Future.class);
+        when(httpUtil.executeAsync(eq(httpAsyncClient), eq(httpRequest), eq(httpClientContext),
+                callbackCaptor.capture())).thenReturn(httpResponseFuture);
+
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        restClientUtil.doRequestAsync(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+        callbackCaptor.getValue().completed(httpResponse);
+
+        // the context is only handed over while the request is executed
+        InOrder inOrder = inOrder(httpClientFactory, httpUtil);
+        inOrder.verify(httpClientFactory).setAsyncPoolWaitContext(httpClientContext);
+        inOrder.verify(httpUtil).executeAsync(eq(httpAsyncClient), eq(httpRequest), eq(httpClientContext),
+                any(FutureCallback.class));
+        inOrder.verify(httpClientFactory).setAsyncPoolWaitContext(null);
+
+        verify(clientMetrics).recordExchange(eq(path), eq(HttpStatus.SC_OK), eq(9L), anyLong(), eq(0L), eq(0L),
+                eq(0L));
+    }
+
+    public void testDoRequestEmitsRequestEvent() throws Exception {
+        when(httpClientFactory.takePoolWaitNanos()).thenReturn(5L);
+        when(httpRequest.getMethod()).thenReturn("POST");
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        mockCountedBody(httpResponse, "respons\u00e9Body");
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.PlayRequest",
+                () -> restClientUtil.doRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies));
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(path, event.getString("path"));
+        assertEquals("POST", event.getString("method"));
+        assertEquals(HttpStatus.SC_OK, event.getInt("statusCode"));
+        assertEquals(Duration.ofNanos(5), event.getDuration("poolWait"));
+        assertEquals(13, event.getLong("responseBytes"));
+        assertFalse(event.getBoolean("streamed"));
+        assertNull(event.getString("failure"));
+
+        // a recording wants the pool waits, even without metrics
+        verify(httpClientFactory).setPoolWaitTiming(true);
+    }
+
+    public void testDoRequestEmitsFailedRequestEvent() throws Exception {
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext))
+                .thenThrow(new IOException("connection reset"));
+
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.PlayRequest", () -> {
+            try {
+                restClientUtil.doRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+
+                fail("should have thrown IOException");
+            }
+            catch (IOException e) {}
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(path, events.get(0).getString("path"));
+        assertEquals(IOException.class.getName(), events.get(0).getString("failure"));
+        assertEquals(0, events.get(0).getInt("statusCode"));
+    }
+
+    public void testDoStreamingRequestEmitsStreamedRequestEvent() throws Exception {
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        when(httpUtil.execute(httpClient, httpRequest, httpClientContext)).thenReturn(httpResponse);
+        final AtomicReference<CountingInputStream> countedBody = mockCountedBody(httpResponse, "b\u00f6dy");
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        List<RecordedEvent> events = EventRecorder.record("com.faceture.PlayRequest", () -> {
+            restClientUtil.doStreamingRequest(httpRequest, https, hostName, path, queryParams, httpHeaders, cookies);
+            countedBody.get().read(new byte[16]);
+            countedBody.get().close();
+        });
+
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).getBoolean("streamed"));
+        assertEquals(Duration.ZERO, events.get(0).getDuration("bodyRead"));
+        assertEquals(5, events.get(0).getLong("responseBytes"));
+    }
+
+    /**
+     * Serves the body through a CountingInputStream, the way the HttpUtil does
+     * @return holds the counted body once the RestClientUtil has asked for it
+     */
+    private AtomicReference<CountingInputStream> mockCountedBody(HttpResponse httpResponse, String body)
+            throws IOException
+    {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        final AtomicReference<CountingInputStream> countedBody = new AtomicReference<CountingInputStream>();
+
+        when(httpUtil.countResponseBytes(eq(httpResponse), any(LongConsumer.class))).thenAnswer(invocation -> {
+            countedBody.set(new CountingInputStream(new ByteArrayInputStream(bytes),
+                    (LongConsumer) invocation.getArguments()[1]));
+            return countedBody.get();
+        });
+        when(httpUtil.getResponseStream(httpResponse)).thenAnswer(invocation -> countedBody.get());
+        when(httpUtil.getResponseString(httpResponse)).thenAnswer(invocation -> {
+            try (InputStream inputStream = countedBody.get()) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                int read;
+                while ((read = inputStream.read()) != -1) {
+                    outputStream.write(read);
+                }
+                return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+            }
+        });
+
+        return countedBody;
     }
 }
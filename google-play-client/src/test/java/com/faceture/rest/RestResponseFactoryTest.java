@@ -18,6 +18,11 @@
 package com.faceture.rest;
 
 import junit.framework.TestCase;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -64,5 +69,17 @@ public class RestResponseFactoryTest extends TestCase {
         assertEquals(body, restResponse.getBody());
     }
 
+    public void testCreateStreamHappyPath() {
+        InputStream bodyStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        HttpGet httpGet = new HttpGet();
+
+        RestStreamResponse restStreamResponse = restResponseFactory.createStream(statusCode, cookies, headers,
+                bodyStream, StandardCharsets.UTF_8, httpGet);
 
+        assertNotNull(restStreamResponse);
+        assertEquals(statusCode, restStreamResponse.getStatusCode());
+        assertEquals(cookies, restStreamResponse.getCookies());
+        assertEquals(headers, restStreamResponse.getHeaders());
+        assertEquals(bodyStream, restStreamResponse.getBody());
+    }
 }
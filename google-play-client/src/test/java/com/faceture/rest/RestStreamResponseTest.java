@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import com.faceture.http.CountingInputStream;
+import junit.framework.TestCase;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the RestStreamResponse
+ */
+public class RestStreamResponseTest extends TestCase {
+
+    // params
+    final int statusCode = 200;
+    final Map<String, String> cookies = new HashMap<String, String>();
+    final Map<String, String> headers = new HashMap<String, String>();
+    HttpRequestBase httpRequest;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        httpRequest = mock(HttpRequestBase.class);
+    }
+
+    public void testConsFailsDueToNullBody() {
+        try {
+            new RestStreamResponse(statusCode, cookies, headers, null, StandardCharsets.UTF_8, httpRequest);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullCharset() {
+        try {
+            new RestStreamResponse(statusCode, cookies, headers, createBody("body"), null, httpRequest);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testConsFailsDueToNullHttpRequest() {
+        try {
+            new RestStreamResponse(statusCode, cookies, headers, createBody("body"), StandardCharsets.UTF_8, null);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testReadBody() throws IOException {
+        RestStreamResponse restStreamResponse = new RestStreamResponse(statusCode, cookies, headers,
+                createBody("b\u00f6dy"), StandardCharsets.UTF_8, httpRequest);
+
+        assertEquals("b\u00f6dy", restStreamResponse.readBody());
+    }
+
+    public void testCloseClosesBody() throws IOException {
+        InputStream body = mock(InputStream.class);
+        RestStreamResponse restStreamResponse = new RestStreamResponse(statusCode, cookies, headers, body,
+                StandardCharsets.UTF_8, httpRequest);
+
+        restStreamResponse.close();
+
+        verify(body).close();
+        verify(httpRequest, never()).abort();
+    }
+
+    public void testAbortAbortsRequestAndSkipsClose() throws IOException {
+        InputStream body = mock(InputStream.class);
+        RestStreamResponse restStreamResponse = new RestStreamResponse(statusCode, cookies, headers, body,
+                StandardCharsets.UTF_8, httpRequest);
+
+        restStreamResponse.abort();
+        restStreamResponse.close();
+
+        assertTrue(restStreamResponse.isAborted());
+        verify(httpRequest).abort();
+        verify(body, never()).close();
+    }
+
+    public void testCloseAfterAbortHandsOverTheCountedBytes() throws IOException {
+        final List<Long> byteCounts = new ArrayList<Long>();
+        InputStream body = mock(InputStream.class);
+        RestStreamResponse restStreamResponse = new RestStreamResponse(statusCode, cookies, headers,
+                new CountingInputStream(body, byteCounts::add), StandardCharsets.UTF_8, httpRequest);
+
+        restStreamResponse.abort();
+        restStreamResponse.close();
+
+        assertEquals(1, byteCounts.size());
+        verify(body, never()).close();
+    }
+
+    private InputStream createBody(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
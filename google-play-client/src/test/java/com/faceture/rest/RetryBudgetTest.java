@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the RetryBudget
+ */
+public class RetryBudgetTest extends TestCase {
+
+    public void testConsFailsDueToBadSettings() {
+        try {
+            new RetryBudget(1.5, 1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try {
+            new RetryBudget(0.5, -1);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public void testStartsWithTheReserve() {
+        RetryBudget retryBudget = new RetryBudget(0.1, 2);
+
+        assertEquals(2, retryBudget.getAvailableRetries());
+        assertTrue(retryBudget.tryRetry());
+        assertTrue(retryBudget.tryRetry());
+        assertFalse(retryBudget.tryRetry());
+        assertEquals(0, retryBudget.getAvailableRetries());
+    }
+
+    public void testRequestsEarnRetries() {
+        RetryBudget retryBudget = new RetryBudget(0.25, 2);
+        retryBudget.tryRetry();
+        retryBudget.tryRetry();
+
+        for (int i = 0; i < 3; i++) {
+            retryBudget.recordRequest();
+        }
+        assertFalse(retryBudget.tryRetry());
+
+        retryBudget.recordRequest();
+        assertTrue(retryBudget.tryRetry());
+        assertFalse(retryBudget.tryRetry());
+    }
+
+    public void testBalanceIsCappedAtTheReserve() {
+        RetryBudget retryBudget = new RetryBudget(1, 3);
+
+        for (int i = 0; i < 100; i++) {
+            retryBudget.recordRequest();
+        }
+
+        assertEquals(3, retryBudget.getAvailableRetries());
+    }
+
+    public void testNoReserveMeansNoRetries() {
+        RetryBudget retryBudget = new RetryBudget(1, 0);
+        retryBudget.recordRequest();
+
+        assertFalse(retryBudget.tryRetry());
+    }
+
+    public void testConcurrentRetriesNeverOverdraw() throws InterruptedException {
+        final RetryBudget retryBudget = new RetryBudget(0, 1000);
+        final AtomicInteger retries = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 500; j++) {
+                        if (retryBudget.tryRetry()) {
+                            retries.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+        }
+        finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1000, retries.get());
+        assertEquals(0, retryBudget.getAvailableRetries());
+    }
+}
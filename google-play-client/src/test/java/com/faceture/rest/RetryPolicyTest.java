@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012. Faceture Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.faceture.rest;
+
+import junit.framework.TestCase;
+import org.apache.http.HttpStatus;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Tests the RetryPolicy
+ */
+public class RetryPolicyTest extends TestCase {
+
+    final Set<String> readOnlyPostPaths = Collections.singleton("/search");
+
+    public void testDefaults() {
+        RetryPolicy retryPolicy = new RetryPolicy(readOnlyPostPaths);
+
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, retryPolicy.getMaxAttempts());
+        assertEquals(RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS, retryPolicy.getInitialBackoffMillis());
+        assertEquals(RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS, retryPolicy.getMaxBackoffMillis());
+        assertEquals(RetryPolicy.DEFAULT_MAX_RETRY_AFTER_MILLIS, retryPolicy.getMaxRetryAfterMillis());
+        assertEquals(RetryPolicy.DEFAULT_BUDGET_RATIO, retryPolicy.getBudgetRatio());
+        assertEquals(RetryPolicy.DEFAULT_BUDGET_RESERVE, retryPolicy.getBudgetReserve());
+        assertEquals(readOnlyPostPaths, retryPolicy.getReadOnlyPostPaths());
+    }
+
+    public void testNoneNeverRetries() {
+        assertEquals(1, RetryPolicy.NONE.getMaxAttempts());
+        assertTrue(RetryPolicy.NONE.getReadOnlyPostPaths().isEmpty());
+    }
+
+    public void testConsFailsDueToBadSettings() {
+        assertConsFails(0, 0, 0, 0, 0, 0, readOnlyPostPaths);
+        assertConsFails(1, -1, 0, 0, 0, 0, readOnlyPostPaths);
+        assertConsFails(1, 10, 5, 0, 0, 0, readOnlyPostPaths);
+        assertConsFails(1, 0, 0, -1, 0, 0, readOnlyPostPaths);
+        assertConsFails(1, 0, 0, 0, -0.1, 0, readOnlyPostPaths);
+        assertConsFails(1, 0, 0, 0, 1.1, 0, readOnlyPostPaths);
+        assertConsFails(1, 0, 0, 0, 0, -1, readOnlyPostPaths);
+        assertConsFails(1, 0, 0, 0, 0, 0, null);
+    }
+
+    public void testIsReadOnlyPost() {
+        RetryPolicy retryPolicy = new RetryPolicy(readOnlyPostPaths);
+
+        assertTrue(retryPolicy.isReadOnlyPost("/search"));
+        assertFalse(retryPolicy.isReadOnlyPost("/login"));
+    }
+
+    public void testIsRetryableStatus() {
+        RetryPolicy retryPolicy = new RetryPolicy(readOnlyPostPaths);
+
+        assertTrue(retryPolicy.isRetryableStatus(429));
+        assertTrue(retryPolicy.isRetryableStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR));
+        assertTrue(retryPolicy.isRetryableStatus(HttpStatus.SC_BAD_GATEWAY));
+        assertTrue(retryPolicy.isRetryableStatus(HttpStatus.SC_SERVICE_UNAVAILABLE));
+        assertTrue(retryPolicy.isRetryableStatus(HttpStatus.SC_GATEWAY_TIMEOUT));
+        assertFalse(retryPolicy.isRetryableStatus(HttpStatus.SC_OK));
+        assertFalse(retryPolicy.isRetryableStatus(HttpStatus.SC_FORBIDDEN));
+        assertFalse(retryPolicy.isRetryableStatus(HttpStatus.SC_NOT_IMPLEMENTED));
+    }
+
+    private void assertConsFails(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+                                 long maxRetryAfterMillis, double budgetRatio, int budgetReserve,
+                                 Set<String> readOnlyPostPaths)
+    {
+        try {
+            new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, maxRetryAfterMillis, budgetRatio,
+                    budgetReserve, readOnlyPostPaths);
+
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}